@@ -0,0 +1,108 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.kerby.benchmark;
+
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.crypto.EncryptionHandler;
+import org.apache.kerby.kerberos.kerb.crypto.random.RandomProvider;
+import org.apache.kerby.kerberos.kerb.crypto.util.Confounder;
+import org.apache.kerby.kerberos.kerb.crypto.util.Random;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionKey;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Confounder and session key generation with the random providers, by 1, 8
+ * and 32 threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+public class RandomBenchmark {
+    private static final int CONFOUNDER_SIZE = 16;
+
+    @Param({"java", "native", "drbg"})
+    private String provider;
+
+    private RandomProvider randomProvider;
+    private RandomProvider defaultProvider;
+
+    @Setup
+    public void setup() throws KrbException {
+        randomProvider = Random.createProvider(provider);
+        defaultProvider = Random.setProvider(randomProvider);
+    }
+
+    @TearDown
+    public void cleanup() {
+        Random.restoreProvider(randomProvider, defaultProvider);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public byte[] confounder1() {
+        return Confounder.makeBytes(CONFOUNDER_SIZE);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public byte[] confounder8() {
+        return Confounder.makeBytes(CONFOUNDER_SIZE);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public byte[] confounder32() {
+        return Confounder.makeBytes(CONFOUNDER_SIZE);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public EncryptionKey sessionKey1() throws KrbException {
+        return EncryptionHandler.random2Key(EncryptionType.AES128_CTS_HMAC_SHA1_96);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public EncryptionKey sessionKey8() throws KrbException {
+        return EncryptionHandler.random2Key(EncryptionType.AES128_CTS_HMAC_SHA1_96);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public EncryptionKey sessionKey32() throws KrbException {
+        return EncryptionHandler.random2Key(EncryptionType.AES128_CTS_HMAC_SHA1_96);
+    }
+}
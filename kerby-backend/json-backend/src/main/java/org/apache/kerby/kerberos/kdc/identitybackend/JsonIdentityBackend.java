@@ -39,6 +39,12 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -46,26 +52,50 @@ import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.Lock;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * A Json file based backend implementation.
+ *
+ * By default every change rewrites the whole file, and every read checks if
+ * the file was changed. In the journal mode, enabled by "backend.json.journal",
+ * the changes are appended to a journal file, which is compacted into the
+ * Json file in the background once it has "backend.json.compact.threshold"
+ * records. The reads are then served from memory, and the changes of other
+ * processes sharing the files are picked up through a {@link WatchService}.
  */
 public class JsonIdentityBackend extends AbstractIdentityBackend {
     private static final Logger LOG =
             LoggerFactory.getLogger(JsonIdentityBackend.class);
 
     public static final String JSON_IDENTITY_BACKEND_DIR = "backend.json.dir";
+    public static final String JSON_IDENTITY_BACKEND_JOURNAL = "backend.json.journal";
+    public static final String JSON_IDENTITY_BACKEND_COMPACT_THRESHOLD =
+            "backend.json.compact.threshold";
+    private static final int DEFAULT_COMPACT_THRESHOLD = 1000;
+    // Interval in seconds the journal size is checked for compaction
+    private static final long COMPACT_CHECK_INTERVAL = 10;
+
     private File jsonKdbFile;
     private Gson gson;
+    // Gson writing a journal record per line
+    private Gson journalGson;
+
+    private JsonJournal journal;
+    private int compactThreshold;
+    private ScheduledExecutorService compactor;
+    private WatchService watchService;
 
     // Identities loaded from file
     private final Map<String, KrbIdentity> identities =
         new ConcurrentHashMap<>(new TreeMap<String, KrbIdentity>());
     private long kdbFileUpdateTime = -1;
 
-    private Lock lock = new ReentrantLock();
+    private final ReentrantLock lock = new ReentrantLock();
 
     public JsonIdentityBackend() {
 
@@ -128,46 +158,260 @@ public class JsonIdentityBackend extends AbstractIdentityBackend {
                 throw new KrbException("Failed to create " + jsonKdbFile.getAbsolutePath());
             }
         }
+
+        if (getConfig().getBoolean(JSON_IDENTITY_BACKEND_JOURNAL, false)) {
+            initJournal(new File(jsonFileDir, "json-backend.journal"));
+        }
+    }
+
+    private void initJournal(File journalFile) throws KrbException {
+        compactThreshold = getConfig().getInt(JSON_IDENTITY_BACKEND_COMPACT_THRESHOLD,
+                DEFAULT_COMPACT_THRESHOLD);
+        try {
+            journal = new JsonJournal(journalFile);
+        } catch (IOException e) {
+            throw new KrbException("Failed to open journal " + journalFile.getAbsolutePath(), e);
+        }
+        load();
+
+        compactor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "json-backend-compactor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        compactor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                if (journal.getAppended() >= compactThreshold) {
+                    try {
+                        compact();
+                    } catch (KrbException e) {
+                        LOG.warn("Failed to compact the json backend journal", e);
+                    }
+                }
+            }
+        }, COMPACT_CHECK_INTERVAL, COMPACT_CHECK_INTERVAL, TimeUnit.SECONDS);
+
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            jsonKdbFile.getAbsoluteFile().getParentFile().toPath().register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            throw new KrbException("Failed to watch " + jsonKdbFile.getParent(), e);
+        }
+        Thread watcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watch();
+            }
+        }, "json-backend-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Pick up the changes done to the files by other processes.
+     */
+    private void watch() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            boolean changed = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                Object name = event.context();
+                changed |= event.kind() == StandardWatchEventKinds.OVERFLOW
+                        || name.toString().equals(jsonKdbFile.getName())
+                        || name.toString().equals(journal.getFile().getName());
+            }
+            key.reset();
+            if (changed) {
+                try {
+                    checkAndReload();
+                } catch (KrbException e) {
+                    LOG.warn("Failed to reload the json backend", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doStop() throws KrbException {
+        if (journal == null) {
+            return;
+        }
+        compactor.shutdownNow();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close the json backend watch service", e);
+        }
+        if (journal.getAppended() > 0) {
+            compact();
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            throw new KrbException("Failed to close journal", e);
+        }
     }
 
     private void load() throws KrbException {
         LOG.info("Loading the identities from json file.");
 
-        long nowTimeStamp = jsonKdbFile.lastModified();
-        String reloadedJsonContent;
-        if (lock.tryLock()) {
-            try {
+        lock.lock();
+        try {
+            final Map<String, KrbIdentity> reloadedEntries = new HashMap<>();
+            if (journal != null) {
+                replayJournal(reloadedEntries);
+            } else {
                 try {
-                    reloadedJsonContent = IOUtil.readFile(jsonKdbFile);
+                    readFile(reloadedEntries);
                 } catch (IOException e) {
                     throw new KrbException("Failed to read file", e);
                 }
+            }
+            identities.putAll(reloadedEntries);
+            identities.keySet().retainAll(reloadedEntries.keySet());
+        } finally {
+            lock.unlock();
+        }
+    }
 
-                Map<String, KrbIdentity> reloadedEntries =
-                        gson.fromJson(reloadedJsonContent,
-                                new TypeToken<HashMap<String, KrbIdentity>>() {
-                                }.getType());
+    private void readFile(Map<String, KrbIdentity> entries) throws IOException {
+        long nowTimeStamp = jsonKdbFile.lastModified();
+        String reloadedJsonContent = IOUtil.readFile(jsonKdbFile);
+
+        Map<String, KrbIdentity> reloadedEntries =
+                gson.fromJson(reloadedJsonContent,
+                        new TypeToken<HashMap<String, KrbIdentity>>() {
+                        }.getType());
+        if (reloadedEntries != null) {
+            entries.putAll(reloadedEntries);
+        }
+        kdbFileUpdateTime = nowTimeStamp;
+    }
 
-                if (reloadedEntries != null) {
-                    identities.clear();
-                    identities.putAll(reloadedEntries);
+    /**
+     * Read the file and the journal records on top of it, under the journal
+     * lock so they're not compacted in between.
+     */
+    private void replayJournal(final Map<String, KrbIdentity> entries) throws KrbException {
+        try {
+            journal.replay(new JsonJournal.SnapshotTask() {
+                @Override
+                public void run() throws IOException {
+                    readFile(entries);
                 }
-
-                kdbFileUpdateTime = nowTimeStamp;
-            } finally {
-                lock.unlock();
-            }
+            }, new JsonJournal.RecordHandler() {
+                @Override
+                public void handle(String record) {
+                    apply(journalGson.fromJson(record, JournalRecord.class), entries);
+                }
+            });
+        } catch (IOException e) {
+            throw new KrbException("Failed to read journal", e);
         }
     }
 
     /**
      * Check kdb file timestamp to see if it's changed or not. If
-     * necessary load the kdb again.
+     * necessary load the kdb again. In the journal mode, also apply the
+     * journal records appended by other processes.
      */
     private void checkAndReload() throws KrbException {
         long nowTimeStamp = jsonKdbFile.lastModified();
         if (nowTimeStamp != kdbFileUpdateTime) {
             load();
+        } else if (journal != null) {
+            lock.lock();
+            try {
+                if (!journal.replayTail(identitiesHandler())) {
+                    load();
+                }
+            } catch (IOException e) {
+                throw new KrbException("Failed to read journal", e);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private JsonJournal.RecordHandler identitiesHandler() {
+        return new JsonJournal.RecordHandler() {
+            @Override
+            public void handle(String record) {
+                apply(journalGson.fromJson(record, JournalRecord.class), identities);
+            }
+        };
+    }
+
+    private static void apply(JournalRecord record, Map<String, KrbIdentity> entries) {
+        if (record.identity != null) {
+            entries.put(record.identity.getPrincipalName(), record.identity);
+        } else if (record.deleted != null) {
+            entries.remove(record.deleted);
+        }
+    }
+
+    /**
+     * Persist a change, to the journal in the journal mode, otherwise by
+     * rewriting the whole file.
+     */
+    private void persist(List<JournalRecord> records) throws KrbException {
+        if (journal == null) {
+            persistToFile();
+            return;
+        }
+        List<String> lines = new ArrayList<>(records.size());
+        for (JournalRecord record : records) {
+            lines.add(journalGson.toJson(record));
+        }
+        try {
+            if (!journal.append(lines, identitiesHandler())) {
+                // Compacted by another process, some changes are only in the file
+                load();
+            }
+        } catch (IOException e) {
+            LOG.error("Error occurred while writing identities to journal: "
+                    + journal.getFile());
+            throw new KrbException("Failed to write journal", e);
+        }
+    }
+
+    /**
+     * Write the identities to the file, and empty the journal. The records
+     * appended by others are applied first, and no record can be appended
+     * until the journal is emptied.
+     */
+    private void compact() throws KrbException {
+        lock.lock();
+        try {
+            checkAndReload();
+            JsonJournal.SnapshotTask writer = new JsonJournal.SnapshotTask() {
+                @Override
+                public void run() throws IOException {
+                    writeFile();
+                }
+            };
+            while (!journal.compact(identitiesHandler(), writer)) {
+                // Compacted by another process, some changes are only in the file
+                load();
+            }
+            LOG.info("Compacted the json backend journal.");
+        } catch (IOException e) {
+            throw new KrbException("Failed to compact journal", e);
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -176,7 +420,9 @@ public class JsonIdentityBackend extends AbstractIdentityBackend {
      */
     @Override
     protected KrbIdentity doGetIdentity(String principalName) throws KrbException {
-        checkAndReload();
+        if (journal == null) {
+            checkAndReload();
+        }
         return identities.get(principalName);
     }
 
@@ -185,15 +431,16 @@ public class JsonIdentityBackend extends AbstractIdentityBackend {
      */
     @Override
     protected KrbIdentity doAddIdentity(KrbIdentity identity) throws KrbException {
-        checkAndReload();
+        // In the journal mode, the records of others are applied on append
+        if (journal == null) {
+            checkAndReload();
+        }
 
-        if (lock.tryLock()) {
-            try {
-                identities.put(identity.getPrincipalName(), identity);
-                persistToFile();
-            } finally {
-                lock.unlock();
-            }
+        lock.lock();
+        try {
+            putIdentity(identity);
+        } finally {
+            lock.unlock();
         }
 
         return doGetIdentity(identity.getPrincipalName());
@@ -204,15 +451,16 @@ public class JsonIdentityBackend extends AbstractIdentityBackend {
      */
     @Override
     protected KrbIdentity doUpdateIdentity(KrbIdentity identity) throws KrbException {
-        checkAndReload();
+        // In the journal mode, the records of others are applied on append
+        if (journal == null) {
+            checkAndReload();
+        }
 
-        if (lock.tryLock()) {
-            try {
-                identities.put(identity.getPrincipalName(), identity);
-                persistToFile();
-            } finally {
-                lock.unlock();
-            }
+        lock.lock();
+        try {
+            putIdentity(identity);
+        } finally {
+            lock.unlock();
         }
 
         return doGetIdentity(identity.getPrincipalName());
@@ -223,19 +471,36 @@ public class JsonIdentityBackend extends AbstractIdentityBackend {
      */
     @Override
     protected void doDeleteIdentity(String principalName) throws KrbException {
-        checkAndReload();
-
-        if (!identities.containsKey(principalName)) {
-            return;
+        // In the journal mode, the records of others are applied on append,
+        // so the delete is appended even if the identity isn't known yet
+        if (journal == null) {
+            checkAndReload();
+            if (!identities.containsKey(principalName)) {
+                return;
+            }
         }
 
-        if (lock.tryLock()) {
-            try {
+        lock.lock();
+        try {
+            if (journal != null) {
+                persist(Collections.singletonList(JournalRecord.delete(principalName)));
+                identities.remove(principalName);
+            } else {
                 identities.remove(principalName);
                 persistToFile();
-            } finally {
-                lock.unlock();
             }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void putIdentity(KrbIdentity identity) throws KrbException {
+        if (journal != null) {
+            persist(Collections.singletonList(JournalRecord.put(identity)));
+            identities.put(identity.getPrincipalName(), identity);
+        } else {
+            identities.put(identity.getPrincipalName(), identity);
+            persistToFile();
         }
     }
 
@@ -256,32 +521,59 @@ public class JsonIdentityBackend extends AbstractIdentityBackend {
         gsonBuilder.registerTypeAdapter(PrincipalName.class, new PrincipalNameAdapter());
         gsonBuilder.registerTypeAdapter(KerberosTime.class, new KerberosTimeAdapter());
         gsonBuilder.enableComplexMapKeySerialization();
+        journalGson = gsonBuilder.create();
         gsonBuilder.setPrettyPrinting();
         gson = gsonBuilder.create();
     }
 
     private void persistToFile() throws KrbException {
-        String newJsonContent = gson.toJson(identities);
         try {
-            File newJsonKdbFile = File.createTempFile("kerby-kdb",
-                    ".json", jsonKdbFile.getParentFile());
-            IOUtil.writeFile(newJsonContent, newJsonKdbFile);
-            jsonKdbFile.delete();
-            newJsonKdbFile.renameTo(jsonKdbFile);
-            kdbFileUpdateTime = jsonKdbFile.lastModified();
+            writeFile();
         } catch (IOException e) {
             LOG.error("Error occurred while writing identities to file: " + jsonKdbFile);
             throw new KrbException("Failed to write file", e);
         }
     }
 
+    private void writeFile() throws IOException {
+        String newJsonContent = gson.toJson(identities);
+        File newJsonKdbFile = File.createTempFile("kerby-kdb",
+                ".json", jsonKdbFile.getParentFile());
+        IOUtil.writeFile(newJsonContent, newJsonKdbFile);
+        jsonKdbFile.delete();
+        newJsonKdbFile.renameTo(jsonKdbFile);
+        kdbFileUpdateTime = jsonKdbFile.lastModified();
+    }
+
+    /**
+     * A record of the journal, an identity added or updated, or deleted.
+     */
+    static final class JournalRecord {
+        private KrbIdentity identity;
+        private String deleted;
+
+        static JournalRecord put(KrbIdentity identity) {
+            JournalRecord record = new JournalRecord();
+            record.identity = identity;
+            return record;
+        }
+
+        static JournalRecord delete(String principalName) {
+            JournalRecord record = new JournalRecord();
+            record.deleted = principalName;
+            return record;
+        }
+    }
+
     class JsonBatchTrans implements BatchTrans {
+        // The changes to append to the journal in the journal mode
+        private final List<JournalRecord> records = new ArrayList<>();
 
         @Override
         public void commit() throws KrbException {
             try {
                 // Force to persist memory states to disk file.
-                persistToFile();
+                persist(records);
             } finally {
                 lock.unlock();
             }
@@ -300,8 +592,9 @@ public class JsonIdentityBackend extends AbstractIdentityBackend {
         @Override
         public BatchTrans addIdentity(KrbIdentity identity) throws KrbException {
             if (identity != null
-                    && identities.containsKey(identity.getPrincipalName())) {
+                    && !identities.containsKey(identity.getPrincipalName())) {
                 identities.put(identity.getPrincipalName(), identity);
+                records.add(JournalRecord.put(identity));
             }
             return this;
         }
@@ -311,6 +604,7 @@ public class JsonIdentityBackend extends AbstractIdentityBackend {
             if (identity != null
                     && identities.containsKey(identity.getPrincipalName())) {
                 identities.put(identity.getPrincipalName(), identity);
+                records.add(JournalRecord.put(identity));
             }
             return this;
         }
@@ -319,6 +613,7 @@ public class JsonIdentityBackend extends AbstractIdentityBackend {
         public BatchTrans deleteIdentity(String principalName) throws KrbException {
             if (principalName != null && identities.containsKey(principalName)) {
                 identities.remove(principalName);
+                records.add(JournalRecord.delete(principalName));
             }
             return this;
         }
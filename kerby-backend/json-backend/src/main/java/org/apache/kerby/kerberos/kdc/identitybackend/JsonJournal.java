@@ -0,0 +1,261 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *
+ */
+package org.apache.kerby.kerberos.kdc.identitybackend;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A write ahead journal of the changes to the Json identity backend, a
+ * record per line. Appends are done under a file lock, and first read the
+ * records appended by other processes since the last read, so that every
+ * process sharing the journal applies all the records in order. The
+ * snapshot the journal is compacted into is written, and read with the
+ * journal, under the journal lock too, so no record is lost or applied
+ * twice in between. A compaction starts the journal with a new generation
+ * header line, so that a process whose offset outlasted the compaction
+ * reads the snapshot again rather than the journal from its offset.
+ */
+class JsonJournal implements Closeable {
+    private static final byte NEW_LINE = '\n';
+    private static final byte GENERATION_MARK = '#';
+    private static final int MAX_GENERATION_LENGTH = 64;
+    // File locks are held by the JVM, the journals of a file in the JVM
+    // also lock its object here so they don't overlap
+    private static final ConcurrentMap<String, Object> PATH_LOCKS = new ConcurrentHashMap<>();
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final Object pathLock;
+    // Position up to which the records are read or appended
+    private long offset;
+    // Generation of the journal the offset is in, empty if never compacted
+    private String generation = "";
+    // Records appended by this process since the journal was reset
+    private int appended;
+
+    /**
+     * Handler of the records read from the journal.
+     */
+    interface RecordHandler {
+        void handle(String record) throws IOException;
+    }
+
+    /**
+     * Reader or writer of the snapshot, run under the journal lock.
+     */
+    interface SnapshotTask {
+        void run() throws IOException;
+    }
+
+    JsonJournal(File file) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "rw");
+        this.channel = raf.getChannel();
+        String path = file.getCanonicalPath();
+        PATH_LOCKS.putIfAbsent(path, new Object());
+        this.pathLock = PATH_LOCKS.get(path);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Get the number of records appended by this process since the journal
+     * was last reset.
+     */
+    synchronized int getAppended() {
+        return appended;
+    }
+
+    /**
+     * Append the records, after handling the records not read yet.
+     * @param records The records, without new lines
+     * @param handler The handler of the records not read yet
+     * @return false if the journal was compacted since the last read, so
+     * the snapshot has to be read again
+     */
+    synchronized boolean append(List<String> records, RecordHandler handler) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (String record : records) {
+            sb.append(record).append((char) NEW_LINE);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+
+        boolean truncated = false;
+        synchronized (pathLock) {
+            try (FileLock lock = channel.lock()) {
+                if (!readTail(handler)) {
+                    truncated = true;
+                    offset = 0;
+                    readTail(handler);
+                }
+                // Drop the partial record of a writer that failed midway
+                channel.truncate(offset);
+                long position = offset;
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+                offset = position;
+            }
+        }
+        appended += records.size();
+        return !truncated;
+    }
+
+    /**
+     * Handle the records appended by other processes since the last read.
+     * @param handler The record handler
+     * @return false if the journal was compacted since, so the snapshot has
+     * to be read again
+     */
+    synchronized boolean replayTail(RecordHandler handler) throws IOException {
+        synchronized (pathLock) {
+            try (FileLock lock = channel.lock(0, Long.MAX_VALUE, true)) {
+                return readTail(handler);
+            }
+        }
+    }
+
+    /**
+     * Read the snapshot, then handle all the records of the journal.
+     * @param reader The reader of the snapshot
+     * @param handler The record handler
+     */
+    synchronized void replay(SnapshotTask reader, RecordHandler handler) throws IOException {
+        synchronized (pathLock) {
+            try (FileLock lock = channel.lock(0, Long.MAX_VALUE, true)) {
+                reader.run();
+                offset = 0;
+                readTail(handler);
+            }
+        }
+    }
+
+    /**
+     * Handle the records not read yet, write the snapshot and empty the
+     * journal, all under the exclusive lock so no record appended by
+     * another process in between is lost.
+     * @param handler The handler of the records not read yet
+     * @param writer The writer of the snapshot
+     * @return false if the journal was compacted since the last read, so
+     * the snapshot has to be read again before compacting
+     */
+    synchronized boolean compact(RecordHandler handler, SnapshotTask writer) throws IOException {
+        synchronized (pathLock) {
+            try (FileLock lock = channel.lock()) {
+                if (!readTail(handler)) {
+                    return false;
+                }
+                writer.run();
+                channel.truncate(0);
+                String newGeneration = UUID.randomUUID().toString();
+                ByteBuffer header = ByteBuffer.wrap((((char) GENERATION_MARK) + newGeneration
+                        + ((char) NEW_LINE)).getBytes(StandardCharsets.UTF_8));
+                long position = 0;
+                while (header.hasRemaining()) {
+                    position += channel.write(header, position);
+                }
+                offset = position;
+                generation = newGeneration;
+            }
+        }
+        appended = 0;
+        return true;
+    }
+
+    /**
+     * Read the records from the offset, the whole journal if it's 0.
+     * @return false if the journal was compacted since the offset was read
+     */
+    private boolean readTail(RecordHandler handler) throws IOException {
+        long size = channel.size();
+        String current = readGeneration(size);
+        if (offset == 0) {
+            generation = current;
+        } else if (size < offset || !current.equals(generation)) {
+            return false;
+        }
+        if (size == offset) {
+            return true;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) (size - offset));
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
+        byte[] bytes = buffer.array();
+        int start = 0;
+        for (int i = 0; i < buffer.position(); i++) {
+            if (bytes[i] == NEW_LINE) {
+                if (i > start && bytes[start] != GENERATION_MARK) {
+                    handler.handle(new String(bytes, start, i - start, StandardCharsets.UTF_8));
+                }
+                start = i + 1;
+            }
+        }
+        // A partly written record is read once complete
+        offset += start;
+        return true;
+    }
+
+    private String readGeneration(long size) throws IOException {
+        if (size == 0) {
+            return "";
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size, MAX_GENERATION_LENGTH));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                break;
+            }
+        }
+        byte[] bytes = buffer.array();
+        if (bytes[0] != GENERATION_MARK) {
+            return "";
+        }
+        int end = 1;
+        while (end < buffer.position() && bytes[end] != NEW_LINE) {
+            end++;
+        }
+        return new String(bytes, 1, end - 1, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        raf.close();
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kdc.identitybackend;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Json journal test, with a journal per process
+ */
+public class JsonJournalTest {
+    private static final JsonJournal.SnapshotTask NO_SNAPSHOT = new JsonJournal.SnapshotTask() {
+        @Override
+        public void run() {
+        }
+    };
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void testCompactedAndAppendedPastOffset() throws Exception {
+        File file = new File(tmpFolder.getRoot(), "test.journal");
+        RecordCollector first = new RecordCollector();
+        RecordCollector second = new RecordCollector();
+        try (JsonJournal firstJournal = new JsonJournal(file);
+             JsonJournal secondJournal = new JsonJournal(file)) {
+            assertThat(firstJournal.append(Collections.singletonList("{\"first\":1}"), first)).isTrue();
+
+            // Compacted and appended past the offset of the first journal
+            assertThat(secondJournal.compact(second, NO_SNAPSHOT)).isTrue();
+            secondJournal.append(Arrays.asList("{\"second\":1}", "{\"second\":2}",
+                    "{\"second\":3}"), second);
+
+            assertThat(firstJournal.replayTail(first)).isFalse();
+            first.records.clear();
+            firstJournal.replay(NO_SNAPSHOT, first);
+            assertThat(first.records).containsExactly("{\"second\":1}", "{\"second\":2}", "{\"second\":3}");
+            assertThat(firstJournal.replayTail(first)).isTrue();
+        }
+    }
+
+    private static class RecordCollector implements JsonJournal.RecordHandler {
+        private final List<String> records = new ArrayList<>();
+
+        @Override
+        public void handle(String record) throws IOException {
+            records.add(record);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.identity.backend;
+
+import org.apache.kerby.config.Conf;
+import org.apache.kerby.config.Config;
+import org.apache.kerby.kerberos.kdc.identitybackend.JsonIdentityBackend;
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.identity.KrbIdentity;
+import org.apache.kerby.util.IOUtil;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Json backend test, in the journal mode
+ */
+public class JsonJournalBackendTest extends BackendTestBase {
+    private static TemporaryFolder backendFolder = new TemporaryFolder();
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setup() throws Exception {
+        backendFolder.create();
+        backend = createBackend(backendFolder.getRoot());
+    }
+
+    @AfterClass
+    public static void tearDown() throws KrbException {
+        // Stopped before deleting the files it compacts into
+        BackendTestBase.tearDown();
+        backend = null;
+        backendFolder.delete();
+    }
+
+    private static JsonIdentityBackend createBackend(File dir) throws KrbException {
+        Config backendConfig = new Conf();
+        backendConfig.setString(JsonIdentityBackend.JSON_IDENTITY_BACKEND_DIR,
+                dir.getAbsolutePath());
+        backendConfig.setString(JsonIdentityBackend.JSON_IDENTITY_BACKEND_JOURNAL, "true");
+        JsonIdentityBackend jsonBackend = new JsonIdentityBackend(backendConfig);
+        jsonBackend.initialize();
+        return jsonBackend;
+    }
+
+    @Test
+    public void testJournalAndCompact() throws Exception {
+        File dir = tmpFolder.getRoot();
+        File jsonFile = new File(dir, "json-backend.json");
+        File journalFile = new File(dir, "json-backend.journal");
+
+        JsonIdentityBackend first = createBackend(dir);
+        KrbIdentity[] identities = BackendTestUtil.createManyIdentities();
+        for (KrbIdentity identity : identities) {
+            first.addIdentity(identity);
+        }
+        first.deleteIdentity(identities[0].getPrincipalName());
+
+        // Appended to the journal, the json file isn't rewritten
+        assertThat(jsonFile.length()).isEqualTo(0);
+        assertThat(journalFile.length()).isGreaterThan(0);
+
+        JsonIdentityBackend second = createBackend(dir);
+        assertThat(second.getIdentity(identities[0].getPrincipalName())).isNull();
+        assertThat(second.getIdentity(identities[1].getPrincipalName())).isEqualTo(identities[1]);
+        second.stop();
+
+        // Compacted when stopped, only the generation header is left
+        first.stop();
+        assertThat(jsonFile.length()).isGreaterThan(0);
+        assertThat(IOUtil.readFile(journalFile)).startsWith("#").hasLineCount(1);
+
+        JsonIdentityBackend third = createBackend(dir);
+        assertThat(third.getIdentities()).hasSize(identities.length - 1);
+        assertThat(third.getIdentity(identities[1].getPrincipalName())).isEqualTo(identities[1]);
+        third.stop();
+    }
+
+    @Test
+    public void testAppendDuringCompact() throws Exception {
+        File dir = tmpFolder.getRoot();
+        final JsonIdentityBackend writer = createBackend(dir);
+        final int count = 200;
+        final AtomicReference<KrbException> error = new AtomicReference<>();
+        Thread appender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < count; i++) {
+                        writer.addIdentity(BackendTestUtil.createOneIdentity(
+                                "appended" + i + "@EXAMPLE.COM"));
+                    }
+                } catch (KrbException e) {
+                    error.set(e);
+                }
+            }
+        });
+        appender.start();
+
+        // Another instance compacts again and again, when stopped
+        int rounds = 0;
+        while (appender.isAlive()) {
+            JsonIdentityBackend compactor = createBackend(dir);
+            compactor.addIdentity(BackendTestUtil.createOneIdentity(
+                    "compactor" + rounds + "@EXAMPLE.COM"));
+            compactor.stop();
+            rounds++;
+        }
+        appender.join();
+        assertThat(error.get()).isNull();
+        writer.stop();
+
+        JsonIdentityBackend reader = createBackend(dir);
+        assertThat(reader.getIdentities()).hasSize(count + rounds);
+        reader.stop();
+    }
+
+    @Test
+    public void testAppendAfterPartialRecord() throws Exception {
+        File dir = tmpFolder.getRoot();
+        JsonIdentityBackend writer = createBackend(dir);
+        writer.addIdentity(BackendTestUtil.createOneIdentity("before@EXAMPLE.COM"));
+
+        // A writer failed midway through a record
+        try (FileOutputStream out = new FileOutputStream(new File(dir, "json-backend.journal"), true)) {
+            out.write("{\"identity\":".getBytes(StandardCharsets.UTF_8));
+        }
+        writer.addIdentity(BackendTestUtil.createOneIdentity("after@EXAMPLE.COM"));
+
+        JsonIdentityBackend reader = createBackend(dir);
+        assertThat(reader.getIdentities()).hasSize(2);
+        assertThat(reader.getIdentity("after@EXAMPLE.COM")).isNotNull();
+        reader.stop();
+        writer.stop();
+    }
+
+    @Test
+    public void testWatchChanges() throws Exception {
+        File dir = tmpFolder.getRoot();
+        JsonIdentityBackend writer = createBackend(dir);
+        JsonIdentityBackend reader = createBackend(dir);
+
+        KrbIdentity identity = BackendTestUtil.createOneIdentity();
+        writer.addIdentity(identity);
+
+        long deadline = System.currentTimeMillis() + 30 * 1000;
+        while (reader.getIdentity(identity.getPrincipalName()) == null
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat(reader.getIdentity(identity.getPrincipalName())).isEqualTo(identity);
+
+        writer.stop();
+        reader.stop();
+    }
+}
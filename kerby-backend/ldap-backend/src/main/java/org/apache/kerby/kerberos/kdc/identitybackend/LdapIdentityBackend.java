@@ -25,17 +25,22 @@ import org.apache.directory.api.ldap.model.entry.DefaultEntry;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
+import org.apache.directory.api.ldap.model.message.AddResponse;
 import org.apache.directory.api.ldap.model.message.ModifyRequest;
 import org.apache.directory.api.ldap.model.message.ModifyRequestImpl;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
 import org.apache.directory.api.ldap.model.message.SearchScope;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.name.Rdn;
 import org.apache.directory.api.util.GeneralizedTime;
+import org.apache.directory.ldap.client.api.LdapAsyncConnection;
 import org.apache.directory.ldap.client.api.LdapConnection;
 import org.apache.directory.ldap.client.api.LdapNetworkConnection;
+import org.apache.directory.ldap.client.api.future.AddFuture;
 import org.apache.directory.shared.kerberos.KerberosAttribute;
 import org.apache.kerby.config.Config;
 import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.identity.BatchTrans;
 import org.apache.kerby.kerberos.kerb.identity.KrbIdentity;
 import org.apache.kerby.kerberos.kerb.identity.backend.AbstractIdentityBackend;
 import org.apache.kerby.kerberos.kerb.type.KerberosTime;
@@ -50,6 +55,9 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * An LDAP based backend implementation.
@@ -61,6 +69,8 @@ public class LdapIdentityBackend extends AbstractIdentityBackend {
     // LdapNetworkConnection object or not
     private boolean isLdapNetworkConnection;
     private static final Logger LOG = LoggerFactory.getLogger(LdapIdentityBackend.class);
+    // Time to wait for the response to an add of a batch
+    private static final long BATCH_RESPONSE_TIMEOUT = 30 * 1000L;
 
     public LdapIdentityBackend() {
         this.isLdapNetworkConnection = true;
@@ -187,10 +197,11 @@ public class LdapIdentityBackend extends AbstractIdentityBackend {
     }
 
     /**
-     * {@inheritDoc}
+     * Make the LDAP entry of an identity.
+     * @param identity The identity
+     * @return The entry
      */
-    @Override
-    protected KrbIdentity doAddIdentity(KrbIdentity identity) throws KrbException {
+    private Entry toEntry(KrbIdentity identity) throws KrbException {
         String principalName = identity.getPrincipalName();
         String[] names = principalName.split("@");
         Entry entry = new DefaultEntry();
@@ -216,15 +227,42 @@ public class LdapIdentityBackend extends AbstractIdentityBackend {
                     + identity.isLocked());
             entry.add(KerberosAttribute.KRB5_ACCOUNT_EXPIRATION_TIME_AT,
                     toGeneralizedTime(identity.getExpireTime()));
-            connection.add(entry);
-        } catch (LdapInvalidDnException e) {
+        } catch (LdapException e) {
             LOG.error("Error occurred while adding identity", e);
             throw new KrbException("Failed to add identity", e);
+        }
+        return entry;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected KrbIdentity doAddIdentity(KrbIdentity identity) throws KrbException {
+        Entry entry = toEntry(identity);
+        try {
+            connection.add(entry);
         } catch (LdapException e) {
             LOG.error("Error occurred while adding identity", e);
             throw new KrbException("Failed to add identity", e);
         }
-        return getIdentity(principalName);
+        return getIdentity(identity.getPrincipalName());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean supportBatchTrans() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BatchTrans startBatchTrans() throws KrbException {
+        return new LdapBatchTrans();
     }
 
     /**
@@ -259,31 +297,43 @@ public class LdapIdentityBackend extends AbstractIdentityBackend {
         return krbIdentity;
     }
 
+    /**
+     * Make the request to modify the LDAP entry of an identity.
+     * @param identity The identity
+     * @return The modify request
+     */
+    private ModifyRequest toModifyRequest(KrbIdentity identity) throws KrbException {
+        KeysInfo keysInfo = new KeysInfo(identity);
+        ModifyRequest modifyRequest = new ModifyRequestImpl();
+        try {
+            modifyRequest.setName(toDn(identity.getPrincipalName()));
+        } catch (LdapInvalidDnException e) {
+            throw new KrbException("Failed to update identity", e);
+        }
+        modifyRequest.replace(KerberosAttribute.KRB5_KEY_VERSION_NUMBER_AT,
+                "" + identity.getKeyVersion());
+        modifyRequest.replace(KerberosAttribute.KRB5_KEY_AT, keysInfo.getKeys());
+        modifyRequest.replace("krb5EncryptionType", keysInfo.getEtypes());
+        modifyRequest.replace(KerberosAttribute.KRB5_PRINCIPAL_NAME_AT,
+                identity.getPrincipalName());
+        modifyRequest.replace(KerberosAttribute.KRB5_ACCOUNT_EXPIRATION_TIME_AT,
+                toGeneralizedTime(identity.getExpireTime()));
+        modifyRequest.replace(KerberosAttribute.KRB5_ACCOUNT_DISABLED_AT, ""
+                + identity.isDisabled());
+        modifyRequest.replace("krb5KDCFlags", "" + identity.getKdcFlags());
+        modifyRequest.replace(KerberosAttribute.KRB5_ACCOUNT_LOCKEDOUT_AT, ""
+                + identity.isLocked());
+        return modifyRequest;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     protected KrbIdentity doUpdateIdentity(KrbIdentity identity) throws KrbException {
         String principalName = identity.getPrincipalName();
-        KeysInfo keysInfo = new KeysInfo(identity);
         try {
-            Dn dn = toDn(principalName);
-            ModifyRequest modifyRequest = new ModifyRequestImpl();
-            modifyRequest.setName(dn);
-            modifyRequest.replace(KerberosAttribute.KRB5_KEY_VERSION_NUMBER_AT,
-                    "" + identity.getKeyVersion());
-            modifyRequest.replace(KerberosAttribute.KRB5_KEY_AT, keysInfo.getKeys());
-            modifyRequest.replace("krb5EncryptionType", keysInfo.getEtypes());
-            modifyRequest.replace(KerberosAttribute.KRB5_PRINCIPAL_NAME_AT,
-                    identity.getPrincipalName());
-            modifyRequest.replace(KerberosAttribute.KRB5_ACCOUNT_EXPIRATION_TIME_AT,
-                    toGeneralizedTime(identity.getExpireTime()));
-            modifyRequest.replace(KerberosAttribute.KRB5_ACCOUNT_DISABLED_AT, ""
-                    + identity.isDisabled());
-            modifyRequest.replace("krb5KDCFlags", "" + identity.getKdcFlags());
-            modifyRequest.replace(KerberosAttribute.KRB5_ACCOUNT_LOCKEDOUT_AT, ""
-                    + identity.isLocked());
-            connection.modify(modifyRequest);
+            connection.modify(toModifyRequest(identity));
         } catch (LdapException e) {
             LOG.error("Error occurred while updating identity: " + principalName, e);
             throw new KrbException("Failed to update identity", e);
@@ -346,4 +396,101 @@ public class LdapIdentityBackend extends AbstractIdentityBackend {
         }
         return identityNames;
     }
+
+    /**
+     * The changes of a batch, sent to the LDAP server on commit. With a
+     * network connection the adds are pipelined, all sent before waiting
+     * for their responses, as LDAP has no standard multi add. The changes
+     * aren't atomic, the ones done before a failure are kept.
+     */
+    class LdapBatchTrans implements BatchTrans {
+        private final List<Entry> addEntries = new ArrayList<>();
+        private final List<ModifyRequest> modifyRequests = new ArrayList<>();
+        private final List<String> deletePrincipals = new ArrayList<>();
+
+        @Override
+        public void commit() throws KrbException {
+            try {
+                if (connection instanceof LdapAsyncConnection) {
+                    addAsync((LdapAsyncConnection) connection);
+                } else {
+                    for (Entry entry : addEntries) {
+                        connection.add(entry);
+                    }
+                }
+                for (ModifyRequest modifyRequest : modifyRequests) {
+                    connection.modify(modifyRequest);
+                }
+                for (String principalName : deletePrincipals) {
+                    connection.delete(toDn(principalName));
+                }
+            } catch (LdapException e) {
+                LOG.error("Error occurred while committing identities", e);
+                throw new KrbException("Failed to commit identities", e);
+            } finally {
+                clear();
+            }
+        }
+
+        private void addAsync(LdapAsyncConnection asyncConnection)
+                throws LdapException, KrbException {
+            List<AddFuture> futures = new ArrayList<>(addEntries.size());
+            for (Entry entry : addEntries) {
+                futures.add(asyncConnection.addAsync(entry));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                AddResponse response;
+                try {
+                    response = futures.get(i).get(BATCH_RESPONSE_TIMEOUT,
+                            TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new KrbException("Interrupted adding identities", e);
+                } catch (ExecutionException | TimeoutException e) {
+                    throw new KrbException("Failed to add identity "
+                            + addEntries.get(i).getDn(), e);
+                }
+                if (response == null) {
+                    throw new KrbException("No response adding identity "
+                            + addEntries.get(i).getDn());
+                }
+                ResultCodeEnum.processResponse(response);
+            }
+        }
+
+        private void clear() {
+            addEntries.clear();
+            modifyRequests.clear();
+            deletePrincipals.clear();
+        }
+
+        @Override
+        public void rollback() throws KrbException {
+            clear();
+        }
+
+        @Override
+        public BatchTrans addIdentity(KrbIdentity identity) throws KrbException {
+            if (identity != null) {
+                addEntries.add(toEntry(identity));
+            }
+            return this;
+        }
+
+        @Override
+        public BatchTrans updateIdentity(KrbIdentity identity) throws KrbException {
+            if (identity != null) {
+                modifyRequests.add(toModifyRequest(identity));
+            }
+            return this;
+        }
+
+        @Override
+        public BatchTrans deleteIdentity(String principalName) throws KrbException {
+            if (principalName != null) {
+                deletePrincipals.add(principalName);
+            }
+            return this;
+        }
+    }
 }
@@ -29,6 +29,7 @@ import org.apache.directory.mavibot.btree.Tuple;
 import org.apache.directory.mavibot.btree.exception.KeyNotFoundException;
 import org.apache.directory.mavibot.btree.serializer.StringSerializer;
 import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.identity.BatchTrans;
 import org.apache.kerby.kerberos.kerb.identity.KrbIdentity;
 import org.apache.kerby.kerberos.kerb.identity.backend.AbstractIdentityBackend;
 import org.slf4j.Logger;
@@ -37,7 +38,9 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A backend based on Apache Mavibot(an MVCC BTree library).
@@ -188,6 +191,22 @@ public class MavibotBackend extends AbstractIdentityBackend {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean supportBatchTrans() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BatchTrans startBatchTrans() throws KrbException {
+        return new MavibotBatchTrans();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -199,4 +218,61 @@ public class MavibotBackend extends AbstractIdentityBackend {
             throw new KrbException("Failed to close the database", e);
         }
     }
+
+    /**
+     * The changes of a batch, kept until the commit applies them all at once
+     * holding the backend lock. A record manager transaction would flush them
+     * once, but the nested transactions of the inserts don't work in this
+     * Mavibot version. The changes done before a failure are kept.
+     */
+    class MavibotBatchTrans implements BatchTrans {
+        private final Map<String, KrbIdentity> changes = new LinkedHashMap<>();
+
+        @Override
+        public void commit() throws KrbException {
+            synchronized (MavibotBackend.this) {
+                for (Map.Entry<String, KrbIdentity> change : changes.entrySet()) {
+                    String p = change.getKey();
+                    try {
+                        database.delete(p);
+                        if (change.getValue() != null) {
+                            database.insert(p, change.getValue());
+                        }
+                    } catch (IOException e) {
+                        throw new KrbException("Failed to commit the identity " + p, e);
+                    }
+                }
+            }
+            changes.clear();
+        }
+
+        @Override
+        public void rollback() throws KrbException {
+            changes.clear();
+        }
+
+        @Override
+        public BatchTrans addIdentity(KrbIdentity identity) throws KrbException {
+            if (identity != null) {
+                changes.put(identity.getPrincipalName(), identity);
+            }
+            return this;
+        }
+
+        @Override
+        public BatchTrans updateIdentity(KrbIdentity identity) throws KrbException {
+            if (identity != null) {
+                changes.put(identity.getPrincipalName(), identity);
+            }
+            return this;
+        }
+
+        @Override
+        public BatchTrans deleteIdentity(String principalName) throws KrbException {
+            if (principalName != null) {
+                changes.put(principalName, null);
+            }
+            return this;
+        }
+    }
 }
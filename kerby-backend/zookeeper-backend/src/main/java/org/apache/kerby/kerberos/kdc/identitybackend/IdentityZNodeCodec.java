@@ -0,0 +1,108 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.kerby.kerberos.kdc.identitybackend;
+
+import org.apache.kerby.kerberos.kerb.identity.KrbIdentity;
+import org.apache.kerby.kerberos.kerb.type.KerberosTime;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionKey;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Encode and decode a whole identity as the data of its znode, so that it's
+ * read or written in one ZooKeeper operation. The data starts with a version
+ * byte, the identity znodes of the legacy per field layout have no data.
+ */
+public final class IdentityZNodeCodec {
+    public static final byte VERSION = 1;
+
+    private IdentityZNodeCodec() { }
+
+    public static byte[] encode(KrbIdentity identity) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        out.writeUTF(identity.getPrincipalName());
+        writeTime(out, identity.getCreatedTime());
+        writeTime(out, identity.getExpireTime());
+        out.writeBoolean(identity.isDisabled());
+        out.writeBoolean(identity.isLocked());
+        out.writeInt(identity.getKdcFlags());
+        out.writeInt(identity.getKeyVersion());
+        out.writeInt(identity.getKeys().size());
+        for (EncryptionKey key : identity.getKeys().values()) {
+            byte[] encoded = key.encode();
+            out.writeInt(encoded.length);
+            out.write(encoded);
+            out.writeInt(key.getKvno());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    public static KrbIdentity decode(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported identity znode version " + version);
+        }
+        KrbIdentity identity = new KrbIdentity(in.readUTF());
+        identity.setCreatedTime(readTime(in));
+        identity.setExpireTime(readTime(in));
+        identity.setDisabled(in.readBoolean());
+        identity.setLocked(in.readBoolean());
+        identity.setKdcFlags(in.readInt());
+        identity.setKeyVersion(in.readInt());
+        int numKeys = in.readInt();
+        for (int i = 0; i < numKeys; i++) {
+            byte[] encoded = new byte[in.readInt()];
+            in.readFully(encoded);
+            EncryptionKey key = new EncryptionKey();
+            key.decode(encoded);
+            key.setKvno(in.readInt());
+            identity.addKey(key);
+        }
+        return identity;
+    }
+
+    /**
+     * Tell if the data of an identity znode is in the legacy per field layout.
+     * @param data The znode data
+     * @return true if legacy
+     */
+    public static boolean isLegacy(byte[] data) {
+        return data == null || data.length == 0;
+    }
+
+    private static void writeTime(DataOutputStream out, KerberosTime time) throws IOException {
+        out.writeBoolean(time != null);
+        if (time != null) {
+            out.writeLong(time.getTime());
+        }
+    }
+
+    private static KerberosTime readTime(DataInputStream in) throws IOException {
+        return in.readBoolean() ? new KerberosTime(in.readLong()) : null;
+    }
+}
@@ -21,11 +21,15 @@ package org.apache.kerby.kerberos.kdc.identitybackend;
 
 import org.apache.kerby.config.Config;
 import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.identity.BatchTrans;
 import org.apache.kerby.kerberos.kerb.identity.KrbIdentity;
 import org.apache.kerby.kerberos.kerb.identity.backend.AbstractIdentityBackend;
+import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Op;
 import org.apache.zookeeper.WatchedEvent;
 import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
 import org.apache.zookeeper.ZooKeeper;
 import org.apache.zookeeper.server.ServerConfig;
 import org.apache.zookeeper.server.ZooKeeperServerMain;
@@ -39,11 +43,19 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A Zookeeper based backend implementation. Currently it uses an embedded
  * Zookeeper. In follow up it will be enhanced to support standalone Zookeeper
  * cluster for replication and reliability.
+ *
+ * Each identity is stored encoded in the data of its znode, see
+ * {@link IdentityZNodeCodec}, and identities in the legacy layout of a znode
+ * per field are migrated when read. The identities read are cached locally
+ * with a data watch on their znodes, which drops them when they change.
  */
 public class ZookeeperIdentityBackend extends AbstractIdentityBackend {
     private static Thread zookeeperThread;
@@ -53,7 +65,12 @@ public class ZookeeperIdentityBackend extends AbstractIdentityBackend {
     private File dataDir;
     private File dataLogDir;
     private ZooKeeper zooKeeper;
+    private final ConcurrentMap<String, byte[]> identityCache = new ConcurrentHashMap<>();
+    private final AtomicLong invalidations = new AtomicLong();
     private static final Logger LOG = LoggerFactory.getLogger(ZookeeperIdentityBackend.class);
+    // Operations per multi operation committing a batch, small enough for
+    // the request to stay well under the default 1MB jute.maxbuffer
+    private static final int MAX_BATCH_OPS = 1000;
 
     public ZookeeperIdentityBackend() {
 
@@ -125,6 +142,11 @@ public class ZookeeperIdentityBackend extends AbstractIdentityBackend {
 
         startEmbeddedZookeeper();
         connectZK();
+        try {
+            ZKUtil.createWithParents(zooKeeper, IdentityZNodeHelper.getIdentitiesZNode());
+        } catch (KeeperException e) {
+            throw new KrbException("Failed to create identities znode", e);
+        }
     }
 
     /**
@@ -132,7 +154,7 @@ public class ZookeeperIdentityBackend extends AbstractIdentityBackend {
      */
     private void connectZK() throws KrbException {
         try {
-            zooKeeper = new ZooKeeper(zkHost, 10000, null);
+            zooKeeper = new ZooKeeper(zkHost, 10000, new MyWatcher());
             while (true) {
                 if (!zooKeeper.getState().isConnected()) {
                     try {
@@ -192,7 +214,29 @@ public class ZookeeperIdentityBackend extends AbstractIdentityBackend {
      * @param event The kdb update event ot watch.
      */
     private void process(WatchedEvent event) {
-        System.out.print("I got an event: " + event);
+        if (event.getType() == Watcher.Event.EventType.None) {
+            if (event.getState() != Watcher.Event.KeeperState.SyncConnected) {
+                // Changes may be missed until reconnected
+                invalidations.incrementAndGet();
+                identityCache.clear();
+            }
+        } else if (event.getPath() != null) {
+            invalidate(event.getPath());
+        }
+    }
+
+    private void invalidate(String znode) {
+        invalidations.incrementAndGet();
+        identityCache.remove(znode);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void doRelease() {
+        invalidations.incrementAndGet();
+        identityCache.clear();
     }
 
     /**
@@ -200,13 +244,47 @@ public class ZookeeperIdentityBackend extends AbstractIdentityBackend {
      */
     @Override
     protected KrbIdentity doGetIdentity(String principalName) throws KrbException {
-        principalName = replaceSlash(principalName);
+        String znode = IdentityZNodeHelper.getIndentityZNode(replaceSlash(principalName));
+        byte[] data = identityCache.get(znode);
+        if (data == null) {
+            long version = invalidations.get();
+            try {
+                data = zooKeeper.getData(znode, true, null);
+            } catch (KeeperException.NoNodeException e) {
+                return null;
+            } catch (KeeperException e) {
+                throw new KrbException("Fail to get identity from zookeeper", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new KrbException("Interrupted getting identity from zookeeper", e);
+            }
+
+            if (IdentityZNodeCodec.isLegacy(data)) {
+                return migrateIdentity(replaceSlash(principalName));
+            }
+
+            identityCache.put(znode, data);
+            if (invalidations.get() != version) {
+                // Changed while reading, the data may be stale
+                identityCache.remove(znode, data);
+            }
+        }
+
+        try {
+            return IdentityZNodeCodec.decode(data);
+        } catch (IOException e) {
+            throw new KrbException("Fail to decode identity from zookeeper", e);
+        }
+    }
+
+    /**
+     * Read an identity in the legacy layout of a znode per field, and store
+     * it back encoded in its znode.
+     */
+    private KrbIdentity migrateIdentity(String principalName) throws KrbException {
         IdentityZNode identityZNode = new IdentityZNode(zooKeeper, principalName);
         KrbIdentity krb = new KrbIdentity(principalName);
         try {
-            if (!identityZNode.exist()) {
-                return null;
-            }
             krb.setPrincipal(identityZNode.getPrincipalName());
             krb.setCreatedTime(identityZNode.getCreatedTime());
             krb.setDisabled(identityZNode.getDisabled());
@@ -217,8 +295,16 @@ public class ZookeeperIdentityBackend extends AbstractIdentityBackend {
             krb.setLocked(identityZNode.getLocked());
         } catch (KeeperException e) {
             throw new KrbException("Fail to get identity from zookeeper", e);
+        } catch (IllegalArgumentException e) {
+            return null; // Incomplete, being added or deleted
         }
 
+        try {
+            setIdentity(krb);
+            LOG.info("Migrated identity " + krb.getPrincipalName() + " to a single znode.");
+        } catch (Exception e) {
+            LOG.warn("Fail to migrate identity " + krb.getPrincipalName(), e);
+        }
         return krb;
     }
 
@@ -254,14 +340,32 @@ public class ZookeeperIdentityBackend extends AbstractIdentityBackend {
     @Override
     protected void doDeleteIdentity(String principalName) throws KrbException {
         principalName = replaceSlash(principalName);
-        IdentityZNode identityZNode = new IdentityZNode(zooKeeper, principalName);
+        String znode = IdentityZNodeHelper.getIndentityZNode(principalName);
         try {
-            identityZNode.deleteIdentity();
+            ZKUtil.deleteNodeRecursively(zooKeeper, znode);
         } catch (KeeperException e) {
             throw new KrbException("Fail to delete identity in zookeeper", e);
+        } finally {
+            invalidate(znode);
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean supportBatchTrans() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BatchTrans startBatchTrans() throws KrbException {
+        return new ZKBatchTrans();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -292,22 +396,55 @@ public class ZookeeperIdentityBackend extends AbstractIdentityBackend {
     }
 
     /**
-     * Set the identity to add or update an indentity in the backend.
+     * Set the identity to add or update an indentity in the backend, in one
+     * multi operation also removing the znodes of the legacy layout.
      * @param identity . The identity to update
      * @throws org.apache.zookeeper.KeeperException
      */
-    private void setIdentity(KrbIdentity identity) throws KeeperException, IOException {
-        String principalName = identity.getPrincipalName();
-        principalName = replaceSlash(principalName);
-        IdentityZNode identityZNode = new IdentityZNode(zooKeeper, principalName);
-        identityZNode.setPrincipalName(identity.getPrincipalName());
-        identityZNode.setCreatedTime(identity.getCreatedTime());
-        identityZNode.setDisabled(identity.isDisabled());
-        identityZNode.setExpireTime(identity.getExpireTime());
-        identityZNode.setKdcFlags(identity.getKdcFlags());
-        identityZNode.setKeys(identity.getKeys());
-        identityZNode.setKeyVersion(identity.getKeyVersion());
-        identityZNode.setLocked(identity.isLocked());
+    private void setIdentity(KrbIdentity identity)
+        throws KeeperException, IOException, InterruptedException {
+        List<Op> ops = new ArrayList<>();
+        String znode = addSetOps(identity, ops);
+        try {
+            zooKeeper.multi(ops);
+        } finally {
+            invalidate(znode);
+        }
+    }
+
+    /**
+     * Add the operations to set an identity, creating its znode or replacing
+     * its data and the znodes of the legacy layout.
+     * @return The znode of the identity
+     */
+    private String addSetOps(KrbIdentity identity, List<Op> ops)
+        throws KeeperException, IOException, InterruptedException {
+        String znode = IdentityZNodeHelper.getIndentityZNode(
+            replaceSlash(identity.getPrincipalName()));
+        byte[] data = IdentityZNodeCodec.encode(identity);
+        List<String> children;
+        try {
+            children = zooKeeper.getChildren(znode, false);
+        } catch (KeeperException.NoNodeException e) {
+            children = null;
+        }
+        if (children == null) {
+            ops.add(Op.create(znode, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT));
+        } else {
+            for (String child : children) {
+                addDeleteOps(ZKUtil.joinZNode(znode, child), ops);
+            }
+            ops.add(Op.setData(znode, data, -1));
+        }
+        return znode;
+    }
+
+    private void addDeleteOps(String znode, List<Op> ops)
+        throws KeeperException, InterruptedException {
+        for (String child : zooKeeper.getChildren(znode, false)) {
+            addDeleteOps(ZKUtil.joinZNode(znode, child), ops);
+        }
+        ops.add(Op.delete(znode, -1));
     }
 
     /**
@@ -328,4 +465,100 @@ public class ZookeeperIdentityBackend extends AbstractIdentityBackend {
             ZookeeperIdentityBackend.this.process(event);
         }
     }
+
+    /**
+     * The changes of a batch, committed in multi operations of up to about
+     * MAX_BATCH_OPS operations each, never splitting the operations of an
+     * identity. Each multi operation is atomic, but the ones done before a
+     * failure are kept.
+     */
+    class ZKBatchTrans implements BatchTrans {
+        private final List<List<Op>> identityOps = new ArrayList<>();
+        private final List<String> znodes = new ArrayList<>();
+
+        @Override
+        public void commit() throws KrbException {
+            try {
+                List<Op> ops = new ArrayList<>();
+                for (List<Op> opsOfIdentity : identityOps) {
+                    if (!ops.isEmpty() && ops.size() + opsOfIdentity.size() > MAX_BATCH_OPS) {
+                        zooKeeper.multi(ops);
+                        ops.clear();
+                    }
+                    ops.addAll(opsOfIdentity);
+                }
+                if (!ops.isEmpty()) {
+                    zooKeeper.multi(ops);
+                }
+            } catch (KeeperException e) {
+                throw new KrbException("Fail to commit identities to zookeeper", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new KrbException("Interrupted committing identities to zookeeper", e);
+            } finally {
+                for (String znode : znodes) {
+                    invalidate(znode);
+                }
+                rollback();
+            }
+        }
+
+        @Override
+        public void rollback() {
+            identityOps.clear();
+            znodes.clear();
+        }
+
+        @Override
+        public BatchTrans addIdentity(KrbIdentity identity) throws KrbException {
+            if (identity != null) {
+                String znode = IdentityZNodeHelper.getIndentityZNode(
+                    replaceSlash(identity.getPrincipalName()));
+                try {
+                    identityOps.add(Collections.singletonList(Op.create(znode,
+                        IdentityZNodeCodec.encode(identity),
+                        ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT)));
+                } catch (IOException e) {
+                    throw new KrbException("Fail to encode identity", e);
+                }
+                znodes.add(znode);
+            }
+            return this;
+        }
+
+        @Override
+        public BatchTrans updateIdentity(KrbIdentity identity) throws KrbException {
+            if (identity != null) {
+                List<Op> ops = new ArrayList<>();
+                try {
+                    znodes.add(addSetOps(identity, ops));
+                } catch (Exception e) {
+                    throw new KrbException("Fail to update identity in zookeeper", e);
+                }
+                identityOps.add(ops);
+            }
+            return this;
+        }
+
+        @Override
+        public BatchTrans deleteIdentity(String principalName) throws KrbException {
+            if (principalName != null) {
+                String znode = IdentityZNodeHelper.getIndentityZNode(replaceSlash(principalName));
+                List<Op> ops = new ArrayList<>();
+                try {
+                    addDeleteOps(znode, ops);
+                } catch (KeeperException.NoNodeException e) {
+                    return this;
+                } catch (KeeperException e) {
+                    throw new KrbException("Fail to delete identity in zookeeper", e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new KrbException("Interrupted deleting identity in zookeeper", e);
+                }
+                identityOps.add(ops);
+                znodes.add(znode);
+            }
+            return this;
+        }
+    }
 }
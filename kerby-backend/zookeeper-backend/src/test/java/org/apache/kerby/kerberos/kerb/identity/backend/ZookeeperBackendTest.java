@@ -20,13 +20,25 @@
 package org.apache.kerby.kerberos.kerb.identity.backend;
 
 import org.apache.kerby.config.Conf;
+import org.apache.kerby.kerberos.kdc.identitybackend.IdentityZNode;
+import org.apache.kerby.kerberos.kdc.identitybackend.IdentityZNodeHelper;
 import org.apache.kerby.kerberos.kdc.identitybackend.ZKConfKey;
+import org.apache.kerby.kerberos.kdc.identitybackend.ZKUtil;
 import org.apache.kerby.kerberos.kdc.identitybackend.ZookeeperIdentityBackend;
 import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.identity.KrbIdentity;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionKey;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
 import org.junit.BeforeClass;
+import org.junit.Test;
 
 import java.io.File;
 
+import static org.apache.kerby.kerberos.kerb.identity.backend.BackendTestUtil.TEST_PRINCIPAL;
+import static org.assertj.core.api.Assertions.assertThat;
+
 /**
  * Zookeeper backend test
  */
@@ -49,4 +61,40 @@ public class ZookeeperBackendTest extends BackendTestBase {
         backend.initialize();
         backend.start();
     }
+
+    @Test
+    public void testMigrateLegacyIdentity() throws Exception {
+        KrbIdentity kid = BackendTestUtil.createOneIdentity(TEST_PRINCIPAL);
+        ZooKeeper zk = new ZooKeeper("127.0.0.1", 10000, new Watcher() {
+            @Override
+            public void process(WatchedEvent event) {
+            }
+        });
+        try {
+            IdentityZNode identityZNode = new IdentityZNode(zk, TEST_PRINCIPAL);
+            identityZNode.setPrincipalName(kid.getPrincipalName());
+            identityZNode.setCreatedTime(kid.getCreatedTime());
+            identityZNode.setDisabled(kid.isDisabled());
+            identityZNode.setExpireTime(kid.getExpireTime());
+            identityZNode.setKdcFlags(kid.getKdcFlags());
+            identityZNode.setKeys(kid.getKeys());
+            identityZNode.setKeyVersion(kid.getKeyVersion());
+            identityZNode.setLocked(kid.isLocked());
+
+            KrbIdentity identity = backend.getIdentity(TEST_PRINCIPAL);
+            assertThat(identity).isEqualTo(kid);
+            assertThat(identity.getKeys()).hasSameSizeAs(kid.getKeys().values());
+            for (EncryptionKey key : kid.getKeys().values()) {
+                assertThat(identity.getKey(key.getKeyType()).getKeyData()).isEqualTo(key.getKeyData());
+            }
+            assertThat(ZKUtil.listChildrenNoWatch(zk,
+                IdentityZNodeHelper.getIndentityZNode(TEST_PRINCIPAL))).isEmpty();
+
+            backend.release();
+            assertThat(backend.getIdentity(TEST_PRINCIPAL)).isEqualTo(kid);
+        } finally {
+            zk.close();
+            backend.deleteIdentity(TEST_PRINCIPAL);
+        }
+    }
 }
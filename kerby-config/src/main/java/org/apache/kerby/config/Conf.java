@@ -25,6 +25,7 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -37,10 +38,15 @@ public class Conf implements Config {
     private static final Logger LOGGER = LoggerFactory.getLogger(Conf.class);
 
     private List<ConfigLoader> resourceConfigs;
-    private final ConfigImpl config;
+    /**
+     * Values set by users, kept so a reload doesn't lose them.
+     */
+    private final Map<String, String> userValues;
+    private volatile ConfigImpl config;
 
     public Conf() {
         this.resourceConfigs = new ArrayList<ConfigLoader>(1);
+        this.userValues = new LinkedHashMap<String, String>();
         this.config = new ConfigImpl("Conf");
     }
 
@@ -98,14 +104,39 @@ public class Conf implements Config {
 
     /**
      * For users usage, to determine whether to reload config files.
+     * The resources are loaded into a new config, the values set by users
+     * are applied again, and it replaces the current one only when all of
+     * them load and pass {@link #checkReloaded(Config)}. On failure the
+     * current config is kept and the exception is thrown.
      * Add synchronized to avoid conflicts
      */
     public synchronized void reload() {
-        config.reset();
+        for (ConfigLoader loader : resourceConfigs) {
+            try {
+                loader.getResource().reopen();
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to reopen config resource "
+                        + loader.getResource().getName(), e);
+            }
+        }
+        ConfigImpl reloaded = new ConfigImpl("Conf");
         for (ConfigLoader loader : resourceConfigs) {
             Config loaded = loader.load();
-            config.add(loaded);
+            reloaded.add(loaded);
+        }
+        for (Map.Entry<String, String> entry : userValues.entrySet()) {
+            reloaded.set(entry.getKey(), entry.getValue());
         }
+        checkReloaded(reloaded);
+        config = reloaded;
+    }
+
+    /**
+     * Check a reloaded config before it replaces the current one, throw a
+     * RuntimeException to reject it. Nothing is checked by default.
+     * @param reloaded The reloaded config
+     */
+    protected void checkReloaded(Config reloaded) {
     }
 
     @Override
@@ -141,6 +172,7 @@ public class Conf implements Config {
      */
     @Override
     public synchronized void setString(String name, String value) {
+        userValues.put(name, value);
         config.set(name, value);
     }
 
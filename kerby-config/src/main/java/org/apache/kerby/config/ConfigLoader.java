@@ -21,21 +21,22 @@ package org.apache.kerby.config;
 
 public abstract class ConfigLoader {
     private Resource resource;
-    private ConfigImpl config;
 
     protected void setResource(Resource resource) {
         this.resource = resource;
     }
 
-    protected void setConfig(ConfigImpl config) {
-        this.config = config;
+    protected Resource getResource() {
+        return resource;
     }
 
+    /**
+     * Load the resource into a new config, so a config loaded before is
+     * never changed.
+     * @return The loaded config
+     */
     public Config load() {
-        if (config == null) {
-            config = new ConfigImpl(resource.getName());
-        }
-        config.reset();
+        ConfigImpl config = new ConfigImpl(resource.getName());
 
         try {
             loadConfig(config, resource);
@@ -43,7 +44,7 @@ public abstract class ConfigLoader {
             throw new RuntimeException("Failed to load " + ConfigLoader.class.getPackage().getName(), e);
         }
 
-        return this.config;
+        return config;
     }
 
     protected abstract void loadConfig(ConfigImpl config, Resource resource) throws Exception;
@@ -24,12 +24,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 
 public class IniConfigLoader extends ConfigLoader {
     private static final String COMMENT_SYMBOL = "#";
 
     private ConfigImpl rootConfig;
     private ConfigImpl currentConfig;
+    private Deque<ConfigImpl> outerConfigs;
 
     /**
      *  Load configs form the INI configuration format file.
@@ -38,6 +43,7 @@ public class IniConfigLoader extends ConfigLoader {
     protected void loadConfig(ConfigImpl config, Resource resource) throws IOException {
         rootConfig = config;
         currentConfig = config;
+        outerConfigs = new ArrayDeque<ConfigImpl>();
 
         InputStream is = (InputStream) resource.getResource();
         BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
@@ -65,11 +71,47 @@ public class IniConfigLoader extends ConfigLoader {
             ConfigImpl subConfig = new ConfigImpl(subConfigName);
             rootConfig.set(subConfigName, subConfig);
             currentConfig = subConfig;
+            outerConfigs.clear();
+        } else if (line.equals("}")) {
+            if (!outerConfigs.isEmpty()) {
+                currentConfig = outerConfigs.pop();
+            }
         } else if (line.matches(".*=.*")) {
             int i = line.indexOf('=');
             String name = line.substring(0, i).trim();
             String value = line.substring(i + 1).trim();
+            if (value.equals("{")) {
+                // A krb5.conf style block, like a realm with its kdcs
+                ConfigImpl subConfig = new ConfigImpl(name);
+                currentConfig.set(name, subConfig);
+                outerConfigs.push(currentConfig);
+                currentConfig = subConfig;
+            } else if (!outerConfigs.isEmpty()) {
+                addValue(name, value);
+            } else {
+                currentConfig.set(name, value);
+            }
+        }
+    }
+
+    /**
+     * A name may repeat in a block, like kdc in a realm, so keep all values.
+     */
+    private void addValue(String name, String value) {
+        List<String> values = currentConfig.getList(name);
+        String existing = currentConfig.getString(name);
+        if (values == null && existing == null) {
             currentConfig.set(name, value);
+            return;
+        }
+
+        List<String> newValues = new ArrayList<String>();
+        if (values != null) {
+            newValues.addAll(values);
+        } else {
+            newValues.add(existing);
         }
+        newValues.add(value);
+        currentConfig.set(name, new ConfigObject(newValues));
     }
 }
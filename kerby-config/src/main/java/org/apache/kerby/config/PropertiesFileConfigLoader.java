@@ -27,7 +27,9 @@ public class PropertiesFileConfigLoader extends PropertiesConfigLoader {
     @Override
     protected void loadConfig(ConfigImpl config, Resource resource) throws Exception {
         Properties propConfig = new Properties();
-        propConfig.load((InputStream) resource.getResource());
+        try (InputStream is = (InputStream) resource.getResource()) {
+            propConfig.load(is);
+        }
         loadConfig(config, propConfig);
     }
 }
@@ -50,6 +50,7 @@ public final class Resource {
     private String name;
     private Object resource;
     private Format format;
+    private File resourceFile;
 
     public static Resource createXmlResource(File xmlFile) throws IOException {
         return new Resource(xmlFile.getName(), xmlFile, Format.XML_FILE);
@@ -91,6 +92,7 @@ public final class Resource {
         this.name = name;
         this.resource = new FileInputStream(resourceFile);
         this.format = format;
+        this.resourceFile = resourceFile;
     }
 
     private Resource(URL resourceUrl, Format format) throws IOException {
@@ -118,4 +120,15 @@ public final class Resource {
     public Format getFormat() {
         return format;
     }
+
+    /**
+     * Open the resource file again so it can be loaded again, as the stream
+     * is consumed by loading. Resources not backed by a file are kept as is.
+     * @throws IOException e
+     */
+    public void reopen() throws IOException {
+        if (resourceFile != null) {
+            resource = new FileInputStream(resourceFile);
+        }
+    }
 }
\ No newline at end of file
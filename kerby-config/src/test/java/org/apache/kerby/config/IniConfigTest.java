@@ -62,6 +62,15 @@ public class IniConfigTest {
         out.println("[lib1]");
         out.println("default_realm = EXAMPLE.COM1");
         out.println("dns_lookup_realm = true");
+        out.println("[realms]");
+        out.println("EXAMPLE.COM = {");
+        out.println("  kdc = kdc1.example.com");
+        out.println("  kdc = kdc2.example.com:88");
+        out.println("  admin_server = kdc1.example.com");
+        out.println("  v4_instance_convert = {");
+        out.println("    mit = mit.edu");
+        out.println("  }");
+        out.println("}");
         out.close();
     }
 
@@ -79,6 +88,12 @@ public class IniConfigTest {
 
         Config config1 = conf.getConfig("lib1");
         assertThat(config1.getBoolean("dns_lookup_realm")).isTrue();
+
+        Config realm = conf.getConfig("realms").getConfig("EXAMPLE.COM");
+        assertThat(realm.getList("kdc")).containsExactly(
+            "kdc1.example.com", "kdc2.example.com:88");
+        assertThat(realm.getString("admin_server")).isEqualTo("kdc1.example.com");
+        assertThat(realm.getConfig("v4_instance_convert").getString("mit")).isEqualTo("mit.edu");
     }
 
     @After
@@ -27,6 +27,7 @@ import org.apache.kerby.kerberos.kerb.server.KdcConfigKey;
 import org.apache.kerby.kerberos.kerb.server.KdcTestBase;
 import org.apache.kerby.kerberos.kerb.type.ticket.SgtTicket;
 import org.apache.kerby.kerberos.kerb.type.ticket.TgtTicket;
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -47,6 +48,13 @@ public class AnonymousPkinitKdcTest extends KdcTestBase {
         pkinitClient = getPkinitClient();
     }
 
+    @After
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+        assertThat(waitForNoThread("pkinit-cert-watcher")).isTrue();
+    }
+
     @Override
     protected void configKdcSeverAndClient() {
         super.configKdcSeverAndClient();
@@ -0,0 +1,58 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kdc;
+
+import org.apache.kerby.kerberos.kerb.crypto.random.RandomProvider;
+import org.apache.kerby.kerberos.kerb.crypto.random.StripedDrbgRandom;
+import org.apache.kerby.kerberos.kerb.crypto.util.Random;
+import org.apache.kerby.kerberos.kerb.server.KdcConfigKey;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The random provider of the KDC is process wide, so it's put back when the
+ * KDC stops.
+ */
+public class DrbgRandomKdcTest extends KerbyKdcTest {
+
+    private RandomProvider defaultProvider;
+
+    @Override
+    protected void configKdcSeverAndClient() {
+        super.configKdcSeverAndClient();
+        getKdcServer().getKdcConfig().setString(KdcConfigKey.KDC_RANDOM_PROVIDER, "drbg");
+        defaultProvider = Random.getProvider();
+    }
+
+    @After
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+        assertThat(Random.getProvider()).isSameAs(defaultProvider);
+    }
+
+    @Test
+    public void testKdc() throws Exception {
+        assertThat(Random.getProvider()).isInstanceOf(StripedDrbgRandom.class);
+        performKdcTest();
+    }
+}
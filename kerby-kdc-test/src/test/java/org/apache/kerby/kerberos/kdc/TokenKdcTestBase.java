@@ -34,6 +34,7 @@ import org.apache.kerby.kerberos.kerb.type.ticket.KrbTicket;
 import org.apache.kerby.kerberos.kerb.type.ticket.TgtTicket;
 import org.apache.kerby.kerberos.provider.token.JwtTokenEncoder;
 import org.apache.kerby.kerberos.provider.token.JwtTokenProvider;
+import org.junit.After;
 import org.junit.Before;
 
 import java.io.File;
@@ -62,6 +63,13 @@ public class TokenKdcTestBase extends KdcTestBase {
         super.setUp();
     }
 
+    @After
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+        assertThat(waitForNoThread("token-key-watcher")).isTrue();
+    }
+
     @Override
     protected void configKdcSeverAndClient() {
         super.configKdcSeverAndClient();
@@ -19,8 +19,12 @@
  */
 package org.apache.kerby.kerberos.kdc.impl;
 
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.crypto.random.RandomProvider;
+import org.apache.kerby.kerberos.kerb.crypto.util.Random;
 import org.apache.kerby.kerberos.kerb.server.KdcContext;
 import org.apache.kerby.kerberos.kerb.server.KdcSetting;
+import org.apache.kerby.kerberos.kerb.server.KdcUtil;
 import org.apache.kerby.kerberos.kerb.server.impl.AbstractInternalKdcServer;
 import org.apache.kerby.kerberos.kerb.server.preauth.PreauthHandler;
 import org.slf4j.Logger;
@@ -36,6 +40,8 @@ import java.util.concurrent.Executors;
 public class NettyKdcServerImpl extends AbstractInternalKdcServer {
     private ExecutorService executor;
     private KdcContext kdcContext;
+    private RandomProvider randomProvider;
+    private RandomProvider previousRandomProvider;
     private NettyKdcNetwork network;
     private static final Logger LOG = LoggerFactory.getLogger(NettyKdcServerImpl.class);
 
@@ -67,11 +73,16 @@ public class NettyKdcServerImpl extends AbstractInternalKdcServer {
         LOG.info("Netty kdc server started.");
     }
 
-    private void prepareHandler() {
+    private void prepareHandler() throws KrbException {
         kdcContext = new KdcContext(getSetting());
         kdcContext.setIdentityService(getIdentityService());
+        kdcContext.setReplayCache(KdcUtil.getReplayCache(getSetting().getKdcConfig()));
+        // The provider is process wide, the one replaced is put back on stop
+        randomProvider = Random.createProvider(getSetting().getKdcConfig().getKdcRandomProvider());
+        previousRandomProvider = Random.setProvider(randomProvider);
         PreauthHandler preauthHandler = new PreauthHandler();
         preauthHandler.init();
+        preauthHandler.initWith(kdcContext);
         kdcContext.setPreauthHandler(preauthHandler);
     }
 
@@ -82,6 +93,10 @@ public class NettyKdcServerImpl extends AbstractInternalKdcServer {
         network.stop();
 
         executor.shutdownNow();
+
+        kdcContext.getPreauthHandler().destroy();
+
+        Random.restoreProvider(randomProvider, previousRandomProvider);
         LOG.info("Netty kdc server stopped.");
     }
 }
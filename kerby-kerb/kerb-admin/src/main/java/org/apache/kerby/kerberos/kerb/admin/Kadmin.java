@@ -26,7 +26,6 @@ import org.apache.kerby.kerberos.kerb.common.KrbUtil;
 import org.apache.kerby.kerberos.kerb.identity.KrbIdentity;
 import org.apache.kerby.kerberos.kerb.identity.backend.BackendConfig;
 import org.apache.kerby.kerberos.kerb.identity.backend.IdentityBackend;
-import org.apache.kerby.kerberos.kerb.keytab.Keytab;
 import org.apache.kerby.kerberos.kerb.server.KdcConfig;
 import org.apache.kerby.kerberos.kerb.server.KdcSetting;
 import org.apache.kerby.kerberos.kerb.server.KdcUtil;
@@ -38,8 +37,10 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -252,6 +253,45 @@ public class Kadmin {
         backend.addIdentity(identity);
     }
 
+    /**
+     * Add principals to backend in bulk, with random keys.
+     *
+     * @throws org.apache.kerby.kerberos.kerb.KrbException e.
+     * @param principals The principals to be added into backend
+     * @param kOptions The KOptions with principal info
+     * @return The number of principals added
+     */
+    public int addPrincipals(List<String> principals, KOptions kOptions)
+            throws KrbException {
+        Map<String, String> principalPasswords = new LinkedHashMap<>();
+        for (String principal : principals) {
+            principalPasswords.put(principal, null);
+        }
+        return addPrincipals(principalPasswords, kOptions);
+    }
+
+    /**
+     * Add principals to backend in bulk, deriving their keys in parallel and
+     * storing them in a batch transaction if the backend supports them.
+     *
+     * @throws org.apache.kerby.kerberos.kerb.KrbException e.
+     * @param principals The principals to be added into backend, and their
+     *                   passwords to create encryption keys, null for
+     *                   random keys
+     * @param kOptions The KOptions with principal info
+     * @return The number of principals added
+     */
+    public int addPrincipals(Map<String, String> principals, KOptions kOptions)
+            throws KrbException {
+        Map<String, String> fixedPrincipals = new LinkedHashMap<>();
+        for (Map.Entry<String, String> principal : principals.entrySet()) {
+            fixedPrincipals.put(fixPrincipal(principal.getKey()), principal.getValue());
+        }
+        PrincipalBulkAdder adder = new PrincipalBulkAdder(backend,
+                getKdcConfig().getEncryptionTypes());
+        return adder.addPrincipals(fixedPrincipals, kOptions);
+    }
+
     /**
      * Export all the keys of the specified principal into the specified keytab
      * file.
@@ -299,17 +339,23 @@ public class Kadmin {
      * @throws KrbException e
      */
     public void exportKeytab(File keytabFile) throws KrbException {
-        Keytab keytab = AdminHelper.createOrLoadKeytab(keytabFile);
-
-        Iterable<String> principals = backend.getIdentities();
-        for (String principal : principals) {
-            KrbIdentity identity = backend.getIdentity(principal);
-            if (identity != null) {
-                AdminHelper.exportToKeytab(keytab, identity);
-            }
-        }
+        exportKeytab(keytabFile, (KeytabExporter.ProgressListener) null);
+    }
 
-        AdminHelper.storeKeytab(keytab, keytabFile);
+    /**
+     * Export all identity keys to the specified keytab file, fetching the
+     * identities in parallel and writing the keys as they come.
+     *
+     * @param keytabFile The keytab file
+     * @param progressListener The listener of the progress, may be null
+     * @throws KrbException e
+     */
+    public void exportKeytab(File keytabFile,
+                             KeytabExporter.ProgressListener progressListener)
+            throws KrbException {
+        KeytabExporter exporter = new KeytabExporter(backend);
+        exporter.setProgressListener(progressListener);
+        exporter.export(keytabFile, backend.getIdentities());
     }
 
     /**
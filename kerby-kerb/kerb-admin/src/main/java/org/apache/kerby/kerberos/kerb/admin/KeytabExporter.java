@@ -0,0 +1,252 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.admin;
+
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.identity.IdentityService;
+import org.apache.kerby.kerberos.kerb.identity.KrbIdentity;
+import org.apache.kerby.kerberos.kerb.keytab.KeytabEntry;
+import org.apache.kerby.kerberos.kerb.keytab.KeytabOutputStream;
+import org.apache.kerby.kerberos.kerb.type.KerberosTime;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Exports the keys of many identities into a keytab file as a stream. The
+ * identities are fetched from the backend in batches by several threads,
+ * and each batch is encoded into keytab entries and appended to the file in
+ * turn, so only a few batches are held in memory whatever the number of
+ * identities. Progress is logged, and reported to a listener if set.
+ */
+public class KeytabExporter {
+    private static final Logger LOG = LoggerFactory.getLogger(KeytabExporter.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    // Batches fetched ahead of the writer, per thread
+    private static final int BATCHES_PER_THREAD = 2;
+    private static final long PROGRESS_INTERVAL = 5 * 1000;
+    private static final AtomicInteger THREAD_ID = new AtomicInteger();
+
+    private final IdentityService backend;
+    private final int threads;
+    private final int batchSize;
+    private ProgressListener progressListener;
+
+    /**
+     * Listener of the export progress.
+     */
+    public interface ProgressListener {
+
+        /**
+         * Called after each batch is written, and once the export is done.
+         * @param principals The number of principals exported so far
+         * @param entries The number of keytab entries written so far
+         * @param principalsPerSecond The throughput so far
+         */
+        void onProgress(long principals, long entries, double principalsPerSecond);
+    }
+
+    /**
+     * Exporter with a thread per processor, and default batch size.
+     * @param backend The identity backend
+     */
+    public KeytabExporter(IdentityService backend) {
+        this(backend, Runtime.getRuntime().availableProcessors(), DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param backend The identity backend
+     * @param threads The number of threads fetching identities
+     * @param batchSize The number of identities fetched by a thread at once
+     */
+    public KeytabExporter(IdentityService backend, int threads, int batchSize) {
+        if (threads < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Invalid threads or batch size: "
+                    + threads + ", " + batchSize);
+        }
+        this.backend = backend;
+        this.threads = threads;
+        this.batchSize = batchSize;
+    }
+
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Export the keys of the principals into the keytab file, appended to
+     * the entries already in it if it exists. Principals not found in the
+     * backend are skipped.
+     *
+     * @param keytabFile The keytab file
+     * @param principals The principal names
+     * @return The number of principals exported
+     * @throws KrbException e
+     */
+    public long export(File keytabFile, Iterable<String> principals) throws KrbException {
+        boolean append = keytabFile.length() > 0;
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "keytab-export-" + THREAD_ID.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        Progress progress = new Progress();
+
+        try (OutputStream out = new BufferedOutputStream(
+                new FileOutputStream(keytabFile, append))) {
+            if (!append) {
+                // Keytab version 0x0502
+                out.write(new byte[] {0x05, 0x02});
+            }
+
+            Deque<Future<Batch>> pending = new ArrayDeque<>();
+            int maxPending = threads * BATCHES_PER_THREAD;
+            final KerberosTime timestamp = KerberosTime.now();
+            List<String> names = new ArrayList<>(batchSize);
+            for (String principal : principals) {
+                names.add(principal);
+                if (names.size() == batchSize) {
+                    pending.add(executor.submit(new BatchTask(names, timestamp)));
+                    names = new ArrayList<>(batchSize);
+                    if (pending.size() >= maxPending) {
+                        write(pending.poll(), out, progress);
+                    }
+                }
+            }
+            if (!names.isEmpty()) {
+                pending.add(executor.submit(new BatchTask(names, timestamp)));
+            }
+            while (!pending.isEmpty()) {
+                write(pending.poll(), out, progress);
+            }
+        } catch (IOException e) {
+            throw new KrbException("Failed to write keytab " + keytabFile.getAbsolutePath(), e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        progress.report(true);
+        return progress.principals;
+    }
+
+    private void write(Future<Batch> future, OutputStream out,
+                       Progress progress) throws KrbException, IOException {
+        Batch batch;
+        try {
+            batch = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KrbException("Interrupted exporting keytab", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof KrbException) {
+                throw (KrbException) e.getCause();
+            }
+            throw new KrbException("Failed to export keytab", e.getCause());
+        }
+        out.write(batch.content);
+        progress.principals += batch.principals;
+        progress.entries += batch.entries;
+        progress.report(false);
+    }
+
+    /**
+     * The keytab entries of a batch of identities, encoded.
+     */
+    private static final class Batch {
+        private byte[] content;
+        private int principals;
+        private int entries;
+    }
+
+    private final class BatchTask implements Callable<Batch> {
+        private final List<String> names;
+        private final KerberosTime timestamp;
+
+        BatchTask(List<String> names, KerberosTime timestamp) {
+            this.names = names;
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public Batch call() throws KrbException, IOException {
+            Batch batch = new Batch();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            KeytabOutputStream kos = new KeytabOutputStream(bytes);
+            for (String name : names) {
+                KrbIdentity identity = backend.getIdentity(name);
+                if (identity == null) {
+                    continue;
+                }
+                for (EncryptionKey key : identity.getKeys().values()) {
+                    new KeytabEntry(identity.getPrincipal(), timestamp,
+                            key.getKvno(), key).store(kos);
+                    batch.entries++;
+                }
+                batch.principals++;
+            }
+            kos.flush();
+            batch.content = bytes.toByteArray();
+            return batch;
+        }
+    }
+
+    private final class Progress {
+        private final long startTime = System.currentTimeMillis();
+        private long lastLogTime = startTime;
+        private long principals;
+        private long entries;
+
+        void report(boolean done) {
+            long now = System.currentTimeMillis();
+            double rate = principals * 1000.0 / Math.max(now - startTime, 1);
+            if (done || now - lastLogTime >= PROGRESS_INTERVAL) {
+                lastLogTime = now;
+                LOG.info("{} {} principals, {} keytab entries, {} principals/s",
+                        done ? "Exported" : "Exporting", principals, entries,
+                        String.format("%.1f", rate));
+            }
+            if (progressListener != null) {
+                progressListener.onProgress(principals, entries, rate);
+            }
+        }
+    }
+}
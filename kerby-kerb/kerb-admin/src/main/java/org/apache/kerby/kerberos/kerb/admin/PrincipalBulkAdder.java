@@ -0,0 +1,214 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.admin;
+
+import org.apache.kerby.KOptions;
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.common.EncryptionUtil;
+import org.apache.kerby.kerberos.kerb.identity.BatchTrans;
+import org.apache.kerby.kerberos.kerb.identity.IdentityService;
+import org.apache.kerby.kerberos.kerb.identity.KrbIdentity;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Adds many principals to the backend at once. The keys are derived by
+ * several threads, as the string to key functions are CPU heavy, and the
+ * identities are added in a single batch transaction of the backend if it
+ * supports them, which the backend commits natively: a multi operation for
+ * ZooKeeper, a single locked update for Mavibot, a single rewrite for Json,
+ * pipelined adds for LDAP. Otherwise they're added one by one.
+ */
+public class PrincipalBulkAdder {
+    private static final Logger LOG = LoggerFactory.getLogger(PrincipalBulkAdder.class);
+
+    // Principals a thread derives the keys for at once
+    private static final int CHUNK_SIZE = 32;
+    // Chunks derived ahead of the backend adds, per thread
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final AtomicInteger THREAD_ID = new AtomicInteger();
+
+    private final IdentityService backend;
+    private final List<EncryptionType> encryptionTypes;
+    private final int threads;
+
+    /**
+     * Adder with a thread per processor.
+     * @param backend The identity backend
+     * @param encryptionTypes The encryption types of the keys
+     */
+    public PrincipalBulkAdder(IdentityService backend,
+                              List<EncryptionType> encryptionTypes) {
+        this(backend, encryptionTypes, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param backend The identity backend
+     * @param encryptionTypes The encryption types of the keys
+     * @param threads The number of threads deriving keys
+     */
+    public PrincipalBulkAdder(IdentityService backend,
+                              List<EncryptionType> encryptionTypes, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Invalid threads: " + threads);
+        }
+        this.backend = backend;
+        this.encryptionTypes = encryptionTypes;
+        this.threads = threads;
+    }
+
+    /**
+     * Add the principals. With a batch transaction, none is added if one
+     * fails, with LDAP and ZooKeeper as long as the failure is before the
+     * commit. Otherwise the ones added before the failure are kept.
+     *
+     * @param principals The principal names and their passwords, a null
+     *                   password for random keys
+     * @param kOptions The KOptions with principal info
+     * @return The number of principals added
+     * @throws KrbException e
+     */
+    public int addPrincipals(Map<String, String> principals,
+                             KOptions kOptions) throws KrbException {
+        long startTime = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "principal-bulk-add-" + THREAD_ID.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        BatchTrans batchTrans = null;
+        if (backend.supportBatchTrans()) {
+            // Null if the backend is busy with another batch
+            batchTrans = backend.startBatchTrans();
+        }
+
+        int added = 0;
+        boolean committed = false;
+        try {
+            Deque<Future<List<KrbIdentity>>> pending = new ArrayDeque<>();
+            int maxPending = threads * CHUNKS_PER_THREAD;
+            List<Map.Entry<String, String>> chunk = new ArrayList<>(CHUNK_SIZE);
+            for (Map.Entry<String, String> principal : principals.entrySet()) {
+                chunk.add(principal);
+                if (chunk.size() == CHUNK_SIZE) {
+                    pending.add(executor.submit(new DeriveTask(chunk, kOptions)));
+                    chunk = new ArrayList<>(CHUNK_SIZE);
+                    if (pending.size() >= maxPending) {
+                        added += add(pending.poll(), batchTrans);
+                    }
+                }
+            }
+            if (!chunk.isEmpty()) {
+                pending.add(executor.submit(new DeriveTask(chunk, kOptions)));
+            }
+            while (!pending.isEmpty()) {
+                added += add(pending.poll(), batchTrans);
+            }
+
+            if (batchTrans != null) {
+                batchTrans.commit();
+            }
+            committed = true;
+        } finally {
+            executor.shutdownNow();
+            if (batchTrans != null && !committed) {
+                batchTrans.rollback();
+            }
+        }
+
+        long elapsed = Math.max(System.currentTimeMillis() - startTime, 1);
+        LOG.info("Added {} principals in {} ms, {} principals/s", added, elapsed,
+                String.format("%.1f", added * 1000.0 / elapsed));
+        return added;
+    }
+
+    private int add(Future<List<KrbIdentity>> future,
+                    BatchTrans batchTrans) throws KrbException {
+        List<KrbIdentity> identities;
+        try {
+            identities = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KrbException("Interrupted adding principals", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof KrbException) {
+                throw (KrbException) e.getCause();
+            }
+            throw new KrbException("Failed to add principals", e.getCause());
+        }
+
+        for (KrbIdentity identity : identities) {
+            if (batchTrans != null) {
+                batchTrans.addIdentity(identity);
+            } else {
+                backend.addIdentity(identity);
+            }
+        }
+        return identities.size();
+    }
+
+    private final class DeriveTask implements Callable<List<KrbIdentity>> {
+        private final List<Map.Entry<String, String>> principals;
+        private final KOptions kOptions;
+
+        DeriveTask(List<Map.Entry<String, String>> principals, KOptions kOptions) {
+            this.principals = principals;
+            this.kOptions = kOptions;
+        }
+
+        @Override
+        public List<KrbIdentity> call() throws KrbException {
+            List<KrbIdentity> identities = new ArrayList<>(principals.size());
+            for (Map.Entry<String, String> principal : principals) {
+                String name = principal.getKey();
+                if (backend.getIdentity(name) != null) {
+                    throw new KrbException("Principal already exists: " + name);
+                }
+                KrbIdentity identity = AdminHelper.createIdentity(name, kOptions);
+                if (principal.getValue() == null) {
+                    identity.addKeys(EncryptionUtil.generateKeys(encryptionTypes));
+                } else {
+                    identity.addKeys(EncryptionUtil.generateKeys(name,
+                            principal.getValue(), encryptionTypes));
+                }
+                identities.add(identity);
+            }
+            return identities;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.admin;
+
+import org.apache.kerby.kerberos.kerb.crypto.EncryptionHandler;
+import org.apache.kerby.kerberos.kerb.identity.KrbIdentity;
+import org.apache.kerby.kerberos.kerb.identity.backend.MemoryIdentityBackend;
+import org.apache.kerby.kerberos.kerb.keytab.Keytab;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
+import org.apache.kerby.kerberos.kerb.type.base.PrincipalName;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KeytabExporterTest {
+    private static final int PRINCIPALS = 250;
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private MemoryIdentityBackend backend;
+    private List<String> principals;
+
+    @Before
+    public void setUp() throws Exception {
+        backend = new MemoryIdentityBackend();
+        backend.initialize();
+        principals = new ArrayList<>();
+        for (int i = 0; i < PRINCIPALS; i++) {
+            String principal = "user" + i + "@EXAMPLE.COM";
+            KrbIdentity identity = new KrbIdentity(principal);
+            identity.setKeyVersion(1);
+            identity.addKey(EncryptionHandler.random2Key(
+                    EncryptionType.AES128_CTS_HMAC_SHA1_96));
+            identity.addKey(EncryptionHandler.random2Key(
+                    EncryptionType.DES3_CBC_SHA1_KD));
+            backend.addIdentity(identity);
+            principals.add(principal);
+        }
+    }
+
+    @Test
+    public void testExport() throws Exception {
+        File keytabFile = new File(tmpFolder.getRoot(), "test.keytab");
+        final AtomicLong reported = new AtomicLong();
+        final AtomicLong entries = new AtomicLong();
+
+        KeytabExporter exporter = new KeytabExporter(backend, 4, 16);
+        exporter.setProgressListener(new KeytabExporter.ProgressListener() {
+            @Override
+            public void onProgress(long principals, long entryCount, double principalsPerSecond) {
+                assertThat(principals).isGreaterThanOrEqualTo(reported.get());
+                reported.set(principals);
+                entries.set(entryCount);
+            }
+        });
+        List<String> names = new ArrayList<>(principals);
+        names.add("unknown@EXAMPLE.COM");
+        long exported = exporter.export(keytabFile, names);
+
+        assertThat(exported).isEqualTo(PRINCIPALS);
+        assertThat(reported.get()).isEqualTo(PRINCIPALS);
+        assertThat(entries.get()).isEqualTo(PRINCIPALS * 2);
+
+        Keytab keytab = Keytab.loadKeytab(keytabFile);
+        assertThat(keytab.getPrincipals()).hasSize(PRINCIPALS);
+        for (String principal : principals) {
+            PrincipalName name = new PrincipalName(principal);
+            assertThat(keytab.getKeytabEntries(name)).hasSize(2);
+            assertThat(keytab.getKey(name, EncryptionType.AES128_CTS_HMAC_SHA1_96))
+                    .isEqualTo(backend.getIdentity(principal).getKey(
+                            EncryptionType.AES128_CTS_HMAC_SHA1_96));
+        }
+    }
+
+    @Test
+    public void testExportAppends() throws Exception {
+        File keytabFile = new File(tmpFolder.getRoot(), "test.keytab");
+        KeytabExporter exporter = new KeytabExporter(backend, 2, 10);
+        exporter.export(keytabFile, principals.subList(0, 100));
+        exporter.export(keytabFile, principals.subList(100, PRINCIPALS));
+
+        Keytab keytab = Keytab.loadKeytab(keytabFile);
+        assertThat(keytab.getPrincipals()).hasSize(PRINCIPALS);
+    }
+}
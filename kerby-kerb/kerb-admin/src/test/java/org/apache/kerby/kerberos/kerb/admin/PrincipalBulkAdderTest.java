@@ -0,0 +1,91 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.admin;
+
+import org.apache.kerby.KOptions;
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.crypto.EncryptionHandler;
+import org.apache.kerby.kerberos.kerb.identity.KrbIdentity;
+import org.apache.kerby.kerberos.kerb.identity.backend.MemoryIdentityBackend;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionKey;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class PrincipalBulkAdderTest {
+    private static final int PRINCIPALS = 200;
+    private static final List<EncryptionType> ENCRYPTION_TYPES = Arrays.asList(
+            EncryptionType.AES128_CTS_HMAC_SHA1_96, EncryptionType.DES3_CBC_SHA1_KD);
+
+    private MemoryIdentityBackend backend;
+    private PrincipalBulkAdder adder;
+
+    @Before
+    public void setUp() throws Exception {
+        backend = new MemoryIdentityBackend();
+        backend.initialize();
+        adder = new PrincipalBulkAdder(backend, ENCRYPTION_TYPES, 4);
+    }
+
+    @Test
+    public void testAddPrincipals() throws Exception {
+        Map<String, String> principals = new LinkedHashMap<>();
+        for (int i = 0; i < PRINCIPALS; i++) {
+            principals.put("user" + i + "@EXAMPLE.COM", i % 2 == 0 ? null : "password" + i);
+        }
+
+        assertThat(adder.addPrincipals(principals, new KOptions())).isEqualTo(PRINCIPALS);
+
+        for (Map.Entry<String, String> principal : principals.entrySet()) {
+            KrbIdentity identity = backend.getIdentity(principal.getKey());
+            assertThat(identity).isNotNull();
+            assertThat(identity.getKeys()).hasSize(ENCRYPTION_TYPES.size());
+            if (principal.getValue() != null) {
+                EncryptionKey expected = EncryptionHandler.string2Key(principal.getKey(),
+                        principal.getValue(), EncryptionType.AES128_CTS_HMAC_SHA1_96);
+                assertThat(identity.getKey(EncryptionType.AES128_CTS_HMAC_SHA1_96).getKeyData())
+                        .isEqualTo(expected.getKeyData());
+            }
+        }
+    }
+
+    @Test
+    public void testAddExistingPrincipal() throws Exception {
+        Map<String, String> principals = new LinkedHashMap<>();
+        principals.put("user@EXAMPLE.COM", null);
+        adder.addPrincipals(principals, new KOptions());
+
+        principals.put("other@EXAMPLE.COM", null);
+        try {
+            adder.addPrincipals(principals, new KOptions());
+            fail("Added an existing principal");
+        } catch (KrbException e) {
+            assertThat(e.getMessage()).contains("user@EXAMPLE.COM");
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.client;
+
+import org.apache.kerby.KOptions;
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.client.impl.AsyncInternalKrbClient;
+import org.apache.kerby.kerberos.kerb.type.ticket.SgtTicket;
+import org.apache.kerby.kerberos.kerb.type.ticket.TgtTicket;
+
+import java.io.File;
+
+/**
+ * A Krb client API for applications requesting tickets without blocking,
+ * so many requests can be made at once from a few threads. The results are
+ * given as futures, to wait on or to add callbacks to.
+ */
+public class AsyncKrbClient extends KrbClientBase {
+    private AsyncInternalKrbClient asyncClient;
+
+    /**
+     * Default constructor.
+     * @throws KrbException e
+     */
+    public AsyncKrbClient() throws KrbException {
+        super();
+    }
+
+    /**
+     * Construct with prepared KrbConfig.
+     * @param krbConfig The krb config
+     */
+    public AsyncKrbClient(KrbConfig krbConfig) {
+        super(krbConfig);
+    }
+
+    /**
+     * Constructor with conf dir
+     * @param confDir The conf dir
+     * @throws KrbException e
+     */
+    public AsyncKrbClient(File confDir) throws KrbException {
+        super(confDir);
+    }
+
+    /**
+     * Constructor with prepared KrbClient, it still needs init.
+     * @param krbClient The krb client
+     */
+    public AsyncKrbClient(KrbClient krbClient) {
+        super(krbClient);
+    }
+
+    /**
+     * Init the client, starting its network thread.
+     * @throws KrbException e
+     */
+    @Override
+    public void init() throws KrbException {
+        super.init();
+
+        asyncClient = new AsyncInternalKrbClient(getSetting());
+        asyncClient.init();
+    }
+
+    /**
+     * Request a TGT with using well prepared requestOptions.
+     * @param requestOptions The request options
+     * @return The future TGT
+     */
+    public KrbFuture<TgtTicket> requestTgtAsync(KOptions requestOptions) {
+        if (requestOptions == null) {
+            throw new IllegalArgumentException("Null requestOptions specified");
+        }
+        return getAsyncClient().requestTgtAsync(requestOptions);
+    }
+
+    /**
+     * Request a TGT with user plain credential
+     * @param principal The principal
+     * @param password The password
+     * @return The future TGT
+     */
+    public KrbFuture<TgtTicket> requestTgtAsync(String principal, String password) {
+        KOptions requestOptions = new KOptions();
+        requestOptions.add(KrbOption.CLIENT_PRINCIPAL, principal);
+        requestOptions.add(KrbOption.USE_PASSWD, true);
+        requestOptions.add(KrbOption.USER_PASSWD, password);
+        return requestTgtAsync(requestOptions);
+    }
+
+    /**
+     * Request a TGT with user keytab
+     * @param principal The principal
+     * @param keytabFile The keytab file
+     * @return The future TGT
+     */
+    public KrbFuture<TgtTicket> requestTgtAsync(String principal, File keytabFile) {
+        KOptions requestOptions = new KOptions();
+        requestOptions.add(KrbOption.CLIENT_PRINCIPAL, principal);
+        requestOptions.add(KrbOption.USE_KEYTAB, true);
+        requestOptions.add(KrbOption.KEYTAB_FILE, keytabFile);
+        return requestTgtAsync(requestOptions);
+    }
+
+    /**
+     * Request a service ticket with a TGT targeting for a server.
+     * @param tgt The tgt ticket
+     * @param serverPrincipal The server principal
+     * @return The future service ticket
+     */
+    public KrbFuture<SgtTicket> requestSgtAsync(TgtTicket tgt, String serverPrincipal) {
+        KOptions requestOptions = new KOptions();
+        requestOptions.add(KrbOption.USE_TGT, tgt);
+        requestOptions.add(KrbOption.SERVER_PRINCIPAL, serverPrincipal);
+        return requestSgtAsync(requestOptions);
+    }
+
+    /**
+     * Request a service ticket provided request options
+     * @param requestOptions The request options
+     * @return The future service ticket
+     */
+    public KrbFuture<SgtTicket> requestSgtAsync(KOptions requestOptions) {
+        return getAsyncClient().requestSgtAsync(requestOptions);
+    }
+
+    /**
+     * Stop the network thread, failing the requests going on.
+     */
+    @Override
+    public void close() {
+        if (asyncClient != null) {
+            asyncClient.release();
+            asyncClient = null;
+        }
+        super.close();
+    }
+
+    private AsyncInternalKrbClient getAsyncClient() {
+        if (asyncClient == null) {
+            throw new IllegalStateException("Not init yet");
+        }
+        return asyncClient;
+    }
+}
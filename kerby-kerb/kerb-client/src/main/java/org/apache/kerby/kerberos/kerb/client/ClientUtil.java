@@ -20,18 +20,25 @@
 package org.apache.kerby.kerberos.kerb.client;
 
 import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.type.KerberosTime;
 import org.apache.kerby.kerberos.kerb.transport.TransportPair;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public final class ClientUtil {
     private ClientUtil() { }
 
     private static final String KRB5_FILE_NAME = "krb5.conf";
     private static final String KRB5_ENV_NAME = "KRB5_CONFIG";
+    private static final int DEFAULT_KDC_PORT = 88;
+    private static final AtomicInteger CUSEC_COUNTER = new AtomicInteger();
 
     /**
      * Load krb5.conf from specified conf dir.
@@ -124,4 +131,66 @@ public final class ClientUtil {
 
         return result;
     }
+
+    /**
+     * Get the transport addresses of the KDCs to use, from the kdc entries of
+     * the realm when there are more than one and no KDC host is set by option,
+     * otherwise the single KDC as {@link #getTransportPair} does. A kdc entry
+     * port overrides the configured ports, defaulting to 88.
+     * @param setting client setting
+     * @return UDP and TCP addresses pairs
+     * @throws KrbException e
+     */
+    public static List<TransportPair> getTransportPairs(
+            KrbSetting setting) throws KrbException {
+        List<String> kdcs = setting.getKrbConfig().getRealmKdcs(setting.getKdcRealm());
+        if (kdcs.size() < 2 || setting.isKdcHostSet()) {
+            return Collections.singletonList(getTransportPair(setting));
+        }
+
+        List<TransportPair> results = new ArrayList<>(kdcs.size());
+        for (String kdc : kdcs) {
+            String host = kdc;
+            int port = -1;
+            int i = kdc.lastIndexOf(':');
+            if (i > 0 && kdc.indexOf(']', i) < 0) {
+                host = kdc.substring(0, i);
+                try {
+                    port = Integer.parseInt(kdc.substring(i + 1));
+                } catch (NumberFormatException e) {
+                    throw new KrbException("Invalid kdc in realm config: " + kdc);
+                }
+            }
+            if (host.startsWith("[") && host.endsWith("]")) {
+                host = host.substring(1, host.length() - 1);
+            }
+
+            TransportPair result = new TransportPair();
+            if (setting.allowTcp()) {
+                int tcpPort = port > 0 ? port : setting.getKdcTcpPort();
+                result.tcpAddress = new InetSocketAddress(host,
+                    tcpPort > 0 ? tcpPort : DEFAULT_KDC_PORT);
+            }
+            if (setting.allowUdp()) {
+                int udpPort = port > 0 ? port : setting.getKdcUdpPort();
+                result.udpAddress = new InetSocketAddress(host,
+                    udpPort > 0 ? udpPort : DEFAULT_KDC_PORT);
+            }
+            results.add(result);
+        }
+        return results;
+    }
+
+    /**
+     * Make the microseconds part of an authenticator client time. The time
+     * only has milliseconds, so the low digits count the authenticators made
+     * in the same millisecond, keeping them apart for the KDC replay cache.
+     * @param ctime The client time
+     * @return cusec
+     */
+    public static int makeCusec(KerberosTime ctime) {
+        int millis = (int) (ctime.getTime() % 1000);
+        int count = (CUSEC_COUNTER.getAndIncrement() & Integer.MAX_VALUE) % 1000;
+        return millis * 1000 + count;
+    }
 }
@@ -41,6 +41,7 @@ public class KrbClientBase {
     private final KrbSetting krbSetting;
 
     private InternalKrbClient innerClient;
+    private SgtTicketCache sgtCache;
     private static final Logger LOG = LoggerFactory.getLogger(KrbClientBase.class);
 
     /**
@@ -83,6 +84,7 @@ public class KrbClientBase {
         this.krbConfig = krbClient.krbConfig;
         this.krbSetting = krbClient.krbSetting;
         this.innerClient = krbClient.innerClient;
+        this.sgtCache = krbClient.sgtCache;
     }
 
 
@@ -157,6 +159,27 @@ public class KrbClientBase {
     public void init() throws KrbException {
         innerClient = new DefaultInternalKrbClient(krbSetting);
         innerClient.init();
+
+        if (krbConfig.isSgtCacheEnabled()) {
+            String sgtCacheFile = krbConfig.getSgtCacheFile();
+            sgtCache = new SgtTicketCache(new SgtTicketCache.SgtRequester() {
+                @Override
+                public SgtTicket requestSgt(TgtTicket tgt,
+                                            String serverPrincipal) throws KrbException {
+                    return doRequestSgt(tgt, serverPrincipal);
+                }
+            }, sgtCacheFile != null ? new File(sgtCacheFile) : null, krbConfig.getSgtCacheSize());
+        }
+    }
+
+    /**
+     * Release the resources of the client, like the refresher thread of the
+     * service ticket cache. A client copied from this one shares them.
+     */
+    public void close() {
+        if (sgtCache != null) {
+            sgtCache.close();
+        }
     }
 
     /**
@@ -186,7 +209,9 @@ public class KrbClientBase {
     }
 
     /**
-     * Request a service ticket with a TGT targeting for a server
+     * Request a service ticket with a TGT targeting for a server. When the
+     * service ticket cache is enabled, a cached ticket still valid is returned
+     * without asking the KDC.
      * @param tgt The tgt ticket
      * @param serverPrincipal The server principal
      * @return Service ticket
@@ -194,12 +219,31 @@ public class KrbClientBase {
      */
     public SgtTicket requestSgt(TgtTicket tgt,
                                 String serverPrincipal) throws KrbException {
+        if (sgtCache != null) {
+            if (!serverPrincipal.contains("@")) {
+                serverPrincipal += "@" + krbSetting.getKdcRealm();
+            }
+            return sgtCache.getSgt(tgt, serverPrincipal, krbConfig.getEncryptionTypes());
+        }
+        return doRequestSgt(tgt, serverPrincipal);
+    }
+
+    private SgtTicket doRequestSgt(TgtTicket tgt,
+                                   String serverPrincipal) throws KrbException {
         KOptions requestOptions = new KOptions();
         requestOptions.add(KrbOption.USE_TGT, tgt);
         requestOptions.add(KrbOption.SERVER_PRINCIPAL, serverPrincipal);
         return innerClient.requestSgt(requestOptions);
     }
 
+    /**
+     * Get the service ticket cache.
+     * @return The sgt cache, null if not enabled
+     */
+    public SgtTicketCache getSgtCache() {
+        return sgtCache;
+    }
+
     /**
      * Request a service ticket provided request options
      * @param requestOptions The request options
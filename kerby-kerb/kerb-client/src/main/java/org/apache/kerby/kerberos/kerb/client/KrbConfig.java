@@ -19,10 +19,12 @@
  */
 package org.apache.kerby.kerberos.kerb.client;
 
+import org.apache.kerby.config.Config;
 import org.apache.kerby.kerberos.kerb.common.Krb5Conf;
 import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -30,6 +32,7 @@ import java.util.List;
  */
 public class KrbConfig extends Krb5Conf {
     private static final String LIBDEFAULT = "libdefaults";
+    private static final String REALMS = "realms";
 
     public boolean enableDebug() {
         return getBoolean(KrbConfigKey.KRB_DEBUG, true, LIBDEFAULT);
@@ -122,6 +125,27 @@ public class KrbConfig extends Krb5Conf {
         return realm;
     }
 
+    /**
+     * Get the KDCs of the realm, from the kdc entries of the realm block in
+     * the realms section.
+     * @param realm The realm
+     * @return The kdcs as host[:port], empty if none
+     */
+    public List<String> getRealmKdcs(String realm) {
+        Config realms = getConfig(REALMS);
+        Config realmConfig = realms != null ? realms.getConfig(realm) : null;
+        if (realmConfig == null) {
+            return Collections.emptyList();
+        }
+        List<String> kdcs = realmConfig.getList("kdc");
+        if (kdcs == null) {
+            String kdc = realmConfig.getString("kdc");
+            kdcs = kdc != null ? Collections.singletonList(kdc)
+                : Collections.<String>emptyList();
+        }
+        return kdcs;
+    }
+
     /**
      * Get whether preatuh is required.
      * @return true if preauth required
@@ -298,6 +322,56 @@ public class KrbConfig extends Krb5Conf {
         return getEncTypes(KrbConfigKey.DEFAULT_TKT_ENCTYPES, true, LIBDEFAULT);
     }
 
+    /**
+     * Get whether to cache the service tickets in memory.
+     * @return true to cache service tickets
+     */
+    public boolean isSgtCacheEnabled() {
+        return getBoolean(KrbConfigKey.SGT_CACHE_ENABLED, true, LIBDEFAULT);
+    }
+
+    /**
+     * Get the credential cache file to keep the cached service tickets in.
+     * @return The sgt cache file, null if not kept in a file
+     */
+    public String getSgtCacheFile() {
+        return getString(KrbConfigKey.SGT_CACHE_FILE, true, LIBDEFAULT);
+    }
+
+    /**
+     * Get the max number of service tickets to cache.
+     * @return The sgt cache size
+     */
+    public int getSgtCacheSize() {
+        return getInt(KrbConfigKey.SGT_CACHE_SIZE, true, LIBDEFAULT);
+    }
+
+    /**
+     * Get whether to reuse TCP connections to the KDC, from a pool shared
+     * by the clients.
+     * @return true to pool connections
+     */
+    public boolean isConnectionPoolEnabled() {
+        return getBoolean(KrbConfigKey.KDC_CONNECTION_POOL_ENABLED, true, LIBDEFAULT);
+    }
+
+    /**
+     * Get the max number of TCP connections to a KDC in the pool.
+     * @return max connections per KDC
+     */
+    public int getConnectionPoolMaxConnections() {
+        return getInt(KrbConfigKey.KDC_CONNECTION_POOL_MAX_CONNECTIONS, true, LIBDEFAULT);
+    }
+
+    /**
+     * Get the time in seconds an unused connection is kept in the pool, it
+     * should be shorter than the idle timeout of the KDC.
+     * @return connection idle timeout
+     */
+    public int getConnectionPoolIdleTimeout() {
+        return getInt(KrbConfigKey.KDC_CONNECTION_POOL_IDLE_TIMEOUT, true, LIBDEFAULT);
+    }
+
     public List<String> getPkinitAnchors() {
         return Arrays.asList(getStringArray(
                 KrbConfigKey.PKINIT_ANCHORS, true, LIBDEFAULT));
@@ -57,6 +57,12 @@ public enum KrbConfigKey implements ConfigKey {
     DEFAULT_TKT_ENCTYPES("aes256-cts-hmac-sha1-96 aes128-cts-hmac-sha1-96 "
             + "des3-cbc-sha1 arcfour-hmac-md5 camellia256-cts-cmac "
             + "camellia128-cts-cmac des-cbc-crc des-cbc-md5 des-cbc-md4"),
+    SGT_CACHE_ENABLED(false),
+    SGT_CACHE_FILE(null),
+    SGT_CACHE_SIZE(1024),
+    KDC_CONNECTION_POOL_ENABLED(true),
+    KDC_CONNECTION_POOL_MAX_CONNECTIONS(8),
+    KDC_CONNECTION_POOL_IDLE_TIMEOUT(10),
 
     PKINIT_ANCHORS(null),
     PKINIT_IDENTITIES(null),
@@ -0,0 +1,167 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The pending result of an asynchronous KDC request. Besides waiting on it,
+ * callbacks can be added to be called when it's done, by the thread
+ * completing it, or by the adding thread if it's done already.
+ *
+ * @param <T> The result type
+ */
+public class KrbFuture<T> implements Future<T> {
+    private final CountDownLatch doneLatch = new CountDownLatch(1);
+    private List<Callback<T>> callbacks = new ArrayList<>();
+    private T result;
+    private Throwable failure;
+    private boolean done;
+
+    /**
+     * Callback on the completion of a request.
+     *
+     * @param <T> The result type
+     */
+    public interface Callback<T> {
+
+        /**
+         * Called with the result of the request.
+         * @param result The result
+         */
+        void onSuccess(T result);
+
+        /**
+         * Called with the failure of the request, a KrbException mostly.
+         * @param cause The failure
+         */
+        void onFailure(Throwable cause);
+    }
+
+    /**
+     * Add a callback to be called when the request is done.
+     * @param callback The callback
+     */
+    public void addCallback(Callback<T> callback) {
+        synchronized (this) {
+            if (!done) {
+                callbacks.add(callback);
+                return;
+            }
+        }
+        invoke(callback);
+    }
+
+    /**
+     * Complete with the result.
+     * @param value The result
+     * @return false if it's done already
+     */
+    public boolean complete(T value) {
+        return finish(value, null);
+    }
+
+    /**
+     * Complete with a failure.
+     * @param cause The failure
+     * @return false if it's done already
+     */
+    public boolean fail(Throwable cause) {
+        return finish(null, cause);
+    }
+
+    private boolean finish(T value, Throwable cause) {
+        List<Callback<T>> toNotify;
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            result = value;
+            failure = cause;
+            done = true;
+            toNotify = callbacks;
+            callbacks = null;
+        }
+        doneLatch.countDown();
+        for (Callback<T> callback : toNotify) {
+            invoke(callback);
+        }
+        return true;
+    }
+
+    private void invoke(Callback<T> callback) {
+        if (failure != null) {
+            callback.onFailure(failure);
+        } else {
+            callback.onSuccess(result);
+        }
+    }
+
+    /**
+     * Cancel the request, the reply of the KDC is ignored when it comes.
+     * @param mayInterruptIfRunning Not used
+     * @return false if it's done already
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return fail(new CancellationException());
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return failure instanceof CancellationException;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        doneLatch.await();
+        return report();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        if (!doneLatch.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return report();
+    }
+
+    private synchronized T report() throws ExecutionException {
+        if (failure instanceof CancellationException) {
+            throw (CancellationException) failure;
+        } else if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+        return result;
+    }
+}
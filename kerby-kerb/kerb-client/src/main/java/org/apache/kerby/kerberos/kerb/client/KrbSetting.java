@@ -59,6 +59,14 @@ public class KrbSetting {
         return kdcHost;
     }
 
+    /**
+     * Is the KDC host set by option, overriding the configured KDCs.
+     * @return true if the KDC host is set
+     */
+    public boolean isKdcHostSet() {
+        return commonOptions.getStringOption(KrbOption.KDC_HOST) != null;
+    }
+
     /**
      * Check kdc tcp setting and see if any bad.
      * @return valid tcp port or -1 if not allowTcp
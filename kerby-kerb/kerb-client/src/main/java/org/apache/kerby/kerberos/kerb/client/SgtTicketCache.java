@@ -0,0 +1,373 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.client;
+
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.ccache.Credential;
+import org.apache.kerby.kerberos.kerb.ccache.FileCredentialCache;
+import org.apache.kerby.kerberos.kerb.type.KerberosTime;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
+import org.apache.kerby.kerberos.kerb.type.base.PrincipalName;
+import org.apache.kerby.kerberos.kerb.type.kdc.EncTgsRepPart;
+import org.apache.kerby.kerberos.kerb.type.ticket.SgtTicket;
+import org.apache.kerby.kerberos.kerb.type.ticket.TgtTicket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An in memory cache of the service tickets obtained by a client, keyed by
+ * client principal, server principal and session key type. Cached tickets
+ * are returned while valid without asking the KDC. A ticket that was used is
+ * requested again in the background before it expires, at a jittered time so
+ * the tickets of many clients don't expire together. The tickets can also
+ * be kept in a credential cache file, to be reused after a restart, each
+ * new ticket appended to it. At most maxSize tickets are kept, making room
+ * by dropping the expired tickets, then the ones expiring first.
+ * Call {@link #close()} when done to stop the refresher thread.
+ */
+public class SgtTicketCache {
+    private static final Logger LOG = LoggerFactory.getLogger(SgtTicketCache.class);
+
+    /** Tickets expiring in less than this are not handed out, in ms */
+    private static final long MIN_REMAINING_LIFETIME = 30 * 1000L;
+    private static final int COMPACT_SLACK = 16;
+
+    /**
+     * Requests a service ticket from the KDC.
+     */
+    public interface SgtRequester {
+        SgtTicket requestSgt(TgtTicket tgt, String serverPrincipal) throws KrbException;
+    }
+
+    private final SgtRequester requester;
+    private final FileCredentialCache ccache;
+    private final int maxSize;
+    private final ConcurrentMap<CacheKey, CacheEntry> entries =
+        new ConcurrentHashMap<CacheKey, CacheEntry>();
+    private final Random random = new Random();
+    private ScheduledThreadPoolExecutor refresher;
+    private boolean closed;
+
+    /**
+     * @param requester The requester to get tickets from the KDC
+     * @param ccacheFile The credential cache file to keep tickets in, may be null
+     */
+    public SgtTicketCache(SgtRequester requester, File ccacheFile) {
+        this(requester, ccacheFile, (Integer) KrbConfigKey.SGT_CACHE_SIZE.getDefaultValue());
+    }
+
+    /**
+     * @param requester The requester to get tickets from the KDC
+     * @param ccacheFile The credential cache file to keep tickets in, may be null
+     * @param maxSize The max number of tickets to keep
+     */
+    public SgtTicketCache(SgtRequester requester, File ccacheFile, int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Invalid sgt cache size " + maxSize);
+        }
+        this.requester = requester;
+        this.maxSize = maxSize;
+        FileCredentialCache fileCache = null;
+        if (ccacheFile != null) {
+            try {
+                fileCache = new FileCredentialCache(ccacheFile);
+            } catch (IOException e) {
+                LOG.warn("Can't use the credential cache file " + ccacheFile, e);
+            }
+        }
+        this.ccache = fileCache;
+        if (ccache != null && ccacheFile.exists()) {
+            load();
+        }
+    }
+
+    /**
+     * Get a valid service ticket for the server, from the cache if there is
+     * one of the permitted enc types, otherwise from the KDC.
+     * @param tgt The tgt ticket
+     * @param serverPrincipal The server principal, with realm
+     * @param encTypes The permitted enc types, in preference order
+     * @return service ticket
+     * @throws KrbException e
+     */
+    public SgtTicket getSgt(TgtTicket tgt, String serverPrincipal,
+                            List<EncryptionType> encTypes) throws KrbException {
+        String clientPrincipal = tgt.getClientPrincipal().getName();
+        long now = System.currentTimeMillis();
+        for (EncryptionType encType : encTypes) {
+            CacheEntry entry = entries.get(new CacheKey(clientPrincipal, serverPrincipal, encType));
+            if (entry != null && entry.isValid(now)) {
+                entry.used = true;
+                return entry.sgt;
+            }
+        }
+
+        SgtTicket sgt = requester.requestSgt(tgt, serverPrincipal);
+        put(clientPrincipal, serverPrincipal, tgt, sgt, true);
+        return sgt;
+    }
+
+    /**
+     * Get the number of cached tickets.
+     * @return cache size
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Drop all the cached tickets and stop refreshing them.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+    }
+
+    /**
+     * Drop all the cached tickets and shut the refresher thread down. The
+     * tickets got afterwards are still cached but not refreshed.
+     */
+    public synchronized void close() {
+        closed = true;
+        clear();
+    }
+
+    private void put(String clientPrincipal, String serverPrincipal,
+                     TgtTicket tgt, SgtTicket sgt, boolean used) {
+        CacheKey key = new CacheKey(clientPrincipal, serverPrincipal,
+            sgt.getSessionKey().getKeyType());
+        CacheEntry entry = new CacheEntry(key, tgt, sgt);
+        entry.used = used;
+        if (!entries.containsKey(key)) {
+            makeRoom();
+        }
+        entries.put(key, entry);
+        if (tgt != null) {
+            scheduleRefresh(entry);
+        }
+        if (ccache != null) {
+            store(entry);
+        }
+    }
+
+    /**
+     * Drop the expired tickets when the cache is full, then the ticket that
+     * expires first if still full.
+     */
+    private synchronized void makeRoom() {
+        if (entries.size() < maxSize) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        CacheEntry first = null;
+        for (CacheEntry cached : entries.values()) {
+            if (!cached.isValid(now)) {
+                entries.remove(cached.key, cached);
+            } else if (first == null || cached.getEndTime() < first.getEndTime()) {
+                first = cached;
+            }
+        }
+        if (entries.size() >= maxSize && first != null) {
+            entries.remove(first.key, first);
+        }
+    }
+
+    private void scheduleRefresh(final CacheEntry entry) {
+        long start = entry.getStartTime();
+        long end = entry.getEndTime();
+        // Refresh between 80% and 90% of the lifetime
+        long lifetime = end - start;
+        long refreshAt = start + lifetime * 8 / 10 + (long) (lifetime / 10 * random.nextDouble());
+        long delay = Math.max(0, refreshAt - System.currentTimeMillis());
+
+        ScheduledThreadPoolExecutor executor = getRefresher();
+        if (executor == null) {
+            return;
+        }
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                refresh(entry);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void refresh(CacheEntry entry) {
+        if (entries.get(entry.key) != entry) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (!entry.used || entry.tgt.getEncKdcRepPart().getEndTime().lessThan(
+            now + MIN_REMAINING_LIFETIME)) {
+            // Not used since the last refresh, or no tgt to refresh with
+            entries.remove(entry.key, entry);
+            return;
+        }
+
+        try {
+            SgtTicket sgt = requester.requestSgt(entry.tgt, entry.key.serverPrincipal);
+            put(entry.key.clientPrincipal, entry.key.serverPrincipal, entry.tgt, sgt, false);
+        } catch (KrbException e) {
+            LOG.warn("Failed to refresh the service ticket for "
+                + entry.key.serverPrincipal, e);
+        }
+    }
+
+    private synchronized ScheduledThreadPoolExecutor getRefresher() {
+        if (closed) {
+            return null;
+        }
+        if (refresher == null) {
+            refresher = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "sgt-cache-refresher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            refresher.setRemoveOnCancelPolicy(true);
+        }
+        return refresher;
+    }
+
+    private synchronized void store(CacheEntry entry) {
+        PrincipalName clientPrincipal = new PrincipalName(entry.key.clientPrincipal);
+        try {
+            ccache.addCredential(new Credential(entry.sgt, clientPrincipal));
+            // Drop the replaced and expired tickets once they pile up, keeping
+            // the ones added by other processes
+            if (ccache.size() > 2 * entries.size() + COMPACT_SLACK) {
+                ccache.compact();
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to store the service ticket to " + ccache.getFile(), e);
+        }
+    }
+
+    private void load() {
+        List<Credential> credentials;
+        try {
+            credentials = ccache.getCredentials();
+        } catch (IOException e) {
+            LOG.warn("Failed to load the service tickets from " + ccache.getFile(), e);
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for (Credential credential : credentials) {
+            EncTgsRepPart repPart = new EncTgsRepPart();
+            repPart.setKey(credential.getKey());
+            repPart.setSname(credential.getServerName());
+            repPart.setSrealm(credential.getServerName().getRealm());
+            repPart.setAuthTime(credential.getAuthTime());
+            repPart.setStartTime(credential.getStartTime());
+            repPart.setEndTime(credential.getEndTime());
+            repPart.setRenewTill(credential.getRenewTill());
+            repPart.setFlags(credential.getTicketFlags());
+            repPart.setCaddr(credential.getClientAddresses());
+            SgtTicket sgt = new SgtTicket(credential.getTicket(), repPart);
+
+            CacheKey key = new CacheKey(credential.getClientName().getName(),
+                credential.getServerName().getName(), credential.getKey().getKeyType());
+            CacheEntry entry = new CacheEntry(key, null, sgt);
+            if (entry.isValid(now)) {
+                if (!entries.containsKey(key)) {
+                    makeRoom();
+                }
+                entries.put(key, entry);
+            }
+        }
+    }
+
+    private static final class CacheKey {
+        private final String clientPrincipal;
+        private final String serverPrincipal;
+        private final EncryptionType encType;
+
+        CacheKey(String clientPrincipal, String serverPrincipal, EncryptionType encType) {
+            this.clientPrincipal = clientPrincipal;
+            this.serverPrincipal = serverPrincipal;
+            this.encType = encType;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey other = (CacheKey) obj;
+            return encType == other.encType && clientPrincipal.equals(other.clientPrincipal)
+                && serverPrincipal.equals(other.serverPrincipal);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = clientPrincipal.hashCode();
+            result = 31 * result + serverPrincipal.hashCode();
+            return 31 * result + encType.hashCode();
+        }
+    }
+
+    private static final class CacheEntry {
+        private final CacheKey key;
+        private final TgtTicket tgt;
+        private final SgtTicket sgt;
+        private volatile boolean used;
+
+        CacheEntry(CacheKey key, TgtTicket tgt, SgtTicket sgt) {
+            this.key = key;
+            this.tgt = tgt;
+            this.sgt = sgt;
+        }
+
+        long getStartTime() {
+            KerberosTime startTime = sgt.getEncKdcRepPart().getStartTime();
+            if (startTime == null) {
+                startTime = sgt.getEncKdcRepPart().getAuthTime();
+            }
+            return startTime.getTime();
+        }
+
+        long getEndTime() {
+            return sgt.getEncKdcRepPart().getEndTime().getTime();
+        }
+
+        boolean isValid(long now) {
+            return getEndTime() > now + MIN_REMAINING_LIFETIME;
+        }
+    }
+}
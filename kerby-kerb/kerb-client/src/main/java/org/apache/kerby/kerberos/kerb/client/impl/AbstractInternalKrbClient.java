@@ -77,6 +77,16 @@ public abstract class AbstractInternalKrbClient implements InternalKrbClient {
      */
     @Override
     public TgtTicket requestTgt(KOptions requestOptions) throws KrbException {
+        return doRequestTgt(makeAsRequest(requestOptions));
+    }
+
+    /**
+     * Make the AS request according to the request options.
+     * @param requestOptions The request options
+     * @return The AS request
+     * @throws KrbException e
+     */
+    protected AsRequest makeAsRequest(KOptions requestOptions) throws KrbException {
         AsRequest asRequest = null;
 
         if (requestOptions.contains(KrbOption.USE_PASSWD)) {
@@ -116,7 +126,7 @@ public abstract class AbstractInternalKrbClient implements InternalKrbClient {
 
         asRequest.setRequestOptions(requestOptions);
 
-        return doRequestTgt(asRequest);
+        return asRequest;
     }
 
     /**
@@ -124,6 +134,16 @@ public abstract class AbstractInternalKrbClient implements InternalKrbClient {
      */
     @Override
     public SgtTicket requestSgt(KOptions requestOptions) throws KrbException {
+        return doRequestSgt(makeTgsRequest(requestOptions));
+    }
+
+    /**
+     * Make the TGS request according to the request options.
+     * @param requestOptions The request options
+     * @return The TGS request
+     * @throws KrbException e
+     */
+    protected TgsRequest makeTgsRequest(KOptions requestOptions) throws KrbException {
         TgsRequest tgsRequest = null;
         if (requestOptions.contains(TokenOption.USER_AC_TOKEN)) {
             tgsRequest = new TgsRequestWithToken(context);
@@ -143,7 +163,7 @@ public abstract class AbstractInternalKrbClient implements InternalKrbClient {
         tgsRequest.setServerPrincipal(new PrincipalName(serverPrincipal));
         tgsRequest.setRequestOptions(requestOptions);
 
-        return doRequestSgt(tgsRequest);
+        return tgsRequest;
     }
 
     protected abstract TgtTicket doRequestTgt(
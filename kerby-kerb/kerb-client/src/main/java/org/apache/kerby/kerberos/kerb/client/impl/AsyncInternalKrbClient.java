@@ -0,0 +1,276 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.client.impl;
+
+import org.apache.kerby.KOptions;
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.client.ClientUtil;
+import org.apache.kerby.kerberos.kerb.client.KrbConfig;
+import org.apache.kerby.kerberos.kerb.client.KrbFuture;
+import org.apache.kerby.kerberos.kerb.client.KrbSetting;
+import org.apache.kerby.kerberos.kerb.client.request.AsRequest;
+import org.apache.kerby.kerberos.kerb.client.request.KdcRequest;
+import org.apache.kerby.kerberos.kerb.client.request.TgsRequest;
+import org.apache.kerby.kerberos.kerb.transport.AbstractKrbTransport;
+import org.apache.kerby.kerberos.kerb.transport.TransportPair;
+import org.apache.kerby.kerberos.kerb.type.ticket.SgtTicket;
+import org.apache.kerby.kerberos.kerb.type.ticket.TgtTicket;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A krb client implementation with requests not blocking the caller. Any
+ * number of requests can be going on at once, their messages exchanged by a
+ * single network thread and their replies processed by a few worker threads,
+ * as many as the processors.
+ */
+public class AsyncInternalKrbClient extends AbstractInternalKrbClient {
+    private static final AtomicInteger THREAD_ID = new AtomicInteger();
+
+    private AsyncKrbHandler krbHandler;
+    private AsyncKrbNetwork network;
+    private ExecutorService workers;
+    private InetSocketAddress kdcAddress;
+    private boolean tcp;
+
+    public AsyncInternalKrbClient(KrbSetting krbSetting) {
+        super(krbSetting);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void init() throws KrbException {
+        super.init();
+
+        krbHandler = new AsyncKrbHandler();
+        krbHandler.init(getContext());
+
+        // TCP preferred, as by the blocking client
+        TransportPair tpair = ClientUtil.getTransportPair(getSetting());
+        tcp = tpair.tcpAddress != null;
+        kdcAddress = tcp ? tpair.tcpAddress : tpair.udpAddress;
+
+        workers = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "krb-async-worker-" + THREAD_ID.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        KrbConfig krbConfig = getSetting().getKrbConfig();
+        long idleTimeout = krbConfig.isConnectionPoolEnabled()
+            ? krbConfig.getConnectionPoolIdleTimeout() * 1000L : 0;
+        network = new AsyncKrbNetwork(workers, getSetting().getTimeout(), idleTimeout);
+        try {
+            network.start();
+        } catch (IOException e) {
+            workers.shutdown();
+            throw new KrbException("Failed to start async network", e);
+        }
+    }
+
+    /**
+     * Request a TGT without waiting for it.
+     * @param requestOptions The request options
+     * @return The future TGT
+     */
+    public KrbFuture<TgtTicket> requestTgtAsync(KOptions requestOptions) {
+        final AsRequest asRequest;
+        try {
+            asRequest = makeAsRequest(requestOptions);
+        } catch (KrbException e) {
+            return failed(e);
+        }
+        return new AsyncCall<TgtTicket>(asRequest) {
+            @Override
+            protected TgtTicket getResult() {
+                return asRequest.getTicket();
+            }
+        }.start();
+    }
+
+    /**
+     * Request a service ticket without waiting for it.
+     * @param requestOptions The request options
+     * @return The future service ticket
+     */
+    public KrbFuture<SgtTicket> requestSgtAsync(KOptions requestOptions) {
+        final TgsRequest tgsRequest;
+        try {
+            tgsRequest = makeTgsRequest(requestOptions);
+        } catch (KrbException e) {
+            return failed(e);
+        }
+        return new AsyncCall<SgtTicket>(tgsRequest) {
+            @Override
+            protected SgtTicket getResult() {
+                return tgsRequest.getSgt();
+            }
+        }.start();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected TgtTicket doRequestTgt(final AsRequest tgtTktReq) throws KrbException {
+        return await(new AsyncCall<TgtTicket>(tgtTktReq) {
+            @Override
+            protected TgtTicket getResult() {
+                return tgtTktReq.getTicket();
+            }
+        }.start());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected SgtTicket doRequestSgt(final TgsRequest ticketReq) throws KrbException {
+        return await(new AsyncCall<SgtTicket>(ticketReq) {
+            @Override
+            protected SgtTicket getResult() {
+                return ticketReq.getSgt();
+            }
+        }.start());
+    }
+
+    /**
+     * Stop the network and worker threads, failing the requests going on.
+     */
+    public void release() {
+        network.stop();
+        workers.shutdown();
+    }
+
+    private static <T> KrbFuture<T> failed(KrbException e) {
+        KrbFuture<T> future = new KrbFuture<>();
+        future.fail(e);
+        return future;
+    }
+
+    private static <T> T await(KrbFuture<T> future) throws KrbException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KrbException("Interrupted waiting for KDC reply", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof KrbException) {
+                throw (KrbException) e.getCause();
+            }
+            throw new KrbException("Request failed", e.getCause());
+        }
+    }
+
+    /**
+     * A request going on, serving as its transport so the handler sends the
+     * messages through the network, whose replies are handled in turn till
+     * the request is done. The handler may send again, for preauth.
+     *
+     * @param <T> The ticket type
+     */
+    private abstract class AsyncCall<T> extends AbstractKrbTransport
+            implements AsyncKrbNetwork.ReplyHandler {
+        private final KdcRequest request;
+        private final KrbFuture<T> future = new KrbFuture<>();
+        private int sent;
+
+        AsyncCall(KdcRequest request) {
+            this.request = request;
+            request.setSessionData(this);
+            setAttachment(request);
+        }
+
+        protected abstract T getResult();
+
+        synchronized KrbFuture<T> start() {
+            try {
+                krbHandler.handleRequest(request);
+            } catch (KrbException e) {
+                future.fail(e);
+            }
+            return future;
+        }
+
+        @Override
+        public synchronized void onReply(ByteBuffer message) {
+            if (future.isDone()) {
+                return;
+            }
+            int sentBefore = sent;
+            try {
+                krbHandler.onResponseMessage(request, message);
+                if (sent == sentBefore) {
+                    if (request.getKdcRep() == null) {
+                        future.fail(new KrbException("No ticket in KDC reply"));
+                    } else {
+                        future.complete(getResult());
+                    }
+                }
+            } catch (KrbException | RuntimeException e) {
+                future.fail(e);
+            }
+        }
+
+        @Override
+        public void onError(IOException e) {
+            future.fail(new KrbException("Failed to exchange messages with KDC", e));
+        }
+
+        @Override
+        public void sendMessage(ByteBuffer message) throws IOException {
+            sent++;
+            network.send(kdcAddress, tcp, message, this);
+        }
+
+        @Override
+        public ByteBuffer receiveMessage() throws IOException {
+            throw new IOException("Replies are handled asynchronously");
+        }
+
+        @Override
+        public boolean isTcp() {
+            return tcp;
+        }
+
+        @Override
+        public InetAddress getRemoteAddress() {
+            return kdcAddress.getAddress();
+        }
+
+        @Override
+        public void release() {
+            // Channels are closed by the network
+        }
+    }
+}
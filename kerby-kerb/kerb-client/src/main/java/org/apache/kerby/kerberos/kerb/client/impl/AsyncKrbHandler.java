@@ -0,0 +1,75 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.client.impl;
+
+import org.apache.kerby.kerberos.kerb.KrbCodec;
+import org.apache.kerby.kerberos.kerb.KrbErrorCode;
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.client.KrbHandler;
+import org.apache.kerby.kerberos.kerb.client.request.KdcRequest;
+import org.apache.kerby.kerberos.kerb.transport.KrbTransport;
+import org.apache.kerby.kerberos.kerb.type.base.KrbError;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Krb handler sending the messages without waiting for the replies, which
+ * are given back by the network when they come.
+ */
+public class AsyncKrbHandler extends KrbHandler {
+    // Application tag of KRB-ERROR
+    private static final byte KRB_ERROR_TAG = 0x7e;
+
+    /**
+     * {@inheritDoc}
+     *
+     * A KDC error other than one asking for preauth fails the request.
+     */
+    @Override
+    public void onResponseMessage(KdcRequest kdcRequest,
+                                  ByteBuffer responseMessage) throws KrbException {
+        if (responseMessage.hasRemaining()
+            && responseMessage.get(responseMessage.position()) == KRB_ERROR_TAG) {
+            KrbError error;
+            try {
+                error = (KrbError) KrbCodec.decodeMessage(responseMessage.duplicate());
+            } catch (IOException e) {
+                throw new KrbException("Krb decoding message failed", e);
+            }
+            if (error.getErrorCode() != KrbErrorCode.KDC_ERR_PREAUTH_REQUIRED) {
+                String text = error.getEtext();
+                throw text != null ? new KrbException(error.getErrorCode(), text)
+                    : new KrbException(error.getErrorCode());
+            }
+        }
+        super.onResponseMessage(kdcRequest, responseMessage);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void sendMessage(KdcRequest kdcRequest,
+                               ByteBuffer requestMessage) throws IOException {
+        KrbTransport transport = (KrbTransport) kdcRequest.getSessionData();
+        transport.sendMessage(requestMessage);
+    }
+}
@@ -0,0 +1,538 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.client.impl;
+
+import org.apache.kerby.kerberos.kerb.transport.ByteBufferPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * Non-blocking client network, exchanging the messages of any number of
+ * requests with KDCs from a single selector thread. Each exchange has its own
+ * channel while it goes on, so a reply is matched to its request by the
+ * channel it comes on, UDP replies included. A TCP channel is kept once its
+ * exchange is done, and the next exchange with the same KDC goes on it rather
+ * than on a new connection, so the requests to a KDC are sent one after
+ * another on each of its connections. Idle channels closed by the KDC are
+ * dropped, and those idle for the idle timeout are closed. An exchange
+ * failing on a kept channel before any byte of the reply is sent once again
+ * on a new connection. Replies are handed to an executor to be processed, so
+ * the selector thread only does I/O.
+ */
+public class AsyncKrbNetwork implements Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncKrbNetwork.class);
+
+    private static final int MAX_UDP_MESSAGE_SIZE = 65507;
+    // How often exchanges are checked for timeout, at most
+    private static final long TIMEOUT_CHECK_INTERVAL = 100;
+    private static final long DEFAULT_IDLE_TIMEOUT = 60 * 1000;
+
+    private final Executor executor;
+    private final int timeout;
+    private final long idleTimeout;
+    private final Queue<Exchange> newExchanges = new ConcurrentLinkedQueue<>();
+    // The kept TCP channels by KDC, the most recently used first, only used
+    // by the selector thread
+    private final Map<InetSocketAddress, Deque<IdleChannel>> idleChannels = new HashMap<>();
+    private Selector selector;
+    private Thread selectorThread;
+    private volatile boolean running;
+
+    /**
+     * Callback on the end of a message exchange, called on the executor.
+     */
+    public interface ReplyHandler {
+
+        /**
+         * Called with the reply message.
+         * @param message The message, without the TCP length prefix
+         */
+        void onReply(ByteBuffer message);
+
+        /**
+         * Called when the exchange failed or timed out.
+         * @param e The error
+         */
+        void onError(IOException e);
+    }
+
+    /**
+     * @param executor The executor to process replies with
+     * @param timeout The time in milliseconds to wait for a reply
+     */
+    public AsyncKrbNetwork(Executor executor, int timeout) {
+        this(executor, timeout, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * @param executor The executor to process replies with
+     * @param timeout The time in milliseconds to wait for a reply
+     * @param idleTimeout The time in milliseconds to keep an idle TCP channel,
+     *                    0 not to keep them
+     */
+    public AsyncKrbNetwork(Executor executor, int timeout, long idleTimeout) {
+        this.executor = executor;
+        this.timeout = timeout;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Start the selector thread.
+     * @throws IOException e
+     */
+    public synchronized void start() throws IOException {
+        selector = Selector.open();
+        running = true;
+        selectorThread = new Thread(this, "krb-async-network");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    /**
+     * Send a message to a KDC and wait for its reply, without blocking.
+     * @param address The KDC address
+     * @param tcp true to use TCP, the message is then length prefixed
+     * @param message The message
+     * @param handler The handler of the reply
+     */
+    public void send(InetSocketAddress address, boolean tcp,
+                     ByteBuffer message, ReplyHandler handler) {
+        Exchange exchange = new Exchange(address, tcp, message, handler);
+        if (!running) {
+            fail(exchange, new IOException("Network is stopped"));
+            return;
+        }
+
+        // TCP channels are got by the selector thread, kept ones or new ones
+        if (!tcp) {
+            try {
+                DatagramChannel datagramChannel = DatagramChannel.open();
+                datagramChannel.configureBlocking(false);
+                datagramChannel.connect(address);
+                exchange.channel = datagramChannel;
+            } catch (IOException e) {
+                fail(exchange, e);
+                return;
+            }
+        }
+
+        newExchanges.add(exchange);
+        selector.wakeup();
+        // Stopped meanwhile, the selector thread may have missed it
+        if (!running && newExchanges.remove(exchange)) {
+            fail(exchange, new IOException("Network is stopped"));
+        }
+    }
+
+    /**
+     * Stop the selector thread, failing the exchanges going on.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join(timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select(TIMEOUT_CHECK_INTERVAL);
+                register();
+
+                Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
+                while (iter.hasNext()) {
+                    SelectionKey key = iter.next();
+                    iter.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.attachment() instanceof IdleChannel) {
+                        // Nothing is expected, closed by the KDC or out of sync
+                        closeIdle((IdleChannel) key.attachment());
+                        continue;
+                    }
+                    Exchange exchange = (Exchange) key.attachment();
+                    try {
+                        exchange.handle(key);
+                    } catch (IOException e) {
+                        retryOrFail(exchange, e);
+                    }
+                }
+
+                checkTimeouts();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            LOG.error("Async krb network failed", e);
+        } finally {
+            shutdown();
+        }
+    }
+
+    private void register() {
+        Exchange exchange;
+        while ((exchange = newExchanges.poll()) != null) {
+            try {
+                if (exchange.tcp) {
+                    connect(exchange, true);
+                } else {
+                    exchange.channel.register(selector, SelectionKey.OP_WRITE, exchange);
+                }
+            } catch (IOException e) {
+                fail(exchange, e);
+            }
+        }
+    }
+
+    /**
+     * Get the exchange a TCP channel, a kept one if any and allowed, or a new
+     * one.
+     */
+    private void connect(Exchange exchange, boolean reuse) throws IOException {
+        SocketChannel socketChannel = reuse ? pollIdle(exchange.address) : null;
+        if (socketChannel != null) {
+            exchange.reused = true;
+            exchange.channel = socketChannel;
+            SelectionKey key = socketChannel.keyFor(selector);
+            key.attach(exchange);
+            key.interestOps(SelectionKey.OP_WRITE);
+            return;
+        }
+
+        socketChannel = SocketChannel.open();
+        exchange.reused = false;
+        exchange.channel = socketChannel;
+        socketChannel.configureBlocking(false);
+        boolean connected = socketChannel.connect(exchange.address);
+        socketChannel.register(selector, connected ? SelectionKey.OP_WRITE : SelectionKey.OP_CONNECT,
+            exchange);
+    }
+
+    private SocketChannel pollIdle(InetSocketAddress address) {
+        Deque<IdleChannel> idle = idleChannels.get(address);
+        IdleChannel idleChannel;
+        while (idle != null && (idleChannel = idle.pollFirst()) != null) {
+            if (isAlive(idleChannel.channel)) {
+                return idleChannel.channel;
+            }
+            closeQuietly(idleChannel.channel);
+        }
+        return null;
+    }
+
+    /**
+     * Check a kept channel, its close may not be selected yet.
+     */
+    private static boolean isAlive(SocketChannel channel) {
+        try {
+            return channel.isOpen() && channel.read(ByteBuffer.allocate(1)) == 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Keep the channel of a TCP exchange done, watching it for a close by
+     * the KDC.
+     */
+    private void keepIdle(Exchange exchange) {
+        SocketChannel socketChannel = (SocketChannel) exchange.channel;
+        SelectionKey key = socketChannel.keyFor(selector);
+        if (!running || idleTimeout <= 0 || key == null || !key.isValid()) {
+            closeQuietly(socketChannel);
+            return;
+        }
+        IdleChannel idleChannel = new IdleChannel(exchange.address, socketChannel);
+        key.attach(idleChannel);
+        key.interestOps(SelectionKey.OP_READ);
+        Deque<IdleChannel> idle = idleChannels.get(exchange.address);
+        if (idle == null) {
+            idle = new ArrayDeque<>();
+            idleChannels.put(exchange.address, idle);
+        }
+        idle.addFirst(idleChannel);
+    }
+
+    private void closeIdle(IdleChannel idleChannel) {
+        Deque<IdleChannel> idle = idleChannels.get(idleChannel.address);
+        if (idle != null) {
+            idle.remove(idleChannel);
+        }
+        closeQuietly(idleChannel.channel);
+    }
+
+    private static void closeQuietly(SelectableChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOG.debug("Failed to close channel", e);
+        }
+    }
+
+    /**
+     * Send the message again on a new connection if the exchange failed on a
+     * kept channel before any byte of the reply, as when the KDC closed it
+     * meanwhile.
+     */
+    private void retryOrFail(Exchange exchange, IOException e) {
+        if (!exchange.reused || exchange.retried || exchange.replied()) {
+            fail(exchange, e);
+            return;
+        }
+        LOG.debug("Kept connection to {} failed, sending again on a new one", exchange.address, e);
+        closeQuietly(exchange.channel);
+        exchange.retried = true;
+        exchange.restart();
+        try {
+            connect(exchange, false);
+        } catch (IOException ioe) {
+            fail(exchange, ioe);
+        }
+    }
+
+    private void checkTimeouts() {
+        long now = System.currentTimeMillis();
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if (attachment instanceof IdleChannel) {
+                IdleChannel idleChannel = (IdleChannel) attachment;
+                if (now - idleChannel.since >= idleTimeout) {
+                    closeIdle(idleChannel);
+                }
+            } else if (attachment != null && now >= ((Exchange) attachment).deadline) {
+                fail((Exchange) attachment, new SocketTimeoutException("No reply in " + timeout + " ms"));
+            }
+        }
+    }
+
+    private void shutdown() {
+        IOException stopped = new IOException("Network is stopped");
+        Exchange exchange;
+        while ((exchange = newExchanges.poll()) != null) {
+            fail(exchange, stopped);
+        }
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if (attachment instanceof IdleChannel) {
+                closeQuietly(((IdleChannel) attachment).channel);
+            } else if (attachment != null) {
+                fail((Exchange) attachment, stopped);
+            }
+        }
+        idleChannels.clear();
+        try {
+            selector.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close selector", e);
+        }
+    }
+
+    private void succeed(final Exchange exchange, final ByteBuffer reply) {
+        if (!exchange.finish()) {
+            return;
+        }
+        if (exchange.tcp) {
+            keepIdle(exchange);
+        } else {
+            closeQuietly(exchange.channel);
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                exchange.handler.onReply(reply);
+            }
+        });
+    }
+
+    private void fail(final Exchange exchange, final IOException e) {
+        if (!exchange.close()) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                exchange.handler.onError(e);
+            }
+        });
+    }
+
+    /**
+     * A kept TCP channel, waiting for the next exchange with its KDC.
+     */
+    private static final class IdleChannel {
+        private final InetSocketAddress address;
+        private final SocketChannel channel;
+        private final long since = System.currentTimeMillis();
+
+        IdleChannel(InetSocketAddress address, SocketChannel channel) {
+            this.address = address;
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * A request message sent and its reply read on a channel.
+     */
+    private final class Exchange {
+        private final InetSocketAddress address;
+        private final boolean tcp;
+        private final ByteBuffer message;
+        private final int messageStart;
+        private final ReplyHandler handler;
+        private final long deadline;
+        private volatile SelectableChannel channel;
+        private boolean reused;
+        private boolean retried;
+        private ByteBuffer lengthBuffer;
+        private ByteBuffer reply;
+        private boolean closed;
+
+        Exchange(InetSocketAddress address, boolean tcp,
+                 ByteBuffer message, ReplyHandler handler) {
+            this.address = address;
+            this.tcp = tcp;
+            this.message = message;
+            this.messageStart = message.position();
+            this.handler = handler;
+            this.deadline = System.currentTimeMillis() + timeout;
+        }
+
+        void handle(SelectionKey key) throws IOException {
+            if (key.isConnectable()) {
+                ((SocketChannel) channel).finishConnect();
+                key.interestOps(SelectionKey.OP_WRITE);
+            } else if (key.isWritable()) {
+                if (tcp) {
+                    ((SocketChannel) channel).write(message);
+                } else {
+                    ((DatagramChannel) channel).write(message);
+                }
+                if (!message.hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            } else if (key.isReadable()) {
+                if (tcp) {
+                    readTcp();
+                } else {
+                    ByteBuffer buffer = ByteBuffer.allocate(MAX_UDP_MESSAGE_SIZE);
+                    if (((DatagramChannel) channel).read(buffer) > 0) {
+                        buffer.flip();
+                        succeed(this, buffer);
+                    }
+                }
+            }
+        }
+
+        private void readTcp() throws IOException {
+            SocketChannel socketChannel = (SocketChannel) channel;
+            if (reply == null) {
+                if (lengthBuffer == null) {
+                    lengthBuffer = ByteBuffer.allocate(4);
+                }
+                if (socketChannel.read(lengthBuffer) < 0) {
+                    throw new IOException("Connection closed by KDC");
+                }
+                if (lengthBuffer.hasRemaining()) {
+                    return;
+                }
+                lengthBuffer.flip();
+                int length = lengthBuffer.getInt();
+                if (length <= 0 || length > ByteBufferPool.getDefault().getMaxBufferSize()) {
+                    throw new IOException("Invalid message length: " + length);
+                }
+                reply = ByteBuffer.allocate(length);
+            }
+            if (socketChannel.read(reply) < 0) {
+                throw new IOException("Connection closed by KDC");
+            }
+            if (!reply.hasRemaining()) {
+                reply.flip();
+                succeed(this, reply);
+            }
+        }
+
+        /**
+         * @return true if any byte of the reply is read
+         */
+        boolean replied() {
+            return reply != null || lengthBuffer != null && lengthBuffer.position() > 0;
+        }
+
+        /**
+         * Start over, to send the message again on another channel.
+         */
+        void restart() {
+            message.position(messageStart);
+            lengthBuffer = null;
+            reply = null;
+        }
+
+        /**
+         * Mark the exchange done, leaving the channel open.
+         * @return false if closed already
+         */
+        synchronized boolean finish() {
+            if (closed) {
+                return false;
+            }
+            closed = true;
+            return true;
+        }
+
+        /**
+         * @return false if closed already
+         */
+        synchronized boolean close() {
+            if (!finish()) {
+                return false;
+            }
+            if (channel != null) {
+                closeQuietly(channel);
+            }
+            return true;
+        }
+    }
+}
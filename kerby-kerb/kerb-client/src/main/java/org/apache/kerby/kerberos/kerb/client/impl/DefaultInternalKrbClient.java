@@ -21,24 +21,46 @@ package org.apache.kerby.kerberos.kerb.client.impl;
 
 import org.apache.kerby.kerberos.kerb.KrbException;
 import org.apache.kerby.kerberos.kerb.client.ClientUtil;
+import org.apache.kerby.kerberos.kerb.client.KrbConfig;
 import org.apache.kerby.kerberos.kerb.client.KrbSetting;
 import org.apache.kerby.kerberos.kerb.client.request.AsRequest;
+import org.apache.kerby.kerberos.kerb.client.request.KdcRequest;
 import org.apache.kerby.kerberos.kerb.client.request.TgsRequest;
+import org.apache.kerby.kerberos.kerb.transport.KrbConnectionPool;
 import org.apache.kerby.kerberos.kerb.transport.KrbNetwork;
 import org.apache.kerby.kerberos.kerb.transport.KrbTransport;
+import org.apache.kerby.kerberos.kerb.transport.KrbUdpTransport;
 import org.apache.kerby.kerberos.kerb.transport.TransportPair;
 import org.apache.kerby.kerberos.kerb.type.ticket.SgtTicket;
 import org.apache.kerby.kerberos.kerb.type.ticket.TgtTicket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * A default krb client implementation.
+ * A default krb client implementation. Over TCP, each request leases a
+ * connection from a pool shared by the clients, so concurrent requests go
+ * over their own connections and later ones reuse them. A request failing on
+ * a reused connection before any byte of the reply, as when the KDC closes
+ * the connections after each reply, is sent once again on a new connection
+ * by {@link PooledKdcTransport}. Otherwise requests from concurrent callers
+ * are serialized over the shared transport by a lock rather than a monitor,
+ * so callers on virtual threads don't pin their carrier threads while
+ * blocking on the network. When the realm lists several KDCs, requests go
+ * through a {@link MultiKdcTransport} racing them.
  */
 public class DefaultInternalKrbClient extends AbstractInternalKrbClient {
+    private static final Logger LOG = LoggerFactory.getLogger(DefaultInternalKrbClient.class);
 
     private DefaultKrbHandler krbHandler;
     private KrbTransport transport;
+    private final Lock transportLock = new ReentrantLock();
+    private KrbConnectionPool connectionPool;
+    private TransportPair tpair;
 
     public DefaultInternalKrbClient(KrbSetting krbSetting) {
         super(krbSetting);
@@ -54,7 +76,21 @@ public class DefaultInternalKrbClient extends AbstractInternalKrbClient {
         this.krbHandler = new DefaultKrbHandler();
         krbHandler.init(getContext());
 
-        TransportPair tpair = ClientUtil.getTransportPair(getSetting());
+        List<TransportPair> tpairs = ClientUtil.getTransportPairs(getSetting());
+        if (tpairs.size() > 1) {
+            transport = new MultiKdcTransport(tpairs, getSetting().getTimeout());
+            return;
+        }
+
+        tpair = tpairs.get(0);
+        KrbConfig krbConfig = getSetting().getKrbConfig();
+        if (tpair.tcpAddress != null && krbConfig.isConnectionPoolEnabled()) {
+            connectionPool = KrbConnectionPool.getShared(
+                krbConfig.getConnectionPoolMaxConnections(),
+                krbConfig.getConnectionPoolIdleTimeout() * 1000L);
+            return;
+        }
+
         KrbNetwork network = new KrbNetwork();
         network.setSocketTimeout(getSetting().getTimeout());
         try {
@@ -69,10 +105,7 @@ public class DefaultInternalKrbClient extends AbstractInternalKrbClient {
      */
     @Override
     protected TgtTicket doRequestTgt(AsRequest tgtTktReq) throws KrbException {
-        tgtTktReq.setSessionData(transport);
-
-        krbHandler.handleRequest(tgtTktReq);
-
+        handleRequest(tgtTktReq);
         return tgtTktReq.getTicket();
     }
 
@@ -81,11 +114,59 @@ public class DefaultInternalKrbClient extends AbstractInternalKrbClient {
      */
     @Override
     protected SgtTicket doRequestSgt(TgsRequest ticketReq) throws KrbException {
-        ticketReq.setSessionData(transport);
+        handleRequest(ticketReq);
+        return ticketReq.getSgt();
+    }
 
-        krbHandler.handleRequest(ticketReq);
+    private void handleRequest(KdcRequest kdcRequest) throws KrbException {
+        KrbTransport pooled = leaseTransport();
+        if (pooled != null) {
+            kdcRequest.setSessionData(pooled);
+            try {
+                krbHandler.handleRequest(kdcRequest);
+            } finally {
+                pooled.release();
+            }
+            return;
+        }
 
-        return ticketReq.getSgt();
+        transportLock.lock();
+        try {
+            if (transport == null) {
+                transport = connectUdp();
+            }
+            kdcRequest.setSessionData(transport);
+            krbHandler.handleRequest(kdcRequest);
+        } finally {
+            transportLock.unlock();
+        }
     }
 
+    /**
+     * Lease a pooled TCP connection, null if not pooled, or if TCP failed and
+     * UDP is allowed.
+     */
+    private KrbTransport leaseTransport() throws KrbException {
+        if (connectionPool == null) {
+            return null;
+        }
+        try {
+            return new PooledKdcTransport(connectionPool, tpair.tcpAddress, getSetting().getTimeout(),
+                    connectionPool.lease(tpair.tcpAddress, getSetting().getTimeout()));
+        } catch (IOException e) {
+            if (tpair.udpAddress == null) {
+                throw new KrbException("Failed to create transport", e);
+            }
+            LOG.debug("Failed to connect with TCP, falling back to UDP", e);
+            return null;
+        }
+    }
+
+    private KrbTransport connectUdp() throws KrbException {
+        try {
+            return new KrbUdpTransport(tpair.udpAddress);
+        } catch (IOException e) {
+            throw new KrbException("Failed to create transport", e);
+        }
+    }
 }
@@ -44,7 +44,11 @@ public class DefaultKrbHandler extends KrbHandler {
         } catch (IOException e) {
             throw new KrbException("Receiving response message failed", e);
         }
-        super.onResponseMessage(kdcRequest, receivedMessage);
+        try {
+            super.onResponseMessage(kdcRequest, receivedMessage);
+        } finally {
+            transport.releaseMessage(receivedMessage);
+        }
     }
 
     /**
@@ -0,0 +1,390 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.client.impl;
+
+import org.apache.kerby.kerberos.kerb.transport.AbstractKrbTransport;
+import org.apache.kerby.kerberos.kerb.transport.KrbNetwork;
+import org.apache.kerby.kerberos.kerb.transport.KrbTransport;
+import org.apache.kerby.kerberos.kerb.transport.TransportPair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A transport over the several KDCs of a realm. A request goes first to the
+ * KDC with the best record, by smoothed latency and error rate, and is raced
+ * against the next one when no reply comes within the usual latency of the
+ * KDC plus some deviations, or right away when the KDC fails. The first reply
+ * wins and the other attempts are dropped.
+ *
+ * Requests are expected to be serialized by the caller, as they are over a
+ * single KDC transport.
+ */
+public class MultiKdcTransport extends AbstractKrbTransport {
+    private static final Logger LOG = LoggerFactory.getLogger(MultiKdcTransport.class);
+
+    // Weight of a new sample in the moving averages
+    private static final double ALPHA = 0.2;
+    private static final long MIN_HEDGE_DELAY = 10;
+    // A KDC failed this recently goes after the healthy ones
+    private static final long FAILURE_PENALTY_TIME = 30 * 1000;
+
+    private static final AtomicInteger THREAD_ID = new AtomicInteger();
+
+    private final List<KdcEndpoint> endpoints;
+    private final int timeout;
+    private final boolean tcp;
+    private final ExecutorService executor;
+
+    private ByteBuffer request;
+    private KrbTransport responder;
+
+    /**
+     * @param tpairs The addresses of the KDCs, in the configured order
+     * @param timeout The time in milliseconds to wait for a reply
+     */
+    public MultiKdcTransport(List<TransportPair> tpairs, int timeout) {
+        this.timeout = timeout;
+        this.endpoints = new ArrayList<>(tpairs.size());
+        boolean anyTcp = false;
+        for (TransportPair tpair : tpairs) {
+            endpoints.add(new KdcEndpoint(tpair));
+            anyTcp |= tpair.tcpAddress != null;
+        }
+        this.tcp = anyTcp;
+
+        this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "krb-kdc-request-" + THREAD_ID.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Connect to a KDC, overridable for tests.
+     * @param tpair The KDC addresses
+     * @return The transport
+     * @throws IOException e
+     */
+    protected KrbTransport connect(TransportPair tpair) throws IOException {
+        KrbNetwork network = new KrbNetwork();
+        network.setSocketTimeout(timeout);
+        return network.connect(tpair);
+    }
+
+    /**
+     * Keep the message, it's sent out when the reply is waited for.
+     * @param message The message to be sent
+     */
+    @Override
+    public void sendMessage(ByteBuffer message) throws IOException {
+        this.request = message;
+    }
+
+    @Override
+    public ByteBuffer receiveMessage() throws IOException {
+        if (request == null) {
+            throw new IOException("No message to send");
+        }
+        ByteBuffer message = request;
+        request = null;
+        responder = null;
+
+        List<KdcEndpoint> ranked = rank();
+        CompletionService<ByteBuffer> completion = new ExecutorCompletionService<>(executor);
+        Map<Future<ByteBuffer>, Attempt> running = new HashMap<>();
+        long deadline = System.currentTimeMillis() + timeout;
+        IOException lastError = null;
+        int next = 0;
+        Attempt last = null;
+
+        try {
+            while (true) {
+                if (running.isEmpty()) {
+                    if (next == ranked.size()) {
+                        break;
+                    }
+                    last = start(ranked.get(next++), message, completion, running);
+                }
+
+                long now = System.currentTimeMillis();
+                if (now >= deadline) {
+                    break;
+                }
+                long wait = deadline - now;
+                if (next < ranked.size()) {
+                    long hedgeAt = last.startTime + last.endpoint.getHedgeDelay(timeout);
+                    wait = Math.min(wait, Math.max(hedgeAt - now, 0));
+                }
+
+                Future<ByteBuffer> done = completion.poll(wait, TimeUnit.MILLISECONDS);
+                if (done == null) {
+                    if (next < ranked.size() && System.currentTimeMillis() < deadline) {
+                        LOG.debug("No reply from {} yet, racing another KDC", last.endpoint);
+                        last = start(ranked.get(next++), message, completion, running);
+                    }
+                    continue;
+                }
+
+                Attempt attempt = running.remove(done);
+                try {
+                    ByteBuffer result = done.get();
+                    attempt.endpoint.onReply(System.currentTimeMillis() - attempt.startTime);
+                    responder = attempt.transport;
+                    return result;
+                } catch (ExecutionException e) {
+                    attempt.endpoint.onFailure();
+                    attempt.endpoint.close();
+                    lastError = e.getCause() instanceof IOException
+                        ? (IOException) e.getCause() : new IOException(e.getCause());
+                    LOG.debug("Request to {} failed, failing over", attempt.endpoint, e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for KDC reply");
+        } finally {
+            dropAttempts(running);
+        }
+
+        if (lastError != null) {
+            throw new IOException("No KDC replied", lastError);
+        }
+        throw new IOException("No KDC replied in " + timeout + " ms");
+    }
+
+    private Attempt start(KdcEndpoint endpoint, ByteBuffer message,
+                          CompletionService<ByteBuffer> completion,
+                          Map<Future<ByteBuffer>, Attempt> running) {
+        Attempt attempt = new Attempt(endpoint, message);
+        running.put(completion.submit(attempt), attempt);
+        return attempt;
+    }
+
+    /**
+     * Drop the attempts still waiting, which only tells their KDC is slower
+     * than the winner and isn't counted as a failure, unless it's timed out.
+     */
+    private void dropAttempts(Map<Future<ByteBuffer>, Attempt> running) {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Future<ByteBuffer>, Attempt> entry : running.entrySet()) {
+            Attempt attempt = entry.getValue();
+            long elapsed = now - attempt.startTime;
+            if (elapsed >= timeout) {
+                attempt.endpoint.onFailure();
+            } else {
+                attempt.endpoint.onSlow(elapsed);
+            }
+            // Closing the transport unblocks the attempt thread
+            attempt.endpoint.close();
+            entry.getKey().cancel(true);
+        }
+        running.clear();
+    }
+
+    private List<KdcEndpoint> rank() {
+        final long now = System.currentTimeMillis();
+        List<KdcEndpoint> ranked = new ArrayList<>(endpoints);
+        final Map<KdcEndpoint, Double> scores = new HashMap<>();
+        for (KdcEndpoint endpoint : endpoints) {
+            scores.put(endpoint, endpoint.getScore(now, timeout));
+        }
+        // Stable, so KDCs without a record keep the configured order
+        Collections.sort(ranked, new Comparator<KdcEndpoint>() {
+            @Override
+            public int compare(KdcEndpoint e1, KdcEndpoint e2) {
+                return Double.compare(scores.get(e1), scores.get(e2));
+            }
+        });
+        return ranked;
+    }
+
+    /**
+     * Get the KDCs in the configured order.
+     * @return endpoints
+     */
+    List<KdcEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    @Override
+    public void releaseMessage(ByteBuffer message) {
+        if (responder != null) {
+            responder.releaseMessage(message);
+        }
+    }
+
+    @Override
+    public boolean isTcp() {
+        return tcp;
+    }
+
+    @Override
+    public InetAddress getRemoteAddress() {
+        KrbTransport transport = responder;
+        return transport != null ? transport.getRemoteAddress() : null;
+    }
+
+    @Override
+    public void release() {
+        executor.shutdownNow();
+        for (KdcEndpoint endpoint : endpoints) {
+            endpoint.close();
+        }
+    }
+
+    private final class Attempt implements Callable<ByteBuffer> {
+        private final KdcEndpoint endpoint;
+        private final ByteBuffer message;
+        private final long startTime;
+        private volatile KrbTransport transport;
+
+        Attempt(KdcEndpoint endpoint, ByteBuffer message) {
+            this.endpoint = endpoint;
+            this.message = message;
+            this.startTime = System.currentTimeMillis();
+        }
+
+        @Override
+        public ByteBuffer call() throws IOException {
+            transport = endpoint.getTransport();
+            ByteBuffer toSend = message.duplicate();
+            if (tcp && !transport.isTcp()) {
+                // Fell back to UDP, where the length prefix isn't used
+                toSend.position(toSend.position() + 4);
+                toSend = toSend.slice();
+            }
+            transport.sendMessage(toSend);
+            return transport.receiveMessage();
+        }
+    }
+
+    /**
+     * A KDC with its connection, made when first used and again after a
+     * failure, and its record of replies.
+     */
+    final class KdcEndpoint {
+        private final TransportPair tpair;
+        private KrbTransport transport;
+        private double latency = -1;
+        private double deviation;
+        private double errorRate;
+        private long lastFailure;
+
+        KdcEndpoint(TransportPair tpair) {
+            this.tpair = tpair;
+        }
+
+        synchronized KrbTransport getTransport() throws IOException {
+            if (transport == null) {
+                transport = connect(tpair);
+            }
+            return transport;
+        }
+
+        synchronized void close() {
+            if (transport != null) {
+                transport.release();
+                transport = null;
+            }
+        }
+
+        synchronized void onReply(long elapsed) {
+            onSlow(elapsed);
+            errorRate *= 1 - ALPHA;
+        }
+
+        synchronized void onSlow(long elapsed) {
+            if (latency < 0) {
+                latency = elapsed;
+                deviation = elapsed / 2.0;
+            } else {
+                deviation += ALPHA * (Math.abs(elapsed - latency) - deviation);
+                latency += ALPHA * (elapsed - latency);
+            }
+        }
+
+        synchronized void onFailure() {
+            errorRate += ALPHA * (1 - errorRate);
+            lastFailure = System.currentTimeMillis();
+        }
+
+        synchronized double getLatency() {
+            return latency;
+        }
+
+        synchronized double getErrorRate() {
+            return errorRate;
+        }
+
+        /**
+         * Lower is better. KDCs never heard from score as the fastest ones,
+         * so they get tried.
+         */
+        synchronized double getScore(long now, long penalty) {
+            double score = (Math.max(latency, 0) + 1) * (1 + 10 * errorRate);
+            if (lastFailure > 0 && now - lastFailure < FAILURE_PENALTY_TIME) {
+                score += penalty;
+            }
+            return score;
+        }
+
+        /**
+         * Time to wait for a reply before racing another KDC, half the timeout
+         * till the KDC has a record.
+         */
+        synchronized long getHedgeDelay(long timeout) {
+            if (latency < 0) {
+                return timeout / 2;
+            }
+            long delay = (long) (latency + 3 * deviation);
+            return Math.min(Math.max(delay, MIN_HEDGE_DELAY), timeout);
+        }
+
+        @Override
+        public String toString() {
+            return tpair.tcpAddress != null ? tpair.tcpAddress.toString()
+                : String.valueOf(tpair.udpAddress);
+        }
+    }
+}
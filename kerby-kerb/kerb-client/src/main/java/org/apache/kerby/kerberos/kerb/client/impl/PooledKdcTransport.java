@@ -0,0 +1,121 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.client.impl;
+
+import org.apache.kerby.kerberos.kerb.transport.AbstractKrbTransport;
+import org.apache.kerby.kerberos.kerb.transport.KrbConnectionPool;
+import org.apache.kerby.kerberos.kerb.transport.KrbTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * A transport over a connection leased from the pool. When the connection
+ * was reused and fails before any byte of the reply, as when the KDC closed
+ * it meanwhile, the request is sent once again as is over a new connection,
+ * without building it again.
+ */
+public class PooledKdcTransport extends AbstractKrbTransport {
+    private static final Logger LOG = LoggerFactory.getLogger(PooledKdcTransport.class);
+
+    private final KrbConnectionPool pool;
+    private final InetSocketAddress address;
+    private final int timeout;
+    private KrbTransport transport;
+    private ByteBuffer request;
+    private boolean retried;
+
+    /**
+     * @param pool The pool the connection is leased from
+     * @param address The KDC TCP address
+     * @param timeout The socket timeout in milliseconds
+     * @param transport The leased connection
+     */
+    public PooledKdcTransport(KrbConnectionPool pool, InetSocketAddress address,
+                              int timeout, KrbTransport transport) {
+        this.pool = pool;
+        this.address = address;
+        this.timeout = timeout;
+        this.transport = transport;
+    }
+
+    @Override
+    public void sendMessage(ByteBuffer message) throws IOException {
+        request = message.duplicate();
+        retried = false;
+        try {
+            transport.sendMessage(message);
+        } catch (IOException e) {
+            if (!canRetry()) {
+                throw e;
+            }
+            retry(e);
+        }
+    }
+
+    @Override
+    public ByteBuffer receiveMessage() throws IOException {
+        try {
+            return transport.receiveMessage();
+        } catch (IOException e) {
+            if (!canRetry()) {
+                throw e;
+            }
+            retry(e);
+            return transport.receiveMessage();
+        }
+    }
+
+    private boolean canRetry() {
+        return !retried && request != null && pool.isRetriable(transport);
+    }
+
+    private void retry(IOException e) throws IOException {
+        LOG.debug("Reused connection to {} failed, sending again on a new one", address, e);
+        retried = true;
+        transport.release();
+        transport = pool.leaseNew(address, timeout);
+        transport.sendMessage(request.duplicate());
+    }
+
+    @Override
+    public void releaseMessage(ByteBuffer message) {
+        transport.releaseMessage(message);
+    }
+
+    @Override
+    public boolean isTcp() {
+        return true;
+    }
+
+    @Override
+    public InetAddress getRemoteAddress() {
+        return transport.getRemoteAddress();
+    }
+
+    @Override
+    public void release() {
+        transport.release();
+    }
+}
@@ -24,6 +24,7 @@ import org.apache.kerby.kerberos.kerb.KrbCodec;
 import org.apache.kerby.kerberos.kerb.KrbException;
 import org.apache.kerby.kerberos.kerb.ccache.Credential;
 import org.apache.kerby.kerberos.kerb.ccache.CredentialCache;
+import org.apache.kerby.kerberos.kerb.client.ClientUtil;
 import org.apache.kerby.kerberos.kerb.client.KrbOption;
 import org.apache.kerby.kerberos.kerb.client.preauth.KrbFastRequestState;
 import org.apache.kerby.kerberos.kerb.common.CheckSumUtil;
@@ -211,8 +212,9 @@ public class ArmoredRequest {
         authenticator.setAuthenticatorVno(5);
         authenticator.setCname(credential.getClientName());
         authenticator.setCrealm(credential.getClientRealm());
-        authenticator.setCtime(KerberosTime.now());
-        authenticator.setCusec(0);
+        KerberosTime ctime = KerberosTime.now();
+        authenticator.setCtime(ctime);
+        authenticator.setCusec(ClientUtil.makeCusec(ctime));
         authenticator.setSubKey(subKey);
 
         KdcReqBody reqBody = kdcRequest.getReqBody();
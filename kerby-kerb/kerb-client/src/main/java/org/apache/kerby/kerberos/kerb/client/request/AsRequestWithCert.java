@@ -138,12 +138,7 @@ public class AsRequestWithCert extends AsRequest {
                 }
                 Certificate archorCertificate = PkinitCrypto.changeToCertificate(x509Certificate);
 
-                CertificateSet certificateSet = signedData.getCertificates();
-                List<CertificateChoices> certificateChoicesList = certificateSet.getElements();
-                List<Certificate> certificates = new ArrayList<>();
-                for (CertificateChoices certificateChoices : certificateChoicesList) {
-                    certificates.add(certificateChoices.getCertificate());
-                }
+                List<Certificate> certificates = getKdcCertificates(signedData);
                 try {
                     PkinitCrypto.validateChain(certificates, archorCertificate);
                 } catch (Exception e) {
@@ -200,4 +195,21 @@ public class AsRequestWithCert extends AsRequest {
         }
         super.processResponse(kdcRep);
     }
+
+    /**
+     * Get the KDC certificates carried in the signed data of a PK_AS_REP.
+     * Older KDCs sent no certificate set at all, which gives an empty list.
+     * @param signedData The signed data of the reply
+     * @return The KDC certificates
+     */
+    static List<Certificate> getKdcCertificates(SignedData signedData) {
+        List<Certificate> certificates = new ArrayList<>();
+        CertificateSet certificateSet = signedData.getCertificates();
+        if (certificateSet != null) {
+            for (CertificateChoices certificateChoices : certificateSet.getElements()) {
+                certificates.add(certificateChoices.getCertificate());
+            }
+        }
+        return certificates;
+    }
 }
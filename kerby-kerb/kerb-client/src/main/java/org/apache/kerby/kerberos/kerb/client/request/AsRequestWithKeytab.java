@@ -19,11 +19,10 @@
  */
 package org.apache.kerby.kerberos.kerb.client.request;
 
-import org.apache.kerby.KOptions;
 import org.apache.kerby.kerberos.kerb.KrbException;
 import org.apache.kerby.kerberos.kerb.client.KrbContext;
 import org.apache.kerby.kerberos.kerb.client.KrbOption;
-import org.apache.kerby.kerberos.kerb.keytab.Keytab;
+import org.apache.kerby.kerberos.kerb.keytab.KeytabRegistry;
 import org.apache.kerby.kerberos.kerb.type.base.EncryptionKey;
 import org.apache.kerby.kerberos.kerb.type.pa.PaDataType;
 
@@ -38,28 +37,21 @@ public class AsRequestWithKeytab extends AsRequest {
         setAllowedPreauth(PaDataType.ENC_TIMESTAMP);
     }
 
-    private Keytab getKeytab() {
-        File keytabFile = null;
-        KOptions kOptions = getRequestOptions();
-
-        if (kOptions.contains(KrbOption.KEYTAB_FILE)) {
-            keytabFile = kOptions.getFileOption(KrbOption.KEYTAB_FILE);
-        }
-
-        Keytab keytab = null;
-        try {
-            keytab =  Keytab.loadKeytab(keytabFile);
-        } catch (IOException e) {
-            System.err.println("Can not load keytab from file" + keytabFile.getAbsolutePath());
-        }
-        return keytab;
-    }
-
     @Override
     public EncryptionKey getClientKey() throws KrbException {
         if (super.getClientKey() == null) {
-            EncryptionKey tmpKey = getKeytab().getKey(getClientPrincipal(),
-                    getChosenEncryptionType());
+            File keytabFile = getRequestOptions().getFileOption(KrbOption.KEYTAB_FILE);
+            if (keytabFile == null) {
+                throw new KrbException("No keytab file specified");
+            }
+            EncryptionKey tmpKey;
+            try {
+                tmpKey = KeytabRegistry.getInstance().getKey(keytabFile,
+                        getClientPrincipal(), getChosenEncryptionType());
+            } catch (IOException e) {
+                throw new KrbException("Can not load keytab from file "
+                        + keytabFile.getAbsolutePath(), e);
+            }
             setClientKey(tmpKey);
         }
         return super.getClientKey();
@@ -20,6 +20,7 @@
 package org.apache.kerby.kerberos.kerb.client.request;
 
 import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.client.ClientUtil;
 import org.apache.kerby.kerberos.kerb.client.KrbContext;
 import org.apache.kerby.kerberos.kerb.common.CheckSumUtil;
 import org.apache.kerby.kerberos.kerb.common.EncryptionUtil;
@@ -89,8 +90,9 @@ public class TgsRequestWithTgt extends TgsRequest {
         authenticator.setAuthenticatorVno(5);
         authenticator.setCname(tgt.getClientPrincipal());
         authenticator.setCrealm(tgt.getRealm());
-        authenticator.setCtime(KerberosTime.now());
-        authenticator.setCusec(0);
+        KerberosTime ctime = KerberosTime.now();
+        authenticator.setCtime(ctime);
+        authenticator.setCusec(ClientUtil.makeCusec(ctime));
         authenticator.setSubKey(tgt.getSessionKey());
 
         KdcReqBody reqBody = getReqBody();
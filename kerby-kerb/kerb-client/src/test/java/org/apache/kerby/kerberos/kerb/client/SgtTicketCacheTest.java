@@ -0,0 +1,180 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.client;
+
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.type.KerberosTime;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionKey;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
+import org.apache.kerby.kerberos.kerb.type.base.PrincipalName;
+import org.apache.kerby.kerberos.kerb.type.kdc.EncAsRepPart;
+import org.apache.kerby.kerberos.kerb.type.kdc.EncTgsRepPart;
+import org.apache.kerby.kerberos.kerb.type.ticket.SgtTicket;
+import org.apache.kerby.kerberos.kerb.type.ticket.TgtTicket;
+import org.apache.kerby.kerberos.kerb.type.ticket.Ticket;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SgtTicketCacheTest {
+    private static final String SERVER = "hbase/host@EXAMPLE.COM";
+
+    @Test
+    public void testCachedSgt() throws KrbException {
+        final AtomicInteger requests = new AtomicInteger();
+        SgtTicketCache cache = new SgtTicketCache(new SgtTicketCache.SgtRequester() {
+            @Override
+            public SgtTicket requestSgt(TgtTicket tgt, String serverPrincipal) {
+                requests.incrementAndGet();
+                return makeSgt(EncryptionType.AES128_CTS_HMAC_SHA1_96, 3600 * 1000L);
+            }
+        }, null);
+        TgtTicket tgt = makeTgt();
+        try {
+            SgtTicket sgt = cache.getSgt(tgt, SERVER,
+                Arrays.asList(EncryptionType.AES256_CTS_HMAC_SHA1_96,
+                    EncryptionType.AES128_CTS_HMAC_SHA1_96));
+            assertThat(cache.getSgt(tgt, SERVER,
+                Collections.singletonList(EncryptionType.AES128_CTS_HMAC_SHA1_96))).isSameAs(sgt);
+            assertThat(requests.get()).isEqualTo(1);
+            assertThat(cache.size()).isEqualTo(1);
+
+            // Not a permitted enc type, or another server
+            cache.getSgt(tgt, SERVER,
+                Collections.singletonList(EncryptionType.AES256_CTS_HMAC_SHA1_96));
+            cache.getSgt(tgt, "hdfs/host@EXAMPLE.COM",
+                Collections.singletonList(EncryptionType.AES128_CTS_HMAC_SHA1_96));
+            assertThat(requests.get()).isEqualTo(3);
+        } finally {
+            cache.clear();
+        }
+    }
+
+    @Test
+    public void testRefresh() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+        SgtTicketCache cache = new SgtTicketCache(new SgtTicketCache.SgtRequester() {
+            @Override
+            public SgtTicket requestSgt(TgtTicket tgt, String serverPrincipal) {
+                requests.incrementAndGet();
+                // Short lived, refreshed within a second and not valid to use
+                return makeSgt(EncryptionType.AES128_CTS_HMAC_SHA1_96, 1000L);
+            }
+        }, null);
+        try {
+            cache.getSgt(makeTgt(), SERVER,
+                Collections.singletonList(EncryptionType.AES128_CTS_HMAC_SHA1_96));
+            long deadline = System.currentTimeMillis() + 10 * 1000;
+            while (requests.get() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertThat(requests.get()).isEqualTo(2);
+        } finally {
+            cache.clear();
+        }
+    }
+
+    @Test
+    public void testSizeBound() throws KrbException {
+        final AtomicInteger requests = new AtomicInteger();
+        SgtTicketCache cache = new SgtTicketCache(new SgtTicketCache.SgtRequester() {
+            @Override
+            public SgtTicket requestSgt(TgtTicket tgt, String serverPrincipal) {
+                // Each ticket lives longer than the one before
+                return makeSgt(EncryptionType.AES128_CTS_HMAC_SHA1_96,
+                    3600 * 1000L * requests.incrementAndGet());
+            }
+        }, null, 2);
+        TgtTicket tgt = makeTgt();
+        try {
+            for (String server : Arrays.asList("hdfs/host@EXAMPLE.COM", "yarn/host@EXAMPLE.COM", SERVER)) {
+                cache.getSgt(tgt, server, Collections.singletonList(EncryptionType.AES128_CTS_HMAC_SHA1_96));
+            }
+            assertThat(cache.size()).isEqualTo(2);
+
+            // The ticket expiring first was dropped
+            cache.getSgt(tgt, "yarn/host@EXAMPLE.COM",
+                Collections.singletonList(EncryptionType.AES128_CTS_HMAC_SHA1_96));
+            assertThat(requests.get()).isEqualTo(3);
+            cache.getSgt(tgt, "hdfs/host@EXAMPLE.COM",
+                Collections.singletonList(EncryptionType.AES128_CTS_HMAC_SHA1_96));
+            assertThat(requests.get()).isEqualTo(4);
+            assertThat(cache.size()).isEqualTo(2);
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        SgtTicketCache cache = new SgtTicketCache(new SgtTicketCache.SgtRequester() {
+            @Override
+            public SgtTicket requestSgt(TgtTicket tgt, String serverPrincipal) {
+                return makeSgt(EncryptionType.AES128_CTS_HMAC_SHA1_96, 3600 * 1000L);
+            }
+        }, null);
+        cache.getSgt(makeTgt(), SERVER,
+            Collections.singletonList(EncryptionType.AES128_CTS_HMAC_SHA1_96));
+        assertThat(isRefresherAlive()).isTrue();
+
+        cache.close();
+        assertThat(cache.size()).isEqualTo(0);
+        long deadline = System.currentTimeMillis() + 10 * 1000;
+        while (isRefresherAlive() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(isRefresherAlive()).isFalse();
+
+        // Still usable, but no refresher is started again
+        cache.getSgt(makeTgt(), SERVER,
+            Collections.singletonList(EncryptionType.AES128_CTS_HMAC_SHA1_96));
+        assertThat(isRefresherAlive()).isFalse();
+    }
+
+    private static boolean isRefresherAlive() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if ("sgt-cache-refresher".equals(thread.getName()) && thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static TgtTicket makeTgt() {
+        EncAsRepPart repPart = new EncAsRepPart();
+        repPart.setKey(new EncryptionKey(EncryptionType.AES128_CTS_HMAC_SHA1_96, new byte[16]));
+        repPart.setAuthTime(KerberosTime.now());
+        repPart.setEndTime(KerberosTime.now().extend(24 * 3600 * 1000L));
+        return new TgtTicket(new Ticket(), repPart, new PrincipalName("client@EXAMPLE.COM"));
+    }
+
+    private static SgtTicket makeSgt(EncryptionType encType, long lifetime) {
+        EncTgsRepPart repPart = new EncTgsRepPart();
+        repPart.setKey(new EncryptionKey(encType, new byte[16]));
+        repPart.setAuthTime(KerberosTime.now());
+        repPart.setStartTime(KerberosTime.now());
+        repPart.setEndTime(KerberosTime.now().extend(lifetime));
+        return new SgtTicket(new Ticket(), repPart);
+    }
+}
@@ -61,5 +61,9 @@ public class TestKrbConfigLoad {
         assertThat(krbConfig.getPkinitAnchors()).hasSize(1);
         assertThat(krbConfig.getPkinitIdentities()).hasSize(2);
         assertThat(krbConfig.getPkinitKdcHostName()).isEqualTo("kdc-server.example.com");
+        assertThat(krbConfig.getRealmKdcs("GNU.ORG"))
+                .containsExactly("kerberos.gnu.org", "kerberos-2.gnu.org");
+        assertThat(krbConfig.getRealmKdcs("ANDREW.CMU.EDU")).isEmpty();
+        assertThat(krbConfig.getRealmKdcs("NO.SUCH.REALM")).isEmpty();
     }
 }
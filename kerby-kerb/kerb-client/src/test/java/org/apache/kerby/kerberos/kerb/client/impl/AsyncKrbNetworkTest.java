@@ -0,0 +1,148 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.client.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AsyncKrbNetworkTest {
+    private static final int TIMEOUT = 2000;
+
+    private ServerSocket kdc;
+    private InetSocketAddress address;
+    private final AtomicInteger connections = new AtomicInteger();
+    private volatile int requestsPerConnection = Integer.MAX_VALUE;
+    private ExecutorService executor;
+    private AsyncKrbNetwork network;
+
+    @Before
+    public void setUp() throws IOException {
+        kdc = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        address = (InetSocketAddress) kdc.getLocalSocketAddress();
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        final Socket socket = kdc.accept();
+                        connections.incrementAndGet();
+                        Thread replier = new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                reply(socket);
+                            }
+                        });
+                        replier.setDaemon(true);
+                        replier.start();
+                    }
+                } catch (IOException e) {
+                    assertThat(kdc.isClosed()).isTrue();
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        executor = Executors.newSingleThreadExecutor();
+        network = new AsyncKrbNetwork(executor, TIMEOUT, 10 * 1000);
+        network.start();
+    }
+
+    /**
+     * Echo the requests, closing the connection on the one past the limit.
+     */
+    private void reply(Socket socket) {
+        try (Socket s = socket) {
+            DataInputStream in = new DataInputStream(s.getInputStream());
+            DataOutputStream out = new DataOutputStream(s.getOutputStream());
+            for (int i = 0; i < requestsPerConnection; i++) {
+                byte[] request = new byte[in.readInt()];
+                in.readFully(request);
+                out.writeInt(request.length);
+                out.write(request);
+            }
+            in.readInt();
+        } catch (IOException e) {
+            // Closed by the client
+            return;
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        network.stop();
+        executor.shutdown();
+        kdc.close();
+    }
+
+    @Test
+    public void testReuseConnection() throws Exception {
+        for (byte i = 0; i < 5; i++) {
+            assertThat(exchange(i)).isEqualTo(i);
+        }
+        assertThat(connections.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testClosedAfterEachReply() throws Exception {
+        requestsPerConnection = 1;
+        for (byte i = 0; i < 5; i++) {
+            assertThat(exchange(i)).isEqualTo(i);
+        }
+        assertThat(connections.get()).isEqualTo(5);
+    }
+
+    private byte exchange(byte content) throws Exception {
+        final BlockingQueue<Object> result = new ArrayBlockingQueue<>(1);
+        network.send(address, true, ByteBuffer.wrap(new byte[] {0, 0, 0, 1, content}),
+            new AsyncKrbNetwork.ReplyHandler() {
+                @Override
+                public void onReply(ByteBuffer message) {
+                    result.add(message);
+                }
+
+                @Override
+                public void onError(IOException e) {
+                    result.add(e);
+                }
+            });
+        Object reply = result.poll(TIMEOUT * 2, TimeUnit.MILLISECONDS);
+        assertThat(reply).isInstanceOf(ByteBuffer.class);
+        return ((ByteBuffer) reply).get(0);
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.client.impl;
+
+import org.apache.kerby.kerberos.kerb.transport.KrbTransport;
+import org.apache.kerby.kerberos.kerb.transport.TransportPair;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MultiKdcTransportTest {
+    private static final int TIMEOUT = 2000;
+
+    private DatagramSocket silentKdc;
+    private DatagramSocket replyingKdc;
+    private MultiKdcTransport transport;
+
+    @Before
+    public void setUp() throws IOException {
+        silentKdc = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        replyingKdc = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        Thread replier = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                byte[] buf = new byte[512];
+                try {
+                    while (true) {
+                        DatagramPacket packet = new DatagramPacket(buf, buf.length);
+                        replyingKdc.receive(packet);
+                        byte[] reply = "pong".getBytes(StandardCharsets.US_ASCII);
+                        replyingKdc.send(new DatagramPacket(reply, reply.length,
+                            packet.getSocketAddress()));
+                    }
+                } catch (IOException e) {
+                    assertThat(replyingKdc.isClosed()).isTrue();
+                }
+            }
+        });
+        replier.setDaemon(true);
+        replier.start();
+    }
+
+    @After
+    public void tearDown() {
+        if (transport != null) {
+            transport.release();
+        }
+        silentKdc.close();
+        replyingKdc.close();
+    }
+
+    private static TransportPair udpPair(DatagramSocket kdc) {
+        TransportPair tpair = new TransportPair();
+        tpair.udpAddress = (InetSocketAddress) kdc.getLocalSocketAddress();
+        return tpair;
+    }
+
+    private static String request(KrbTransport transport) throws IOException {
+        transport.sendMessage(ByteBuffer.wrap("ping".getBytes(StandardCharsets.US_ASCII)));
+        ByteBuffer reply = transport.receiveMessage();
+        byte[] bytes = new byte[reply.remaining()];
+        reply.get(bytes);
+        transport.releaseMessage(reply);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void testRaceSlowKdc() throws IOException {
+        List<TransportPair> tpairs = Arrays.asList(udpPair(silentKdc), udpPair(replyingKdc));
+        transport = new MultiKdcTransport(tpairs, TIMEOUT);
+        assertThat(transport.isTcp()).isFalse();
+
+        assertThat(request(transport)).isEqualTo("pong");
+        List<MultiKdcTransport.KdcEndpoint> endpoints = transport.getEndpoints();
+        // The silent KDC was raced after the hedge delay, but not failed
+        assertThat(endpoints.get(0).getLatency()).isGreaterThanOrEqualTo(TIMEOUT / 2);
+        assertThat(endpoints.get(0).getErrorRate()).isZero();
+        assertThat(endpoints.get(1).getLatency()).isLessThan(TIMEOUT / 2);
+
+        // Now the replying KDC is asked first
+        long start = System.currentTimeMillis();
+        assertThat(request(transport)).isEqualTo("pong");
+        assertThat(System.currentTimeMillis() - start).isLessThan(TIMEOUT / 2);
+    }
+
+    @Test
+    public void testFailover() throws IOException {
+        final TransportPair failing = udpPair(silentKdc);
+        List<TransportPair> tpairs = Arrays.asList(failing, udpPair(replyingKdc));
+        transport = new MultiKdcTransport(tpairs, TIMEOUT) {
+            @Override
+            protected KrbTransport connect(TransportPair tpair) throws IOException {
+                if (tpair == failing) {
+                    throw new IOException("Connection refused");
+                }
+                return super.connect(tpair);
+            }
+        };
+
+        long start = System.currentTimeMillis();
+        assertThat(request(transport)).isEqualTo("pong");
+        // Failed over without waiting for the hedge delay
+        assertThat(System.currentTimeMillis() - start).isLessThan(TIMEOUT / 2);
+        assertThat(transport.getEndpoints().get(0).getErrorRate()).isGreaterThan(0);
+    }
+
+    @Test
+    public void testNoReply() {
+        List<TransportPair> tpairs = Arrays.asList(udpPair(silentKdc));
+        transport = new MultiKdcTransport(tpairs, 200);
+        try {
+            request(transport);
+            assertThat(false).as("Expected timeout").isTrue();
+        } catch (IOException e) {
+            assertThat(e.getMessage()).contains("No KDC replied");
+        }
+        assertThat(transport.getEndpoints().get(0).getErrorRate()).isGreaterThan(0);
+    }
+}
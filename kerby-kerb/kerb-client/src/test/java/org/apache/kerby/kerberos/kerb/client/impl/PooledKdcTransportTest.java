@@ -0,0 +1,106 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.client.impl;
+
+import org.apache.kerby.kerberos.kerb.transport.KrbConnectionPool;
+import org.apache.kerby.kerberos.kerb.transport.KrbTransport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PooledKdcTransportTest {
+    private static final int TIMEOUT = 2000;
+
+    private ServerSocket kdc;
+    private final AtomicInteger connections = new AtomicInteger();
+    private InetSocketAddress address;
+    private KrbConnectionPool pool;
+
+    @Before
+    public void setUp() throws IOException {
+        // Replies to one request per connection, and closes it on the next
+        kdc = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        address = (InetSocketAddress) kdc.getLocalSocketAddress();
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        try (Socket socket = kdc.accept()) {
+                            connections.incrementAndGet();
+                            DataInputStream in = new DataInputStream(socket.getInputStream());
+                            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                            byte[] request = new byte[in.readInt()];
+                            in.readFully(request);
+                            out.writeInt(request.length);
+                            out.write(request);
+                            in.readInt();
+                        }
+                    }
+                } catch (IOException e) {
+                    assertThat(kdc.isClosed()).isTrue();
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        pool = new KrbConnectionPool(1, 10 * 1000);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        pool.close();
+        kdc.close();
+    }
+
+    @Test
+    public void testRetryOnClosedConnection() throws Exception {
+        assertThat(exchange((byte) 1)).isEqualTo((byte) 1);
+        // The reused connection is closed by the KDC on the request
+        assertThat(exchange((byte) 2)).isEqualTo((byte) 2);
+        assertThat(connections.get()).isEqualTo(2);
+    }
+
+    private byte exchange(byte content) throws IOException {
+        KrbTransport transport = new PooledKdcTransport(pool, address, TIMEOUT,
+                pool.lease(address, TIMEOUT));
+        try {
+            transport.sendMessage(ByteBuffer.wrap(new byte[] {0, 0, 0, 1, content}));
+            ByteBuffer reply = transport.receiveMessage();
+            byte result = reply.get(0);
+            transport.releaseMessage(reply);
+            return result;
+        } finally {
+            transport.release();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.client.request;
+
+import org.apache.kerby.cms.type.CertificateChoices;
+import org.apache.kerby.cms.type.CertificateSet;
+import org.apache.kerby.cms.type.ContentInfo;
+import org.apache.kerby.cms.type.SignedData;
+import org.apache.kerby.kerberos.kerb.preauth.pkinit.CertificateHelper;
+import org.apache.kerby.kerberos.kerb.preauth.pkinit.CmsMessageType;
+import org.apache.kerby.kerberos.kerb.preauth.pkinit.PkinitCrypto;
+import org.apache.kerby.kerberos.kerb.preauth.pkinit.PkinitPlgCryptoContext;
+import org.apache.kerby.x509.type.Certificate;
+import org.junit.Test;
+
+import java.security.cert.X509Certificate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AsRequestWithCertTest {
+
+    @Test
+    public void testKdcCertificatesInReply() throws Exception {
+        X509Certificate x509Certificate = (X509Certificate) CertificateHelper.loadCerts(
+                getClass().getResource("/kdccerttest.pem").getPath()).iterator().next();
+        Certificate kdcCertificate = PkinitCrypto.changeToCertificate(x509Certificate);
+        CertificateChoices certificateChoices = new CertificateChoices();
+        certificateChoices.setCertificate(kdcCertificate);
+        CertificateSet certificateSet = new CertificateSet();
+        certificateSet.addElement(certificateChoices);
+
+        SignedData signedData = decodeSignedData(certificateSet);
+        PkinitCrypto.verifyCmsSignedData(CmsMessageType.CMS_SIGN_SERVER, signedData);
+
+        List<Certificate> certificates = AsRequestWithCert.getKdcCertificates(signedData);
+        assertThat(certificates).hasSize(1);
+        assertThat(certificates.get(0).encode()).isEqualTo(kdcCertificate.encode());
+    }
+
+    @Test
+    public void testNoKdcCertificatesInReply() throws Exception {
+        SignedData signedData = decodeSignedData(null);
+
+        assertThat(AsRequestWithCert.getKdcCertificates(signedData)).isEmpty();
+    }
+
+    private static SignedData decodeSignedData(CertificateSet certificateSet) throws Exception {
+        byte[] signedDataBytes = PkinitCrypto.cmsSignedDataCreate(new byte[] {0x30, 0x00},
+                PkinitPlgCryptoContext.getIdPkinitDHKeyDataOID(), 3, null, certificateSet, null, null);
+        ContentInfo contentInfo = new ContentInfo();
+        contentInfo.decode(signedDataBytes);
+        return contentInfo.getContentAs(SignedData.class);
+    }
+}
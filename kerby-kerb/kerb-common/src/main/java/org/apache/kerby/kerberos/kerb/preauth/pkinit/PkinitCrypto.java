@@ -18,18 +18,30 @@
  */
 package org.apache.kerby.kerberos.kerb.preauth.pkinit;
 
+import org.apache.kerby.asn1.Asn1;
+import org.apache.kerby.asn1.parse.Asn1Container;
+import org.apache.kerby.asn1.parse.Asn1ParseResult;
+import org.apache.kerby.asn1.type.Asn1Any;
 import org.apache.kerby.asn1.type.Asn1ObjectIdentifier;
+import org.apache.kerby.asn1.type.Asn1OctetString;
+import org.apache.kerby.asn1.type.Asn1Type;
+import org.apache.kerby.cms.type.Attribute;
 import org.apache.kerby.cms.type.CertificateSet;
 import org.apache.kerby.cms.type.DigestAlgorithmIdentifiers;
 import org.apache.kerby.cms.type.EncapsulatedContentInfo;
+import org.apache.kerby.cms.type.IssuerAndSerialNumber;
 import org.apache.kerby.cms.type.RevocationInfoChoices;
+import org.apache.kerby.cms.type.SignedAttributes;
 import org.apache.kerby.cms.type.SignedContentInfo;
 import org.apache.kerby.cms.type.SignedData;
+import org.apache.kerby.cms.type.SignerIdentifier;
+import org.apache.kerby.cms.type.SignerInfo;
 import org.apache.kerby.cms.type.SignerInfos;
 import org.apache.kerby.kerberos.kerb.KrbCodec;
 import org.apache.kerby.kerberos.kerb.KrbErrorCode;
 import org.apache.kerby.kerberos.kerb.KrbException;
 import org.apache.kerby.kerberos.kerb.type.base.PrincipalName;
+import org.apache.kerby.kerberos.kerb.type.pa.pkinit.Krb5PrincipalName;
 import org.apache.kerby.util.HexUtil;
 import org.apache.kerby.x509.type.Certificate;
 import org.apache.kerby.x509.type.DhParameter;
@@ -39,26 +51,40 @@ import org.slf4j.LoggerFactory;
 import javax.crypto.interfaces.DHPublicKey;
 import javax.crypto.spec.DHParameterSpec;
 import javax.crypto.spec.DHPublicKeySpec;
+import javax.security.auth.x500.X500Principal;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.KeyFactory;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
+import java.security.Signature;
 import java.security.cert.CertPathValidatorException;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateExpiredException;
+import java.security.cert.CertificateFactory;
 import java.security.cert.CertificateNotYetValidException;
+import java.security.cert.CertificateParsingException;
 import java.security.cert.X509Certificate;
 import java.security.spec.InvalidKeySpecException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 public class PkinitCrypto {
 
     private static final Logger LOG = LoggerFactory.getLogger(PkinitCrypto.class);
 
+    private static final String CONTENT_TYPE_OID = "1.2.840.113549.1.9.3";
+    private static final String MESSAGE_DIGEST_OID = "1.2.840.113549.1.9.4";
+    private static final String RSA_ENCRYPTION_OID = "1.2.840.113549.1.1.1";
+    private static final String PKINIT_SAN_OID = "1.3.6.1.5.2.2";
+
     /**
      * Verify CMS Signed Data
      * @param cmsMsgType The CMS message type
@@ -80,6 +106,225 @@ public class PkinitCrypto {
         }
     }
 
+    /**
+     * Verify the signature of the CMS signed data with the certificate of its
+     * signer, as RFC 5652 section 5.6. The signer is identified by issuer and
+     * serial number, and the signed attributes must be present, with the
+     * content type and the digest of the content.
+     *
+     * @param signedContentInfo The encoded ContentInfo of the signed data
+     * @param signedData The signed data
+     * @param certificates The certificates of the signed data
+     * @return The certificate of the signer
+     */
+    public static X509Certificate verifyCmsSignature(byte[] signedContentInfo, SignedData signedData,
+                                                     List<X509Certificate> certificates) throws KrbException {
+        SignerInfos signerInfos = signedData.getSignerInfos();
+        if (signerInfos == null || signerInfos.getElements().size() != 1) {
+            throw new KrbException(KrbErrorCode.KDC_ERR_INVALID_SIG, "Expected one signer of the signed data");
+        }
+        SignerInfo signerInfo = signerInfos.getElements().get(0);
+
+        X509Certificate signer = findSigner(signerInfo.getSignerIdentifier(), certificates);
+        if (signer == null) {
+            throw new KrbException(KrbErrorCode.KDC_ERR_CLIENT_NOT_TRUSTED,
+                    "No certificate of the signer in the signed data");
+        }
+
+        SignedAttributes signedAttributes = signerInfo.getSignedAttributes();
+        if (signedAttributes == null) {
+            throw new KrbException(KrbErrorCode.KDC_ERR_INVALID_SIG, "No signed attributes in the signed data");
+        }
+
+        String digestAlgorithm = getDigestAlgorithm(signerInfo.getDigestAlgorithmIdentifier().getAlgorithm());
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(digestAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new KrbException(KrbErrorCode.KDC_ERR_DIGEST_IN_SIGNED_DATA_NOT_ACCEPTED, e);
+        }
+        byte[] contentDigest = digest.digest(signedData.getEncapContentInfo().getContent());
+
+        boolean contentTypeMatched = false;
+        boolean digestMatched = false;
+        for (Attribute attribute : signedAttributes.getElements()) {
+            List<Asn1Any> values = attribute.getAttrValues().getElements();
+            if (values.size() != 1) {
+                continue;
+            }
+            Asn1Type value = values.get(0).getValue();
+            String attrType = attribute.getAttrType().getValue();
+            if (CONTENT_TYPE_OID.equals(attrType) && value instanceof Asn1ObjectIdentifier) {
+                contentTypeMatched = signedData.getEncapContentInfo().getContentType().equals(
+                        ((Asn1ObjectIdentifier) value).getValue());
+            } else if (MESSAGE_DIGEST_OID.equals(attrType) && value instanceof Asn1OctetString) {
+                digestMatched = MessageDigest.isEqual(contentDigest, ((Asn1OctetString) value).getValue());
+            }
+        }
+        if (!contentTypeMatched || !digestMatched) {
+            throw new KrbException(KrbErrorCode.KDC_ERR_INVALID_SIG,
+                    "The signed attributes don't match the content");
+        }
+
+        try {
+            Signature signature = Signature.getInstance(getSignatureAlgorithm(signerInfo, digestAlgorithm));
+            signature.initVerify(signer);
+            signature.update(getSignedAttributesEncoding(signedContentInfo));
+            if (!signature.verify(signerInfo.getSignatureValue().getValue())) {
+                throw new KrbException(KrbErrorCode.KDC_ERR_INVALID_SIG, "Bad signature of the signed data");
+            }
+        } catch (GeneralSecurityException | IOException | ClassCastException e) {
+            throw new KrbException(KrbErrorCode.KDC_ERR_INVALID_SIG, e);
+        }
+
+        return signer;
+    }
+
+    private static X509Certificate findSigner(SignerIdentifier signerIdentifier,
+                                              List<X509Certificate> certificates) throws KrbException {
+        if (!(signerIdentifier.getValue() instanceof IssuerAndSerialNumber)) {
+            return null;
+        }
+        IssuerAndSerialNumber issuerAndSerialNumber = (IssuerAndSerialNumber) signerIdentifier.getValue();
+        try {
+            X500Principal issuer = new X500Principal(issuerAndSerialNumber.getIssuer().encode());
+            for (X509Certificate certificate : certificates) {
+                if (issuer.equals(certificate.getIssuerX500Principal())
+                        && issuerAndSerialNumber.getSerialNumber().getValue().equals(certificate.getSerialNumber())) {
+                    return certificate;
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            throw new KrbException(KrbErrorCode.KDC_ERR_INVALID_SIG, e);
+        }
+        return null;
+    }
+
+    private static String getDigestAlgorithm(String oid) throws KrbException {
+        switch (oid) {
+            case "1.3.14.3.2.26":
+                return "SHA-1";
+            case "2.16.840.1.101.3.4.2.1":
+                return "SHA-256";
+            case "2.16.840.1.101.3.4.2.2":
+                return "SHA-384";
+            case "2.16.840.1.101.3.4.2.3":
+                return "SHA-512";
+            default:
+                throw new KrbException(KrbErrorCode.KDC_ERR_DIGEST_IN_SIGNED_DATA_NOT_ACCEPTED,
+                        "Unsupported digest algorithm " + oid);
+        }
+    }
+
+    private static String getSignatureAlgorithm(SignerInfo signerInfo, String digestAlgorithm) {
+        String algorithm = signerInfo.getSignatureAlgorithmIdentifier().getAlgorithm();
+        if (RSA_ENCRYPTION_OID.equals(algorithm)) {
+            // The signature algorithm may be the key algorithm only
+            return digestAlgorithm.replace("-", "") + "withRSA";
+        }
+        return algorithm;
+    }
+
+    /**
+     * Get the certificates of the CMS signed data as they were sent, since the
+     * decoded certificates may not encode back to the same bytes.
+     *
+     * @param signedContentInfo The encoded ContentInfo of the signed data
+     * @return The certificates, in no particular order
+     */
+    public static List<X509Certificate> getCmsCertificates(byte[] signedContentInfo) throws KrbException {
+        List<X509Certificate> certificates = new ArrayList<>();
+        try {
+            CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+            for (Asn1ParseResult item : getSignedDataItems(signedContentInfo)) {
+                if (item.isContextSpecific() && item.tagNo() == 0) {
+                    for (Asn1ParseResult certificate : ((Asn1Container) item).getChildren()) {
+                        certificates.add((X509Certificate) certificateFactory.generateCertificate(
+                                new ByteArrayInputStream(getEncoding(certificate))));
+                    }
+                }
+            }
+        } catch (CertificateException | IOException | ClassCastException e) {
+            throw new KrbException(KrbErrorCode.KDC_ERR_INVALID_CERTIFICATE, e);
+        }
+        return certificates;
+    }
+
+    /**
+     * Get the DER encoding of the signed attributes of the signer as they were
+     * sent, with the SET OF tag the signature is computed over.
+     */
+    private static byte[] getSignedAttributesEncoding(byte[] signedContentInfo) throws IOException {
+        List<Asn1ParseResult> signedDataItems = getSignedDataItems(signedContentInfo);
+        Asn1Container signerInfos = (Asn1Container) signedDataItems.get(signedDataItems.size() - 1);
+        Asn1Container signerInfo = (Asn1Container) signerInfos.getChildren().get(0);
+        for (Asn1ParseResult item : signerInfo.getChildren()) {
+            if (item.isContextSpecific() && item.tagNo() == 0) {
+                byte[] encoding = getEncoding(item);
+                encoding[0] = 0x31;
+                return encoding;
+            }
+        }
+        throw new IOException("No signed attributes in the signer info");
+    }
+
+    private static List<Asn1ParseResult> getSignedDataItems(byte[] signedContentInfo) throws IOException {
+        Asn1Container contentInfo = (Asn1Container) Asn1.parse(signedContentInfo);
+        Asn1Container explicitContent = (Asn1Container) contentInfo.getChildren().get(1);
+        return ((Asn1Container) explicitContent.getChildren().get(0)).getChildren();
+    }
+
+    private static byte[] getEncoding(Asn1ParseResult parseResult) {
+        byte[] encoding = new byte[parseResult.getEncodingLength()];
+        ByteBuffer buffer = parseResult.getBuffer().duplicate();
+        buffer.position(parseResult.getOffset());
+        buffer.get(encoding);
+        return encoding;
+    }
+
+    /**
+     * Get the principal names of the id-pkinit-san subject alternative names
+     * of the certificate, as RFC 4556 section 3.2.2.
+     *
+     * @param certificate The certificate
+     * @return The principal names, with their realm
+     */
+    public static List<PrincipalName> getPkinitSans(X509Certificate certificate) throws KrbException {
+        List<PrincipalName> principalNames = new ArrayList<>();
+        try {
+            Collection<List<?>> altNames = certificate.getSubjectAlternativeNames();
+            if (altNames == null) {
+                return principalNames;
+            }
+            for (List<?> altName : altNames) {
+                // An otherName is given as the encoding of the whole name
+                if (((Integer) altName.get(0)) != 0 || !(altName.get(1) instanceof byte[])) {
+                    continue;
+                }
+                Asn1Container otherName = (Asn1Container) Asn1.parse((byte[]) altName.get(1));
+                List<Asn1ParseResult> items = otherName.getChildren();
+                Asn1ObjectIdentifier typeId = new Asn1ObjectIdentifier();
+                typeId.decode(items.get(0));
+                if (!PKINIT_SAN_OID.equals(typeId.getValue())) {
+                    continue;
+                }
+                // The value is [0] EXPLICIT, which the JDK may wrap once more
+                Asn1ParseResult value = items.get(1);
+                while (value.isContextSpecific()) {
+                    value = ((Asn1Container) value).getChildren().get(0);
+                }
+                Krb5PrincipalName krb5PrincipalName = new Krb5PrincipalName();
+                krb5PrincipalName.decode(value);
+                PrincipalName principalName = krb5PrincipalName.getPrincipalName();
+                principalName.setRealm(krb5PrincipalName.getRelm());
+                principalNames.add(principalName);
+            }
+        } catch (CertificateParsingException | IOException | ClassCastException e) {
+            throw new KrbException(KrbErrorCode.KDC_ERR_CLIENT_NAME_MISMATCH, e);
+        }
+        return principalNames;
+    }
+
     /**
      * Change the CMS message type to oid
      * @param cmsMsgType The CMS message type
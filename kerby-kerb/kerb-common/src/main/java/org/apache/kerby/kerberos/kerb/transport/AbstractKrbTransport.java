@@ -19,6 +19,8 @@
  */
 package org.apache.kerby.kerberos.kerb.transport;
 
+import java.nio.ByteBuffer;
+
 /**
  * Abstract Krb transport.
  */
@@ -32,4 +34,9 @@ public abstract class AbstractKrbTransport implements KrbTransport {
     public Object getAttachment() {
         return attachment;
     }
+
+    @Override
+    public void releaseMessage(ByteBuffer message) {
+        // Not pooled by default
+    }
 }
@@ -0,0 +1,196 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.transport;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of message buffers in size classes of powers of two, from 512 bytes
+ * up to the max buffer size. A buffer is leased with the size of the message
+ * to receive, and given back once the message is handled. Every size class
+ * keeps at most a given amount of idle bytes, the extra buffers are dropped.
+ */
+public class ByteBufferPool {
+    public static final int DEFAULT_MAX_BUFFER_SIZE = 1024 * 1024;
+    public static final int DEFAULT_MAX_POOLED_BYTES = 4 * 1024 * 1024;
+    private static final int MIN_SIZE_SHIFT = 9;
+    private static final ByteBufferPool DEFAULT_POOL = new ByteBufferPool(
+            DEFAULT_MAX_BUFFER_SIZE, DEFAULT_MAX_POOLED_BYTES, false);
+
+    private final int maxBufferSize;
+    private final boolean direct;
+    private final SizeClass[] sizeClasses;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong dropCount = new AtomicLong();
+
+    /**
+     * Construct a buffer pool.
+     * @param maxBufferSize max size of the pooled buffers, larger ones are
+     *                      allocated and dropped without pooling
+     * @param maxPooledBytes max idle bytes kept in each size class
+     * @param direct true to allocate direct buffers, off the heap
+     */
+    public ByteBufferPool(int maxBufferSize, int maxPooledBytes, boolean direct) {
+        this.direct = direct;
+        int numClasses = sizeClassOf(maxBufferSize) + 1;
+        this.maxBufferSize = classSize(numClasses - 1);
+        this.sizeClasses = new SizeClass[numClasses];
+        for (int i = 0; i < numClasses; i++) {
+            sizeClasses[i] = new SizeClass(Math.max(1, maxPooledBytes / classSize(i)));
+        }
+    }
+
+    /**
+     * Get the pool shared by default, of heap buffers.
+     * @return default pool
+     */
+    public static ByteBufferPool getDefault() {
+        return DEFAULT_POOL;
+    }
+
+    /**
+     * Lease a buffer for a message of the given size. The buffer's position is
+     * 0 and its limit is the size.
+     * @param size The message size
+     * @return buffer
+     */
+    public ByteBuffer acquire(int size) {
+        if (size > maxBufferSize) {
+            missCount.incrementAndGet();
+            return allocate(size);
+        }
+
+        int sizeClass = sizeClassOf(size);
+        ByteBuffer buffer = sizeClasses[sizeClass].poll();
+        if (buffer != null) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+            buffer = allocate(classSize(sizeClass));
+        }
+        buffer.clear();
+        buffer.limit(size);
+        return buffer;
+    }
+
+    /**
+     * Give back a buffer leased from the pool. It must not be used afterwards.
+     * @param buffer The buffer
+     */
+    public void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        if (capacity > maxBufferSize || buffer.isDirect() != direct
+                || Integer.bitCount(capacity) != 1 || capacity < classSize(0)) {
+            dropCount.incrementAndGet();
+            return;
+        }
+
+        if (!sizeClasses[sizeClassOf(capacity)].offer(buffer)) {
+            dropCount.incrementAndGet();
+        }
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    public int getMaxBufferSize() {
+        return maxBufferSize;
+    }
+
+    /**
+     * @return number of leases served by a pooled buffer
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return number of leases that had to allocate a buffer
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return number of given back buffers not kept by the pool
+     */
+    public long getDropCount() {
+        return dropCount.get();
+    }
+
+    /**
+     * @return number of idle buffers in the pool
+     */
+    public int getPooledCount() {
+        int count = 0;
+        for (SizeClass sizeClass : sizeClasses) {
+            count += sizeClass.size.get();
+        }
+        return count;
+    }
+
+    private ByteBuffer allocate(int size) {
+        return direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    }
+
+    private static int sizeClassOf(int size) {
+        if (size <= 1 << MIN_SIZE_SHIFT) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SIZE_SHIFT;
+    }
+
+    private static int classSize(int sizeClass) {
+        return 1 << (sizeClass + MIN_SIZE_SHIFT);
+    }
+
+    private static class SizeClass {
+        private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final int maxSize;
+
+        SizeClass(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        ByteBuffer poll() {
+            ByteBuffer buffer = buffers.poll();
+            if (buffer != null) {
+                size.decrementAndGet();
+            }
+            return buffer;
+        }
+
+        boolean offer(ByteBuffer buffer) {
+            if (size.incrementAndGet() > maxSize) {
+                size.decrementAndGet();
+                return false;
+            }
+            buffers.add(buffer);
+            return true;
+        }
+    }
+}
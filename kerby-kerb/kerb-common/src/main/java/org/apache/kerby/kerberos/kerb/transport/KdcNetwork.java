@@ -19,121 +19,285 @@
  */
 package org.apache.kerby.kerberos.kerb.transport;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.DatagramChannel;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
- * A combined and mixed network server handling UDP and TCP.
+ * A combined and mixed network server handling UDP and TCP, driven by one or
+ * more NIO selector loops. The first loop accepts TCP connections and reads
+ * UDP datagrams, and accepted connections are spread over all the loops.
+ * A transport is passed to {@link #onNewTransport(KrbTransport)} when it has
+ * requests pending and isn't being served, so idle connections hold no thread.
+ * The network owns the transports and closes the idle or broken connections.
  */
 @SuppressWarnings("PMD")
 public abstract class KdcNetwork {
+    private static final Logger LOG = LoggerFactory.getLogger(KdcNetwork.class);
     protected static final int MAX_MESSAGE_SIZE = 65507;
     private static final int KDC_TCP_TRANSPORT_TIMEOUT = 3 * 1000;
-    private static final int KDC_TCP_SERVER_TIMEOUT = 100;
-    private TransportPair tpair;
-    private boolean isStopped;
-    private ServerSocket tcpServer;
+    private static final int DEFAULT_TCP_IDLE_TIMEOUT = 30 * 1000;
+    private static final int KDC_SELECT_TIMEOUT = 500;
+    private static final int MAX_DATAGRAMS_PER_SELECT = 64;
+    private volatile boolean isStopped;
+    private int numLoops = 1;
+    private SelectorLoop[] loops;
+    private Thread[] loopThreads;
+    private int nextLoop;
+    private ServerSocketChannel tcpServer;
     private DatagramChannel udpServer;
-    private Map<InetSocketAddress, KdcUdpTransport> transports =
-            new HashMap<InetSocketAddress, KdcUdpTransport>();
     private ByteBuffer recvBuffer;
+    private ByteBufferPool bufferPool = ByteBufferPool.getDefault();
+    private int tcpIdleTimeout = DEFAULT_TCP_IDLE_TIMEOUT;
 
     public void init() {
+        init(1);
+    }
+
+    /**
+     * Init the network with the given number of selector loops.
+     * @param numSelectorLoops number of selector loops, at least one
+     */
+    public void init(int numSelectorLoops) {
+        if (numSelectorLoops < 1) {
+            throw new IllegalArgumentException("Invalid number of selector loops: "
+                    + numSelectorLoops);
+        }
+        this.numLoops = numSelectorLoops;
         isStopped = false;
     }
 
+    /**
+     * Set the pool to lease the received message buffers from, the default
+     * pool is used if not set.
+     * @param bufferPool The buffer pool
+     */
+    public void setBufferPool(ByteBufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    public ByteBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Set the time a TCP connection is kept open without requests, so
+     * clients can reuse it.
+     * @param milliSeconds The idle timeout
+     */
+    public void setTcpIdleTimeout(int milliSeconds) {
+        if (milliSeconds <= 0) {
+            throw new IllegalArgumentException("Invalid tcp idle timeout: " + milliSeconds);
+        }
+        this.tcpIdleTimeout = milliSeconds;
+    }
+
     public void listen(TransportPair tpair) throws IOException {
-        this.tpair = tpair;
+        loops = new SelectorLoop[numLoops];
+        for (int i = 0; i < numLoops; i++) {
+            loops[i] = new SelectorLoop(Selector.open());
+        }
 
-        tcpServer = new ServerSocket();
-        tcpServer.setSoTimeout(KDC_TCP_SERVER_TIMEOUT);
-        tcpServer.bind(tpair.tcpAddress);
+        if (tpair.tcpAddress != null) {
+            tcpServer = ServerSocketChannel.open();
+            tcpServer.configureBlocking(false);
+            tcpServer.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            tcpServer.bind(tpair.tcpAddress);
+            tcpServer.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+        }
 
         if (tpair.udpAddress != null) {
             udpServer = DatagramChannel.open();
             udpServer.configureBlocking(false);
             udpServer.bind(tpair.udpAddress);
+            udpServer.register(loops[0].selector, SelectionKey.OP_READ);
             recvBuffer = ByteBuffer.allocate(MAX_MESSAGE_SIZE);
         }
     }
 
     public void start() {
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-                KdcNetwork.this.run();
-            }
-        }).start();
+        loopThreads = new Thread[loops.length];
+        for (int i = 0; i < loops.length; i++) {
+            loopThreads[i] = new Thread(loops[i], "kdc-network-" + i);
+            loopThreads[i].start();
+        }
     }
 
-    //CHECKSTYLE:OFF
-    private void run() {
-        while (true) {
-            synchronized (this) {
-                if (isStopped) {
+    /**
+     * Stop the selector loops, and wait for them to close all the channels.
+     */
+    public void stop() {
+        isStopped = true;
+        if (loops == null) {
+            return;
+        }
+        for (SelectorLoop loop : loops) {
+            loop.selector.wakeup();
+        }
+        if (loopThreads != null) {
+            for (Thread thread : loopThreads) {
+                try {
+                    thread.join(KDC_TCP_TRANSPORT_TIMEOUT);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
                     break;
                 }
             }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = tcpServer.accept()) != null) {
+            channel.socket().setTcpNoDelay(true);
+            KdcTcpTransport transport = new KdcTcpTransport(channel, bufferPool);
+            loops[nextLoop].register(transport);
+            nextLoop = (nextLoop + 1) % loops.length;
+        }
+    }
+
+    private void checkUdpMessages() throws IOException {
+        for (int i = 0; i < MAX_DATAGRAMS_PER_SELECT; i++) {
+            recvBuffer.clear();
+            InetSocketAddress fromAddress = (InetSocketAddress) udpServer.receive(recvBuffer);
+            if (fromAddress == null) {
+                break;
+            }
+            recvBuffer.flip();
+            ByteBuffer message = bufferPool.acquire(recvBuffer.remaining());
+            message.put(recvBuffer);
+            message.flip();
+
+            KdcUdpTransport transport = new KdcUdpTransport(udpServer, fromAddress, bufferPool);
+            transport.onRecvMessage(message);
+            onNewTransport(transport);
+        }
+    }
+
+    protected abstract void onNewTransport(KrbTransport transport);
+
+    /**
+     * A selector and the thread loop serving the channels registered on it.
+     */
+    private class SelectorLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<KdcTcpTransport> pendingTransports =
+                new ConcurrentLinkedQueue<KdcTcpTransport>();
+        private long lastIdleCheckTime = System.currentTimeMillis();
+
+        SelectorLoop(Selector selector) {
+            this.selector = selector;
+        }
 
-            if (tpair.tcpAddress != null) {
+        void register(KdcTcpTransport transport) {
+            pendingTransports.add(transport);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (!isStopped) {
                 try {
-                    checkAndAccept();
-                } catch (SocketTimeoutException e) { //NOPMD
-                    //NOOP as normal
+                    registerPending();
+                    selector.select(KDC_SELECT_TIMEOUT);
+                    Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
+                    while (iter.hasNext()) {
+                        SelectionKey key = iter.next();
+                        iter.remove();
+                        handleKey(key);
+                    }
+                    closeIdle();
                 } catch (IOException e) {
-                    throw new RuntimeException("Error occured while checking tcp connections", e);
+                    LOG.error("Error occurred in the kdc network loop", e);
                 }
             }
+            closeAll();
+        }
 
-            if (tpair.udpAddress != null) {
+        private void registerPending() {
+            KdcTcpTransport transport;
+            while ((transport = pendingTransports.poll()) != null) {
                 try {
-                    checkUdpMessage();
-                } catch (SocketTimeoutException e) { //NOPMD
-                    //NOOP as normal
-                } catch (IOException e) {
-                    throw new RuntimeException("Error occured while checking udp connections", e);
+                    SelectionKey key = transport.getChannel().register(
+                            selector, SelectionKey.OP_READ, transport);
+                    transport.setSelectionKey(key);
+                } catch (ClosedChannelException e) {
+                    transport.release();
                 }
             }
         }
-    }
-    //CHECKSTYLE:ON
-
-    public synchronized void stop() {
-        isStopped = true;
-    }
 
-    private void checkAndAccept() throws IOException {
-        Socket socket;
-        if ((socket = tcpServer.accept()) != null) {
-            socket.setSoTimeout(KDC_TCP_TRANSPORT_TIMEOUT);
-            KrbTransport transport = new KrbTcpTransport(socket);
-            onNewTransport(transport);
+        private void handleKey(SelectionKey key) throws IOException {
+            if (!key.isValid()) {
+                return;
+            }
+            if (key.isAcceptable()) {
+                accept();
+            } else if (key.channel() == udpServer) {
+                checkUdpMessages();
+            } else {
+                KdcTcpTransport transport = (KdcTcpTransport) key.attachment();
+                try {
+                    if (key.isWritable()) {
+                        transport.onWritable();
+                    }
+                    if (key.isReadable() && transport.onReadable()) {
+                        onNewTransport(transport);
+                    }
+                } catch (IOException | CancelledKeyException e) {
+                    LOG.debug("Transport error occurred, disconnecting", e);
+                    transport.release();
+                    transport.releaseBuffers();
+                }
+            }
         }
-    }
 
+        private void closeIdle() {
+            long now = System.currentTimeMillis();
+            if (now - lastIdleCheckTime < KDC_SELECT_TIMEOUT) {
+                return;
+            }
+            lastIdleCheckTime = now;
+            for (SelectionKey key : selector.keys()) {
+                Object attachment = key.attachment();
+                if (attachment instanceof KdcTcpTransport) {
+                    KdcTcpTransport transport = (KdcTcpTransport) attachment;
+                    if (transport.isIdle(now, tcpIdleTimeout)) {
+                        LOG.debug("Connection idle timeout, disconnecting");
+                        transport.release();
+                    }
+                }
+            }
+        }
 
-    private void checkUdpMessage() throws IOException {
-        InetSocketAddress fromAddress = (InetSocketAddress) udpServer.receive(recvBuffer);
-        if (fromAddress != null) {
-            recvBuffer.flip();
-            KdcUdpTransport transport = transports.get(fromAddress);
-            if (transport == null) {
-                transport = new KdcUdpTransport(udpServer, fromAddress);
-                transport.onRecvMessage(recvBuffer);
-                onNewTransport(transport);
-            } else {
-                transport.onRecvMessage(recvBuffer);
+        private void closeAll() {
+            registerPending();
+            for (SelectionKey key : selector.keys()) {
+                try {
+                    key.channel().close();
+                } catch (IOException e) {
+                    LOG.warn("Failed to close channel", e);
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close selector", e);
             }
-            recvBuffer = ByteBuffer.allocate(MAX_MESSAGE_SIZE);
         }
     }
-
-    protected abstract void onNewTransport(KrbTransport transport);
 }
@@ -0,0 +1,234 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.transport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * KDC side implementation of {@link KrbTransport} using TCP in non-blocking
+ * mode. It's driven by a {@link KdcNetwork} selector loop, which reads and
+ * frames the incoming records; {@link #receiveMessage()} never blocks and
+ * returns null when no complete message is pending.
+ */
+public class KdcTcpTransport extends AbstractKrbTransport {
+    private static final Logger LOG = LoggerFactory.getLogger(KdcTcpTransport.class);
+
+    private final SocketChannel channel;
+    private final int maxMessageSize;
+    private final ByteBufferPool bufferPool;
+    private final ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+    private ByteBuffer messageBuffer; // for message body
+    private final Queue<ByteBuffer> recvQueue = new ArrayDeque<ByteBuffer>();
+    private final Queue<ByteBuffer> sendQueue = new ArrayDeque<ByteBuffer>();
+    private SelectionKey selectionKey;
+    private boolean dispatched;
+    private volatile long lastActiveTime;
+
+    public KdcTcpTransport(SocketChannel channel, ByteBufferPool bufferPool) throws IOException {
+        this.channel = channel;
+        this.bufferPool = bufferPool;
+        this.maxMessageSize = bufferPool.getMaxBufferSize();
+        this.lastActiveTime = System.currentTimeMillis();
+        channel.configureBlocking(false);
+    }
+
+    protected SocketChannel getChannel() {
+        return channel;
+    }
+
+    protected void setSelectionKey(SelectionKey selectionKey) {
+        this.selectionKey = selectionKey;
+    }
+
+    /**
+     * Read what's available from the channel, queueing every complete message.
+     * @return true if the transport has pending messages and isn't being
+     * served yet, so the caller should dispatch it to a handler
+     * @throws IOException when the peer closed the connection or sent a bad record
+     */
+    protected boolean onReadable() throws IOException {
+        boolean received = false;
+        while (true) {
+            if (messageBuffer == null) {
+                if (channel.read(lengthBuffer) < 0) {
+                    throw new IOException("Connection closed by peer");
+                }
+                if (lengthBuffer.hasRemaining()) {
+                    break;
+                }
+                lengthBuffer.flip();
+                int msgLen = lengthBuffer.getInt();
+                lengthBuffer.clear();
+                if (msgLen <= 0 || msgLen > maxMessageSize) {
+                    throw new IOException("Invalid message length: " + msgLen);
+                }
+                messageBuffer = bufferPool.acquire(msgLen);
+            }
+
+            if (channel.read(messageBuffer) < 0) {
+                throw new IOException("Connection closed by peer");
+            }
+            if (messageBuffer.hasRemaining()) {
+                break;
+            }
+            messageBuffer.flip();
+            synchronized (recvQueue) {
+                recvQueue.add(messageBuffer);
+            }
+            messageBuffer = null;
+            received = true;
+        }
+
+        if (received) {
+            lastActiveTime = System.currentTimeMillis();
+            synchronized (recvQueue) {
+                if (!dispatched) {
+                    dispatched = true;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Flush the messages that couldn't be written out at once.
+     * @throws IOException e
+     */
+    protected void onWritable() throws IOException {
+        synchronized (sendQueue) {
+            while (!sendQueue.isEmpty()) {
+                ByteBuffer message = sendQueue.peek();
+                channel.write(message);
+                if (message.hasRemaining()) {
+                    return;
+                }
+                sendQueue.poll();
+            }
+            selectionKey.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Check if the connection has been idle for the given time, that's, no
+     * message is being received, handled or sent.
+     * @param now current time in milliseconds
+     * @param timeout idle timeout in milliseconds
+     * @return true if idle
+     */
+    protected boolean isIdle(long now, int timeout) {
+        synchronized (recvQueue) {
+            if (dispatched || messageBuffer != null) {
+                return false;
+            }
+        }
+        synchronized (sendQueue) {
+            if (!sendQueue.isEmpty()) {
+                return false;
+            }
+        }
+        return now - lastActiveTime > timeout;
+    }
+
+    @Override
+    public void sendMessage(ByteBuffer message) throws IOException {
+        synchronized (sendQueue) {
+            if (sendQueue.isEmpty()) {
+                channel.write(message);
+            }
+            if (message.hasRemaining()) {
+                sendQueue.add(message);
+                try {
+                    selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                } catch (CancelledKeyException e) {
+                    throw new IOException("Connection already closed", e);
+                }
+                selectionKey.selector().wakeup();
+            }
+        }
+        lastActiveTime = System.currentTimeMillis();
+    }
+
+    @Override
+    public ByteBuffer receiveMessage() throws IOException {
+        synchronized (recvQueue) {
+            ByteBuffer message = recvQueue.poll();
+            if (message == null) {
+                dispatched = false;
+            }
+            return message;
+        }
+    }
+
+    @Override
+    public void releaseMessage(ByteBuffer message) {
+        bufferPool.release(message);
+    }
+
+    @Override
+    public boolean isTcp() {
+        return true;
+    }
+
+    @Override
+    public InetAddress getRemoteAddress() {
+        return channel.socket().getInetAddress();
+    }
+
+    @Override
+    public void release() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close the connection", e);
+        }
+    }
+
+    /**
+     * Give back the buffers of the messages left, called by the network once
+     * the connection is closed.
+     */
+    protected void releaseBuffers() {
+        // The partly read message is only known to the network
+        if (messageBuffer != null) {
+            bufferPool.release(messageBuffer);
+            messageBuffer = null;
+        }
+        synchronized (recvQueue) {
+            if (dispatched) {
+                return; // The handler will drain the queue
+            }
+            ByteBuffer message;
+            while ((message = recvQueue.poll()) != null) {
+                bufferPool.release(message);
+            }
+        }
+    }
+}
@@ -19,40 +19,58 @@
  */
 package org.apache.kerby.kerberos.kerb.transport;
 
-import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.TimeUnit;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
- * Default implementation of {@link KrbTransport} using UDP.
+ * KDC side implementation of {@link KrbTransport} using UDP. It shares the
+ * server channel owned by {@link KdcNetwork}, and carries the datagrams
+ * received from one client; {@link #receiveMessage()} never blocks and
+ * returns null when nothing is pending.
  */
 public class KdcUdpTransport extends KrbUdpTransport {
-    private BlockingQueue<ByteBuffer> bufferQueue = new ArrayBlockingQueue<ByteBuffer>(2);
+    private Queue<ByteBuffer> bufferQueue = new ConcurrentLinkedQueue<ByteBuffer>();
+    private final ByteBufferPool bufferPool;
 
-    public KdcUdpTransport(DatagramChannel channel, InetSocketAddress remoteAddress) throws IOException {
-        super(remoteAddress);
-        setChannel(channel);
+    public KdcUdpTransport(DatagramChannel channel, InetSocketAddress remoteAddress) {
+        this(channel, remoteAddress, null);
+    }
+
+    /**
+     * Construct a transport whose messages are leased from the buffer pool.
+     * @param channel The server channel
+     * @param remoteAddress The client address
+     * @param bufferPool The buffer pool, null if messages aren't pooled
+     */
+    public KdcUdpTransport(DatagramChannel channel, InetSocketAddress remoteAddress,
+                           ByteBufferPool bufferPool) {
+        super(channel, remoteAddress);
+        this.bufferPool = bufferPool;
+    }
+
+    @Override
+    public ByteBuffer receiveMessage() {
+        return bufferQueue.poll();
     }
 
     @Override
-    public synchronized ByteBuffer receiveMessage() throws IOException {
-        long timeout = 1000; // TODO: configurable or option
-        ByteBuffer message;
-        try {
-            message = bufferQueue.poll(timeout, TimeUnit.MILLISECONDS);
-        } catch (InterruptedException e) {
-            throw new IOException(e);
+    public void releaseMessage(ByteBuffer message) {
+        if (bufferPool != null) {
+            bufferPool.release(message);
         }
-        return message;
     }
 
-    protected synchronized void onRecvMessage(ByteBuffer message) {
+    protected void onRecvMessage(ByteBuffer message) {
         if (message != null) {
             bufferQueue.add(message);
         }
     }
+
+    @Override
+    public void release() {
+        // The server channel is owned and closed by the network
+    }
 }
@@ -0,0 +1,414 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *
+ */
+package org.apache.kerby.kerberos.kerb.transport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pool of TCP connections to KDCs, so a request can go over a connection
+ * left by a former one instead of connecting again. A transport is leased for
+ * a request and given back by releasing it. There are at most the given
+ * number of connections to each KDC, a lease waits for one to be given back
+ * when they're all leased. Connections unused for the idle timeout are
+ * closed, and the others are checked not to be closed by the KDC, with a non
+ * blocking read, whenever they are leased again. A KDC may still close a
+ * connection right after the check, so a reused connection that fails before
+ * any byte of the reply is told by {@link #isRetriable(KrbTransport)}, to
+ * send the request again on a new connection.
+ */
+public class KrbConnectionPool {
+    private static final Logger LOG = LoggerFactory.getLogger(KrbConnectionPool.class);
+
+    private static final long MIN_EVICT_INTERVAL = 1000;
+
+    private static final ConcurrentMap<String, KrbConnectionPool> SHARED_POOLS =
+            new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService EVICTOR =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "krb-connection-pool-evictor");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final int maxConnections;
+    private final long idleTimeout;
+    private final ConcurrentMap<InetSocketAddress, KdcConnections> kdcs =
+            new ConcurrentHashMap<>();
+    private final ScheduledFuture<?> evictTask;
+    private volatile boolean closed;
+
+    /**
+     * Get the pool shared by the clients with the same limits.
+     * @param maxConnections The max connections to a KDC
+     * @param idleTimeout The time in milliseconds to keep an unused connection
+     * @return The shared pool
+     */
+    public static KrbConnectionPool getShared(int maxConnections, long idleTimeout) {
+        String key = maxConnections + "/" + idleTimeout;
+        KrbConnectionPool pool = SHARED_POOLS.get(key);
+        if (pool == null) {
+            KrbConnectionPool newPool = new KrbConnectionPool(maxConnections, idleTimeout);
+            pool = SHARED_POOLS.putIfAbsent(key, newPool);
+            if (pool == null) {
+                pool = newPool;
+            } else {
+                newPool.close();
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * @param maxConnections The max connections to a KDC
+     * @param idleTimeout The time in milliseconds to keep an unused connection
+     */
+    public KrbConnectionPool(int maxConnections, long idleTimeout) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("Invalid max connections: " + maxConnections);
+        }
+        this.maxConnections = maxConnections;
+        this.idleTimeout = idleTimeout;
+
+        long interval = Math.max(idleTimeout / 2, MIN_EVICT_INTERVAL);
+        this.evictTask = EVICTOR.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictIdle();
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Lease a connection to the KDC, an idle one if any, or a new one.
+     * @param address The KDC TCP address
+     * @param socketTimeout The time in milliseconds to wait for a connection,
+     *                      and then for the replies on it
+     * @return The transport, to release when the request is done
+     * @throws IOException e
+     */
+    public KrbTransport lease(InetSocketAddress address, int socketTimeout) throws IOException {
+        return lease(address, socketTimeout, true);
+    }
+
+    /**
+     * Lease a new connection to the KDC, to retry a request that failed on a
+     * reused one.
+     * @param address The KDC TCP address
+     * @param socketTimeout The time in milliseconds to wait for a connection,
+     *                      and then for the replies on it
+     * @return The transport, to release when the request is done
+     * @throws IOException e
+     */
+    public KrbTransport leaseNew(InetSocketAddress address, int socketTimeout) throws IOException {
+        return lease(address, socketTimeout, false);
+    }
+
+    /**
+     * Tell if the request failed on a reused connection before any byte of
+     * the reply, as when the KDC closed the connection meanwhile, so it can
+     * be sent again on a new connection.
+     * @param transport The transport leased from the pool
+     * @return true if the request can be retried
+     */
+    public boolean isRetriable(KrbTransport transport) {
+        return transport instanceof PooledTransport
+                && ((PooledTransport) transport).failedBeforeReply();
+    }
+
+    private KrbTransport lease(InetSocketAddress address, int socketTimeout,
+                               boolean reuse) throws IOException {
+        if (closed) {
+            throw new IOException("Connection pool is closed");
+        }
+        KdcConnections connections = getConnections(address);
+        try {
+            if (!connections.permits.tryAcquire(socketTimeout, TimeUnit.MILLISECONDS)) {
+                throw new SocketTimeoutException("All the " + maxConnections
+                        + " connections to " + address + " are in use");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a connection");
+        }
+
+        try {
+            long now = System.currentTimeMillis();
+            PooledTransport transport;
+            while (reuse && (transport = connections.pollIdle()) != null) {
+                if (transport.isUsable(now)) {
+                    transport.onLease(socketTimeout, true);
+                    return transport;
+                }
+                transport.close();
+            }
+
+            // Opened as a channel, so it can be checked without blocking
+            Socket socket = SocketChannel.open().socket();
+            try {
+                socket.setTcpNoDelay(true);
+                socket.setKeepAlive(true);
+                socket.connect(address, socketTimeout);
+                transport = new PooledTransport(socket, connections);
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+            transport.onLease(socketTimeout, false);
+            return transport;
+        } catch (IOException | RuntimeException e) {
+            connections.permits.release();
+            throw e;
+        }
+    }
+
+    private KdcConnections getConnections(InetSocketAddress address) {
+        KdcConnections connections = kdcs.get(address);
+        if (connections == null) {
+            KdcConnections newConnections = new KdcConnections(maxConnections);
+            connections = kdcs.putIfAbsent(address, newConnections);
+            if (connections == null) {
+                connections = newConnections;
+            }
+        }
+        return connections;
+    }
+
+    /**
+     * Get the number of idle connections to the KDC.
+     * @param address The KDC TCP address
+     * @return idle connections
+     */
+    public int getIdleCount(InetSocketAddress address) {
+        KdcConnections connections = kdcs.get(address);
+        return connections != null ? connections.idleCount() : 0;
+    }
+
+    /**
+     * Close the connections unused for the idle timeout.
+     */
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        for (KdcConnections connections : kdcs.values()) {
+            connections.evict(now, idleTimeout);
+        }
+    }
+
+    /**
+     * Close the idle connections, and the leased ones when given back.
+     */
+    public void close() {
+        closed = true;
+        evictTask.cancel(false);
+        for (KdcConnections connections : kdcs.values()) {
+            connections.evict(Long.MAX_VALUE, 0);
+        }
+    }
+
+    /**
+     * The connections to a KDC, the most recently used first.
+     */
+    private static final class KdcConnections {
+        private final Semaphore permits;
+        private final Deque<PooledTransport> idle = new ArrayDeque<>();
+
+        KdcConnections(int maxConnections) {
+            this.permits = new Semaphore(maxConnections);
+        }
+
+        synchronized PooledTransport pollIdle() {
+            return idle.pollFirst();
+        }
+
+        synchronized void pushIdle(PooledTransport transport) {
+            idle.addFirst(transport);
+        }
+
+        synchronized int idleCount() {
+            return idle.size();
+        }
+
+        void evict(long now, long idleTimeout) {
+            Deque<PooledTransport> toClose = new ArrayDeque<>();
+            synchronized (this) {
+                PooledTransport transport;
+                while ((transport = idle.peekLast()) != null
+                        && now - transport.lastUsed >= idleTimeout) {
+                    toClose.add(idle.pollLast());
+                }
+            }
+            for (PooledTransport transport : toClose) {
+                LOG.debug("Closing idle connection to {}", transport.getRemoteAddress());
+                transport.close();
+            }
+        }
+    }
+
+    /**
+     * A pooled connection, given back to the pool when released. It's closed
+     * instead if it failed, as it may be left in the middle of a message.
+     */
+    private final class PooledTransport extends KrbTcpTransport {
+        private final Socket socket;
+        private final KdcConnections connections;
+        private volatile long lastUsed;
+        private boolean leased;
+        private boolean reused;
+        private boolean broken;
+        private final ReplyInputStream replyStream;
+
+        PooledTransport(Socket socket, KdcConnections connections) throws IOException {
+            this(socket, new ReplyInputStream(socket.getInputStream()), connections);
+        }
+
+        private PooledTransport(Socket socket, ReplyInputStream replyStream,
+                                KdcConnections connections) throws IOException {
+            super(socket, replyStream);
+            this.socket = socket;
+            this.replyStream = replyStream;
+            this.connections = connections;
+        }
+
+        void onLease(int socketTimeout, boolean reused) throws IOException {
+            socket.setSoTimeout(socketTimeout);
+            leased = true;
+            this.reused = reused;
+            broken = false;
+            replyStream.replied = false;
+            LOG.debug("{} connection to {}", reused ? "Reusing" : "New", socket.getRemoteSocketAddress());
+        }
+
+        boolean isUsable(long now) {
+            return !socket.isClosed() && now - lastUsed < idleTimeout && isAlive();
+        }
+
+        /**
+         * Nothing is expected on an idle connection, any read but none means
+         * it's closed by the KDC, or out of sync.
+         */
+        private boolean isAlive() {
+            SocketChannel channel = socket.getChannel();
+            try {
+                channel.configureBlocking(false);
+                try {
+                    return channel.read(ByteBuffer.allocate(1)) == 0;
+                } finally {
+                    channel.configureBlocking(true);
+                }
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        boolean failedBeforeReply() {
+            return reused && broken && !replyStream.replied;
+        }
+
+        @Override
+        public void sendMessage(ByteBuffer message) throws IOException {
+            try {
+                super.sendMessage(message);
+            } catch (IOException e) {
+                broken = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public ByteBuffer receiveMessage() throws IOException {
+            try {
+                return super.receiveMessage();
+            } catch (IOException e) {
+                broken = true;
+                throw e;
+            }
+        }
+
+        /**
+         * Give back the connection to the pool.
+         */
+        @Override
+        public void release() {
+            if (!leased) {
+                return;
+            }
+            leased = false;
+            lastUsed = System.currentTimeMillis();
+            if (broken || closed) {
+                close();
+            } else {
+                connections.pushIdle(this);
+            }
+            connections.permits.release();
+        }
+
+        void close() {
+            super.release();
+        }
+    }
+
+    /**
+     * The socket input stream, telling if any byte of the reply is read.
+     */
+    private static final class ReplyInputStream extends FilterInputStream {
+        private boolean replied;
+
+        ReplyInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            replied |= b >= 0;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            replied |= read > 0;
+            return read;
+        }
+    }
+}
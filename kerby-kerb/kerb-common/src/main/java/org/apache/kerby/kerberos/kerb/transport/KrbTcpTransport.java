@@ -22,6 +22,7 @@ package org.apache.kerby.kerberos.kerb.transport;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.nio.ByteBuffer;
@@ -34,13 +35,21 @@ public class KrbTcpTransport
     private Socket socket;
     private DataOutputStream outputStream;
     private DataInputStream inputStream;
-    private byte[] messageBuffer; // for message body
+    private final ByteBufferPool bufferPool = ByteBufferPool.getDefault();
 
     public KrbTcpTransport(Socket socket) throws IOException {
+        this(socket, socket.getInputStream());
+    }
+
+    /**
+     * @param socket The connected socket
+     * @param inputStream The socket input stream, or a stream wrapping it
+     * @throws IOException e
+     */
+    protected KrbTcpTransport(Socket socket, InputStream inputStream) throws IOException {
         this.socket = socket;
         this.outputStream = new DataOutputStream(socket.getOutputStream());
-        this.inputStream = new DataInputStream(socket.getInputStream());
-        this.messageBuffer = new byte[1024 * 1024]; // TODO.
+        this.inputStream = new DataInputStream(inputStream);
     }
 
 
@@ -52,14 +61,23 @@ public class KrbTcpTransport
     @Override
     public ByteBuffer receiveMessage() throws IOException {
         int msgLen = inputStream.readInt();
+        if (msgLen > bufferPool.getMaxBufferSize()) {
+            throw new IOException("Message too large: " + msgLen);
+        }
         if (msgLen > 0) {
-            inputStream.readFully(messageBuffer, 0, msgLen);
-            return ByteBuffer.wrap(messageBuffer, 0, msgLen);
+            ByteBuffer message = bufferPool.acquire(msgLen);
+            inputStream.readFully(message.array(), message.arrayOffset(), msgLen);
+            return message;
         }
 
         return null;
     }
 
+    @Override
+    public void releaseMessage(ByteBuffer message) {
+        bufferPool.release(message);
+    }
+
     @Override
     public boolean isTcp() {
         return true;
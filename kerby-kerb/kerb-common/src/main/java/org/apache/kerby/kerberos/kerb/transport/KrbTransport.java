@@ -42,6 +42,13 @@ public interface KrbTransport {
      */
     ByteBuffer receiveMessage() throws IOException;
 
+    /**
+     * Give back a message got from {@link #receiveMessage()} once it's
+     * handled, so its buffer can be reused. It must not be used afterwards.
+     * @param message The received message
+     */
+    void releaseMessage(ByteBuffer message);
+
     /**
      * Judge the type of transport, return true if it is tcp,
      * @return false if it is udp.
@@ -45,6 +45,16 @@ public class KrbUdpTransport
         recvBuffer = ByteBuffer.allocate(65507);
     }
 
+    /**
+     * Construct a transport over an existing channel, which isn't owned by it.
+     * @param channel The channel
+     * @param remoteAddress The remote address
+     */
+    protected KrbUdpTransport(DatagramChannel channel, InetSocketAddress remoteAddress) {
+        this.remoteAddress = remoteAddress;
+        setChannel(channel);
+    }
+
     protected void setChannel(DatagramChannel channel) {
         this.channel = channel;
     }
@@ -0,0 +1,119 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.kerby.kerberos.kerb.preauth.pkinit;
+
+import org.apache.kerby.cms.type.ContentInfo;
+import org.apache.kerby.cms.type.SignedData;
+import org.apache.kerby.kerberos.kerb.KrbErrorCode;
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.type.base.PrincipalName;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Verify CMS signed data made by openssl cms -sign, signed by a client
+ * certificate with an id-pkinit-san and issued by an intermediate CA.
+ */
+public class PkinitCryptoTest {
+
+    @Test
+    public void testVerifyCmsSignature() throws Exception {
+        byte[] signedContentInfo = loadResource("/pkinit/signeddata.der");
+        SignedData signedData = decode(signedContentInfo);
+        List<X509Certificate> certificates = PkinitCrypto.getCmsCertificates(signedContentInfo);
+        assertThat(certificates).hasSize(2);
+
+        X509Certificate signer = PkinitCrypto.verifyCmsSignature(signedContentInfo, signedData, certificates);
+        assertThat(signer.getSubjectX500Principal().getName()).startsWith("CN=pkinit-client");
+    }
+
+    @Test
+    public void testTamperedContent() throws Exception {
+        byte[] signedContentInfo = loadResource("/pkinit/signeddata.der");
+        byte[] content = "hello kerby".getBytes(StandardCharsets.US_ASCII);
+        signedContentInfo[indexOf(signedContentInfo, content)] ^= 1;
+
+        assertInvalidSignature(signedContentInfo);
+    }
+
+    @Test
+    public void testTamperedSignature() throws Exception {
+        byte[] signedContentInfo = loadResource("/pkinit/signeddata.der");
+        // The signature is the last field, without unsigned attributes
+        signedContentInfo[signedContentInfo.length - 1] ^= 1;
+
+        assertInvalidSignature(signedContentInfo);
+    }
+
+    @Test
+    public void testPkinitSans() throws Exception {
+        List<X509Certificate> certificates = PkinitCrypto.getCmsCertificates(loadResource("/pkinit/signeddata.der"));
+        List<PrincipalName> sans = new ArrayList<>();
+        for (X509Certificate certificate : certificates) {
+            sans.addAll(PkinitCrypto.getPkinitSans(certificate));
+        }
+
+        assertThat(sans).hasSize(1);
+        assertThat(sans.get(0).getName()).isEqualTo("pkinit-client@EXAMPLE.COM");
+    }
+
+    private void assertInvalidSignature(byte[] signedContentInfo) throws Exception {
+        SignedData signedData = decode(signedContentInfo);
+        try {
+            PkinitCrypto.verifyCmsSignature(signedContentInfo, signedData,
+                    PkinitCrypto.getCmsCertificates(signedContentInfo));
+            fail("Verified a tampered signed data");
+        } catch (KrbException e) {
+            assertThat(e.getMessage()).contains(KrbErrorCode.KDC_ERR_INVALID_SIG.name());
+        }
+    }
+
+    private static int indexOf(byte[] bytes, byte[] part) {
+        for (int i = 0; i <= bytes.length - part.length; i++) {
+            int j = 0;
+            while (j < part.length && bytes[i + j] == part[j]) {
+                j++;
+            }
+            if (j == part.length) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Not found");
+    }
+
+    private static SignedData decode(byte[] signedContentInfo) throws Exception {
+        ContentInfo contentInfo = new ContentInfo();
+        contentInfo.decode(signedContentInfo);
+        return contentInfo.getContentAs(SignedData.class);
+    }
+
+    private byte[] loadResource(String resource) throws Exception {
+        return Files.readAllBytes(Paths.get(getClass().getResource(resource).toURI()));
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.transport;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A unit test for ByteBufferPool.
+ */
+public class ByteBufferPoolTest {
+
+    @Test
+    public void testAcquireAndRelease() {
+        ByteBufferPool pool = new ByteBufferPool(64 * 1024, 4096, false);
+
+        ByteBuffer buffer = pool.acquire(1000);
+        assertThat(buffer.capacity()).isEqualTo(1024);
+        assertThat(buffer.position()).isEqualTo(0);
+        assertThat(buffer.limit()).isEqualTo(1000);
+        assertThat(pool.getMissCount()).isEqualTo(1);
+
+        pool.release(buffer);
+        assertThat(pool.getPooledCount()).isEqualTo(1);
+
+        ByteBuffer reused = pool.acquire(600);
+        assertThat(reused).isSameAs(buffer);
+        assertThat(reused.limit()).isEqualTo(600);
+        assertThat(pool.getHitCount()).isEqualTo(1);
+        assertThat(pool.getPooledCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testBoundedPool() {
+        ByteBufferPool pool = new ByteBufferPool(64 * 1024, 2048, true);
+
+        ByteBuffer buffer1 = pool.acquire(1024);
+        ByteBuffer buffer2 = pool.acquire(1024);
+        ByteBuffer buffer3 = pool.acquire(1024);
+        assertThat(buffer1.isDirect()).isTrue();
+
+        pool.release(buffer1);
+        pool.release(buffer2);
+        pool.release(buffer3);
+        assertThat(pool.getPooledCount()).isEqualTo(2);
+        assertThat(pool.getDropCount()).isEqualTo(1);
+
+        ByteBuffer large = pool.acquire(128 * 1024);
+        assertThat(large.capacity()).isEqualTo(128 * 1024);
+        pool.release(large);
+        assertThat(pool.getDropCount()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.transport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class KrbConnectionPoolTest {
+    private static final int TIMEOUT = 1000;
+
+    private ServerSocket kdc;
+    private final List<Socket> accepted = new CopyOnWriteArrayList<>();
+    private InetSocketAddress address;
+    private KrbConnectionPool pool;
+
+    @Before
+    public void setUp() throws IOException {
+        kdc = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        address = (InetSocketAddress) kdc.getLocalSocketAddress();
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        accepted.add(kdc.accept());
+                    }
+                } catch (IOException e) {
+                    assertThat(kdc.isClosed()).isTrue();
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (pool != null) {
+            pool.close();
+        }
+        kdc.close();
+        for (Socket socket : accepted) {
+            socket.close();
+        }
+    }
+
+    private void waitAccepted(int count) throws InterruptedException {
+        for (int i = 0; i < 100 && accepted.size() < count; i++) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        pool = new KrbConnectionPool(2, 10 * 1000);
+        KrbTransport transport = pool.lease(address, TIMEOUT);
+        assertThat(transport.isTcp()).isTrue();
+        transport.release();
+        assertThat(pool.getIdleCount(address)).isEqualTo(1);
+
+        KrbTransport reused = pool.lease(address, TIMEOUT);
+        assertThat(reused).isSameAs(transport);
+        assertThat(pool.getIdleCount(address)).isZero();
+        reused.release();
+
+        waitAccepted(1);
+        assertThat(accepted).hasSize(1);
+    }
+
+    @Test
+    public void testMaxConnections() throws Exception {
+        pool = new KrbConnectionPool(1, 10 * 1000);
+        KrbTransport transport = pool.lease(address, TIMEOUT);
+        try {
+            pool.lease(address, 100);
+            fail("Expected no connection left");
+        } catch (SocketTimeoutException e) {
+            assertThat(e.getMessage()).contains("in use");
+        }
+        transport.release();
+        pool.lease(address, 100).release();
+    }
+
+    @Test
+    public void testEvictIdle() throws Exception {
+        pool = new KrbConnectionPool(2, 50);
+        pool.lease(address, TIMEOUT).release();
+        assertThat(pool.getIdleCount(address)).isEqualTo(1);
+
+        Thread.sleep(100);
+        pool.evictIdle();
+        assertThat(pool.getIdleCount(address)).isZero();
+    }
+
+    @Test
+    public void testClosedByKdc() throws Exception {
+        pool = new KrbConnectionPool(2, 10 * 1000);
+        KrbTransport transport = pool.lease(address, TIMEOUT);
+        transport.release();
+
+        waitAccepted(1);
+        accepted.get(0).close();
+        // Checked on every reuse, however short the connection was idle
+        Thread.sleep(50);
+
+        KrbTransport other = pool.lease(address, TIMEOUT);
+        assertThat(other).isNotSameAs(transport);
+        other.release();
+    }
+
+    @Test
+    public void testRetriable() throws Exception {
+        pool = new KrbConnectionPool(2, 10 * 1000);
+        KrbTransport transport = pool.lease(address, TIMEOUT);
+        transport.release();
+        KrbTransport reused = pool.lease(address, TIMEOUT);
+        assertThat(reused).isSameAs(transport);
+
+        // Closed by the KDC after the lease check, before any reply
+        waitAccepted(1);
+        accepted.get(0).close();
+        failToReceive(reused);
+        assertThat(pool.isRetriable(reused)).isTrue();
+
+        KrbTransport fresh = pool.leaseNew(address, TIMEOUT);
+        assertThat(fresh).isNotSameAs(reused);
+        assertThat(pool.isRetriable(fresh)).isFalse();
+        waitAccepted(2);
+        accepted.get(1).close();
+        failToReceive(fresh);
+        assertThat(pool.isRetriable(fresh)).isFalse();
+    }
+
+    @Test
+    public void testPartialReplyNotRetriable() throws Exception {
+        pool = new KrbConnectionPool(2, 10 * 1000);
+        pool.lease(address, TIMEOUT).release();
+        KrbTransport reused = pool.lease(address, TIMEOUT);
+
+        waitAccepted(1);
+        Socket kdcSide = accepted.get(0);
+        kdcSide.getOutputStream().write(new byte[] {0, 0});
+        kdcSide.close();
+        failToReceive(reused);
+        assertThat(pool.isRetriable(reused)).isFalse();
+    }
+
+    private static void failToReceive(KrbTransport transport) {
+        try {
+            transport.sendMessage(ByteBuffer.wrap(new byte[] {0, 0, 0, 1, 0}));
+            transport.receiveMessage();
+            fail("Expected the connection closed");
+        } catch (IOException e) {
+            transport.release();
+        }
+    }
+}
@@ -37,7 +37,7 @@ public abstract class KcCheckSum extends AbstractKeyedCheckSumTypeHandler {
         byte[] constant = new byte[5];
         BytesUtil.int2bytes(usage, constant, 0, true);
         constant[4] = (byte) 0x99;
-        byte[] kc = ((DkKeyMaker) keyMaker()).dk(key, constant);
+        byte[] kc = ((DkKeyMaker) keyMaker()).usageDk(key, constant, usage);
 
         return mac(kc, data, start, len);
     }
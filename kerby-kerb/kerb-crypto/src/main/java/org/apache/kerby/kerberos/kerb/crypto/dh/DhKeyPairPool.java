@@ -0,0 +1,211 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.kerby.kerberos.kerb.crypto.dh;
+
+import javax.crypto.spec.DHParameterSpec;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of ephemeral DH key pairs of a well-known group, generated ahead by
+ * background threads so PKINIT requests only do the agreement phase. The pool
+ * depth follows the demand seen in the last second, and a key pair taken from
+ * the pool is removed from it, so it's never used twice. When the pool is
+ * empty the key pair is generated by the caller.
+ */
+public final class DhKeyPairPool {
+    private static final int MIN_DEPTH = 2;
+    private static final int MAX_DEPTH = 256;
+    // Seconds of the demand rate to keep generated ahead
+    private static final int DEPTH_SECONDS = 2;
+    private static final long WINDOW_MILLIS = 1000;
+
+    private static final int REFILL_THREADS =
+        Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private static final ExecutorService REFILLER = Executors.newFixedThreadPool(
+        REFILL_THREADS, new ThreadFactory() {
+            private final AtomicInteger threadNum = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "dh-key-pool-" + threadNum.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+    private static final DHParameterSpec[] GROUPS = {
+        DhGroup.MODP_GROUP2, DhGroup.MODP_GROUP14, DhGroup.MODP_GROUP16
+    };
+    private static final ConcurrentMap<DHParameterSpec, DhKeyPairPool> POOLS =
+        new ConcurrentHashMap<>();
+
+    private final DHParameterSpec dhParamSpec;
+    private final BlockingQueue<KeyPair> keyPairs = new LinkedBlockingQueue<>();
+    private final AtomicInteger refillers = new AtomicInteger();
+    private final DhKeyPairPoolStats stats = new DhKeyPairPoolStats(keyPairs);
+
+    private volatile int targetDepth = MIN_DEPTH;
+    private long windowStart = System.currentTimeMillis();
+    private long windowTakes;
+    private long windowGenerated;
+
+    private DhKeyPairPool(DHParameterSpec dhParamSpec) {
+        this.dhParamSpec = dhParamSpec;
+    }
+
+    /**
+     * Get the pool of the well-known group having the DH parameters.
+     * @param dhParamSpec The DH parameters
+     * @return the pool, null if the parameters aren't of a well-known group
+     */
+    public static DhKeyPairPool getPool(DHParameterSpec dhParamSpec) {
+        for (DHParameterSpec group : GROUPS) {
+            if (group.getP().equals(dhParamSpec.getP())
+                    && group.getG().equals(dhParamSpec.getG())) {
+                DhKeyPairPool pool = POOLS.get(group);
+                if (pool == null) {
+                    pool = new DhKeyPairPool(group);
+                    DhKeyPairPool existing = POOLS.putIfAbsent(group, pool);
+                    if (existing != null) {
+                        pool = existing;
+                    }
+                }
+                return pool;
+            }
+        }
+        return null;
+    }
+
+    public DHParameterSpec getDhParamSpec() {
+        return dhParamSpec;
+    }
+
+    /**
+     * Take a key pair, generated ahead if the pool isn't empty. The key pair
+     * is removed from the pool.
+     * @return key pair
+     * @throws GeneralSecurityException e
+     */
+    public KeyPair take() throws GeneralSecurityException {
+        recordTake();
+        KeyPair keyPair = keyPairs.poll();
+        if (keyPair != null) {
+            stats.recordHit();
+        } else {
+            stats.recordMiss();
+            keyPair = generate(dhParamSpec);
+        }
+        refill();
+        return keyPair;
+    }
+
+    /**
+     * @return statistics of the pool
+     */
+    public DhKeyPairPoolStats getStats() {
+        return stats;
+    }
+
+    static KeyPair generate(DHParameterSpec dhParamSpec) throws GeneralSecurityException {
+        KeyPairGenerator keyPairGen = KeyPairGenerator.getInstance("DH");
+        keyPairGen.initialize(dhParamSpec);
+        return keyPairGen.generateKeyPair();
+    }
+
+    /**
+     * Count the take and size the pool for the demand rate when the window
+     * ends.
+     */
+    private synchronized void recordTake() {
+        windowTakes++;
+        long now = System.currentTimeMillis();
+        long elapsed = now - windowStart;
+        if (elapsed < WINDOW_MILLIS) {
+            return;
+        }
+
+        double demandRate = windowTakes * 1000.0 / elapsed;
+        double refillRate = windowGenerated * 1000.0 / elapsed;
+        int depth = (int) Math.ceil(demandRate * DEPTH_SECONDS);
+        targetDepth = Math.min(MAX_DEPTH, Math.max(MIN_DEPTH, depth));
+        stats.update(targetDepth, demandRate, refillRate);
+        windowStart = now;
+        windowTakes = 0;
+        windowGenerated = 0;
+
+        // Drop the key pairs beyond the lowered demand
+        while (keyPairs.size() > targetDepth && keyPairs.poll() != null) {
+            stats.recordDrop();
+        }
+    }
+
+    private synchronized void recordGenerated() {
+        windowGenerated++;
+    }
+
+    private void refill() {
+        int deficit = targetDepth - keyPairs.size();
+        while (deficit > 0) {
+            int running = refillers.get();
+            if (running >= Math.min(REFILL_THREADS, deficit)) {
+                return;
+            }
+            if (refillers.compareAndSet(running, running + 1)) {
+                REFILLER.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            fill();
+                        } finally {
+                            refillers.decrementAndGet();
+                        }
+                    }
+                });
+                deficit--;
+            }
+        }
+    }
+
+    private void fill() {
+        while (keyPairs.size() < targetDepth) {
+            KeyPair keyPair;
+            try {
+                keyPair = generate(dhParamSpec);
+            } catch (GeneralSecurityException e) {
+                // The callers will generate and get the error
+                stats.recordFailure();
+                return;
+            }
+            keyPairs.offer(keyPair);
+            stats.recordGenerated();
+            recordGenerated();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.kerby.kerberos.kerb.crypto.dh;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of a DH key pair pool, see {@link DhKeyPairPool}.
+ */
+public class DhKeyPairPoolStats {
+    private final Collection<?> keyPairs;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong generatedCount = new AtomicLong();
+    private final AtomicLong dropCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private volatile int targetDepth;
+    private volatile double demandRate;
+    private volatile double refillRate;
+
+    DhKeyPairPoolStats(Collection<?> keyPairs) {
+        this.keyPairs = keyPairs;
+    }
+
+    void recordHit() {
+        hitCount.incrementAndGet();
+    }
+
+    void recordMiss() {
+        missCount.incrementAndGet();
+    }
+
+    void recordGenerated() {
+        generatedCount.incrementAndGet();
+    }
+
+    void recordDrop() {
+        dropCount.incrementAndGet();
+    }
+
+    void recordFailure() {
+        failureCount.incrementAndGet();
+    }
+
+    void update(int targetDepth, double demandRate, double refillRate) {
+        this.targetDepth = targetDepth;
+        this.demandRate = demandRate;
+        this.refillRate = refillRate;
+    }
+
+    /**
+     * @return number of key pairs ready in the pool
+     */
+    public int getDepth() {
+        return keyPairs.size();
+    }
+
+    /**
+     * @return number of key pairs the pool is refilled up to
+     */
+    public int getTargetDepth() {
+        return targetDepth;
+    }
+
+    /**
+     * @return number of key pairs taken from the pool
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return number of key pairs generated by the callers, the pool empty
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return number of key pairs generated by the background threads
+     */
+    public long getGeneratedCount() {
+        return generatedCount.get();
+    }
+
+    /**
+     * @return number of key pairs dropped unused when the demand lowered
+     */
+    public long getDropCount() {
+        return dropCount.get();
+    }
+
+    /**
+     * @return number of failures generating key pairs in the background
+     */
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    /**
+     * @return key pairs taken per second, in the last window with requests
+     */
+    public double getDemandRate() {
+        return demandRate;
+    }
+
+    /**
+     * @return key pairs generated in the background per second, in the last
+     * window with requests
+     */
+    public double getRefillRate() {
+        return refillRate;
+    }
+
+    @Override
+    public String toString() {
+        return "depth=" + getDepth() + ", targetDepth=" + getTargetDepth()
+            + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+            + ", generated=" + getGeneratedCount() + ", drops=" + getDropCount()
+            + ", failures=" + getFailureCount()
+            + ", demandRate=" + getDemandRate() + ", refillRate=" + getRefillRate();
+    }
+}
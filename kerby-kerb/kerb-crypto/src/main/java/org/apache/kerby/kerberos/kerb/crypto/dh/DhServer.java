@@ -30,7 +30,6 @@ import javax.crypto.interfaces.DHPublicKey;
 import javax.crypto.spec.DHParameterSpec;
 import java.security.KeyFactory;
 import java.security.KeyPair;
-import java.security.KeyPairGenerator;
 import java.security.PublicKey;
 import java.security.spec.X509EncodedKeySpec;
 
@@ -61,10 +60,13 @@ public class DhServer {
          */
         DHParameterSpec dhParamSpec = ((DHPublicKey) clientPubKey).getParams();
 
-        // The server creates its own DH key pair.
-        KeyPairGenerator serverKpairGen = KeyPairGenerator.getInstance("DH");
-        serverKpairGen.initialize(dhParamSpec);
-        KeyPair serverKpair = serverKpairGen.generateKeyPair();
+        /*
+         * The server takes its own DH key pair, generated ahead in the pool
+         * of the group if it's a well-known one.
+         */
+        DhKeyPairPool pool = DhKeyPairPool.getPool(dhParamSpec);
+        KeyPair serverKpair = pool != null ? pool.take()
+            : DhKeyPairPool.generate(dhParamSpec);
 
         // The server creates and initializes its DH KeyAgreement object.
         serverKeyAgree = KeyAgreement.getInstance("DH");
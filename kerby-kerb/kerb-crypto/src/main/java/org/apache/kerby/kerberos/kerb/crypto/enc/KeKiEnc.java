@@ -65,9 +65,9 @@ public abstract class KeKiEnc extends AbstractEncTypeHandler {
         constant[3] = (byte) (usage & 0xff);
         constant[4] = (byte) 0xaa;
         
-        byte[] ke = ((DkKeyMaker) keyMaker()).dk(key, constant);
+        byte[] ke = ((DkKeyMaker) keyMaker()).usageDk(key, constant, usage);
         constant[4] = (byte) 0x55;
-        byte[] ki = ((DkKeyMaker) keyMaker()).dk(key, constant);
+        byte[] ki = ((DkKeyMaker) keyMaker()).usageDk(key, constant, usage);
 
         /**
          * Instead of E(Confounder | Checksum | Plaintext | Padding),
@@ -107,9 +107,9 @@ public abstract class KeKiEnc extends AbstractEncTypeHandler {
         byte[] constant = new byte[5];
         BytesUtil.int2bytes(usage, constant, 0, true);
         constant[4] = (byte) 0xaa;
-        byte[] ke = ((DkKeyMaker) keyMaker()).dk(key, constant);
+        byte[] ke = ((DkKeyMaker) keyMaker()).usageDk(key, constant, usage);
         constant[4] = (byte) 0x55;
-        byte[] ki = ((DkKeyMaker) keyMaker()).dk(key, constant);
+        byte[] ki = ((DkKeyMaker) keyMaker()).usageDk(key, constant, usage);
 
         // decrypt and verify checksum
 
@@ -27,6 +27,8 @@ import javax.crypto.spec.SecretKeySpec;
 import java.security.GeneralSecurityException;
 
 public abstract class AesProvider extends AbstractEncryptProvider {
+    // Cipher lookup is costly, reuse one per thread as it's reinited per use
+    private static final ThreadLocal<Cipher> CIPHER = new ThreadLocal<>();
 
     public AesProvider(int blockSize, int keyInputSize, int keySize) {
         super(blockSize, keyInputSize, keySize);
@@ -35,14 +37,17 @@ public abstract class AesProvider extends AbstractEncryptProvider {
     @Override
     protected void doEncrypt(byte[] data, byte[] key,
                                   byte[] cipherState, boolean encrypt) throws KrbException {
-        Cipher cipher = null;
-        try {
-            cipher = Cipher.getInstance("AES/CTS/NoPadding");
-        } catch (GeneralSecurityException e) {
-            KrbException ke = new KrbException("JCE provider may not be installed. "
-                    + e.getMessage());
-            ke.initCause(e);
-            throw ke;
+        Cipher cipher = CIPHER.get();
+        if (cipher == null) {
+            try {
+                cipher = Cipher.getInstance("AES/CTS/NoPadding");
+            } catch (GeneralSecurityException e) {
+                KrbException ke = new KrbException("JCE provider may not be installed. "
+                        + e.getMessage());
+                ke.initCause(e);
+                throw ke;
+            }
+            CIPHER.set(cipher);
         }
 
         try {
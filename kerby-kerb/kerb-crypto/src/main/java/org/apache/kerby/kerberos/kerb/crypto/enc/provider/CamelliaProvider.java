@@ -23,6 +23,13 @@ import org.apache.kerby.kerberos.kerb.crypto.util.Camellia;
 import org.apache.kerby.kerberos.kerb.KrbException;
 
 public abstract class CamelliaProvider extends AbstractEncryptProvider {
+    // Reuse one cipher per thread as it's rekeyed per use
+    private static final ThreadLocal<Camellia> CIPHER = new ThreadLocal<Camellia>() {
+        @Override
+        protected Camellia initialValue() {
+            return new Camellia();
+        }
+    };
 
     public CamelliaProvider(int blockSize, int keyInputSize, int keySize) {
         super(blockSize, keyInputSize, keySize);
@@ -32,7 +39,7 @@ public abstract class CamelliaProvider extends AbstractEncryptProvider {
     protected void doEncrypt(byte[] data, byte[] key,
                              byte[] cipherState, boolean encrypt) throws KrbException {
 
-        Camellia cipher = new Camellia();
+        Camellia cipher = CIPHER.get();
         cipher.setKey(encrypt, key);
         if (encrypt) {
             cipher.encrypt(data, cipherState);
@@ -48,7 +55,7 @@ public abstract class CamelliaProvider extends AbstractEncryptProvider {
 
     @Override
     public byte[] cbcMac(byte[] key, byte[] cipherState, byte[] data) {
-        Camellia cipher = new Camellia();
+        Camellia cipher = CIPHER.get();
         cipher.setKey(true, key);
 
         int blocksNum = data.length / blockSize();
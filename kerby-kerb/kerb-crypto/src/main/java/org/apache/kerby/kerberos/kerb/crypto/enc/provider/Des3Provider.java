@@ -30,6 +30,9 @@ import java.security.GeneralSecurityException;
 import java.security.spec.KeySpec;
 
 public class Des3Provider extends AbstractEncryptProvider {
+    // Cipher lookup is costly, reuse one per thread as it's reinited per use
+    private static final ThreadLocal<Cipher> CIPHER = new ThreadLocal<>();
+    private static final ThreadLocal<SecretKeyFactory> KEY_FACTORY = new ThreadLocal<>();
 
     public Des3Provider() {
         super(8, 21, 24);
@@ -39,18 +42,23 @@ public class Des3Provider extends AbstractEncryptProvider {
     protected void doEncrypt(byte[] input, byte[] key,
                              byte[] cipherState, boolean encrypt) throws KrbException {
 
-        Cipher cipher = null;
-        try {
-            cipher = Cipher.getInstance("DESede/CBC/NoPadding");
-        } catch (GeneralSecurityException e) {
-            throw new KrbException("Failed to init cipher", e);
+        Cipher cipher = CIPHER.get();
+        SecretKeyFactory skf = KEY_FACTORY.get();
+        if (cipher == null || skf == null) {
+            try {
+                cipher = Cipher.getInstance("DESede/CBC/NoPadding");
+                skf = SecretKeyFactory.getInstance("desede");
+            } catch (GeneralSecurityException e) {
+                throw new KrbException("Failed to init cipher", e);
+            }
+            CIPHER.set(cipher);
+            KEY_FACTORY.set(skf);
         }
 
         try {
             IvParameterSpec params = new IvParameterSpec(cipherState);
             KeySpec skSpec = new DESedeKeySpec(key, 0);
 
-            SecretKeyFactory skf = SecretKeyFactory.getInstance("desede");
             SecretKey secretKey = skf.generateSecret(skSpec);
 
             cipher.init(encrypt ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE, secretKey, params);
@@ -0,0 +1,198 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.crypto.key;
+
+import org.apache.kerby.kerberos.kerb.type.base.KeyUsage;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded LRU cache of the keys derived from a base key and a usage
+ * constant, shared by all the key makers as they're created per operation.
+ * Only the keys derived from the long-term keys are cached, the session keys
+ * would churn it.
+ * Both the base key and the derived key bytes are zeroed when an entry is
+ * evicted or cleared, and only copies are handed out.
+ */
+public final class DerivedKeyCache {
+    public static final int DEFAULT_CAPACITY = 1024;
+    private static final int NUM_SEGMENTS = 16;
+
+    private static final DerivedKeyCache INSTANCE = new DerivedKeyCache(DEFAULT_CAPACITY);
+
+    private final Segment[] segments;
+
+    public DerivedKeyCache(int capacity) {
+        int segmentCapacity = Math.max(1, (capacity + NUM_SEGMENTS - 1) / NUM_SEGMENTS);
+        segments = new Segment[NUM_SEGMENTS];
+        for (int i = 0; i < NUM_SEGMENTS; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    public static DerivedKeyCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Tell if the key usage is with a long-term key, the client or service
+     * key, rather than a session key whose derived keys aren't worth caching.
+     * @param usage The key usage
+     * @return true for the usages of the long-term keys
+     */
+    public static boolean isLongTermKeyUsage(int usage) {
+        return usage == KeyUsage.AS_REQ_PA_ENC_TS.getValue()
+            || usage == KeyUsage.KDC_REP_TICKET.getValue()
+            || usage == KeyUsage.AS_REP_ENCPART.getValue();
+    }
+
+    /**
+     * Get a copy of the cached derived key.
+     * @param keyMaker The key maker deriving the key
+     * @param key The base key
+     * @param constant The usage constant
+     * @return derived key, null if not cached
+     */
+    public byte[] get(DkKeyMaker keyMaker, byte[] key, byte[] constant) {
+        CacheKey cacheKey = new CacheKey(keyMaker, key, constant);
+        byte[] derived = segmentFor(cacheKey).get(cacheKey);
+        return derived != null ? derived.clone() : null;
+    }
+
+    /**
+     * Cache a copy of the derived key.
+     * @param keyMaker The key maker deriving the key
+     * @param key The base key
+     * @param constant The usage constant
+     * @param derived The derived key
+     */
+    public void put(DkKeyMaker keyMaker, byte[] key, byte[] constant, byte[] derived) {
+        CacheKey cacheKey = new CacheKey(keyMaker, key.clone(), constant.clone());
+        segmentFor(cacheKey).put(cacheKey, derived.clone());
+    }
+
+    /**
+     * Clear the cache, zeroing the keys.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private Segment segmentFor(CacheKey cacheKey) {
+        int h = cacheKey.hash;
+        h ^= h >>> 16;
+        return segments[h & (NUM_SEGMENTS - 1)];
+    }
+
+    private static void zero(CacheKey cacheKey, byte[] derived) {
+        Arrays.fill(cacheKey.key, (byte) 0);
+        Arrays.fill(derived, (byte) 0);
+    }
+
+    private static final class CacheKey {
+        private final Class<?> makerClass;
+        private final Class<?> providerClass;
+        private final byte[] key;
+        private final byte[] constant;
+        private final int hash;
+
+        CacheKey(DkKeyMaker keyMaker, byte[] key, byte[] constant) {
+            this.makerClass = keyMaker.getClass();
+            this.providerClass = keyMaker.encProvider().getClass();
+            this.key = key;
+            this.constant = constant;
+            int h = makerClass.hashCode();
+            h = 31 * h + providerClass.hashCode();
+            h = 31 * h + Arrays.hashCode(key);
+            h = 31 * h + Arrays.hashCode(constant);
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey other = (CacheKey) obj;
+            return hash == other.hash && makerClass == other.makerClass
+                && providerClass == other.providerClass
+                && Arrays.equals(key, other.key) && Arrays.equals(constant, other.constant);
+        }
+    }
+
+    private static final class Segment {
+        private final int capacity;
+        private final Map<CacheKey, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized byte[] get(CacheKey cacheKey) {
+            return entries.get(cacheKey);
+        }
+
+        synchronized void put(CacheKey cacheKey, byte[] derived) {
+            byte[] old = entries.put(cacheKey, derived);
+            if (old != null) {
+                // The map keeps the old key, so the new one is unused
+                zero(cacheKey, old);
+            }
+            if (entries.size() > capacity) {
+                Iterator<Map.Entry<CacheKey, byte[]>> it = entries.entrySet().iterator();
+                Map.Entry<CacheKey, byte[]> eldest = it.next();
+                it.remove();
+                zero(eldest.getKey(), eldest.getValue());
+            }
+        }
+
+        synchronized void clear() {
+            for (Map.Entry<CacheKey, byte[]> entry : entries.entrySet()) {
+                zero(entry.getKey(), entry.getValue());
+            }
+            entries.clear();
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+}
@@ -34,6 +34,37 @@ public abstract class DkKeyMaker extends AbstractKeyMaker {
         return random2Key(dr(key, constant));
     }
 
+    /**
+     * DK for a key usage, with the derived key cached only for the usages of
+     * the long-term keys, as a session key is used for a few messages.
+     * @param key The base key
+     * @param constant The usage constant
+     * @param usage The key usage
+     * @return The derived key
+     * @throws KrbException e
+     */
+    public byte[] usageDk(byte[] key, byte[] constant, int usage) throws KrbException {
+        return DerivedKeyCache.isLongTermKeyUsage(usage) ? cachedDk(key, constant) : dk(key, constant);
+    }
+
+    /**
+     * DK with the derived key cached, for the keys derived for a key usage
+     * from long lived keys, like the Ke, Ki and Kc keys.
+     * @param key The base key
+     * @param constant The usage constant
+     * @return The derived key
+     * @throws KrbException e
+     */
+    public byte[] cachedDk(byte[] key, byte[] constant) throws KrbException {
+        DerivedKeyCache cache = DerivedKeyCache.getInstance();
+        byte[] derived = cache.get(this, key, constant);
+        if (derived == null) {
+            derived = dk(key, constant);
+            cache.put(this, key, constant, derived);
+        }
+        return derived;
+    }
+
     /*
      * K1 = E(Key, n-fold(Constant), initial-cipher-state)
      * K2 = E(Key, K1, initial-cipher-state)
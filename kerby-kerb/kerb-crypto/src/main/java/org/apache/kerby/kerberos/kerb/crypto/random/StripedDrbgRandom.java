@@ -0,0 +1,172 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.kerby.kerberos.kerb.crypto.random;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Use a fixed set of DRBG {@link SecureRandom}s to implement
+ * {@link RandomProvider}, each guarded by its own lock and picked by a hash of
+ * the calling thread id, so threads rarely contend on a generator. The set
+ * doesn't grow with the threads, as a generator per thread would with a
+ * virtual thread per request, each seeding a new generator for a few bytes.
+ * The random bytes are drawn a block at a time into a per generator buffer,
+ * and each generator is reseeded from the system generator after a number
+ * of bytes. The DRBG is "DRBG" where the JDK has it, "SHA1PRNG" otherwise.
+ */
+public class StripedDrbgRandom implements RandomProvider {
+    private static final int BLOCK_SIZE = 1024;
+    private static final long RESEED_BYTES = 1024 * 1024;
+    private static final int SEED_SIZE = 32;
+
+    // Seeds the generators, without blocking for entropy
+    private final SecureRandom seedSource = new SecureRandom();
+
+    private final Drbg[] drbgs;
+
+    public StripedDrbgRandom() {
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors() * 2) {
+            stripes <<= 1;
+        }
+        drbgs = new Drbg[stripes];
+        for (int i = 0; i < stripes; i++) {
+            drbgs[i] = new Drbg();
+        }
+    }
+
+    @Override
+    public void init() {
+    }
+
+    /**
+     * Provide entropy seed for all the generators.
+     * @param seed The seed
+     */
+    @Override
+    public void setSeed(byte[] seed) {
+        for (Drbg drbg : drbgs) {
+            drbg.setSeed(seed);
+        }
+    }
+
+    @Override
+    public void nextBytes(byte[] bytes) {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        drbgs[(hash >>> 16) & (drbgs.length - 1)].nextBytes(bytes);
+    }
+
+    /**
+     * Clear the buffered bytes and drop the generators, which are created and
+     * seeded again if bytes are drawn after.
+     */
+    @Override
+    public void destroy() {
+        for (Drbg drbg : drbgs) {
+            drbg.clear();
+        }
+    }
+
+    /**
+     * @return number of generators
+     */
+    int getStripes() {
+        return drbgs.length;
+    }
+
+    private SecureRandom newSecureRandom() {
+        SecureRandom random;
+        try {
+            random = SecureRandom.getInstance("DRBG");
+        } catch (NoSuchAlgorithmException e) {
+            try {
+                random = SecureRandom.getInstance("SHA1PRNG");
+            } catch (NoSuchAlgorithmException e1) {
+                random = new SecureRandom();
+            }
+        }
+        random.setSeed(makeSeed());
+        return random;
+    }
+
+    private byte[] makeSeed() {
+        byte[] seed = new byte[SEED_SIZE];
+        seedSource.nextBytes(seed);
+        return seed;
+    }
+
+    private final class Drbg {
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private SecureRandom random;
+        private int position = BLOCK_SIZE;
+        private long generated;
+
+        synchronized void setSeed(byte[] seed) {
+            getRandom().setSeed(seed);
+        }
+
+        synchronized void nextBytes(byte[] bytes) {
+            if (bytes.length >= BLOCK_SIZE) {
+                generate(bytes);
+                return;
+            }
+
+            int copied = 0;
+            while (copied < bytes.length) {
+                if (position == BLOCK_SIZE) {
+                    generate(block);
+                    position = 0;
+                }
+                int len = Math.min(bytes.length - copied, BLOCK_SIZE - position);
+                System.arraycopy(block, position, bytes, copied, len);
+                // Never hand out the same bytes twice
+                Arrays.fill(block, position, position + len, (byte) 0);
+                position += len;
+                copied += len;
+            }
+        }
+
+        synchronized void clear() {
+            Arrays.fill(block, (byte) 0);
+            position = BLOCK_SIZE;
+            random = null;
+        }
+
+        private SecureRandom getRandom() {
+            if (random == null) {
+                random = newSecureRandom();
+                generated = 0;
+            }
+            return random;
+        }
+
+        private void generate(byte[] bytes) {
+            if (generated >= RESEED_BYTES) {
+                getRandom().setSeed(makeSeed());
+                generated = 0;
+            }
+            getRandom().nextBytes(bytes);
+            generated += bytes.length;
+        }
+    }
+}
@@ -19,15 +19,14 @@
  */
 package org.apache.kerby.kerberos.kerb.crypto.util;
 
-import java.security.SecureRandom;
-
+/**
+ * The confounders, made by the random provider of {@link Random}.
+ */
 public final class Confounder {
 
-    private static SecureRandom instance = new SecureRandom();
+    private Confounder() { }
 
     public static byte[] makeBytes(int size) {
-        byte[] data = new byte[size];
-        instance.nextBytes(data);
-        return data;
+        return Random.makeBytes(size);
     }
 }
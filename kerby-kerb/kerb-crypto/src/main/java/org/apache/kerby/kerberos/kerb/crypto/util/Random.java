@@ -19,15 +19,87 @@
  */
 package org.apache.kerby.kerberos.kerb.crypto.util;
 
-import java.security.SecureRandom;
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.crypto.random.JavaRandom;
+import org.apache.kerby.kerberos.kerb.crypto.random.NativeRandom;
+import org.apache.kerby.kerberos.kerb.crypto.random.RandomProvider;
+import org.apache.kerby.kerberos.kerb.crypto.random.StripedDrbgRandom;
 
+/**
+ * The random bytes for the session keys, confounders and nonces, made by the
+ * {@link RandomProvider} set, by default a shared {@link JavaRandom}. The
+ * provider is process wide, so all the KDCs and clients in a JVM share it.
+ */
 public final class Random {
 
-    private static SecureRandom instance = new SecureRandom();
+    private static volatile RandomProvider provider = new JavaRandom();
+
+    private Random() { }
 
     public static byte[] makeBytes(int size) {
         byte[] data = new byte[size];
-        instance.nextBytes(data);
+        provider.nextBytes(data);
         return data;
     }
+
+    public static RandomProvider getProvider() {
+        return provider;
+    }
+
+    /**
+     * Set the provider making the random bytes from now on, for the whole
+     * process. The previous provider isn't destroyed, it may be restored.
+     * @param randomProvider The random provider, initialized
+     * @return The previous provider
+     */
+    public static synchronized RandomProvider setProvider(RandomProvider randomProvider) {
+        RandomProvider previous = provider;
+        provider = randomProvider;
+        return previous;
+    }
+
+    /**
+     * Put back the provider replaced by {@link #setProvider}, and destroy the
+     * replacing one, unless another provider was set since.
+     * @param randomProvider The provider set
+     * @param previous The provider it replaced
+     * @return true if the previous provider is restored
+     */
+    public static synchronized boolean restoreProvider(RandomProvider randomProvider,
+                                                       RandomProvider previous) {
+        if (provider != randomProvider) {
+            return false;
+        }
+        provider = previous;
+        randomProvider.destroy();
+        return true;
+    }
+
+    /**
+     * Create and init a random provider by name, "java" for {@link JavaRandom},
+     * "native" for {@link NativeRandom}, "drbg" for
+     * {@link StripedDrbgRandom}, or the class name of another provider.
+     * @param name The provider name
+     * @return random provider
+     * @throws KrbException if the provider can't be created
+     */
+    public static RandomProvider createProvider(String name) throws KrbException {
+        RandomProvider randomProvider;
+        if ("java".equalsIgnoreCase(name)) {
+            randomProvider = new JavaRandom();
+        } else if ("native".equalsIgnoreCase(name)) {
+            randomProvider = new NativeRandom();
+        } else if ("drbg".equalsIgnoreCase(name)) {
+            randomProvider = new StripedDrbgRandom();
+        } else {
+            try {
+                randomProvider = (RandomProvider) Class.forName(name).newInstance();
+            } catch (ClassNotFoundException | InstantiationException
+                    | IllegalAccessException | ClassCastException e) {
+                throw new KrbException("Failed to create random provider: " + name, e);
+            }
+        }
+        randomProvider.init();
+        return randomProvider;
+    }
 }
@@ -0,0 +1,87 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.crypto;
+
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.crypto.enc.provider.Aes128Provider;
+import org.apache.kerby.kerberos.kerb.crypto.enc.provider.Camellia128Provider;
+import org.apache.kerby.kerberos.kerb.crypto.key.AesKeyMaker;
+import org.apache.kerby.kerberos.kerb.crypto.key.CamelliaKeyMaker;
+import org.apache.kerby.kerberos.kerb.crypto.key.DerivedKeyCache;
+import org.apache.kerby.kerberos.kerb.crypto.key.DkKeyMaker;
+import org.apache.kerby.kerberos.kerb.type.base.KeyUsage;
+import org.apache.kerby.util.HexUtil;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DerivedKeyCacheTest {
+    private static final byte[] KEY = HexUtil.hex2bytes("5e13d31c70ef765746578531cb51c15b");
+    private static final byte[] CONSTANT = HexUtil.hex2bytes("0000000299");
+
+    @Test
+    public void testCachedDk() throws KrbException {
+        DkKeyMaker keyMaker = new AesKeyMaker(new Aes128Provider());
+        byte[] expected = keyMaker.dk(KEY, CONSTANT);
+
+        byte[] derived = keyMaker.cachedDk(KEY, CONSTANT);
+        assertThat(derived).isEqualTo(expected);
+        derived[0]++; // Callers get copies
+        assertThat(keyMaker.cachedDk(KEY, CONSTANT)).isEqualTo(expected);
+
+        // Same key bytes with another enc type must not share the entry
+        DkKeyMaker otherMaker = new CamelliaKeyMaker(new Camellia128Provider());
+        assertThat(otherMaker.cachedDk(KEY, CONSTANT)).isEqualTo(otherMaker.dk(KEY, CONSTANT));
+    }
+
+    @Test
+    public void testOnlyLongTermKeysCached() throws KrbException {
+        DkKeyMaker keyMaker = new AesKeyMaker(new Aes128Provider());
+        DerivedKeyCache cache = DerivedKeyCache.getInstance();
+        byte[] sessionKey = HexUtil.hex2bytes("000102030405060708090a0b0c0d0e0f");
+        byte[] expected = keyMaker.dk(sessionKey, CONSTANT);
+
+        assertThat(keyMaker.usageDk(sessionKey, CONSTANT, KeyUsage.AP_REQ_AUTH.getValue())).isEqualTo(expected);
+        assertThat(cache.get(keyMaker, sessionKey, CONSTANT)).isNull();
+
+        assertThat(keyMaker.usageDk(sessionKey, CONSTANT, KeyUsage.KDC_REP_TICKET.getValue())).isEqualTo(expected);
+        assertThat(cache.get(keyMaker, sessionKey, CONSTANT)).isEqualTo(expected);
+    }
+
+    @Test
+    public void testBounded() throws KrbException {
+        DerivedKeyCache cache = new DerivedKeyCache(32);
+        DkKeyMaker keyMaker = new AesKeyMaker(new Aes128Provider());
+        byte[] derived = keyMaker.dk(KEY, CONSTANT);
+        for (int i = 0; i < 1000; i++) {
+            byte[] constant = CONSTANT.clone();
+            constant[3] = (byte) i;
+            constant[2] = (byte) (i >> 8);
+            cache.put(keyMaker, KEY, constant, derived);
+        }
+        assertThat(cache.size()).isLessThanOrEqualTo(32);
+
+        cache.put(keyMaker, KEY, CONSTANT, derived);
+        assertThat(cache.get(keyMaker, KEY, CONSTANT)).isEqualTo(derived);
+        cache.clear();
+        assertThat(cache.size()).isEqualTo(0);
+        assertThat(cache.get(keyMaker, KEY, CONSTANT)).isNull();
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.kerby.kerberos.kerb.crypto.dh;
+
+import org.junit.Test;
+
+import javax.crypto.interfaces.DHPublicKey;
+import javax.crypto.spec.DHParameterSpec;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DhKeyPairPoolTest {
+
+    @Test
+    public void testGetPool() {
+        DhKeyPairPool pool = DhKeyPairPool.getPool(DhGroup.MODP_GROUP2);
+        assertThat(pool).isNotNull();
+        assertThat(DhKeyPairPool.getPool(new DHParameterSpec(
+            DhGroup.MODP_GROUP2.getP(), DhGroup.MODP_GROUP2.getG()))).isSameAs(pool);
+        assertThat(DhKeyPairPool.getPool(DhGroup.MODP_GROUP14)).isNotSameAs(pool);
+        assertThat(DhKeyPairPool.getPool(new DHParameterSpec(
+            DhGroup.MODP_GROUP2.getP(), BigInteger.valueOf(5)))).isNull();
+    }
+
+    @Test
+    public void testTakeAndRefill() throws Exception {
+        DhKeyPairPool pool = DhKeyPairPool.getPool(DhGroup.MODP_GROUP2);
+        Set<BigInteger> publicKeys = new HashSet<>();
+
+        KeyPair keyPair = pool.take();
+        assertThat(publicKeys.add(getY(keyPair))).isTrue();
+
+        long deadline = System.currentTimeMillis() + 30 * 1000;
+        while (pool.getStats().getDepth() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(pool.getStats().getDepth()).isGreaterThan(0);
+        assertThat(pool.getStats().getGeneratedCount()).isGreaterThan(0);
+
+        long hits = pool.getStats().getHitCount();
+        for (int i = 0; i < 10; i++) {
+            // A key pair is never handed out twice
+            assertThat(publicKeys.add(getY(pool.take()))).isTrue();
+        }
+        assertThat(pool.getStats().getHitCount()).isGreaterThan(hits);
+    }
+
+    private static BigInteger getY(KeyPair keyPair) {
+        return ((DHPublicKey) keyPair.getPublic()).getY();
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.crypto.random;
+
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.crypto.util.Random;
+import org.apache.kerby.util.HexUtil;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class StripedDrbgRandomTest {
+
+    @Test
+    public void testNextBytes() {
+        StripedDrbgRandom random = new StripedDrbgRandom();
+        random.init();
+
+        Set<String> values = new HashSet<>();
+        // Small draws cross the block boundaries, large ones skip the block
+        for (int size : new int[] {8, 16, 24, 1000, 2048, 4096}) {
+            for (int i = 0; i < 100; i++) {
+                byte[] bytes = new byte[size];
+                random.nextBytes(bytes);
+                assertThat(values.add(HexUtil.bytesToHex(bytes))).isTrue();
+            }
+        }
+        random.destroy();
+    }
+
+    @Test
+    public void testThreads() throws Exception {
+        final StripedDrbgRandom random = new StripedDrbgRandom();
+        random.init();
+        final Set<String> values = Collections.synchronizedSet(new HashSet<String>());
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 8; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        byte[] bytes = new byte[16];
+                        random.nextBytes(bytes);
+                        values.add(HexUtil.bytesToHex(bytes));
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+        assertThat(values).hasSize(8 * 1000);
+    }
+
+    @Test
+    public void testShortLivedThreads() throws Exception {
+        final StripedDrbgRandom random = new StripedDrbgRandom();
+        random.init();
+        final Set<String> values = Collections.synchronizedSet(new HashSet<String>());
+
+        // As a thread per request does, the generators are shared and not per thread
+        for (int i = 0; i < 200; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    byte[] bytes = new byte[16];
+                    random.nextBytes(bytes);
+                    values.add(HexUtil.bytesToHex(bytes));
+                }
+            });
+            thread.start();
+            thread.join();
+        }
+        assertThat(values).hasSize(200);
+        assertThat(random.getStripes()).isLessThanOrEqualTo(
+                Math.max(2, Runtime.getRuntime().availableProcessors() * 4));
+    }
+
+    @Test
+    public void testDestroy() {
+        StripedDrbgRandom random = new StripedDrbgRandom();
+        random.init();
+        byte[] before = new byte[16];
+        random.nextBytes(before);
+        random.destroy();
+
+        // Drawing again after destroy gets fresh generators
+        byte[] after = new byte[16];
+        random.nextBytes(after);
+        assertThat(after).isNotEqualTo(before);
+        random.destroy();
+    }
+
+    @Test
+    public void testCreateProvider() throws Exception {
+        assertThat(Random.createProvider("java")).isInstanceOf(JavaRandom.class);
+        assertThat(Random.createProvider("DRBG")).isInstanceOf(StripedDrbgRandom.class);
+        assertThat(Random.createProvider(StripedDrbgRandom.class.getName()))
+            .isInstanceOf(StripedDrbgRandom.class);
+        try {
+            Random.createProvider(String.class.getName());
+            fail("Created a provider from a non provider class");
+        } catch (KrbException e) {
+            assertThat(e.getMessage()).contains(String.class.getName());
+        }
+
+        RandomProvider provider = Random.createProvider("drbg");
+        RandomProvider previous = Random.setProvider(provider);
+        try {
+            assertThat(Random.makeBytes(16)).hasSize(16);
+        } finally {
+            assertThat(Random.restoreProvider(provider, previous)).isTrue();
+        }
+        assertThat(Random.getProvider()).isSameAs(previous);
+    }
+
+    @Test
+    public void testRestoreReplacedProvider() throws Exception {
+        RandomProvider provider = Random.createProvider("drbg");
+        RandomProvider previous = Random.setProvider(provider);
+        RandomProvider other = Random.createProvider("java");
+        Random.setProvider(other);
+        try {
+            // Another provider was set since, it's kept
+            assertThat(Random.restoreProvider(provider, previous)).isFalse();
+            assertThat(Random.getProvider()).isSameAs(other);
+        } finally {
+            Random.setProvider(previous);
+        }
+    }
+}
@@ -20,6 +20,7 @@
 package org.apache.kerby.kerberos.kerb.identity.backend;
 
 import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.identity.BatchTrans;
 import org.apache.kerby.kerberos.kerb.identity.KrbIdentity;
 import org.apache.kerby.kerberos.kerb.type.base.EncryptionKey;
 import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
@@ -128,6 +129,46 @@ public abstract class BackendTest {
         }
     }
 
+    protected void testBatchTrans(IdentityBackend backend) throws KrbException {
+        if (!backend.supportBatchTrans()) {
+            return;
+        }
+        KrbIdentity[] identities = BackendTestUtil.createManyIdentities();
+
+        BatchTrans batchTrans = backend.startBatchTrans();
+        for (KrbIdentity identity : identities) {
+            batchTrans.addIdentity(identity);
+        }
+        batchTrans.commit();
+        // clear the identity cache.
+        backend.release();
+        for (KrbIdentity identity : identities) {
+            assertThat(backend.getIdentity(identity.getPrincipalName())).isEqualTo(identity);
+        }
+
+        identities[0].setDisabled(true);
+        batchTrans = backend.startBatchTrans();
+        batchTrans.updateIdentity(identities[0]);
+        batchTrans.deleteIdentity(identities[1].getPrincipalName());
+        batchTrans.commit();
+        backend.release();
+        assertThat(backend.getIdentity(identities[0].getPrincipalName())).isEqualTo(identities[0]);
+        assertThat(backend.getIdentity(identities[1].getPrincipalName())).isNull();
+
+        //tearDown
+        batchTrans = backend.startBatchTrans();
+        for (int i = 0; i < identities.length; i++) {
+            if (i != 1) {
+                batchTrans.deleteIdentity(identities[i].getPrincipalName());
+            }
+        }
+        batchTrans.commit();
+        backend.release();
+        for (KrbIdentity identity : identities) {
+            assertThat(backend.getIdentity(identity.getPrincipalName())).isNull();
+        }
+    }
+
     protected void cleanIdentities(IdentityBackend backend) throws KrbException {
         Iterable<String> identities = backend.getIdentities();
         Iterator<String> iterator = identities.iterator();
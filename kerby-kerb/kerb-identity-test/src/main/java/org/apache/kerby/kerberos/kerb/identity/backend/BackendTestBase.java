@@ -64,6 +64,11 @@ public abstract class BackendTestBase extends BackendTest {
         testGetIdentities(backend);
     }
 
+    @Test
+    public void testBatchTrans() throws KrbException {
+        testBatchTrans(backend);
+    }
+
     @AfterClass
     public static void tearDown() throws KrbException {
         if (backend != null) {
@@ -22,26 +22,40 @@ package org.apache.kerby.kerberos.kerb.identity;
 import org.apache.kerby.config.Config;
 import org.apache.kerby.config.Configured;
 import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.identity.backend.BackendConfig;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 /**
- * A cacheable identity backend that provides a cache with FIFO and size limit.
- * Note only limited recently active identities are kept in the cache, and other
- * identities are meant to be loaded from the underlying backend like memory,
- * file, SQL DB, LDAP, and etc.
+ * A cacheable identity backend that provides a cache with LRU, size limit and
+ * expiry. Note only limited recently active identities are kept in the cache,
+ * and other identities are meant to be loaded from the underlying backend like
+ * memory, file, SQL DB, LDAP, and etc.
+ *
+ * The cache is split in segments each guarded by its own lock. Principals not
+ * found in the backend are cached too, for a shorter time, and concurrent
+ * lookups of a principal not cached load it from the backend only once. The
+ * statistics are available from {@link #getStats()}, and from the backend
+ * config when it's the config of the service.
  */
 public class CacheableIdentityService
         extends Configured implements IdentityService {
 
-    private static final int DEFAULT_CACHE_SIZE = 1000;
-
-    private Map<String, KrbIdentity> idCache;
-    private int cacheSize = DEFAULT_CACHE_SIZE;
+    private static final int NUM_SEGMENTS = 16;
 
-    private IdentityService underlying;
+    private final IdentityService underlying;
+    private final IdentityCacheStats stats = new IdentityCacheStats();
+    private final ConcurrentMap<String, FutureTask<KrbIdentity>> loading =
+        new ConcurrentHashMap<>();
+    private Segment[] segments;
+    private long expiry;
+    private long negativeExpiry;
 
     public CacheableIdentityService(Config config, IdentityService underlying) {
         super(config);
@@ -67,17 +81,41 @@ public class CacheableIdentityService
     }
 
     private void init() {
-        Map<String, KrbIdentity> tmpMap =
-            new LinkedHashMap<String, KrbIdentity>(cacheSize) {
-                private static final long serialVersionUID = -6911200685333503214L;
+        Config config = getConfig();
+        int cacheSize = config.getInt(IdentityCacheConfKey.IDENTITY_CACHE_SIZE, true);
+        expiry = config.getLong(IdentityCacheConfKey.IDENTITY_CACHE_EXPIRY, true) * 1000;
+        negativeExpiry = config.getLong(
+            IdentityCacheConfKey.IDENTITY_CACHE_NEGATIVE_EXPIRY, true) * 1000;
 
-                @Override
-                protected boolean removeEldestEntry(Map.Entry<String, KrbIdentity> eldest) {
-                    return size() > cacheSize;
-                }
-            };
+        int segmentSize = Math.max(1, (cacheSize + NUM_SEGMENTS - 1) / NUM_SEGMENTS);
+        segments = new Segment[NUM_SEGMENTS];
+        for (int i = 0; i < NUM_SEGMENTS; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
 
-        idCache = new ConcurrentHashMap<>(tmpMap);
+        if (config instanceof BackendConfig) {
+            ((BackendConfig) config).setIdentityCacheStats(stats);
+        }
+    }
+
+    /**
+     * Get the cache statistics.
+     * @return cache stats
+     */
+    public IdentityCacheStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Get the number of cached entries, including the cached misses.
+     * @return cache size
+     */
+    public int getCacheSize() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
     }
 
     /**
@@ -93,16 +131,14 @@ public class CacheableIdentityService
      */
     @Override
     public KrbIdentity getIdentity(String principalName) throws KrbException {
-        if (idCache.containsKey(principalName)) {
-            return idCache.get(principalName);
+        CacheEntry entry = segmentFor(principalName).get(principalName);
+        if (entry != null) {
+            stats.recordHit();
+            return entry.identity;
         }
 
-        KrbIdentity identity = underlying.getIdentity(principalName);
-        if (identity != null) {
-            idCache.put(principalName, identity);
-        }
-
-        return identity;
+        stats.recordMiss();
+        return load(principalName);
     }
 
     /**
@@ -112,7 +148,7 @@ public class CacheableIdentityService
     public KrbIdentity addIdentity(KrbIdentity identity) throws KrbException {
         KrbIdentity added = underlying.addIdentity(identity);
         if (added != null) {
-            idCache.put(added.getPrincipalName(), added);
+            segmentFor(added.getPrincipalName()).update(added.getPrincipalName(), added);
         }
 
         return added;
@@ -125,7 +161,7 @@ public class CacheableIdentityService
     public KrbIdentity updateIdentity(KrbIdentity identity) throws KrbException {
         KrbIdentity updated = underlying.updateIdentity(identity);
         if (updated != null) {
-            idCache.put(updated.getPrincipalName(), updated);
+            segmentFor(updated.getPrincipalName()).update(updated.getPrincipalName(), updated);
         }
 
         return updated;
@@ -136,10 +172,129 @@ public class CacheableIdentityService
      */
     @Override
     public void deleteIdentity(String principalName) throws KrbException {
-        if (idCache.containsKey(principalName)) {
-            idCache.remove(principalName);
+        try {
+            underlying.deleteIdentity(principalName);
+        } finally {
+            segmentFor(principalName).invalidate(principalName);
         }
+    }
+
+    private KrbIdentity load(final String principalName) throws KrbException {
+        FutureTask<KrbIdentity> task = new FutureTask<>(new Callable<KrbIdentity>() {
+            @Override
+            public KrbIdentity call() throws KrbException {
+                return underlying.getIdentity(principalName);
+            }
+        });
 
-        underlying.deleteIdentity(principalName);
+        FutureTask<KrbIdentity> loader = loading.putIfAbsent(principalName, task);
+        boolean isLoader = loader == null;
+        if (isLoader) {
+            loader = task;
+            stats.recordLoad();
+            task.run();
+        }
+
+        try {
+            KrbIdentity identity = loader.get();
+            if (isLoader) {
+                segmentFor(principalName).putLoaded(principalName, identity, task);
+            }
+            return identity;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof KrbException) {
+                throw (KrbException) e.getCause();
+            }
+            throw new KrbException("Failed to load identity " + principalName, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KrbException("Interrupted loading identity " + principalName, e);
+        } finally {
+            if (isLoader) {
+                loading.remove(principalName, task);
+            }
+        }
+    }
+
+    private Segment segmentFor(String principalName) {
+        int h = principalName.hashCode();
+        h ^= h >>> 16;
+        return segments[h & (NUM_SEGMENTS - 1)];
+    }
+
+    private static final class CacheEntry {
+        private final KrbIdentity identity;
+        private final long expireTime;
+
+        CacheEntry(KrbIdentity identity, long expireTime) {
+            this.identity = identity;
+            this.expireTime = expireTime;
+        }
+    }
+
+    /**
+     * A LRU map of the cache entries, guarded by its lock.
+     */
+    private final class Segment {
+        private final Map<String, CacheEntry> entries;
+
+        Segment(final int maxSize) {
+            entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+                private static final long serialVersionUID = -6911200685333503214L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                    if (size() > maxSize) {
+                        stats.recordEviction();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        synchronized CacheEntry get(String principalName) {
+            CacheEntry entry = entries.get(principalName);
+            if (entry != null && entry.expireTime < System.currentTimeMillis()) {
+                entries.remove(principalName);
+                stats.recordEviction();
+                return null;
+            }
+            return entry;
+        }
+
+        /**
+         * Cache a loaded identity, unless it was changed during the load.
+         */
+        synchronized void putLoaded(String principalName, KrbIdentity identity,
+                                    FutureTask<KrbIdentity> task) {
+            if (loading.get(principalName) == task) {
+                put(principalName, identity);
+            }
+        }
+
+        /**
+         * Cache a changed identity, discarding any load in progress as it may
+         * be stale.
+         */
+        synchronized void update(String principalName, KrbIdentity identity) {
+            loading.remove(principalName);
+            put(principalName, identity);
+        }
+
+        synchronized void invalidate(String principalName) {
+            loading.remove(principalName);
+            entries.remove(principalName);
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        private void put(String principalName, KrbIdentity identity) {
+            long now = System.currentTimeMillis();
+            entries.put(principalName, new CacheEntry(identity,
+                now + (identity != null ? expiry : negativeExpiry)));
+        }
     }
 }
@@ -0,0 +1,52 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *
+ */
+package org.apache.kerby.kerberos.kerb.identity;
+
+import org.apache.kerby.config.ConfigKey;
+
+/**
+ * Define the identity cache related configuration items with default values.
+ * The expiries are in seconds.
+ */
+public enum IdentityCacheConfKey implements ConfigKey {
+    IDENTITY_CACHE_SIZE(1000),
+    IDENTITY_CACHE_EXPIRY(300L),
+    IDENTITY_CACHE_NEGATIVE_EXPIRY(10L);
+
+    private Object defaultValue;
+
+    private IdentityCacheConfKey() {
+        this.defaultValue = null;
+    }
+
+    private IdentityCacheConfKey(Object defaultValue) {
+        this.defaultValue = defaultValue;
+    }
+
+    @Override
+    public String getPropertyKey() {
+        return name().toLowerCase();
+    }
+
+    @Override
+    public Object getDefaultValue() {
+        return this.defaultValue;
+    }
+}
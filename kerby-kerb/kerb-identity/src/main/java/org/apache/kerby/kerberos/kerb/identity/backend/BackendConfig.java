@@ -20,6 +20,7 @@
 package org.apache.kerby.kerberos.kerb.identity.backend;
 
 import org.apache.kerby.config.Conf;
+import org.apache.kerby.kerberos.kerb.identity.IdentityCacheStats;
 
 import java.io.File;
 
@@ -28,6 +29,7 @@ import java.io.File;
  */
 public class BackendConfig extends Conf {
     private File confDir;
+    private IdentityCacheStats identityCacheStats;
 
     public void setConfDir(File dir) {
         this.confDir = dir;
@@ -36,4 +38,16 @@ public class BackendConfig extends Conf {
     public File getConfDir() {
         return confDir;
     }
+
+    public void setIdentityCacheStats(IdentityCacheStats stats) {
+        this.identityCacheStats = stats;
+    }
+
+    /**
+     * Get the statistics of the identity cache in front of the backend.
+     * @return identity cache stats, null if not cached
+     */
+    public IdentityCacheStats getIdentityCacheStats() {
+        return identityCacheStats;
+    }
 }
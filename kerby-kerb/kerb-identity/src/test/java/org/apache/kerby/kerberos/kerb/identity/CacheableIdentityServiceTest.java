@@ -0,0 +1,189 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *
+ */
+package org.apache.kerby.kerberos.kerb.identity;
+
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.identity.backend.BackendConfig;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CacheableIdentityServiceTest {
+    private BackendConfig config;
+    private CountingIdentityService underlying;
+
+    @Before
+    public void setUp() {
+        config = new BackendConfig();
+        underlying = new CountingIdentityService();
+    }
+
+    @Test
+    public void testCacheHit() throws KrbException {
+        CacheableIdentityService service = new CacheableIdentityService(config, underlying);
+        underlying.addIdentity(new KrbIdentity("alice@EXAMPLE.COM"));
+
+        assertThat(service.getIdentity("alice@EXAMPLE.COM")).isNotNull();
+        assertThat(service.getIdentity("alice@EXAMPLE.COM")).isNotNull();
+        assertThat(underlying.loads.get()).isEqualTo(1);
+
+        IdentityCacheStats stats = config.getIdentityCacheStats();
+        assertThat(stats).isSameAs(service.getStats());
+        assertThat(stats.getHitCount()).isEqualTo(1);
+        assertThat(stats.getMissCount()).isEqualTo(1);
+        assertThat(stats.getLoadCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testNegativeCache() throws KrbException {
+        CacheableIdentityService service = new CacheableIdentityService(config, underlying);
+
+        assertThat(service.getIdentity("nobody@EXAMPLE.COM")).isNull();
+        assertThat(service.getIdentity("nobody@EXAMPLE.COM")).isNull();
+        assertThat(underlying.loads.get()).isEqualTo(1);
+
+        service.addIdentity(new KrbIdentity("nobody@EXAMPLE.COM"));
+        assertThat(service.getIdentity("nobody@EXAMPLE.COM")).isNotNull();
+        assertThat(underlying.loads.get()).isEqualTo(1);
+
+        service.deleteIdentity("nobody@EXAMPLE.COM");
+        assertThat(service.getIdentity("nobody@EXAMPLE.COM")).isNull();
+        assertThat(underlying.loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testExpiry() throws KrbException {
+        config.setLong(IdentityCacheConfKey.IDENTITY_CACHE_EXPIRY, 0L);
+        CacheableIdentityService service = new CacheableIdentityService(config, underlying);
+        underlying.addIdentity(new KrbIdentity("alice@EXAMPLE.COM"));
+
+        service.getIdentity("alice@EXAMPLE.COM");
+        underlying.sleep(5);
+        service.getIdentity("alice@EXAMPLE.COM");
+        assertThat(underlying.loads.get()).isEqualTo(2);
+        assertThat(service.getStats().getEvictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testSizeLimit() throws KrbException {
+        config.setInt(IdentityCacheConfKey.IDENTITY_CACHE_SIZE, 32);
+        CacheableIdentityService service = new CacheableIdentityService(config, underlying);
+        for (int i = 0; i < 1000; i++) {
+            service.getIdentity("user" + i + "@EXAMPLE.COM");
+        }
+        assertThat(service.getCacheSize()).isLessThanOrEqualTo(32);
+        assertThat(service.getStats().getEvictionCount()).isEqualTo(1000 - service.getCacheSize());
+    }
+
+    @Test
+    public void testSingleLoad() throws Exception {
+        final CacheableIdentityService service = new CacheableIdentityService(config, underlying);
+        underlying.addIdentity(new KrbIdentity("alice@EXAMPLE.COM"));
+        underlying.loadDelay = 200;
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger found = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        if (service.getIdentity("alice@EXAMPLE.COM") != null) {
+                            found.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(found.get()).isEqualTo(50);
+        assertThat(underlying.loads.get()).isEqualTo(1);
+    }
+
+    private static class CountingIdentityService implements IdentityService {
+        private final Map<String, KrbIdentity> identities = new ConcurrentHashMap<>();
+        private final AtomicInteger loads = new AtomicInteger();
+        private volatile long loadDelay;
+
+        @Override
+        public boolean supportBatchTrans() {
+            return false;
+        }
+
+        @Override
+        public BatchTrans startBatchTrans() throws KrbException {
+            throw new KrbException("Transaction isn't supported");
+        }
+
+        @Override
+        public Iterable<String> getIdentities() {
+            return identities.keySet();
+        }
+
+        @Override
+        public KrbIdentity getIdentity(String principalName) {
+            loads.incrementAndGet();
+            sleep(loadDelay);
+            return identities.get(principalName);
+        }
+
+        @Override
+        public KrbIdentity addIdentity(KrbIdentity identity) {
+            identities.put(identity.getPrincipalName(), identity);
+            return identity;
+        }
+
+        @Override
+        public KrbIdentity updateIdentity(KrbIdentity identity) {
+            return addIdentity(identity);
+        }
+
+        @Override
+        public void deleteIdentity(String principalName) {
+            identities.remove(principalName);
+        }
+
+        void sleep(long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
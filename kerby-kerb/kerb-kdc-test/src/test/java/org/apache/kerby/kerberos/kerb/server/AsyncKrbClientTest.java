@@ -0,0 +1,81 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.server;
+
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.client.AsyncKrbClient;
+import org.apache.kerby.kerberos.kerb.client.KrbFuture;
+import org.apache.kerby.kerberos.kerb.type.ticket.SgtTicket;
+import org.apache.kerby.kerberos.kerb.type.ticket.TgtTicket;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class AsyncKrbClientTest extends KdcTestBase {
+    private AsyncKrbClient asyncClient;
+
+    @Override
+    protected void setUpClient() throws Exception {
+        asyncClient = new AsyncKrbClient(getKrbClient());
+        asyncClient.init();
+    }
+
+    @After
+    public void closeClient() {
+        asyncClient.close();
+    }
+
+    @Test
+    public void testConcurrentRequests() throws Exception {
+        List<KrbFuture<TgtTicket>> tgts = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            tgts.add(asyncClient.requestTgtAsync(getClientPrincipal(), getClientPassword()));
+        }
+
+        List<KrbFuture<SgtTicket>> sgts = new ArrayList<>();
+        for (KrbFuture<TgtTicket> tgt : tgts) {
+            assertThat(tgt.get()).isNotNull();
+            assertThat(tgt.get().getClientPrincipal().getName())
+                .isEqualTo(getClientPrincipal());
+            sgts.add(asyncClient.requestSgtAsync(tgt.get(), getServerPrincipal()));
+        }
+        for (KrbFuture<SgtTicket> sgt : sgts) {
+            assertThat(sgt.get()).isNotNull();
+            assertThat(sgt.get().getSessionKey()).isNotNull();
+        }
+    }
+
+    @Test
+    public void testBadPassword() throws Exception {
+        KrbFuture<TgtTicket> tgt = asyncClient.requestTgtAsync(getClientPrincipal(), "badpassword");
+        try {
+            tgt.get();
+            fail("Expected failure with bad password");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(KrbException.class);
+        }
+    }
+}
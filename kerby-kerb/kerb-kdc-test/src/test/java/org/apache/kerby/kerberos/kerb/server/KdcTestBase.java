@@ -159,4 +159,29 @@ public abstract class KdcTestBase {
         deletePrincipals();
         kdcServer.stop();
     }
+
+    /**
+     * Wait for the threads of the name to end, as they should once the KDC
+     * is stopped.
+     * @param threadName The thread name
+     * @return true if no such thread is alive
+     * @throws InterruptedException e
+     */
+    protected static boolean waitForNoThread(String threadName) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10 * 1000;
+        while (System.currentTimeMillis() < deadline) {
+            boolean alive = false;
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (threadName.equals(thread.getName()) && thread.isAlive()) {
+                    alive = true;
+                    break;
+                }
+            }
+            if (!alive) {
+                return true;
+            }
+            Thread.sleep(50);
+        }
+        return false;
+    }
 }
\ No newline at end of file
@@ -19,10 +19,13 @@
  */
 package org.apache.kerby.kerberos.kerb.server;
 
+import org.apache.kerby.config.Config;
+import org.apache.kerby.config.Resource;
 import org.apache.kerby.kerberos.kerb.common.Krb5Conf;
 import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -31,6 +34,81 @@ import java.util.List;
 public class KdcConfig extends Krb5Conf {
     private static final String KDCDEFAULT = "kdcdefaults";
 
+    private volatile KdcConfigSnapshot snapshot;
+
+    /**
+     * Get the snapshot of the policy items read when serving requests. It's
+     * parsed on first use and replaced when the config is changed or reloaded.
+     * @return config snapshot
+     */
+    public KdcConfigSnapshot getSnapshot() {
+        KdcConfigSnapshot result = snapshot;
+        if (result == null) {
+            synchronized (this) {
+                result = snapshot;
+                if (result == null) {
+                    result = new KdcConfigSnapshot(this);
+                    snapshot = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void addResource(Resource resource) {
+        super.addResource(resource);
+        snapshot = null;
+    }
+
+    @Override
+    public synchronized void setString(String name, String value) {
+        super.setString(name, value);
+        snapshot = null;
+    }
+
+    /**
+     * Reload the config resources, then swap in a snapshot of the new values,
+     * so requests see either the old or the new config but never a mix.
+     */
+    @Override
+    public synchronized void reload() {
+        super.reload();
+        snapshot = new KdcConfigSnapshot(this);
+    }
+
+    /**
+     * Reject a reloaded kdc.conf that lost its [kdcdefaults] section, as an
+     * empty or partly written file does, or that has a number that can't be
+     * parsed, instead of falling back to the defaults.
+     */
+    @Override
+    protected void checkReloaded(Config reloaded) {
+        Config kdcDefaults = reloaded.getConfig(KDCDEFAULT);
+        if (kdcDefaults == null && getConfig(KDCDEFAULT) != null) {
+            throw new IllegalArgumentException("No [" + KDCDEFAULT + "] section in the kdc config");
+        }
+
+        for (KdcConfigKey key : KdcConfigKey.values()) {
+            Object defaultValue = key.getDefaultValue();
+            if (defaultValue instanceof Integer || defaultValue instanceof Long) {
+                checkNumber(reloaded, key);
+                if (kdcDefaults != null) {
+                    checkNumber(kdcDefaults, key);
+                }
+            }
+        }
+    }
+
+    private static void checkNumber(Config config, KdcConfigKey key) {
+        try {
+            config.getLong(key, false);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for "
+                + key.getPropertyKey() + " in the kdc config", e);
+        }
+    }
+
     public boolean enableDebug() {
         return getBoolean(KdcConfigKey.KRB_DEBUG, true, KDCDEFAULT);
     }
@@ -59,6 +137,108 @@ public class KdcConfig extends Krb5Conf {
         return getKdcPort();
     }
 
+    /**
+     * Get the time in seconds a TCP connection is kept open without requests,
+     * long enough for the clients to reuse their pooled connections.
+     * @return tcp idle timeout
+     */
+    public int getKdcTcpIdleTimeout() {
+        return getInt(KdcConfigKey.KDC_TCP_IDLE_TIMEOUT, true, KDCDEFAULT);
+    }
+
+    /**
+     * Get the number of selector threads serving the KDC network.
+     * @return number of network threads
+     */
+    public int getKdcNetworkThreads() {
+        return getInt(KdcConfigKey.KDC_NETWORK_THREADS, true, KDCDEFAULT);
+    }
+
+    /**
+     * Get the number of worker threads handling KDC requests, defaulting to
+     * the number of available processors.
+     * @return number of worker threads
+     */
+    public int getKdcWorkerThreads() {
+        Integer workerThreads = getInt(KdcConfigKey.KDC_WORKER_THREADS, true, KDCDEFAULT);
+        if (workerThreads != null && workerThreads > 0) {
+            return workerThreads.intValue();
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Get the max number of requests waiting for a worker thread.
+     * @return worker queue size
+     */
+    public int getKdcWorkerQueueSize() {
+        return getInt(KdcConfigKey.KDC_WORKER_QUEUE_SIZE, true, KDCDEFAULT);
+    }
+
+    /**
+     * Get the policy for requests rejected when the KDC is overloaded, "reply"
+     * to answer with KDC_ERR_SVC_UNAVAILABLE, or "drop" to drop UDP requests
+     * and close TCP connections.
+     * @return reject policy
+     */
+    public String getKdcWorkerRejectPolicy() {
+        return getString(KdcConfigKey.KDC_WORKER_REJECT_POLICY, true, KDCDEFAULT);
+    }
+
+    /**
+     * Is to run the KDC workers on virtual threads if the JVM supports them.
+     * @return true to use virtual threads
+     */
+    public boolean useWorkerVirtualThreads() {
+        return getBoolean(KdcConfigKey.KDC_WORKER_VIRTUAL_THREADS, true, KDCDEFAULT);
+    }
+
+    /**
+     * Is to pool direct buffers, off the heap, for the received messages.
+     * @return true to use direct buffers
+     */
+    public boolean isBufferPoolDirect() {
+        return getBoolean(KdcConfigKey.KDC_BUFFER_POOL_DIRECT, true, KDCDEFAULT);
+    }
+
+    /**
+     * Get the max idle bytes the buffer pool keeps for each buffer size.
+     * @return max pooled bytes
+     */
+    public int getBufferPoolMaxBytes() {
+        return getInt(KdcConfigKey.KDC_BUFFER_POOL_MAX_BYTES, true, KDCDEFAULT);
+    }
+
+    /**
+     * Get the file to persist the replay cache in, null to keep it in memory.
+     * @return replay cache file
+     */
+    public String getReplayCacheFile() {
+        return getString(KdcConfigKey.KDC_REPLAY_CACHE_FILE, true, KDCDEFAULT);
+    }
+
+    /**
+     * Get the number of records the replay cache file can hold. When it's
+     * full, overflow files as large are added, up to
+     * {@link org.apache.kerby.kerberos.kerb.server.replay.MappedCacheService#MAX_TABLES}
+     * files in all.
+     * @return replay cache capacity
+     */
+    public int getReplayCacheCapacity() {
+        return getInt(KdcConfigKey.KDC_REPLAY_CACHE_CAPACITY, true, KDCDEFAULT);
+    }
+
+    /**
+     * Get the random provider for the session keys and confounders, "java"
+     * for a shared SecureRandom, "native" for /dev/urandom, "drbg" for
+     * buffered DRBGs striped over the threads, or a RandomProvider class name.
+     * The provider is set for the whole process while the KDC runs.
+     * @return random provider name
+     */
+    public String getKdcRandomProvider() {
+        return getString(KdcConfigKey.KDC_RANDOM_PROVIDER, true, KDCDEFAULT);
+    }
+
     /**
      * Is to allow TCP for KDC
      * @return true to allow TCP, false otherwise
@@ -168,12 +348,36 @@ public class KdcConfig extends Krb5Conf {
     }
     
     public List<String> getIssuers() {
+        if (getString(KdcConfigKey.TOKEN_ISSUERS, true, KDCDEFAULT) == null) {
+            return Collections.emptyList();
+        }
         return Arrays.asList(getStringArray(KdcConfigKey.TOKEN_ISSUERS, true, KDCDEFAULT));
     }
 
     public List<String> getPkinitAnchors() {
-        return Arrays.asList(getString(
-                KdcConfigKey.PKINIT_ANCHORS, true, KDCDEFAULT));
+        String anchors = getString(KdcConfigKey.PKINIT_ANCHORS, true, KDCDEFAULT);
+        if (anchors == null) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(anchors);
+    }
+
+    /**
+     * Get the time in seconds a validated client certificate chain is
+     * trusted without validating it again, bounded by the certificates
+     * expiration.
+     * @return cert cache ttl
+     */
+    public long getPkinitCertCacheTtl() {
+        return getLong(KdcConfigKey.PKINIT_CERT_CACHE_TTL, true, KDCDEFAULT);
+    }
+
+    /**
+     * Get the max number of validated client certificate chains to cache.
+     * @return cert cache size
+     */
+    public int getPkinitCertCacheSize() {
+        return getInt(KdcConfigKey.PKINIT_CERT_CACHE_SIZE, true, KDCDEFAULT);
     }
 
     public String getPkinitIdentity() {
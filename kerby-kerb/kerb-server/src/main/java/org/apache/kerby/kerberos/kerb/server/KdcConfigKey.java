@@ -31,6 +31,17 @@ public enum KdcConfigKey implements ConfigKey {
     KDC_ALLOW_UDP(true),
     KDC_UDP_PORT,
     KDC_TCP_PORT,
+    KDC_TCP_IDLE_TIMEOUT(30),
+    KDC_NETWORK_THREADS(1),
+    KDC_WORKER_THREADS,
+    KDC_WORKER_QUEUE_SIZE(1024),
+    KDC_WORKER_REJECT_POLICY("reply"),
+    KDC_WORKER_VIRTUAL_THREADS(false),
+    KDC_BUFFER_POOL_DIRECT(false),
+    KDC_BUFFER_POOL_MAX_BYTES(4 * 1024 * 1024),
+    KDC_REPLAY_CACHE_FILE,
+    KDC_REPLAY_CACHE_CAPACITY(1024 * 1024),
+    KDC_RANDOM_PROVIDER("java"),
     KDC_DOMAIN("example.com"),
     KDC_REALM("EXAMPLE.COM"),
     PREAUTH_REQUIRED(true),
@@ -53,7 +64,9 @@ public enum KdcConfigKey implements ConfigKey {
     TOKEN_DECRYPTION_KEYS(),
     TOKEN_ISSUERS(),
     PKINIT_IDENTITY(null),
-    PKINIT_ANCHORS(null);
+    PKINIT_ANCHORS(null),
+    PKINIT_CERT_CACHE_TTL(3600L),
+    PKINIT_CERT_CACHE_SIZE(1024);
 
     private Object defaultValue;
 
@@ -0,0 +1,188 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *
+ */
+package org.apache.kerby.kerberos.kerb.server;
+
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable snapshot of the KDC policy items read when serving requests,
+ * parsed once from {@link KdcConfig} so requests don't look up and parse the
+ * config strings. A new snapshot replaces it when the config changes.
+ */
+public final class KdcConfigSnapshot {
+    private final String kdcRealm;
+    private final String kdcDomain;
+    private final boolean preauthRequired;
+    private final boolean allowTokenPreauth;
+    private final long allowableClockSkew;
+    private final boolean emptyAddressesAllowed;
+    private final boolean forwardableAllowed;
+    private final boolean postdatedAllowed;
+    private final boolean proxiableAllowed;
+    private final boolean renewableAllowed;
+    private final long maximumRenewableLifetime;
+    private final long maximumTicketLifetime;
+    private final long minimumTicketLifetime;
+    private final List<EncryptionType> encryptionTypes;
+    private final boolean paEncTimestampRequired;
+    private final boolean bodyChecksumVerified;
+    private final boolean restrictAnonymousToTgt;
+    private final String verifyKeyConfig;
+    private final String decryptionKeyConfig;
+    private final List<String> issuers;
+    private final String pkinitIdentity;
+    private final List<String> pkinitAnchors;
+    private final long pkinitCertCacheTtl;
+    private final int pkinitCertCacheSize;
+
+    KdcConfigSnapshot(KdcConfig config) {
+        kdcRealm = config.getKdcRealm();
+        kdcDomain = config.getKdcDomain();
+        preauthRequired = config.isPreauthRequired();
+        allowTokenPreauth = config.isAllowTokenPreauth();
+        allowableClockSkew = config.getAllowableClockSkew();
+        emptyAddressesAllowed = config.isEmptyAddressesAllowed();
+        forwardableAllowed = config.isForwardableAllowed();
+        postdatedAllowed = config.isPostdatedAllowed();
+        proxiableAllowed = config.isProxiableAllowed();
+        renewableAllowed = config.isRenewableAllowed();
+        maximumRenewableLifetime = config.getMaximumRenewableLifetime();
+        maximumTicketLifetime = config.getMaximumTicketLifetime();
+        minimumTicketLifetime = config.getMinimumTicketLifetime();
+        List<EncryptionType> encTypes = config.getEncryptionTypes();
+        encryptionTypes = Collections.unmodifiableList(
+            Arrays.asList(encTypes.toArray(new EncryptionType[encTypes.size()])));
+        paEncTimestampRequired = config.isPaEncTimestampRequired();
+        bodyChecksumVerified = config.isBodyChecksumVerified();
+        restrictAnonymousToTgt = config.isRestrictAnonymousToTgt();
+        verifyKeyConfig = config.getVerifyKeyConfig();
+        decryptionKeyConfig = config.getDecryptionKeyConfig();
+        issuers = Collections.unmodifiableList(new ArrayList<>(config.getIssuers()));
+        pkinitIdentity = config.getPkinitIdentity();
+        pkinitAnchors = Collections.unmodifiableList(new ArrayList<>(config.getPkinitAnchors()));
+        pkinitCertCacheTtl = config.getPkinitCertCacheTtl();
+        pkinitCertCacheSize = config.getPkinitCertCacheSize();
+    }
+
+    public String getKdcRealm() {
+        return kdcRealm;
+    }
+
+    public String getKdcDomain() {
+        return kdcDomain;
+    }
+
+    public boolean isPreauthRequired() {
+        return preauthRequired;
+    }
+
+    public boolean isAllowTokenPreauth() {
+        return allowTokenPreauth;
+    }
+
+    public long getAllowableClockSkew() {
+        return allowableClockSkew;
+    }
+
+    public boolean isEmptyAddressesAllowed() {
+        return emptyAddressesAllowed;
+    }
+
+    public boolean isForwardableAllowed() {
+        return forwardableAllowed;
+    }
+
+    public boolean isPostdatedAllowed() {
+        return postdatedAllowed;
+    }
+
+    public boolean isProxiableAllowed() {
+        return proxiableAllowed;
+    }
+
+    public boolean isRenewableAllowed() {
+        return renewableAllowed;
+    }
+
+    public long getMaximumRenewableLifetime() {
+        return maximumRenewableLifetime;
+    }
+
+    public long getMaximumTicketLifetime() {
+        return maximumTicketLifetime;
+    }
+
+    public long getMinimumTicketLifetime() {
+        return minimumTicketLifetime;
+    }
+
+    /**
+     * Get the permitted encryption types, in preference order.
+     * @return unmodifiable encryption types
+     */
+    public List<EncryptionType> getEncryptionTypes() {
+        return encryptionTypes;
+    }
+
+    public boolean isPaEncTimestampRequired() {
+        return paEncTimestampRequired;
+    }
+
+    public boolean isBodyChecksumVerified() {
+        return bodyChecksumVerified;
+    }
+
+    public boolean isRestrictAnonymousToTgt() {
+        return restrictAnonymousToTgt;
+    }
+
+    public String getVerifyKeyConfig() {
+        return verifyKeyConfig;
+    }
+
+    public String getDecryptionKeyConfig() {
+        return decryptionKeyConfig;
+    }
+
+    public List<String> getIssuers() {
+        return issuers;
+    }
+
+    public String getPkinitIdentity() {
+        return pkinitIdentity;
+    }
+
+    public List<String> getPkinitAnchors() {
+        return pkinitAnchors;
+    }
+
+    public long getPkinitCertCacheTtl() {
+        return pkinitCertCacheTtl;
+    }
+
+    public int getPkinitCertCacheSize() {
+        return pkinitCertCacheSize;
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *
+ */
+package org.apache.kerby.kerberos.kerb.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watch the kdc.conf file and reload the KDC config when it changes, so policy
+ * changes take effect without restarting the KDC. Network and backend items
+ * are only read at startup and still need a restart.
+ *
+ * A burst of change events is folded into one reload once the file has been
+ * quiet for a while, and a config that fails to load is logged and ignored,
+ * keeping the current one.
+ */
+public class KdcConfigWatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(KdcConfigWatcher.class);
+    private static final long QUIET_PERIOD_MS = 500;
+
+    private final KdcConfig kdcConfig;
+    private final File confFile;
+    private WatchService watchService;
+
+    public KdcConfigWatcher(KdcConfig kdcConfig, File confFile) {
+        this.kdcConfig = kdcConfig;
+        this.confFile = confFile.getAbsoluteFile();
+    }
+
+    /**
+     * Start watching the config file.
+     * @throws IOException e
+     */
+    public synchronized void start() throws IOException {
+        if (watchService != null) {
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        confFile.getParentFile().toPath().register(watchService,
+            StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        final WatchService service = watchService;
+        Thread watchThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watch(service);
+            }
+        }, "kdc-config-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    /**
+     * Stop watching the config file.
+     */
+    public synchronized void stop() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close the kdc config watch service", e);
+            }
+            watchService = null;
+        }
+    }
+
+    private void watch(WatchService service) {
+        try {
+            while (true) {
+                if (!isConfChanged(service, service.take())) {
+                    continue;
+                }
+                // The file may be written in several steps, wait until it settles
+                WatchKey watchKey;
+                while ((watchKey = service.poll(QUIET_PERIOD_MS, TimeUnit.MILLISECONDS)) != null) {
+                    isConfChanged(service, watchKey);
+                }
+                reload();
+            }
+        } catch (ClosedWatchServiceException e) {
+            LOG.debug("Kdc config watch service closed");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean isConfChanged(WatchService service, WatchKey watchKey) {
+        boolean changed = false;
+        for (WatchEvent<?> event : watchKey.pollEvents()) {
+            Object context = event.context();
+            if (context instanceof Path
+                && confFile.getName().equals(((Path) context).toString())) {
+                changed = true;
+            }
+        }
+        if (!watchKey.reset()) {
+            LOG.warn("Kdc config directory not accessible, stop watching "
+                + confFile);
+            try {
+                service.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close the kdc config watch service", e);
+            }
+        }
+        return changed;
+    }
+
+    private void reload() {
+        try {
+            kdcConfig.reload();
+            LOG.info("Reloaded kdc config from " + confFile);
+        } catch (RuntimeException e) {
+            LOG.error("Failed to reload kdc config from " + confFile
+                + ", keep using the current config", e);
+        }
+    }
+}
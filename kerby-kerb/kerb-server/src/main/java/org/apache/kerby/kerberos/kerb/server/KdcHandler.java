@@ -22,6 +22,7 @@ package org.apache.kerby.kerberos.kerb.server;
 import org.apache.kerby.kerberos.kerb.KrbCodec;
 import org.apache.kerby.kerberos.kerb.KrbErrorCode;
 import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.common.KrbUtil;
 import org.apache.kerby.kerberos.kerb.server.request.AsRequest;
 import org.apache.kerby.kerberos.kerb.server.request.KdcRequest;
 import org.apache.kerby.kerberos.kerb.server.request.TgsRequest;
@@ -121,6 +122,30 @@ public class KdcHandler {
             }
         }
 
+        return encodeResponse(krbResponse, isTcp);
+    }
+
+    /**
+     * Make the reply for a request rejected as the KDC is overloaded, without
+     * decoding or processing it.
+     *
+     * @throws org.apache.kerby.kerberos.kerb.KrbException e
+     * @param isTcp whether the protocol is tcp
+     * @return The response message
+     */
+    public ByteBuffer makeUnavailableReply(boolean isTcp) throws KrbException {
+        KrbError error = new KrbError();
+        error.setStime(KerberosTime.now());
+        error.setSusec(100);
+        error.setErrorCode(KrbErrorCode.KDC_ERR_SVC_UNAVAILABLE);
+        error.setRealm(kdcContext.getKdcRealm());
+        error.setSname(KrbUtil.makeTgsPrincipal(kdcContext.getKdcRealm()));
+        error.setEtext("KDC is overloaded, try again later");
+        return encodeResponse(error, isTcp);
+    }
+
+    private ByteBuffer encodeResponse(KrbMessage krbResponse,
+                                      boolean isTcp) throws KrbException {
         int bodyLen = krbResponse.encodingLength();
         ByteBuffer responseMessage;
         if (isTcp) {
@@ -26,18 +26,25 @@ import org.apache.kerby.kerberos.kerb.identity.backend.IdentityBackend;
 import org.apache.kerby.kerberos.kerb.server.impl.DefaultInternalKdcServerImpl;
 import org.apache.kerby.kerberos.kerb.server.impl.InternalKdcServer;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.File;
+import java.io.IOException;
 
 /**
  * The implemented Kerberos Server API.
  */
 public class KdcServer {
+    private static final Logger LOG = LoggerFactory.getLogger(KdcServer.class);
+
     private final KdcConfig kdcConfig;
     private final BackendConfig backendConfig;
     private final KdcSetting kdcSetting;
     private final KOptions startupOptions;
 
     private InternalKdcServer innerKdc;
+    private KdcConfigWatcher configWatcher;
 
     /**
      * Constructor passing both kdcConfig and backendConfig.
@@ -76,6 +83,11 @@ public class KdcServer {
         tmpBackendConfig.setConfDir(confDir);
         this.backendConfig = tmpBackendConfig;
 
+        File kdcConfFile = new File(confDir, "kdc.conf");
+        if (kdcConfFile.exists()) {
+            configWatcher = new KdcConfigWatcher(kdcConfig, kdcConfFile);
+        }
+
         startupOptions = new KOptions();
         kdcSetting = new KdcSetting(startupOptions, kdcConfig, backendConfig);
     }
@@ -145,6 +157,31 @@ public class KdcServer {
         startupOptions.add(KdcServerOption.KDC_UDP_PORT, kdcUdpPort);
     }
 
+    /**
+     * Set number of worker threads handling requests.
+     * @param workerThreads The worker threads
+     */
+    public void setWorkerThreads(int workerThreads) {
+        startupOptions.add(KdcServerOption.WORKER_THREADS, workerThreads);
+    }
+
+    /**
+     * Set max number of requests waiting for a worker thread.
+     * @param workerQueueSize The worker queue size
+     */
+    public void setWorkerQueueSize(int workerQueueSize) {
+        startupOptions.add(KdcServerOption.WORKER_QUEUE_SIZE, workerQueueSize);
+    }
+
+    /**
+     * Set to run the workers on virtual threads or not. It falls back to
+     * platform threads if the JVM doesn't support virtual threads.
+     * @param useVirtualThreads true to use virtual threads
+     */
+    public void setWorkerVirtualThreads(boolean useVirtualThreads) {
+        startupOptions.add(KdcServerOption.WORKER_VIRTUAL_THREADS, useVirtualThreads);
+    }
+
     /**
      * Set runtime folder.
      * @param workDir The work dir
@@ -231,6 +268,14 @@ public class KdcServer {
             throw new RuntimeException("Not init yet");
         }
         innerKdc.start();
+
+        if (configWatcher != null) {
+            try {
+                configWatcher.start();
+            } catch (IOException e) {
+                LOG.warn("Can't watch the kdc config, changes need a restart", e);
+            }
+        }
     }
 
     /**
@@ -239,6 +284,9 @@ public class KdcServer {
      * @throws org.apache.kerby.kerberos.kerb.KrbException e.
      */
     public void stop() throws KrbException {
+        if (configWatcher != null) {
+            configWatcher.stop();
+        }
         if (innerKdc != null) {
             innerKdc.stop();
         }
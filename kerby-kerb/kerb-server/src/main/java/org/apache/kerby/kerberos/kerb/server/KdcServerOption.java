@@ -36,6 +36,10 @@ public enum KdcServerOption implements KOption {
     KDC_TCP_PORT(new KOptionInfo("kdc tcp port", "kdc tcp port", KOptionType.INT)),
     ALLOW_UDP(new KOptionInfo("allow udp", "allow udp", KOptionType.BOOL)),
     KDC_UDP_PORT(new KOptionInfo("kdc udp port", "kdc udp port", KOptionType.INT)),
+    WORKER_THREADS(new KOptionInfo("worker threads", "worker threads", KOptionType.INT)),
+    WORKER_QUEUE_SIZE(new KOptionInfo("worker queue size", "worker queue size", KOptionType.INT)),
+    WORKER_VIRTUAL_THREADS(new KOptionInfo("worker virtual threads",
+            "worker virtual threads", KOptionType.BOOL)),
     WORK_DIR(new KOptionInfo("work dir", "work dir", KOptionType.DIR)),
     ENABLE_DEBUG(new KOptionInfo("enable debug", "enable debug", KOptionType.BOOL));
 
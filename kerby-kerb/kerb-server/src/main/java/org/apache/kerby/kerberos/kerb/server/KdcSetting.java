@@ -183,4 +183,45 @@ public class KdcSetting {
         }
         return kdcRealm;
     }
+
+    /**
+     * Get number of worker threads handling KDC requests.
+     * @return worker threads
+     */
+    public int getWorkerThreads() {
+        int workerThreads = startupOptions.getIntegerOption(KdcServerOption.WORKER_THREADS);
+        if (workerThreads < 1) {
+            workerThreads = kdcConfig.getKdcWorkerThreads();
+        }
+        return workerThreads;
+    }
+
+    /**
+     * Get max number of requests waiting for a worker thread.
+     * @return worker queue size
+     */
+    public int getWorkerQueueSize() {
+        if (startupOptions.contains(KdcServerOption.WORKER_QUEUE_SIZE)) {
+            return startupOptions.getIntegerOption(KdcServerOption.WORKER_QUEUE_SIZE);
+        }
+        return kdcConfig.getKdcWorkerQueueSize();
+    }
+
+    /**
+     * Whether to run the workers on virtual threads, if supported by the JVM.
+     * @return true to use virtual threads
+     */
+    public boolean useWorkerVirtualThreads() {
+        return startupOptions.getBooleanOption(
+                KdcServerOption.WORKER_VIRTUAL_THREADS, kdcConfig.useWorkerVirtualThreads());
+    }
+
+    /**
+     * Whether to reply KDC_ERR_SVC_UNAVAILABLE for requests rejected when the
+     * KDC is overloaded, otherwise to drop them.
+     * @return true to reply, false to drop
+     */
+    public boolean replyOnReject() {
+        return !"drop".equalsIgnoreCase(kdcConfig.getKdcWorkerRejectPolicy());
+    }
 }
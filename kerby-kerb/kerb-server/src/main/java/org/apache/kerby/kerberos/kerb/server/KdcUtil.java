@@ -23,6 +23,11 @@ import org.apache.kerby.kerberos.kerb.KrbException;
 import org.apache.kerby.kerberos.kerb.identity.backend.BackendConfig;
 import org.apache.kerby.kerberos.kerb.identity.backend.IdentityBackend;
 import org.apache.kerby.kerberos.kerb.identity.backend.MemoryIdentityBackend;
+import org.apache.kerby.kerberos.kerb.server.replay.CacheService;
+import org.apache.kerby.kerberos.kerb.server.replay.ExpiringCacheService;
+import org.apache.kerby.kerberos.kerb.server.replay.MappedCacheService;
+import org.apache.kerby.kerberos.kerb.server.replay.ReplayCheckService;
+import org.apache.kerby.kerberos.kerb.server.replay.ReplayCheckServiceImpl;
 import org.apache.kerby.kerberos.kerb.transport.TransportPair;
 
 import java.io.File;
@@ -139,4 +144,30 @@ public final class KdcUtil {
 
         return result;
     }
+
+    /**
+     * Get the replay cache according to KDC config, persisted in the replay
+     * cache file if configured, otherwise in memory.
+     * @param kdcConfig kdc config
+     * @return replay check service
+     * @throws KrbException e
+     */
+    public static ReplayCheckService getReplayCache(
+            KdcConfig kdcConfig) throws KrbException {
+        long clockSkew = kdcConfig.getAllowableClockSkew() * 1000;
+        String cacheFile = kdcConfig.getReplayCacheFile();
+        CacheService cacheService;
+        if (cacheFile != null) {
+            try {
+                cacheService = new MappedCacheService(new File(cacheFile),
+                        kdcConfig.getReplayCacheCapacity(), clockSkew);
+            } catch (IOException e) {
+                throw new KrbException("Failed to open replay cache file: "
+                        + cacheFile, e);
+            }
+        } else {
+            cacheService = new ExpiringCacheService(clockSkew);
+        }
+        return new ReplayCheckServiceImpl(cacheService);
+    }
 }
@@ -19,23 +19,31 @@
  */
 package org.apache.kerby.kerberos.kerb.server.impl;
 
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.crypto.random.RandomProvider;
+import org.apache.kerby.kerberos.kerb.crypto.util.Random;
+import org.apache.kerby.kerberos.kerb.server.KdcConfig;
 import org.apache.kerby.kerberos.kerb.server.KdcContext;
 import org.apache.kerby.kerberos.kerb.server.KdcSetting;
 import org.apache.kerby.kerberos.kerb.server.KdcUtil;
 import org.apache.kerby.kerberos.kerb.server.preauth.PreauthHandler;
+import org.apache.kerby.kerberos.kerb.transport.ByteBufferPool;
 import org.apache.kerby.kerberos.kerb.transport.KdcNetwork;
 import org.apache.kerby.kerberos.kerb.transport.KrbTransport;
 import org.apache.kerby.kerberos.kerb.transport.TransportPair;
-
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * A default KDC server implementation.
  */
 public class DefaultInternalKdcServerImpl extends AbstractInternalKdcServer {
-    private ExecutorService executor;
+    private static final Logger LOG = LoggerFactory.getLogger(DefaultInternalKdcServerImpl.class);
+    private KdcWorkerPool workerPool;
+    private ByteBufferPool bufferPool;
     private KdcContext kdcContext;
+    private RandomProvider randomProvider;
+    private RandomProvider previousRandomProvider;
     private KdcNetwork network;
 
     public DefaultInternalKdcServerImpl(KdcSetting kdcSetting) {
@@ -48,27 +56,46 @@ public class DefaultInternalKdcServerImpl extends AbstractInternalKdcServer {
 
         prepareHandler();
 
-        executor = Executors.newCachedThreadPool();
+        boolean useVirtualThreads = getSetting().useWorkerVirtualThreads();
+        workerPool = new KdcWorkerPool(getSetting().getWorkerThreads(),
+                getSetting().getWorkerQueueSize(), useVirtualThreads);
+        if (useVirtualThreads && !workerPool.isVirtualThreads()) {
+            LOG.warn("Virtual threads not supported by the JVM, using platform threads");
+        }
+        final boolean replyOnReject = getSetting().replyOnReject();
 
         network = new KdcNetwork() {
             @Override
             protected void onNewTransport(KrbTransport transport) {
                 DefaultKdcHandler kdcHandler = new DefaultKdcHandler(kdcContext, transport);
-                executor.execute(kdcHandler);
+                if (!workerPool.execute(kdcHandler)) {
+                    LOG.debug("No worker available, rejecting request");
+                    kdcHandler.reject(replyOnReject);
+                }
             }
         };
 
-        network.init();
+        KdcConfig kdcConfig = getSetting().getKdcConfig();
+        bufferPool = new ByteBufferPool(ByteBufferPool.DEFAULT_MAX_BUFFER_SIZE,
+                kdcConfig.getBufferPoolMaxBytes(), kdcConfig.isBufferPoolDirect());
+        network.init(kdcConfig.getKdcNetworkThreads());
+        network.setBufferPool(bufferPool);
+        network.setTcpIdleTimeout(kdcConfig.getKdcTcpIdleTimeout() * 1000);
         TransportPair tpair = KdcUtil.getTransportPair(getSetting());
         network.listen(tpair);
         network.start();
     }
 
-    private void prepareHandler() {
+    private void prepareHandler() throws KrbException {
         kdcContext = new KdcContext(getSetting());
         kdcContext.setIdentityService(getIdentityService());
+        kdcContext.setReplayCache(KdcUtil.getReplayCache(getSetting().getKdcConfig()));
+        // The provider is process wide, the one replaced is put back on stop
+        randomProvider = Random.createProvider(getSetting().getKdcConfig().getKdcRandomProvider());
+        previousRandomProvider = Random.setProvider(randomProvider);
         PreauthHandler preauthHandler = new PreauthHandler();
         preauthHandler.init();
+        preauthHandler.initWith(kdcContext);
         kdcContext.setPreauthHandler(preauthHandler);
     }
 
@@ -78,6 +105,28 @@ public class DefaultInternalKdcServerImpl extends AbstractInternalKdcServer {
 
         network.stop();
 
-        executor.shutdownNow();
+        workerPool.shutdown();
+
+        kdcContext.getPreauthHandler().destroy();
+
+        Random.restoreProvider(randomProvider, previousRandomProvider);
+    }
+
+    /**
+     * Get the worker pool handling requests, with the queue depth and
+     * rejection metrics.
+     * @return worker pool
+     */
+    public KdcWorkerPool getWorkerPool() {
+        return workerPool;
+    }
+
+    /**
+     * Get the pool of the received message buffers, with the hit and miss
+     * metrics.
+     * @return buffer pool
+     */
+    public ByteBufferPool getBufferPool() {
+        return bufferPool;
     }
 }
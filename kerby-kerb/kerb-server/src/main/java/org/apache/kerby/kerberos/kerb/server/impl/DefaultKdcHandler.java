@@ -19,9 +19,9 @@
  */
 package org.apache.kerby.kerberos.kerb.server.impl;
 
+import org.apache.kerby.kerberos.kerb.KrbException;
 import org.apache.kerby.kerberos.kerb.server.KdcContext;
 import org.apache.kerby.kerberos.kerb.server.KdcHandler;
-import org.apache.kerby.kerberos.kerb.transport.KrbTcpTransport;
 import org.apache.kerby.kerberos.kerb.transport.KrbTransport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,6 +30,10 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
 
+/**
+ * Serve the requests pending on a transport. The handler returns once no more
+ * request is pending, leaving the connection to the network that owns it.
+ */
 public class DefaultKdcHandler extends KdcHandler implements Runnable {
     private static Logger logger = LoggerFactory.getLogger(DefaultKdcHandler.class);
     private final KrbTransport transport;
@@ -45,11 +49,14 @@ public class DefaultKdcHandler extends KdcHandler implements Runnable {
             try {
                 ByteBuffer message = transport.receiveMessage();
                 if (message == null) {
-                    logger.debug("No valid request recved. Disconnect actively");
-                    transport.release();
+                    logger.debug("No more request pending on the transport");
                     break;
                 }
-                handleMessage(message);
+                try {
+                    handleMessage(message);
+                } finally {
+                    transport.releaseMessage(message);
+                }
             } catch (IOException e) {
                 transport.release();
                 logger.debug("Transport or decoding error occurred, "
@@ -59,9 +66,34 @@ public class DefaultKdcHandler extends KdcHandler implements Runnable {
         }
     }
 
+    /**
+     * Reject the requests pending on the transport as no worker is available.
+     * @param replyError true to reply KDC_ERR_SVC_UNAVAILABLE, false to drop
+     *                   UDP requests and close TCP connections
+     */
+    public void reject(boolean replyError) {
+        if (!replyError && transport.isTcp()) {
+            transport.release();
+            return;
+        }
+
+        try {
+            ByteBuffer message;
+            while ((message = transport.receiveMessage()) != null) {
+                transport.releaseMessage(message);
+                if (replyError) {
+                    transport.sendMessage(makeUnavailableReply(transport.isTcp()));
+                }
+            }
+        } catch (IOException | KrbException e) {
+            transport.release();
+            logger.debug("Error occurred while rejecting request", e);
+        }
+    }
+
     protected void handleMessage(ByteBuffer message) {
         InetAddress clientAddress = transport.getRemoteAddress();
-        boolean isTcp = transport instanceof KrbTcpTransport;
+        boolean isTcp = transport.isTcp();
 
         try {
             ByteBuffer krbResponse = handleMessage(message, isTcp, clientAddress);
@@ -0,0 +1,220 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.server.impl;
+
+import org.apache.kerby.util.ThreadUtil;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed size pool of worker threads with a bounded queue for handling KDC
+ * requests. When all workers are busy and the queue is full, tasks are
+ * rejected instead of piling up threads or memory.
+ *
+ * In virtual thread mode each task runs on its own virtual thread, and at most
+ * workerThreads + queueCapacity tasks are in flight, nothing is queued.
+ */
+public class KdcWorkerPool {
+    private final int workerThreads;
+    private final int queueCapacity;
+    private final ExecutorService executor;
+    private final ThreadPoolExecutor threadPool; // null in virtual thread mode
+    private final Semaphore taskPermits; // only in virtual thread mode
+    private final int maxTasks;
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicInteger peakQueueSize = new AtomicInteger();
+
+    /**
+     * Construct a worker pool.
+     * @param workerThreads number of worker threads
+     * @param queueCapacity max number of tasks waiting for a worker,
+     *                      0 to queue nothing
+     */
+    public KdcWorkerPool(int workerThreads, int queueCapacity) {
+        this(workerThreads, queueCapacity, false);
+    }
+
+    /**
+     * Construct a worker pool, using virtual threads if wanted and supported
+     * by the running JVM, falling back to platform threads otherwise.
+     * @param workerThreads number of worker threads
+     * @param queueCapacity max number of tasks waiting for a worker,
+     *                      0 to queue nothing
+     * @param useVirtualThreads true to run tasks on virtual threads
+     */
+    public KdcWorkerPool(int workerThreads, int queueCapacity, boolean useVirtualThreads) {
+        if (workerThreads < 1) {
+            throw new IllegalArgumentException("Invalid number of worker threads: "
+                    + workerThreads);
+        }
+        this.workerThreads = workerThreads;
+        this.queueCapacity = Math.max(queueCapacity, 0);
+        this.maxTasks = workerThreads + this.queueCapacity;
+
+        ExecutorService virtualExecutor = null;
+        if (useVirtualThreads) {
+            virtualExecutor = ThreadUtil.newVirtualThreadPerTaskExecutor();
+        }
+
+        if (virtualExecutor != null) {
+            executor = virtualExecutor;
+            threadPool = null;
+            taskPermits = new Semaphore(maxTasks);
+        } else {
+            BlockingQueue<Runnable> queue;
+            if (this.queueCapacity > 0) {
+                queue = new ArrayBlockingQueue<Runnable>(this.queueCapacity);
+            } else {
+                queue = new SynchronousQueue<Runnable>();
+            }
+            threadPool = new ThreadPoolExecutor(workerThreads, workerThreads,
+                    0L, TimeUnit.MILLISECONDS, queue, new WorkerThreadFactory(),
+                    new ThreadPoolExecutor.AbortPolicy());
+            executor = threadPool;
+            taskPermits = null;
+        }
+    }
+
+    /**
+     * @return true if tasks run on virtual threads
+     */
+    public boolean isVirtualThreads() {
+        return taskPermits != null;
+    }
+
+    /**
+     * Execute the task by a worker.
+     * @param task The task
+     * @return true if accepted, false if rejected as all workers are busy
+     * and the queue is full, or the pool is shut down
+     */
+    public boolean execute(Runnable task) {
+        if (taskPermits != null) {
+            return executeOnVirtualThread(task);
+        }
+
+        try {
+            threadPool.execute(task);
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+
+        int queueSize = threadPool.getQueue().size();
+        int peak = peakQueueSize.get();
+        while (queueSize > peak && !peakQueueSize.compareAndSet(peak, queueSize)) {
+            peak = peakQueueSize.get();
+        }
+        return true;
+    }
+
+    private boolean executeOnVirtualThread(final Runnable task) {
+        if (!taskPermits.tryAcquire()) {
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        completedCount.incrementAndGet();
+                        taskPermits.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            taskPermits.release();
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return number of tasks waiting for a worker
+     */
+    public int getQueueSize() {
+        return threadPool != null ? threadPool.getQueue().size() : 0;
+    }
+
+    /**
+     * @return the highest number of tasks that were waiting for a worker
+     */
+    public int getPeakQueueSize() {
+        return peakQueueSize.get();
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    /**
+     * @return number of workers busy with a task
+     */
+    public int getActiveCount() {
+        if (threadPool != null) {
+            return threadPool.getActiveCount();
+        }
+        return maxTasks - taskPermits.availablePermits();
+    }
+
+    public long getCompletedCount() {
+        if (threadPool != null) {
+            return threadPool.getCompletedTaskCount();
+        }
+        return completedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, "kdc-worker-" + threadNumber.incrementAndGet());
+        }
+    }
+}
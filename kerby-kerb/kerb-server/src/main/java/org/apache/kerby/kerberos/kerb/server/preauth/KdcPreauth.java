@@ -35,13 +35,15 @@ import org.apache.kerby.kerberos.kerb.type.pa.PaDataType;
 public interface KdcPreauth extends PreauthPluginMeta {
 
     /**
-     * Initializing plugin context for each realm
+     * Initializing plugin context for each realm, once when the KDC starts
      * @param context kdc context
      */
     void initWith(KdcContext context);
 
     /**
-     * Initializing request context
+     * Initializing request context, only for the requests having PA data of
+     * the plugin types. The request context passed to the other methods is
+     * null for the other requests.
      * @param kdcRequest kdc context
      * @return request context
      */
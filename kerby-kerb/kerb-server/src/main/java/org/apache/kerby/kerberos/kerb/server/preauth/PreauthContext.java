@@ -20,6 +20,7 @@
 package org.apache.kerby.kerberos.kerb.server.preauth;
 
 import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.preauth.PluginRequestContext;
 import org.apache.kerby.kerberos.kerb.type.pa.PaData;
 
 import java.util.ArrayList;
@@ -27,7 +28,8 @@ import java.util.List;
 
 public class PreauthContext {
     private boolean preauthRequired = true;
-    private List<PreauthHandle> handles = new ArrayList<PreauthHandle>(5);
+    // Handles of the plugins for the PA types in the request
+    private List<PreauthHandle> handles = new ArrayList<PreauthHandle>(1);
     private PaData outputPaData;
 
     public PreauthContext() {
@@ -46,6 +48,30 @@ public class PreauthContext {
         return handles;
     }
 
+    /**
+     * Get the handle of a plugin, if made for the request.
+     * @param preauth The preauth plugin
+     * @return The handle, null if none
+     */
+    public PreauthHandle getHandle(KdcPreauth preauth) {
+        for (PreauthHandle handle : handles) {
+            if (handle.preauth == preauth) {
+                return handle;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the request context of a plugin, if made for the request.
+     * @param preauth The preauth plugin
+     * @return The request context, null if none
+     */
+    public PluginRequestContext getRequestContext(KdcPreauth preauth) {
+        PreauthHandle handle = getHandle(preauth);
+        return handle != null ? handle.requestContext : null;
+    }
+
     public void reset() {
         this.outputPaData = new PaData();
     }
@@ -31,11 +31,15 @@ import org.apache.kerby.kerberos.kerb.type.pa.PaDataEntry;
 import org.apache.kerby.kerberos.kerb.type.pa.PaDataType;
 
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 public class PreauthHandler {
 
     private List<KdcPreauth> preauths;
+    // The plugins by the PA types they handle
+    private Map<PaDataType, KdcPreauth> preauthsByType;
 
     /**
      * Should be called only once, for global
@@ -58,10 +62,19 @@ public class PreauthHandler {
 
         preauth = new PkinitPreauth();
         preauths.add(preauth);
+
+        preauthsByType = new EnumMap<PaDataType, KdcPreauth>(PaDataType.class);
+        for (KdcPreauth kdcPreauth : preauths) {
+            for (PaDataType paType : kdcPreauth.getPaTypes()) {
+                if (!preauthsByType.containsKey(paType)) {
+                    preauthsByType.put(paType, kdcPreauth);
+                }
+            }
+        }
     }
 
     /**
-     * Should be called per realm
+     * Should be called once per realm, when the KDC starts
      * @param context The kdc context
      */
     public void initWith(KdcContext context) {
@@ -70,18 +83,18 @@ public class PreauthHandler {
         }
     }
 
+    /**
+     * Prepare the preauth context of a request. The handles of the plugins,
+     * with their request contexts, are only made for the PA types the
+     * request has, when verified.
+     * @param kdcRequest The kdc request
+     * @return The preauth context
+     */
     public PreauthContext preparePreauthContext(KdcRequest kdcRequest) {
         PreauthContext preauthContext = new PreauthContext();
 
         KdcContext kdcContext = kdcRequest.getKdcContext();
-        initWith(kdcContext);
-        preauthContext.setPreauthRequired(kdcContext.getConfig().isPreauthRequired());
-
-        for (KdcPreauth preauth : preauths) {
-            PreauthHandle handle = new PreauthHandle(preauth);
-            handle.initRequestContext(kdcRequest);
-            preauthContext.getHandles().add(handle);
-        }
+        preauthContext.setPreauthRequired(kdcContext.getConfig().getSnapshot().isPreauthRequired());
 
         return preauthContext;
     }
@@ -89,8 +102,9 @@ public class PreauthHandler {
     public void provideEdata(KdcRequest kdcRequest, PaData outPaData) throws KrbException {
         PreauthContext preauthContext = kdcRequest.getPreauthContext();
 
-        for (PreauthHandle handle : preauthContext.getHandles()) {
-            handle.provideEdata(kdcRequest, outPaData);
+        for (KdcPreauth preauth : preauths) {
+            preauth.provideEdata(kdcRequest,
+                    preauthContext.getRequestContext(preauth), outPaData);
         }
     }
 
@@ -106,22 +120,30 @@ public class PreauthHandler {
     public void providePaData(KdcRequest kdcRequest, PaData paData) {
         PreauthContext preauthContext = kdcRequest.getPreauthContext();
 
-        for (PreauthHandle handle : preauthContext.getHandles()) {
-            handle.providePaData(kdcRequest, paData);
+        for (KdcPreauth preauth : preauths) {
+            preauth.providePaData(kdcRequest,
+                    preauthContext.getRequestContext(preauth), paData);
         }
     }
 
+    /**
+     * Find the handle of the plugin for the PA type in the request preauth
+     * context, making it on first use.
+     */
     private PreauthHandle findHandle(KdcRequest kdcRequest, PaDataType paType) {
-        PreauthContext preauthContext = kdcRequest.getPreauthContext();
+        KdcPreauth preauth = preauthsByType.get(paType);
+        if (preauth == null) {
+            return null;
+        }
 
-        for (PreauthHandle handle : preauthContext.getHandles()) {
-            for (PaDataType pt : handle.preauth.getPaTypes()) {
-                if (pt == paType) {
-                    return handle;
-                }
-            }
+        PreauthContext preauthContext = kdcRequest.getPreauthContext();
+        PreauthHandle handle = preauthContext.getHandle(preauth);
+        if (handle == null) {
+            handle = new PreauthHandle(preauth);
+            handle.initRequestContext(kdcRequest);
+            preauthContext.getHandles().add(handle);
         }
-        return null;
+        return handle;
     }
 
     public void destroy() {
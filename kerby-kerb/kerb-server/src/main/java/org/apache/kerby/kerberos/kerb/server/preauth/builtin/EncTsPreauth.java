@@ -52,7 +52,7 @@ public class EncTsPreauth extends AbstractPreauthPlugin {
                 KeyUsage.AS_REQ_PA_ENC_TS, PaEncTsEnc.class);
 
         KdcContext kdcContext = kdcRequest.getKdcContext();
-        long clockSkew = kdcContext.getConfig().getAllowableClockSkew() * 1000;
+        long clockSkew = kdcContext.getConfig().getSnapshot().getAllowableClockSkew() * 1000;
         if (!timestamp.getAllTime().isInClockSkew(clockSkew)) {
             throw new KrbException(KrbErrorCode.KDC_ERR_PREAUTH_FAILED);
         }
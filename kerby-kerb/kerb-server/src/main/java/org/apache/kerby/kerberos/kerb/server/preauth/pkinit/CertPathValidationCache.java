@@ -0,0 +1,394 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.kerby.kerberos.kerb.server.preauth.pkinit;
+
+import org.apache.kerby.kerberos.kerb.KrbErrorCode;
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.preauth.pkinit.CertificateHelper;
+import org.apache.kerby.util.HexUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.cert.CertPath;
+import java.security.cert.CertPathValidator;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.cert.PKIXParameters;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of the successful path validations of the client certificates
+ * against the pkinit anchors. The entries are keyed by the digest of the
+ * path, leaf first, and the anchor set, and kept for the ttl but never past
+ * the expiration of a certificate of the path. The least recently used entries
+ * are dropped beyond the max size, and all when the anchor files change.
+ * A watch service on the anchor directories tells when to compare the
+ * content of the anchor files again, so they are not read per request. When
+ * the directories can't be watched the files are compared per request.
+ */
+public class CertPathValidationCache {
+    private static final Logger LOG = LoggerFactory.getLogger(CertPathValidationCache.class);
+
+    private final List<String> anchorFiles;
+    private final long ttl;
+    private final Map<String, Long> validations;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private volatile Anchors anchors;
+    private volatile boolean changed;
+    private WatchService watchService;
+    private volatile boolean watching;
+
+    /**
+     * @param anchorFiles The pkinit anchor files
+     * @param ttlSeconds The time in seconds a validation is kept
+     * @param maxSize The max number of validations kept
+     */
+    public CertPathValidationCache(List<String> anchorFiles, long ttlSeconds, final int maxSize) {
+        this.anchorFiles = anchorFiles;
+        this.ttl = ttlSeconds * 1000;
+        this.validations = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxSize;
+            }
+        };
+        startWatching();
+    }
+
+    public List<String> getAnchorFiles() {
+        return anchorFiles;
+    }
+
+    /**
+     * Validate the path from the leaf certificate to the anchors, unless it's
+     * validated already. The path is built by linking the issuer of each
+     * certificate to the subject of another in the given certificates, so
+     * their order doesn't matter and those not on the path are ignored.
+     * @param leaf The client certificate
+     * @param certificates The certificates the path is built from
+     * @throws KrbException if the path isn't valid
+     */
+    public void validate(X509Certificate leaf,
+                         Collection<X509Certificate> certificates) throws KrbException {
+        Anchors current = getAnchors();
+        if (current.trustAnchors.isEmpty()) {
+            throw new KrbException(KrbErrorCode.KDC_ERR_CANT_VERIFY_CERTIFICATE,
+                    "No pkinit anchors to validate the client certificate");
+        }
+
+        List<X509Certificate> path = buildPath(leaf, certificates, current.certificates);
+        if (path.isEmpty()) {
+            throw new KrbException(KrbErrorCode.KDC_ERR_INVALID_CERTIFICATE,
+                    "The client certificate is a pkinit anchor");
+        }
+
+        String key = makeKey(current, path);
+        long now = currentTimeMillis();
+        synchronized (validations) {
+            Long expiration = validations.get(key);
+            if (expiration != null) {
+                if (expiration > now) {
+                    hitCount.incrementAndGet();
+                    return;
+                }
+                validations.remove(key);
+            }
+        }
+        missCount.incrementAndGet();
+
+        try {
+            CertPath certPath = CertificateFactory.getInstance("X.509").generateCertPath(path);
+            PKIXParameters parameters = new PKIXParameters(current.trustAnchors);
+            parameters.setRevocationEnabled(false);
+            parameters.setDate(new Date(now));
+            CertPathValidator.getInstance("PKIX").validate(certPath, parameters);
+        } catch (GeneralSecurityException e) {
+            throw new KrbException(KrbErrorCode.KDC_ERR_INVALID_CERTIFICATE, e);
+        }
+
+        long expiration = now + ttl;
+        for (X509Certificate certificate : path) {
+            expiration = Math.min(expiration, certificate.getNotAfter().getTime());
+        }
+        if (expiration > now) {
+            synchronized (validations) {
+                if (anchors == current) {
+                    validations.put(key, expiration);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of validations answered by the cache
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return number of paths validated
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Stop watching the anchor files.
+     */
+    public void close() {
+        watching = false;
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close the pkinit anchor watch service", e);
+            }
+        }
+    }
+
+    /**
+     * The time the paths are validated at and the validations expire against.
+     */
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Get the anchors, loading them again if the content of the anchor files
+     * changed. The content is compared only when the files were touched, or
+     * per request if they aren't watched.
+     */
+    private Anchors getAnchors() {
+        Anchors current = anchors;
+        if (current != null && watching && !changed) {
+            return current;
+        }
+        synchronized (validations) {
+            current = anchors;
+            if (current == null || !watching || changed) {
+                // Cleared first, a change while digesting is seen next time
+                changed = false;
+                byte[] filesDigest = Anchors.digestFiles(anchorFiles);
+                if (current == null || !MessageDigest.isEqual(current.filesDigest, filesDigest)) {
+                    current = loadAnchors(filesDigest);
+                    anchors = current;
+                    validations.clear();
+                }
+            }
+        }
+        return current;
+    }
+
+    private Anchors loadAnchors(byte[] filesDigest) {
+        Set<X509Certificate> certificates = new HashSet<>();
+        for (String anchorFile : anchorFiles) {
+            try {
+                for (Certificate certificate : CertificateHelper.loadCerts(anchorFile)) {
+                    certificates.add((X509Certificate) certificate);
+                }
+            } catch (KrbException e) {
+                LOG.error("Failed to load the pkinit anchors from " + anchorFile, e);
+            }
+        }
+        return new Anchors(filesDigest, certificates);
+    }
+
+    private void startWatching() {
+        Set<Path> dirs = new HashSet<>();
+        for (String anchorFile : anchorFiles) {
+            File dir = new File(anchorFile).getAbsoluteFile().getParentFile();
+            if (dir != null && dir.isDirectory()) {
+                dirs.add(dir.toPath());
+            }
+        }
+        if (dirs.isEmpty()) {
+            return;
+        }
+
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            for (Path dir : dirs) {
+                dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+        } catch (IOException e) {
+            LOG.warn("Can't watch the pkinit anchor files, comparing them per request", e);
+            close();
+            return;
+        }
+
+        watching = true;
+        Thread watchThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watchAnchorFiles();
+            }
+        }, "pkinit-anchor-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    private void watchAnchorFiles() {
+        try {
+            while (watching) {
+                WatchKey watchKey = watchService.take();
+                watchKey.pollEvents();
+                changed = true;
+                if (!watchKey.reset()) {
+                    LOG.warn("Pkinit anchor directory not accessible, comparing anchors per request");
+                    watching = false;
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            LOG.debug("Pkinit anchor watch service closed");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Build the path from the leaf up to, but not including, an anchor.
+     */
+    static List<X509Certificate> buildPath(X509Certificate leaf,
+                                           Collection<X509Certificate> certificates,
+                                           Set<X509Certificate> anchorCertificates) {
+        List<X509Certificate> path = new ArrayList<>();
+        X509Certificate certificate = leaf;
+        while (certificate != null && !anchorCertificates.contains(certificate)
+                && !path.contains(certificate)) {
+            path.add(certificate);
+            certificate = findIssuer(certificate, certificates);
+        }
+        return path;
+    }
+
+    private static X509Certificate findIssuer(X509Certificate certificate,
+                                              Collection<X509Certificate> certificates) {
+        if (certificate.getIssuerX500Principal().equals(certificate.getSubjectX500Principal())) {
+            return null;
+        }
+        for (X509Certificate issuer : certificates) {
+            if (issuer.getSubjectX500Principal().equals(certificate.getIssuerX500Principal())) {
+                return issuer;
+            }
+        }
+        return null;
+    }
+
+    private static String makeKey(Anchors anchors, List<X509Certificate> path) throws KrbException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(anchors.digest);
+            for (X509Certificate certificate : path) {
+                digest.update(certificate.getEncoded());
+            }
+            return HexUtil.bytesToHex(digest.digest());
+        } catch (GeneralSecurityException e) {
+            throw new KrbException(KrbErrorCode.KDC_ERR_CANT_VERIFY_CERTIFICATE, e);
+        }
+    }
+
+    private static final class Anchors {
+        private final Set<X509Certificate> certificates;
+        private final Set<TrustAnchor> trustAnchors;
+        private final byte[] digest;
+        private final byte[] filesDigest;
+
+        Anchors(byte[] filesDigest, Set<X509Certificate> certificates) {
+            this.certificates = certificates;
+            Set<TrustAnchor> tmp = new HashSet<>();
+            for (X509Certificate certificate : certificates) {
+                tmp.add(new TrustAnchor(certificate, null));
+            }
+            this.trustAnchors = Collections.unmodifiableSet(tmp);
+            this.digest = digest(certificates);
+            this.filesDigest = filesDigest;
+        }
+
+        /**
+         * The anchor files are compared by content, since a rewrite may keep
+         * both the size and the modification time.
+         */
+        static byte[] digestFiles(List<String> anchorFiles) {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                for (String anchorFile : anchorFiles) {
+                    byte[] content;
+                    try {
+                        content = Files.readAllBytes(Paths.get(anchorFile));
+                    } catch (IOException e) {
+                        // A missing file digests as an empty one
+                        content = new byte[0];
+                    }
+                    digest.update(MessageDigest.getInstance("SHA-256").digest(content));
+                }
+                return digest.digest();
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Failed to digest the pkinit anchor files", e);
+            }
+        }
+
+        private static byte[] digest(Set<X509Certificate> certificates) {
+            // The anchor set digest doesn't depend on the set order
+            List<String> digests = new ArrayList<>();
+            try {
+                for (X509Certificate certificate : certificates) {
+                    digests.add(HexUtil.bytesToHex(
+                            MessageDigest.getInstance("SHA-256").digest(certificate.getEncoded())));
+                }
+                Collections.sort(digests);
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                for (String certDigest : digests) {
+                    digest.update(HexUtil.hex2bytes(certDigest));
+                }
+                return digest.digest();
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Failed to digest the pkinit anchors", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.kerby.kerberos.kerb.server.preauth.pkinit;
+
+import org.apache.kerby.cms.type.CertificateChoices;
+import org.apache.kerby.cms.type.CertificateSet;
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.preauth.pkinit.CertificateHelper;
+import org.apache.kerby.kerberos.kerb.preauth.pkinit.PkinitCrypto;
+import org.apache.kerby.x509.type.Certificate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The KDC certificate chain sent in the PKINIT replies. The certificates are
+ * loaded from the certificate files of the pkinit identity once, checked, and
+ * kept with their CertificateSet encoding until the files change, as told by
+ * a watch service on their directories. When the directories can't be
+ * watched the chain is loaded per request, as before.
+ */
+public class KdcCertChain {
+    private static final Logger LOG = LoggerFactory.getLogger(KdcCertChain.class);
+
+    private final String identity;
+    private final AtomicLong generation = new AtomicLong();
+    private volatile Chain chain;
+    private WatchService watchService;
+    private volatile boolean watching;
+
+    public KdcCertChain(String identity) {
+        this.identity = identity;
+        startWatching();
+    }
+
+    public String getIdentity() {
+        return identity;
+    }
+
+    /**
+     * Get the certificates of the chain, in the identity order.
+     * @return certificates
+     */
+    public List<X509Certificate> getCertificates() {
+        return getChain().certificates;
+    }
+
+    /**
+     * Get the certificate set of the chain, encoded once when loaded.
+     * @return certificate set
+     */
+    public CertificateSet getCertificateSet() {
+        return getChain().certificateSet;
+    }
+
+    /**
+     * Drop the loaded chain, to load it again from the certificate files.
+     */
+    public void reload() {
+        generation.incrementAndGet();
+        chain = null;
+    }
+
+    /**
+     * Stop watching the certificate files.
+     */
+    public void close() {
+        watching = false;
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close the pkinit certificate watch service", e);
+            }
+        }
+    }
+
+    private Chain getChain() {
+        Chain result = chain;
+        if (result == null) {
+            long gen = generation.get();
+            result = loadChain();
+            if (watching) {
+                chain = result;
+                if (generation.get() != gen) {
+                    // Files changed while loading, the chain may be stale
+                    chain = null;
+                }
+            }
+        }
+        return result;
+    }
+
+    private Chain loadChain() {
+        List<X509Certificate> certificates = new ArrayList<>();
+        for (File file : getIdentityFiles()) {
+            byte[] content;
+            try {
+                content = Files.readAllBytes(file.toPath());
+            } catch (IOException e) {
+                LOG.error("Failed to read the pkinit identity file " + file, e);
+                continue;
+            }
+            if (!new String(content, StandardCharsets.US_ASCII).contains("CERTIFICATE")) {
+                continue;
+            }
+
+            try {
+                for (java.security.cert.Certificate cert
+                        : CertificateHelper.loadCerts(new ByteArrayInputStream(content))) {
+                    X509Certificate x509Certificate = (X509Certificate) cert;
+                    checkValidity(file, x509Certificate);
+                    certificates.add(x509Certificate);
+                }
+            } catch (KrbException e) {
+                LOG.error("Failed to load the pkinit certificates from " + file, e);
+            }
+        }
+
+        EncodedCertificateSet certificateSet = new EncodedCertificateSet();
+        for (X509Certificate x509Certificate : certificates) {
+            Certificate certificate = PkinitCrypto.changeToCertificate(x509Certificate);
+            CertificateChoices certificateChoices = new CertificateChoices();
+            certificateChoices.setCertificate(certificate);
+            certificateSet.addElement(certificateChoices);
+        }
+        try {
+            certificateSet.encodeOnce();
+        } catch (IOException e) {
+            LOG.error("Failed to encode the pkinit certificates", e);
+        }
+
+        return new Chain(Collections.unmodifiableList(certificates), certificateSet);
+    }
+
+    private static void checkValidity(File file, X509Certificate certificate) {
+        try {
+            certificate.checkValidity();
+        } catch (CertificateException e) {
+            LOG.warn("The pkinit certificate " + certificate.getSubjectX500Principal()
+                    + " from " + file + " is not valid now: " + e.getMessage());
+        }
+    }
+
+    private List<File> getIdentityFiles() {
+        List<File> files = new ArrayList<>();
+        if (identity != null) {
+            for (String path : identity.split(",")) {
+                if (!path.trim().isEmpty()) {
+                    files.add(new File(path.trim()).getAbsoluteFile());
+                }
+            }
+        }
+        return files;
+    }
+
+    private void startWatching() {
+        Set<Path> dirs = new HashSet<>();
+        for (File file : getIdentityFiles()) {
+            File dir = file.getParentFile();
+            if (dir != null && dir.isDirectory()) {
+                dirs.add(dir.toPath());
+            }
+        }
+        if (dirs.isEmpty()) {
+            return;
+        }
+
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            for (Path dir : dirs) {
+                dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+        } catch (IOException e) {
+            LOG.warn("Can't watch the pkinit certificate files, loading them per request", e);
+            close();
+            return;
+        }
+
+        watching = true;
+        Thread watchThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watchCertFiles();
+            }
+        }, "pkinit-cert-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    private void watchCertFiles() {
+        try {
+            while (watching) {
+                WatchKey watchKey = watchService.take();
+                watchKey.pollEvents();
+                LOG.info("Pkinit identity files changed, reloading the certificates");
+                reload();
+                if (!watchKey.reset()) {
+                    LOG.warn("Pkinit identity directory not accessible, loading certificates per request");
+                    watching = false;
+                    reload();
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            LOG.debug("Pkinit certificate watch service closed");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Chain {
+        private final List<X509Certificate> certificates;
+        private final CertificateSet certificateSet;
+
+        Chain(List<X509Certificate> certificates, CertificateSet certificateSet) {
+            this.certificates = certificates;
+            this.certificateSet = certificateSet;
+        }
+    }
+
+    /**
+     * A certificate set writing the body encoded once, so it's shared by the
+     * replies without encoding the certificates again.
+     */
+    private static final class EncodedCertificateSet extends CertificateSet {
+        private byte[] body;
+
+        void encodeOnce() throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(super.encodingBodyLength());
+            super.encodeBody(buffer);
+            body = buffer.array();
+        }
+
+        @Override
+        protected int encodingBodyLength() throws IOException {
+            return body != null ? body.length : super.encodingBodyLength();
+        }
+
+        @Override
+        protected void encodeBody(ByteBuffer buffer) throws IOException {
+            if (body != null) {
+                buffer.put(body);
+            } else {
+                super.encodeBody(buffer);
+            }
+        }
+    }
+}
@@ -23,7 +23,6 @@ import org.apache.kerby.asn1.Asn1;
 import org.apache.kerby.asn1.parse.Asn1Container;
 import org.apache.kerby.asn1.parse.Asn1ParseResult;
 import org.apache.kerby.asn1.type.Asn1Integer;
-import org.apache.kerby.cms.type.CertificateChoices;
 import org.apache.kerby.cms.type.CertificateSet;
 import org.apache.kerby.cms.type.ContentInfo;
 import org.apache.kerby.cms.type.SignedData;
@@ -34,11 +33,11 @@ import org.apache.kerby.kerberos.kerb.common.CheckSumUtil;
 import org.apache.kerby.kerberos.kerb.common.KrbUtil;
 import org.apache.kerby.kerberos.kerb.crypto.dh.DhServer;
 import org.apache.kerby.kerberos.kerb.preauth.PluginRequestContext;
-import org.apache.kerby.kerberos.kerb.preauth.pkinit.CertificateHelper;
 import org.apache.kerby.kerberos.kerb.preauth.pkinit.CmsMessageType;
 import org.apache.kerby.kerberos.kerb.preauth.pkinit.PkinitCrypto;
 import org.apache.kerby.kerberos.kerb.preauth.pkinit.PkinitPlgCryptoContext;
 import org.apache.kerby.kerberos.kerb.preauth.pkinit.PkinitPreauthMeta;
+import org.apache.kerby.kerberos.kerb.server.KdcConfigSnapshot;
 import org.apache.kerby.kerberos.kerb.server.KdcContext;
 import org.apache.kerby.kerberos.kerb.server.preauth.AbstractPreauthPlugin;
 import org.apache.kerby.kerberos.kerb.server.request.KdcRequest;
@@ -56,37 +55,32 @@ import org.apache.kerby.kerberos.kerb.type.pa.pkinit.KdcDhKeyInfo;
 import org.apache.kerby.kerberos.kerb.type.pa.pkinit.PaPkAsRep;
 import org.apache.kerby.kerberos.kerb.type.pa.pkinit.PaPkAsReq;
 import org.apache.kerby.kerberos.kerb.type.pa.pkinit.PkAuthenticator;
-import org.apache.kerby.x509.type.Certificate;
 import org.apache.kerby.x509.type.DhParameter;
 import org.apache.kerby.x509.type.SubjectPublicKeyInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.crypto.interfaces.DHPublicKey;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.security.cert.X509Certificate;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class PkinitPreauth extends AbstractPreauthPlugin {
 
     private static final Logger LOG = LoggerFactory.getLogger(PkinitPreauth.class);
     private final Map<String, PkinitKdcContext> pkinitContexts;
+    private volatile KdcCertChain certChain;
+    private volatile CertPathValidationCache validationCache;
 
     public PkinitPreauth() {
         super(new PkinitPreauthMeta());
 
-        pkinitContexts = new HashMap<String, PkinitKdcContext>(1);
+        pkinitContexts = new ConcurrentHashMap<String, PkinitKdcContext>(1);
     }
 
     @Override
@@ -98,6 +92,10 @@ public class PkinitPreauth extends AbstractPreauthPlugin {
 
         String pkinitIdentity = kdcContext.getConfig().getPkinitIdentity();
         tmp.identityOpts.identity = pkinitIdentity;
+        if (pkinitIdentity != null) {
+            // Load and check the certificates once, before serving requests
+            getCertChain(pkinitIdentity).getCertificates();
+        }
 
         pkinitContexts.put(kdcContext.getKdcRealm(), tmp);
     }
@@ -146,8 +144,8 @@ public class PkinitPreauth extends AbstractPreauthPlugin {
 
             Boolean isSigned = signedData.isSigned();
             if (isSigned) {
-                //TODO
                 LOG.info("Signed data.");
+                verifyClientCertificates(kdcRequest, signedAuthPack, signedData);
             } else {
                 PrincipalName clientPrincial = kdcRequest.getClientEntry().getPrincipal();
                 PrincipalName anonymousPrincipal = KrbUtil.makeAnonymousPrincipal();
@@ -290,35 +288,6 @@ public class PkinitPreauth extends AbstractPreauthPlugin {
     private PaPkAsRep makePaPkAsRep(PkinitPlgCryptoContext cryptoContext,
                                     DHPublicKey severPubKey, String identityString) throws KrbException {
 
-        List<String> identityList = Arrays.asList(identityString.split(","));
-
-        List<X509Certificate> certificates = new ArrayList<>();
-        for (String identity : identityList) {
-            File file = new File(identity);
-            try {
-                Scanner scanner = new Scanner(file);
-                String found = scanner.findInLine("CERTIFICATE");
-
-                if (found != null) {
-                    InputStream res = null;
-                    try {
-                        res = new FileInputStream(identity);
-                    } catch (FileNotFoundException e) {
-                        e.printStackTrace();
-                    }
-                    X509Certificate certificate = null;
-                    try {
-                        certificate = (X509Certificate) CertificateHelper.loadCerts(res).iterator().next();
-                    } catch (KrbException e) {
-                        e.printStackTrace();
-                    }
-                    certificates.add(certificate);
-                }
-            } catch (FileNotFoundException e) {
-                e.getMessage();
-            }
-        }
-
         PaPkAsRep paPkAsRep = new PaPkAsRep();
         DhRepInfo dhRepInfo = new DhRepInfo();
         KdcDhKeyInfo kdcDhKeyInfo = new KdcDhKeyInfo();
@@ -332,17 +301,11 @@ public class PkinitPreauth extends AbstractPreauthPlugin {
 
         byte[] signedDataBytes = null;
 
-        CertificateSet certificateSet = new CertificateSet();
-        for (X509Certificate x509Certificate : certificates) {
-            Certificate certificate = PkinitCrypto.changeToCertificate(x509Certificate);
-            CertificateChoices certificateChoices = new CertificateChoices();
-            certificateChoices.setCertificate(certificate);
-            certificateSet.addElement(certificateChoices);
-        }
+        CertificateSet certificateSet = getCertChain(identityString).getCertificateSet();
 
         String oid = cryptoContext.getIdPkinitDHKeyDataOID();
         signedDataBytes = PkinitCrypto.cmsSignedDataCreate(KrbCodec.encode(kdcDhKeyInfo), oid, 3, null,
-                null, null, null);
+                certificateSet, null, null);
 
         dhRepInfo.setDHSignedData(signedDataBytes);
 
@@ -351,8 +314,94 @@ public class PkinitPreauth extends AbstractPreauthPlugin {
         return paPkAsRep;
     }
 
+    /**
+     * Verify the signature of the signed data with the client certificate,
+     * validate the path of the certificate against the pkinit anchors, once
+     * per path in the validation cache window, and check the certificate is
+     * for the client principal.
+     */
+    private void verifyClientCertificates(KdcRequest kdcRequest, byte[] signedAuthPack,
+                                          SignedData signedData) throws KrbException {
+        List<X509Certificate> certificates = PkinitCrypto.getCmsCertificates(signedAuthPack);
+        if (certificates.isEmpty()) {
+            throw new KrbException(KrbErrorCode.KDC_ERR_CLIENT_NOT_TRUSTED,
+                    "No client certificate in the signed data");
+        }
+
+        X509Certificate leaf = PkinitCrypto.verifyCmsSignature(signedAuthPack, signedData, certificates);
+        getValidationCache(kdcRequest).validate(leaf, certificates);
+
+        PrincipalName clientPrincipal = kdcRequest.getClientEntry().getPrincipal();
+        String realm = kdcRequest.getKdcContext().getKdcRealm();
+        for (PrincipalName san : PkinitCrypto.getPkinitSans(leaf)) {
+            if (san.getNameStrings().equals(clientPrincipal.getNameStrings())
+                    && realm.equals(san.getRealm())) {
+                return;
+            }
+        }
+        throw new KrbException(KrbErrorCode.KDC_ERR_CLIENT_NAME_MISMATCH,
+                "The client certificate has no id-pkinit-san for " + clientPrincipal.getName());
+    }
+
+    /**
+     * Get the validation cache for the configured anchors, creating a new one
+     * when the anchors change.
+     */
+    private CertPathValidationCache getValidationCache(KdcRequest kdcRequest) {
+        KdcConfigSnapshot config = kdcRequest.getKdcContext().getConfig().getSnapshot();
+        List<String> anchors = config.getPkinitAnchors();
+        CertPathValidationCache cache = validationCache;
+        if (cache == null || !anchors.equals(cache.getAnchorFiles())) {
+            synchronized (this) {
+                cache = validationCache;
+                if (cache == null || !anchors.equals(cache.getAnchorFiles())) {
+                    if (cache != null) {
+                        cache.close();
+                    }
+                    cache = new CertPathValidationCache(anchors,
+                            config.getPkinitCertCacheTtl(), config.getPkinitCertCacheSize());
+                    validationCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Get the certificate chain for the identity, creating a new one when the
+     * identity changes.
+     */
+    private KdcCertChain getCertChain(String identity) {
+        KdcCertChain chain = certChain;
+        if (chain == null || !identity.equals(chain.getIdentity())) {
+            synchronized (this) {
+                chain = certChain;
+                if (chain == null || !identity.equals(chain.getIdentity())) {
+                    if (chain != null) {
+                        chain.close();
+                    }
+                    chain = new KdcCertChain(identity);
+                    certChain = chain;
+                }
+            }
+        }
+        return chain;
+    }
+
+    @Override
+    public void destroy() {
+        KdcCertChain chain = certChain;
+        if (chain != null) {
+            chain.close();
+        }
+        CertPathValidationCache cache = validationCache;
+        if (cache != null) {
+            cache.close();
+        }
+    }
+
     private boolean checkClockskew(KdcRequest kdcRequest, KerberosTime time) throws KrbException {
-        long clockSkew = kdcRequest.getKdcContext().getConfig().getAllowableClockSkew() * 1000;
+        long clockSkew = kdcRequest.getKdcContext().getConfig().getSnapshot().getAllowableClockSkew() * 1000;
 
         if (!time.isInClockSkew(clockSkew)) {
             throw new KrbException(KrbErrorCode.KDC_ERR_PREAUTH_FAILED);
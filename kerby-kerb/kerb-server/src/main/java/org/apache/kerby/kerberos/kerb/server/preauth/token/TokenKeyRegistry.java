@@ -0,0 +1,258 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.kerby.kerberos.kerb.server.preauth.token;
+
+import org.apache.kerby.kerberos.kerb.common.PrivateKeyReader;
+import org.apache.kerby.kerberos.kerb.common.PublicKeyReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A registry of the token verify and decryption keys by issuer. The keys are
+ * loaded from the key files once and kept until the key files change, as told
+ * by a watch service on their directories. When the directories can't be
+ * watched the keys are loaded per request, as before.
+ */
+public class TokenKeyRegistry {
+    private static final Logger LOG = LoggerFactory.getLogger(TokenKeyRegistry.class);
+
+    private final String verifyKeyPath;
+    private final String decryptionKeyPath;
+    private final ConcurrentMap<String, KeyHolder<PublicKey>> verifyKeys =
+        new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, KeyHolder<PrivateKey>> decryptionKeys =
+        new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private WatchService watchService;
+    private volatile boolean watching;
+
+    public TokenKeyRegistry(String verifyKeyPath, String decryptionKeyPath) {
+        this.verifyKeyPath = verifyKeyPath;
+        this.decryptionKeyPath = decryptionKeyPath;
+        startWatching();
+    }
+
+    public String getVerifyKeyPath() {
+        return verifyKeyPath;
+    }
+
+    public String getDecryptionKeyPath() {
+        return decryptionKeyPath;
+    }
+
+    /**
+     * Get the verify key of the issuer.
+     * @param issuer The token issuer
+     * @return verify key, null if none
+     */
+    public PublicKey getVerifyKey(String issuer) {
+        if (verifyKeyPath == null) {
+            return null;
+        }
+        KeyHolder<PublicKey> holder = verifyKeys.get(issuer);
+        if (holder == null) {
+            long gen = generation.get();
+            holder = new KeyHolder<>(loadVerifyKey(issuer));
+            cache(verifyKeys, issuer, holder, gen);
+        }
+        return holder.key;
+    }
+
+    /**
+     * Get the decryption key of the issuer.
+     * @param issuer The token issuer
+     * @return decryption key, null if none
+     */
+    public PrivateKey getDecryptionKey(String issuer) {
+        if (decryptionKeyPath == null) {
+            return null;
+        }
+        KeyHolder<PrivateKey> holder = decryptionKeys.get(issuer);
+        if (holder == null) {
+            long gen = generation.get();
+            holder = new KeyHolder<>(loadDecryptionKey(issuer));
+            cache(decryptionKeys, issuer, holder, gen);
+        }
+        return holder.key;
+    }
+
+    /**
+     * Drop the loaded keys, to load them again from the key files.
+     */
+    public void reload() {
+        generation.incrementAndGet();
+        verifyKeys.clear();
+        decryptionKeys.clear();
+    }
+
+    /**
+     * Stop watching the key files.
+     */
+    public void close() {
+        watching = false;
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close the token key watch service", e);
+            }
+        }
+    }
+
+    private <T> void cache(ConcurrentMap<String, KeyHolder<T>> keys, String issuer,
+                           KeyHolder<T> holder, long gen) {
+        if (!watching) {
+            return;
+        }
+        keys.put(issuer, holder);
+        if (generation.get() != gen) {
+            // Key files changed while loading, the key may be stale
+            keys.remove(issuer, holder);
+        }
+    }
+
+    private PublicKey loadVerifyKey(String issuer) {
+        File keyFile = getKeyFile(verifyKeyPath, issuer);
+        if (keyFile == null) {
+            return null;
+        }
+        try (InputStream in = new FileInputStream(keyFile)) {
+            return PublicKeyReader.loadPublicKey(in);
+        } catch (Exception e) {
+            LOG.error("Failed to load the verify key from " + keyFile, e);
+            return null;
+        }
+    }
+
+    private PrivateKey loadDecryptionKey(String issuer) {
+        File keyFile = getKeyFile(decryptionKeyPath, issuer);
+        if (keyFile == null) {
+            return null;
+        }
+        try (InputStream in = new FileInputStream(keyFile)) {
+            return PrivateKeyReader.loadPrivateKey(in);
+        } catch (Exception e) {
+            LOG.error("Failed to load the decryption key from " + keyFile, e);
+            return null;
+        }
+    }
+
+    private static File getKeyFile(String path, String issuer) {
+        File file = new File(path);
+        if (file.isDirectory()) {
+            File[] listOfFiles = file.listFiles();
+            if (listOfFiles != null) {
+                for (File keyFile : listOfFiles) {
+                    if (keyFile.isFile() && keyFile.getName().contains(issuer)) {
+                        return keyFile;
+                    }
+                }
+            }
+        } else if (file.isFile()) {
+            return file;
+        }
+
+        return null;
+    }
+
+    private void startWatching() {
+        Set<Path> dirs = new HashSet<>();
+        for (String path : new String[] {verifyKeyPath, decryptionKeyPath}) {
+            if (path != null) {
+                File file = new File(path).getAbsoluteFile();
+                File dir = file.isDirectory() ? file : file.getParentFile();
+                if (dir != null && dir.isDirectory()) {
+                    dirs.add(dir.toPath());
+                }
+            }
+        }
+        if (dirs.isEmpty()) {
+            return;
+        }
+
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            for (Path dir : dirs) {
+                dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+        } catch (IOException e) {
+            LOG.warn("Can't watch the token key files, loading them per request", e);
+            close();
+            return;
+        }
+
+        watching = true;
+        Thread watchThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watchKeyFiles();
+            }
+        }, "token-key-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    private void watchKeyFiles() {
+        try {
+            while (watching) {
+                WatchKey watchKey = watchService.take();
+                watchKey.pollEvents();
+                LOG.info("Token key files changed, reloading the keys");
+                reload();
+                if (!watchKey.reset()) {
+                    LOG.warn("Token key directory not accessible, loading keys per request");
+                    watching = false;
+                    reload();
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            LOG.debug("Token key watch service closed");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class KeyHolder<T> {
+        private final T key;
+
+        KeyHolder(T key) {
+            this.key = key;
+        }
+    }
+}
@@ -23,11 +23,10 @@ import org.apache.kerby.kerberos.kerb.KrbCodec;
 import org.apache.kerby.kerberos.kerb.KrbException;
 import org.apache.kerby.kerberos.kerb.KrbRuntime;
 import org.apache.kerby.kerberos.kerb.common.EncryptionUtil;
-import org.apache.kerby.kerberos.kerb.common.PrivateKeyReader;
-import org.apache.kerby.kerberos.kerb.common.PublicKeyReader;
 import org.apache.kerby.kerberos.kerb.preauth.PluginRequestContext;
 import org.apache.kerby.kerberos.kerb.preauth.token.TokenPreauthMeta;
 import org.apache.kerby.kerberos.kerb.provider.TokenDecoder;
+import org.apache.kerby.kerberos.kerb.server.KdcConfigSnapshot;
 import org.apache.kerby.kerberos.kerb.server.preauth.AbstractPreauthPlugin;
 import org.apache.kerby.kerberos.kerb.server.request.AsRequest;
 import org.apache.kerby.kerberos.kerb.server.request.KdcRequest;
@@ -43,9 +42,6 @@ import org.apache.kerby.kerberos.kerb.type.pa.PaDataType;
 import org.apache.kerby.kerberos.kerb.type.pa.token.PaTokenRequest;
 import org.apache.kerby.kerberos.kerb.type.pa.token.TokenInfo;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
@@ -53,6 +49,8 @@ import java.util.List;
 
 public class TokenPreauth extends AbstractPreauthPlugin {
 
+    private volatile TokenKeyRegistry keyRegistry;
+
     public TokenPreauth() {
         super(new TokenPreauthMeta());
     }
@@ -61,7 +59,7 @@ public class TokenPreauth extends AbstractPreauthPlugin {
     public boolean verify(KdcRequest kdcRequest, PluginRequestContext requestContext,
                           PaDataEntry paData) throws KrbException {
 
-        if (!kdcRequest.getKdcContext().getConfig().isAllowTokenPreauth()) {
+        if (!kdcRequest.getKdcContext().getConfig().getSnapshot().isAllowTokenPreauth()) {
             throw new KrbException("Token preauth is not allowed.");
         }
         if (paData.getPaDataType() == PaDataType.TOKEN_REQUEST) {
@@ -73,7 +71,7 @@ public class TokenPreauth extends AbstractPreauthPlugin {
                 KeyUsage.PA_TOKEN, PaTokenRequest.class);
 
             KrbToken token = paTokenRequest.getToken();
-            List<String> issuers = kdcRequest.getKdcContext().getConfig().getIssuers();
+            List<String> issuers = kdcRequest.getKdcContext().getConfig().getSnapshot().getIssuers();
             TokenInfo tokenInfo = paTokenRequest.getTokenInfo();
             String issuer = tokenInfo.getTokenVendor();
             if (!(issuers.contains(issuer))) {
@@ -119,57 +117,53 @@ public class TokenPreauth extends AbstractPreauthPlugin {
     }
 
     private void configureKeys(TokenDecoder tokenDecoder, KdcRequest kdcRequest, String issuer) {
-        String verifyKeyPath = kdcRequest.getKdcContext().getConfig().getVerifyKeyConfig();
-        if (verifyKeyPath != null) {
-            File verifyKeyFile = getKeyFile(verifyKeyPath, issuer);
-            if (verifyKeyFile != null) {
-                PublicKey verifyKey = null;
-                try {
-                    FileInputStream fis = new FileInputStream(verifyKeyFile);
-                    verifyKey = PublicKeyReader.loadPublicKey(fis);
-                } catch (FileNotFoundException e) {
-                    e.printStackTrace();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-                tokenDecoder.setVerifyKey(verifyKey);
-            }
+        TokenKeyRegistry registry = getKeyRegistry(kdcRequest);
+        PublicKey verifyKey = registry.getVerifyKey(issuer);
+        if (verifyKey != null) {
+            tokenDecoder.setVerifyKey(verifyKey);
         }
-        String decryptionKeyPath = kdcRequest.getKdcContext().getConfig().getDecryptionKeyConfig();
-        if (decryptionKeyPath != null) {
-            File decryptionKeyFile = getKeyFile(decryptionKeyPath, issuer);
-            if (decryptionKeyFile != null) {
-                PrivateKey decryptionKey = null;
-                try {
-                    FileInputStream fis = new FileInputStream(decryptionKeyFile);
-                    decryptionKey = PrivateKeyReader.loadPrivateKey(fis);
-                } catch (FileNotFoundException e) {
-                    e.printStackTrace();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-                tokenDecoder.setDecryptionKey(decryptionKey);
-            }
+        PrivateKey decryptionKey = registry.getDecryptionKey(issuer);
+        if (decryptionKey != null) {
+            tokenDecoder.setDecryptionKey(decryptionKey);
         }
     }
 
-    private File getKeyFile(String path, String issuer) {
-        File file = new File(path);
-        if (file.isDirectory()) {
-            File[] listOfFiles = file.listFiles();
-            File verifyKeyFile = null;
-    
-            for (int i = 0; i < listOfFiles.length; i++) {
-                if (listOfFiles[i].isFile() && listOfFiles[i].getName().contains(issuer)) {
-                    verifyKeyFile = listOfFiles[i];
-                    break;
+    /**
+     * Get the key registry for the configured key paths, creating a new one
+     * when the paths change.
+     */
+    private TokenKeyRegistry getKeyRegistry(KdcRequest kdcRequest) {
+        KdcConfigSnapshot config = kdcRequest.getKdcContext().getConfig().getSnapshot();
+        String verifyKeyPath = config.getVerifyKeyConfig();
+        String decryptionKeyPath = config.getDecryptionKeyConfig();
+        TokenKeyRegistry registry = keyRegistry;
+        if (registry == null || !equals(verifyKeyPath, registry.getVerifyKeyPath())
+                || !equals(decryptionKeyPath, registry.getDecryptionKeyPath())) {
+            synchronized (this) {
+                registry = keyRegistry;
+                if (registry == null || !equals(verifyKeyPath, registry.getVerifyKeyPath())
+                        || !equals(decryptionKeyPath, registry.getDecryptionKeyPath())) {
+                    if (registry != null) {
+                        registry.close();
+                    }
+                    registry = new TokenKeyRegistry(verifyKeyPath, decryptionKeyPath);
+                    keyRegistry = registry;
                 }
             }
-            return verifyKeyFile;
-        } else if (file.isFile()) {
-            return file;
         }
-        
-        return null;
+        return registry;
+    }
+
+    @Override
+    public void destroy() {
+        TokenKeyRegistry registry = keyRegistry;
+        if (registry != null) {
+            registry.close();
+            keyRegistry = null;
+        }
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
     }
 }
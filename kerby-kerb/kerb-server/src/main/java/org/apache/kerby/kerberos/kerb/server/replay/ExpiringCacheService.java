@@ -0,0 +1,192 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.server.replay;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A concurrent replay cache service keeping the records only as long as they
+ * may pass the clock skew check. Records are put into buckets of one second
+ * by their request time, in a ring covering the skew window on both sides,
+ * and a bucket is evicted at once when reused for a newer second. Records are
+ * kept as 64 bits fingerprints in striped primitive hash sets, so nothing is
+ * allocated per request and the lock contention is spread.
+ */
+public class ExpiringCacheService implements CacheService {
+    private static final int NUM_STRIPES = 16;
+
+    private final long skewSeconds;
+    private final int numBuckets;
+    private final Stripe[] stripes;
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong replayCount = new AtomicLong();
+
+    /**
+     * Construct the cache service.
+     * @param clockSkew The allowable clock skew in milliseconds
+     */
+    public ExpiringCacheService(long clockSkew) {
+        this.skewSeconds = (clockSkew + 999) / 1000;
+        this.numBuckets = (int) (2 * skewSeconds + 3);
+        this.stripes = new Stripe[numBuckets * NUM_STRIPES];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    @Override
+    public boolean checkAndCache(RequestRecord request) {
+        long second = floorDiv(request.getRequestTime(), 1000);
+        long nowSecond = floorDiv(System.currentTimeMillis(), 1000);
+        if (second < nowSecond - skewSeconds - 1 || second > nowSecond + skewSeconds + 1) {
+            // Should have failed the clock skew check, can't be told from a replay
+            replayCount.incrementAndGet();
+            return true;
+        }
+
+        long fingerprint = request.fingerprint();
+        int bucket = (int) (second % numBuckets);
+        Stripe stripe = stripes[bucket * NUM_STRIPES + (int) (fingerprint & (NUM_STRIPES - 1))];
+        boolean isReplay;
+        synchronized (stripe) {
+            isReplay = stripe.checkAndAdd(second, fingerprint);
+        }
+        if (isReplay) {
+            replayCount.incrementAndGet();
+        }
+        return isReplay;
+    }
+
+    @Override
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+                stripe.second = Long.MIN_VALUE;
+            }
+        }
+    }
+
+    /**
+     * @return number of records cached in the current window
+     */
+    public int size() {
+        long nowSecond = floorDiv(System.currentTimeMillis(), 1000);
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                if (stripe.second >= nowSecond - skewSeconds - 1) {
+                    size += stripe.size;
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return number of records evicted as expired
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * @return number of replays detected
+     */
+    public long getReplayCount() {
+        return replayCount.get();
+    }
+
+    private static long floorDiv(long x, long y) {
+        long r = x / y;
+        if (x % y != 0 && (x ^ y) < 0) {
+            r--;
+        }
+        return r;
+    }
+
+    /**
+     * An open addressing set of fingerprints for one second of a bucket.
+     */
+    private final class Stripe {
+        private static final int INITIAL_CAPACITY = 16;
+        private long second = Long.MIN_VALUE;
+        private long[] table = new long[INITIAL_CAPACITY];
+        private int size;
+
+        boolean checkAndAdd(long recordSecond, long fingerprint) {
+            if (second != recordSecond) {
+                if (second > recordSecond) {
+                    return true; // Older than the window, already evicted
+                }
+                reset(recordSecond);
+            }
+
+            long key = fingerprint == 0 ? 1 : fingerprint; // 0 marks a free slot
+            int mask = table.length - 1;
+            int index = (int) (key ^ (key >>> 32)) & mask;
+            while (table[index] != 0) {
+                if (table[index] == key) {
+                    return true;
+                }
+                index = (index + 1) & mask;
+            }
+            table[index] = key;
+            size++;
+            if (size * 2 > table.length) {
+                rehash();
+            }
+            return false;
+        }
+
+        void reset(long newSecond) {
+            evictionCount.addAndGet(size);
+            clear();
+            second = newSecond;
+        }
+
+        void clear() {
+            if (size > 0) {
+                if (table.length > INITIAL_CAPACITY) {
+                    table = new long[INITIAL_CAPACITY];
+                } else {
+                    Arrays.fill(table, 0);
+                }
+                size = 0;
+            }
+        }
+
+        private void rehash() {
+            long[] oldTable = table;
+            table = new long[oldTable.length * 2];
+            int mask = table.length - 1;
+            for (long key : oldTable) {
+                if (key != 0) {
+                    int index = (int) (key ^ (key >>> 32)) & mask;
+                    while (table[index] != 0) {
+                        index = (index + 1) & mask;
+                    }
+                    table[index] = key;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,320 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.server.replay;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A replay cache service persisted in memory mapped files, so that a
+ * restarted KDC still detects the replays of the requests it handled before.
+ * A file is a fixed size hash table of slots, each holding the fingerprint
+ * of a record and the time the record expires, that is when it no longer
+ * passes the clock skew check. Slots are grouped in blocks, a record being
+ * probed only within the block it hashes to, and expired slots are reused.
+ * When the block is full of live records the record goes to an overflow
+ * table of the same size, in the file named after the cache file with the
+ * table number appended, as MIT's rcache adds tables. The overflow tables are
+ * kept until the capacity changes. Beyond {@link #MAX_TABLES} tables the live
+ * record expiring first in the block is evicted, so a replay of it would be
+ * accepted, and a warning is logged: the capacity should then be raised.
+ * Reloading is only mapping the files again, the pages are read on demand.
+ * Only one KDC should use the files at a time.
+ */
+public class MappedCacheService implements CacheService {
+    private static final Logger LOG = LoggerFactory.getLogger(MappedCacheService.class);
+
+    /**
+     * The max number of tables, the primary one included.
+     */
+    public static final int MAX_TABLES = 8;
+
+    private static final int MAGIC = 0x4b524331; // "KRC1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int SLOT_SIZE = 16;
+    private static final int BLOCK_SLOTS = 32;
+    private static final int NUM_LOCKS = 64;
+
+    private final File file;
+    private final long clockSkew;
+    private final int numBlocks;
+    private final long fileSize;
+    // Tables are only added, under the lock of the list
+    private final List<MappedByteBuffer> tables = new CopyOnWriteArrayList<>();
+    private final Object[] locks;
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong replayCount = new AtomicLong();
+
+    /**
+     * Open the cache files, creating them or reloading the records in them.
+     * @param file The cache file
+     * @param capacity The number of records a table can hold
+     * @param clockSkew The allowable clock skew in milliseconds
+     * @throws IOException e
+     */
+    public MappedCacheService(File file, int capacity, long clockSkew) throws IOException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        this.file = file;
+        this.clockSkew = clockSkew;
+        this.locks = new Object[NUM_LOCKS];
+        for (int i = 0; i < NUM_LOCKS; i++) {
+            locks[i] = new Object();
+        }
+        this.numBlocks = (capacity + BLOCK_SLOTS - 1) / BLOCK_SLOTS;
+        this.fileSize = HEADER_SIZE + (long) numBlocks * BLOCK_SLOTS * SLOT_SIZE;
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too large capacity " + capacity);
+        }
+
+        boolean reload = openTable(0);
+        for (int i = 1; i < MAX_TABLES; i++) {
+            File overflowFile = getTableFile(i);
+            if (!overflowFile.exists()) {
+                break;
+            }
+            if (!reload || overflowFile.length() != fileSize) {
+                // Records of another capacity, or a table past a missing one
+                reload = false;
+                if (!overflowFile.delete()) {
+                    LOG.warn("Failed to delete the replay cache file " + overflowFile);
+                }
+                continue;
+            }
+            reload = openTable(i);
+        }
+    }
+
+    /**
+     * Map the table file, creating it if it doesn't match the capacity.
+     * @return true if the records in the file are reloaded
+     */
+    private boolean openTable(int index) throws IOException {
+        File tableFile = getTableFile(index);
+        MappedByteBuffer buffer;
+        boolean reload;
+        try (RandomAccessFile raf = new RandomAccessFile(tableFile, "rw");
+             FileChannel channel = raf.getChannel()) {
+            reload = raf.length() == fileSize;
+            if (!reload) {
+                if (raf.length() > 0) {
+                    LOG.warn("Replay cache file " + tableFile + " doesn't match the capacity, recreating it");
+                }
+                raf.setLength(0);
+                raf.setLength(fileSize);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        }
+        if (!reload || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+            || buffer.getInt(8) != numBlocks) {
+            reload = false;
+            clearTable(buffer);
+        }
+        tables.add(buffer);
+        return reload;
+    }
+
+    private File getTableFile(int index) {
+        return index == 0 ? file : new File(file.getPath() + "." + index);
+    }
+
+    @Override
+    public boolean checkAndCache(RequestRecord request) {
+        long now = System.currentTimeMillis();
+        long requestTime = request.getRequestTime();
+        long maxSkew = clockSkew + 1000;
+        if (requestTime < now - maxSkew || requestTime > now + maxSkew) {
+            // Should have failed the clock skew check, can't be told from a replay
+            replayCount.incrementAndGet();
+            return true;
+        }
+
+        long fingerprint = request.fingerprint();
+        long key = fingerprint == 0 ? 1 : fingerprint; // 0 marks a free slot
+        int block = (int) ((key >>> 1) % numBlocks);
+        int start = (int) (key & (BLOCK_SLOTS - 1));
+        int blockOffset = HEADER_SIZE + block * BLOCK_SLOTS * SLOT_SIZE;
+
+        // The block is at the same offset in all the tables, under the same lock
+        synchronized (locks[block % NUM_LOCKS]) {
+            MappedByteBuffer freeTable = null;
+            int freeOffset = -1;
+            MappedByteBuffer oldestTable = null;
+            int oldestOffset = -1;
+            long oldestExpiry = Long.MAX_VALUE;
+            int scanned = 0;
+            for (MappedByteBuffer buffer : tables) {
+                scanned++;
+                for (int i = 0; i < BLOCK_SLOTS; i++) {
+                    int offset = blockOffset + ((start + i) & (BLOCK_SLOTS - 1)) * SLOT_SIZE;
+                    long slotKey = buffer.getLong(offset);
+                    long expiry = buffer.getLong(offset + 8);
+                    if (slotKey == 0 || expiry < now) {
+                        if (freeTable == null) {
+                            freeTable = buffer;
+                            freeOffset = offset;
+                        }
+                        if (slotKey == 0) {
+                            break; // Records are never put beyond a free slot
+                        }
+                    } else if (slotKey == key) {
+                        replayCount.incrementAndGet();
+                        return true;
+                    } else if (expiry < oldestExpiry) {
+                        oldestExpiry = expiry;
+                        oldestTable = buffer;
+                        oldestOffset = offset;
+                    }
+                }
+            }
+
+            if (freeTable == null) {
+                freeTable = addTable(scanned);
+                if (freeTable != null) {
+                    // The block of a new table is free, only filled under this lock
+                    freeOffset = blockOffset + start * SLOT_SIZE;
+                } else {
+                    freeTable = oldestTable;
+                    freeOffset = oldestOffset;
+                    if (evictionCount.incrementAndGet() == 1) {
+                        LOG.warn("Replay cache " + file + " is full, evicting live records so their"
+                            + " replays can't be detected, the capacity should be raised");
+                    }
+                }
+            }
+            freeTable.putLong(freeOffset + 8, requestTime + maxSkew);
+            freeTable.putLong(freeOffset, key);
+        }
+        return false;
+    }
+
+    /**
+     * Add an overflow table, or get the one added by another block meanwhile.
+     * @param index The number of tables scanned, the index of the new one
+     * @return the table, null if there are {@link #MAX_TABLES} already
+     */
+    private MappedByteBuffer addTable(int index) {
+        synchronized (tables) {
+            if (index >= MAX_TABLES) {
+                return null;
+            }
+            if (index < tables.size()) {
+                return tables.get(index);
+            }
+            try {
+                openTable(index);
+                LOG.info("Replay cache " + file + " overflowed, added table " + index);
+            } catch (IOException e) {
+                LOG.error("Failed to add a replay cache table " + getTableFile(index), e);
+                return null;
+            }
+            return tables.get(index);
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < NUM_LOCKS; i++) {
+            synchronized (locks[i]) {
+                for (MappedByteBuffer buffer : tables) {
+                    for (int block = i; block < numBlocks; block += NUM_LOCKS) {
+                        int blockOffset = HEADER_SIZE + block * BLOCK_SLOTS * SLOT_SIZE;
+                        for (int j = 0; j < BLOCK_SLOTS * SLOT_SIZE; j += 8) {
+                            buffer.putLong(blockOffset + j, 0);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void clearTable(MappedByteBuffer buffer) {
+        for (int offset = HEADER_SIZE; offset < fileSize; offset += 8) {
+            buffer.putLong(offset, 0);
+        }
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, numBlocks);
+    }
+
+    /**
+     * Write the records to the files, they are otherwise written by the OS.
+     */
+    public void flush() {
+        for (MappedByteBuffer buffer : tables) {
+            buffer.force();
+        }
+    }
+
+    /**
+     * Count the live records, scanning all the tables.
+     * @return number of records not expired
+     */
+    public int size() {
+        long now = System.currentTimeMillis();
+        int size = 0;
+        for (int block = 0; block < numBlocks; block++) {
+            int blockOffset = HEADER_SIZE + block * BLOCK_SLOTS * SLOT_SIZE;
+            synchronized (locks[block % NUM_LOCKS]) {
+                for (MappedByteBuffer buffer : tables) {
+                    for (int i = 0; i < BLOCK_SLOTS; i++) {
+                        int offset = blockOffset + i * SLOT_SIZE;
+                        if (buffer.getLong(offset) != 0 && buffer.getLong(offset + 8) >= now) {
+                            size++;
+                        }
+                    }
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return number of tables, the primary one and the overflow ones
+     */
+    public int getTableCount() {
+        return tables.size();
+    }
+
+    /**
+     * @return number of live records evicted for lack of room
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * @return number of replays detected
+     */
+    public long getReplayCount() {
+        return replayCount.get();
+    }
+}
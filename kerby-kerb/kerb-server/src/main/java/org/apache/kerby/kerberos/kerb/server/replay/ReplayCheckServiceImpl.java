@@ -30,6 +30,10 @@ public class ReplayCheckServiceImpl implements ReplayCheckService {
         this(new SimpleCacheService());
     }
 
+    public CacheService getCacheService() {
+        return cacheService;
+    }
+
     @Override
     public boolean checkReplay(String clientPrincipal, String serverPrincipal,
                                long requestTime, int microseconds) {
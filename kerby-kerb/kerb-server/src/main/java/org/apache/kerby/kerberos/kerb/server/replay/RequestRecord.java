@@ -32,6 +32,53 @@ public class RequestRecord {
         this.microseconds = microseconds;
     }
 
+    public String getClientPrincipal() {
+        return clientPrincipal;
+    }
+
+    public String getServerPrincipal() {
+        return serverPrincipal;
+    }
+
+    public long getRequestTime() {
+        return requestTime;
+    }
+
+    public int getMicroseconds() {
+        return microseconds;
+    }
+
+    /**
+     * Get a 64 bits fingerprint of the record, for caches that keep primitive
+     * keys instead of the records.
+     * @return fingerprint
+     */
+    public long fingerprint() {
+        long h = mix(requestTime * 1000003L + microseconds);
+        h = hash(h, clientPrincipal);
+        h = hash(h, serverPrincipal);
+        return mix(h);
+    }
+
+    private static long hash(long seed, String value) {
+        long h = seed ^ 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h ^ value.length());
+    }
+
+    private static long mix(long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -22,6 +22,10 @@ package org.apache.kerby.kerberos.kerb.server.replay;
 import java.util.HashSet;
 import java.util.Set;
 
+/**
+ * A simple replay cache service keeping all the records, never expiring them.
+ * Only for testing, see {@link ExpiringCacheService} for the real one.
+ */
 public class SimpleCacheService implements CacheService {
     private final Set<RequestRecord> requests;
 
@@ -30,7 +34,7 @@ public class SimpleCacheService implements CacheService {
     }
 
     @Override
-    public boolean checkAndCache(RequestRecord request) {
+    public synchronized boolean checkAndCache(RequestRecord request) {
         if (requests.contains(request)) {
             return true;
         } else {
@@ -40,7 +44,7 @@ public class SimpleCacheService implements CacheService {
     }
 
     @Override
-    public void clear() {
+    public synchronized void clear() {
         requests.clear();
     }
 }
@@ -599,7 +599,7 @@ public abstract class KdcRequest {
         List<EncryptionType> requestedTypes = getKdcReq().getReqBody().getEtypes();
 
         EncryptionType bestType = EncryptionUtil.getBestEncryptionType(requestedTypes,
-                kdcContext.getConfig().getEncryptionTypes());
+                kdcContext.getConfig().getSnapshot().getEncryptionTypes());
 
         if (bestType == null) {
             LOG.error("Can't get the best encryption type.");
@@ -664,7 +664,7 @@ public abstract class KdcRequest {
     protected KrbError makePreAuthenticationError(KdcContext kdcContext, KdcReq request,
                                                   KrbErrorCode errorCode, boolean pkinit)
             throws KrbException {
-        List<EncryptionType> encryptionTypes = kdcContext.getConfig().getEncryptionTypes();
+        List<EncryptionType> encryptionTypes = kdcContext.getConfig().getSnapshot().getEncryptionTypes();
         List<EncryptionType> clientEtypes = request.getReqBody().getEtypes();
         boolean isNewEtype = true;
 
@@ -26,6 +26,7 @@ import org.apache.kerby.kerberos.kerb.KrbException;
 import org.apache.kerby.kerberos.kerb.common.EncryptionUtil;
 import org.apache.kerby.kerberos.kerb.identity.KrbIdentity;
 import org.apache.kerby.kerberos.kerb.server.KdcContext;
+import org.apache.kerby.kerberos.kerb.server.replay.ReplayCheckService;
 import org.apache.kerby.kerberos.kerb.type.KerberosTime;
 import org.apache.kerby.kerberos.kerb.type.ap.ApOption;
 import org.apache.kerby.kerberos.kerb.type.ap.ApReq;
@@ -156,7 +157,7 @@ public class TgsRequest extends KdcRequest {
 
         HostAddresses hostAddresses = tgtTicket.getEncPart().getClientAddresses();
         if (hostAddresses == null || hostAddresses.isEmpty()) {
-            if (!getKdcContext().getConfig().isEmptyAddressesAllowed()) {
+            if (!getKdcContext().getConfig().getSnapshot().isEmptyAddressesAllowed()) {
                 throw new KrbException(KrbErrorCode.KRB_AP_ERR_BADADDR);
             }
         } else if (!hostAddresses.contains(getClientAddress())) {
@@ -171,10 +172,17 @@ public class TgsRequest extends KdcRequest {
         setClientEntry(clientEntry);
 
         if (!authenticator.getCtime().isInClockSkew(
-            getKdcContext().getConfig().getAllowableClockSkew() * 1000)) {
+            getKdcContext().getConfig().getSnapshot().getAllowableClockSkew() * 1000)) {
             throw new KrbException(KrbErrorCode.KRB_AP_ERR_SKEW);
         }
 
+        ReplayCheckService replayCache = getKdcContext().getReplayCache();
+        if (replayCache != null && replayCache.checkReplay(clientPrincipal.getName(),
+            serverPrincipal.getName(), authenticator.getCtime().getTime(),
+            authenticator.getCusec())) {
+            throw new KrbException(KrbErrorCode.KRB_AP_ERR_REPEAT);
+        }
+
         KerberosTime now = KerberosTime.now();
         KerberosTime startTime = tgtTicket.getEncPart().getStartTime();
         if (startTime == null) {
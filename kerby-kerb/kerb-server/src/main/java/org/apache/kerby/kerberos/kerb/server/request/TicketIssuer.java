@@ -23,7 +23,7 @@ import org.apache.kerby.kerberos.kerb.KrbErrorCode;
 import org.apache.kerby.kerberos.kerb.KrbException;
 import org.apache.kerby.kerberos.kerb.common.EncryptionUtil;
 import org.apache.kerby.kerberos.kerb.crypto.EncryptionHandler;
-import org.apache.kerby.kerberos.kerb.server.KdcConfig;
+import org.apache.kerby.kerberos.kerb.server.KdcConfigSnapshot;
 import org.apache.kerby.kerberos.kerb.server.KdcContext;
 import org.apache.kerby.kerberos.kerb.type.KerberosTime;
 import org.apache.kerby.kerberos.kerb.type.base.EncryptedData;
@@ -87,7 +87,7 @@ public abstract class TicketIssuer {
         KdcReq request = kdcRequest.getKdcReq();
 
         EncTicketPart encTicketPart = new EncTicketPart();
-        KdcConfig config = kdcRequest.getKdcContext().getConfig();
+        KdcConfigSnapshot config = kdcRequest.getKdcContext().getConfig().getSnapshot();
 
         TicketFlags ticketFlags = new TicketFlags();
         encTicketPart.setFlags(ticketFlags);
@@ -19,17 +19,27 @@
  */
 package org.apache.kerby.kerberos.kerb.server;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
 
 public class TestKdcConfigLoad {
 
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
     @Test
     public void test() throws URISyntaxException, IOException {
         URL confFileUrl = TestKdcConfigLoad.class.getResource("/kdc.conf");
@@ -70,4 +80,104 @@ public class TestKdcConfigLoad {
                 KdcConfigKey.KDC_REALM.getDefaultValue()
         );
     }
+
+    @Test
+    public void testSnapshot() {
+        KdcConfig kdcConfig = new KdcConfig();
+
+        KdcConfigSnapshot snapshot = kdcConfig.getSnapshot();
+        assertThat(kdcConfig.getSnapshot()).isSameAs(snapshot);
+        assertThat(snapshot.getAllowableClockSkew()).isEqualTo(
+                KdcConfigKey.ALLOWABLE_CLOCKSKEW.getDefaultValue());
+        assertThat(snapshot.getEncryptionTypes()).isEqualTo(kdcConfig.getEncryptionTypes());
+        assertThat(snapshot.getIssuers()).isEmpty();
+
+        kdcConfig.setBoolean(KdcConfigKey.PREAUTH_REQUIRED, false);
+        assertThat(snapshot.isPreauthRequired()).isTrue();
+        assertThat(kdcConfig.getSnapshot().isPreauthRequired()).isFalse();
+    }
+
+    @Test
+    public void testReload() throws IOException {
+        File confFile = tempFolder.newFile("kdc.conf");
+        writeConf(confFile, "allowable_clockskew = 300");
+        KdcConfig kdcConfig = new KdcConfig();
+        kdcConfig.addIniConfig(confFile);
+        assertThat(kdcConfig.getSnapshot().getAllowableClockSkew()).isEqualTo(300);
+
+        writeConf(confFile, "allowable_clockskew = 60");
+        kdcConfig.reload();
+        assertThat(kdcConfig.getSnapshot().getAllowableClockSkew()).isEqualTo(60);
+    }
+
+    @Test
+    public void testReloadMalformedConf() throws IOException {
+        File confFile = tempFolder.newFile("kdc.conf");
+        writeConf(confFile, "allowable_clockskew = 60");
+
+        KdcConfig kdcConfig = new KdcConfig();
+        kdcConfig.addIniConfig(confFile);
+        kdcConfig.setString(KdcConfigKey.KDC_REALM, "TEST2.COM");
+
+        writeConf(confFile, "allowable_clockskew = 6x");
+        try {
+            kdcConfig.reload();
+            fail("Reloaded a malformed kdc.conf");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage()).contains("allowable_clockskew");
+        }
+        assertThat(kdcConfig.getSnapshot().getAllowableClockSkew()).isEqualTo(60);
+
+        // A file truncated by a writer that has not finished yet
+        try (Writer writer = new OutputStreamWriter(
+                new FileOutputStream(confFile), StandardCharsets.UTF_8)) {
+            writer.write("");
+        }
+        try {
+            kdcConfig.reload();
+            fail("Reloaded an empty kdc.conf");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage()).contains("kdcdefaults");
+        }
+        assertThat(kdcConfig.getSnapshot().getAllowableClockSkew()).isEqualTo(60);
+        assertThat(kdcConfig.getKdcRealm()).isEqualTo("TEST2.COM");
+
+        writeConf(confFile, "allowable_clockskew = 120");
+        kdcConfig.reload();
+        assertThat(kdcConfig.getSnapshot().getAllowableClockSkew()).isEqualTo(120);
+        assertThat(kdcConfig.getKdcRealm()).isEqualTo("TEST2.COM");
+    }
+
+    @Test
+    public void testWatcherKeepsConfigOnPartialWrite() throws Exception {
+        File confFile = tempFolder.newFile("kdc.conf");
+        writeConf(confFile, "allowable_clockskew = 60");
+
+        KdcConfig kdcConfig = new KdcConfig();
+        kdcConfig.addIniConfig(confFile);
+        KdcConfigWatcher watcher = new KdcConfigWatcher(kdcConfig, confFile);
+        watcher.start();
+        try {
+            writeConf(confFile, "allowable_clockskew = ");
+            Thread.sleep(2000);
+            assertThat(kdcConfig.getSnapshot().getAllowableClockSkew()).isEqualTo(60);
+
+            writeConf(confFile, "allowable_clockskew = 90");
+            long deadline = System.currentTimeMillis() + 10 * 1000;
+            while (kdcConfig.getSnapshot().getAllowableClockSkew() != 90
+                && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertThat(kdcConfig.getSnapshot().getAllowableClockSkew()).isEqualTo(90);
+        } finally {
+            watcher.stop();
+        }
+    }
+
+    private static void writeConf(File confFile, String item) throws IOException {
+        try (Writer writer = new OutputStreamWriter(
+                new FileOutputStream(confFile), StandardCharsets.UTF_8)) {
+            writer.write("[kdcdefaults]\n  " + item + "\n");
+        }
+    }
 }
@@ -0,0 +1,83 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.server.impl;
+
+import org.apache.kerby.util.ThreadUtil;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KdcWorkerPoolTest {
+
+    @Test
+    public void testRejectWhenQueueFull() throws InterruptedException {
+        KdcWorkerPool workerPool = new KdcWorkerPool(1, 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable blockingTask = new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        try {
+            assertThat(workerPool.execute(blockingTask)).isTrue();
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(workerPool.execute(blockingTask)).isTrue();
+            assertThat(workerPool.execute(blockingTask)).isFalse();
+
+            assertThat(workerPool.getActiveCount()).isEqualTo(1);
+            assertThat(workerPool.getQueueSize()).isEqualTo(1);
+            assertThat(workerPool.getPeakQueueSize()).isEqualTo(1);
+            assertThat(workerPool.getRejectedCount()).isEqualTo(1);
+        } finally {
+            release.countDown();
+            workerPool.shutdown();
+        }
+    }
+
+    @Test
+    public void testVirtualThreadsOrFallback() throws InterruptedException {
+        KdcWorkerPool workerPool = new KdcWorkerPool(1, 1, true);
+        final CountDownLatch done = new CountDownLatch(1);
+        try {
+            assertThat(workerPool.isVirtualThreads()).isEqualTo(
+                    ThreadUtil.isVirtualThreadSupported());
+            assertThat(workerPool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    done.countDown();
+                }
+            })).isTrue();
+            assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            workerPool.shutdown();
+        }
+    }
+}
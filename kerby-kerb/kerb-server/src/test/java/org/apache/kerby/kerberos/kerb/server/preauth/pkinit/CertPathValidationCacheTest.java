@@ -0,0 +1,221 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.server.preauth.pkinit;
+
+import org.apache.kerby.kerberos.kerb.KrbErrorCode;
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class CertPathValidationCacheTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private final List<CertPathValidationCache> caches = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (CertPathValidationCache cache : caches) {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testValidateOnce() throws Exception {
+        File anchorFile = copyResource("/pkinit/cacert.pem");
+        CertPathValidationCache cache = newCache(
+                Collections.singletonList(anchorFile.getPath()), 3600, 16);
+        X509Certificate leaf = loadCert("/pkinit/clientcert.pem");
+
+        cache.validate(leaf, Arrays.asList(leaf));
+        cache.validate(leaf, Arrays.asList(leaf));
+        assertThat(cache.getMissCount()).isEqualTo(1);
+        assertThat(cache.getHitCount()).isEqualTo(1);
+
+        // The anchor itself isn't on the path
+        cache.validate(leaf, Arrays.asList(loadCert("/pkinit/cacert.pem"), leaf));
+        assertThat(cache.getMissCount()).isEqualTo(1);
+        assertThat(cache.getHitCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testUnorderedCertificates() throws Exception {
+        File anchorFile = copyResource("/pkinit/cacert.pem");
+        CertPathValidationCache cache = newCache(
+                Collections.singletonList(anchorFile.getPath()), 3600, 16);
+        X509Certificate leaf = loadCert("/pkinit/interclientcert.pem");
+        X509Certificate intermediate = loadCert("/pkinit/intercacert.pem");
+        X509Certificate other = loadCert("/pkinit/othercacert.pem");
+
+        cache.validate(leaf, Arrays.asList(intermediate, leaf));
+        cache.validate(leaf, Arrays.asList(leaf, other, intermediate));
+        assertThat(cache.getMissCount()).isEqualTo(1);
+        assertThat(cache.getHitCount()).isEqualTo(1);
+
+        try {
+            cache.validate(leaf, Arrays.asList(leaf, other));
+            fail("Validated without the intermediate certificate");
+        } catch (KrbException e) {
+            assertThat(e.getMessage()).isEqualTo(KrbErrorCode.KDC_ERR_INVALID_CERTIFICATE.getMessage());
+        }
+    }
+
+    @Test
+    public void testNoTtl() throws Exception {
+        File anchorFile = copyResource("/pkinit/cacert.pem");
+        CertPathValidationCache cache = newCache(
+                Collections.singletonList(anchorFile.getPath()), 0, 16);
+        X509Certificate leaf = loadCert("/pkinit/clientcert.pem");
+
+        cache.validate(leaf, Arrays.asList(leaf));
+        cache.validate(leaf, Arrays.asList(leaf));
+        assertThat(cache.getMissCount()).isEqualTo(2);
+        assertThat(cache.getHitCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testAnchorsChange() throws Exception {
+        // The other anchor is written with the same size and modification time
+        byte[] anchor = readResource("/pkinit/cacert.pem");
+        byte[] otherAnchor = readResource("/pkinit/othercacert.pem");
+        int size = Math.max(anchor.length, otherAnchor.length);
+        File anchorFile = tempFolder.newFile();
+        Files.write(anchorFile.toPath(), padded(anchor, size));
+        long lastModified = anchorFile.lastModified();
+
+        CertPathValidationCache cache = newCache(
+                Collections.singletonList(anchorFile.getPath()), 3600, 16);
+        X509Certificate leaf = loadCert("/pkinit/clientcert.pem");
+        cache.validate(leaf, Arrays.asList(leaf));
+
+        Files.write(anchorFile.toPath(), padded(otherAnchor, size));
+        assertThat(anchorFile.setLastModified(lastModified)).isTrue();
+        assertThat(anchorFile.length()).isEqualTo(size);
+
+        // Validated from the cache until the watch service tells the change
+        KrbException error = null;
+        long deadline = System.currentTimeMillis() + 30 * 1000;
+        while (error == null && System.currentTimeMillis() < deadline) {
+            try {
+                cache.validate(leaf, Arrays.asList(leaf));
+                Thread.sleep(50);
+            } catch (KrbException e) {
+                error = e;
+            }
+        }
+        assertThat(error).isNotNull();
+        assertThat(error.getMessage()).isEqualTo(KrbErrorCode.KDC_ERR_INVALID_CERTIFICATE.getMessage());
+        assertThat(cache.getMissCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testExpirationCappedAtNotAfter() throws Exception {
+        File anchorFile = copyResource("/pkinit/cacert.pem");
+        X509Certificate leaf = loadCert("/pkinit/clientcert.pem");
+        long notAfter = leaf.getNotAfter().getTime();
+        final AtomicLong now = new AtomicLong(notAfter - 60 * 1000);
+        CertPathValidationCache cache = new CertPathValidationCache(
+                Collections.singletonList(anchorFile.getPath()), 3600, 16) {
+            @Override
+            long currentTimeMillis() {
+                return now.get();
+            }
+        };
+        caches.add(cache);
+
+        cache.validate(leaf, Arrays.asList(leaf));
+        now.set(notAfter - 1000);
+        cache.validate(leaf, Arrays.asList(leaf));
+        assertThat(cache.getHitCount()).isEqualTo(1);
+
+        // Still within the ttl, but the certificate expired
+        now.set(notAfter + 1000);
+        try {
+            cache.validate(leaf, Arrays.asList(leaf));
+            fail("Validated an expired certificate");
+        } catch (KrbException e) {
+            assertThat(e.getMessage()).isEqualTo(KrbErrorCode.KDC_ERR_INVALID_CERTIFICATE.getMessage());
+        }
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testNoAnchors() throws Exception {
+        CertPathValidationCache cache = newCache(
+                Collections.<String>emptyList(), 3600, 16);
+        try {
+            X509Certificate leaf = loadCert("/pkinit/clientcert.pem");
+            cache.validate(leaf, Arrays.asList(leaf));
+            fail("Validated without anchors");
+        } catch (KrbException e) {
+            assertThat(e.getMessage()).contains(KrbErrorCode.KDC_ERR_CANT_VERIFY_CERTIFICATE.name());
+        }
+    }
+
+    private CertPathValidationCache newCache(List<String> anchorFiles, long ttlSeconds, int maxSize) {
+        CertPathValidationCache cache = new CertPathValidationCache(anchorFiles, ttlSeconds, maxSize);
+        caches.add(cache);
+        return cache;
+    }
+
+    private File copyResource(String resource) throws Exception {
+        File file = tempFolder.newFile();
+        try (InputStream in = getClass().getResourceAsStream(resource)) {
+            Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return file;
+    }
+
+    private byte[] readResource(String resource) throws Exception {
+        return Files.readAllBytes(Paths.get(getClass().getResource(resource).toURI()));
+    }
+
+    private static byte[] padded(byte[] content, int size) {
+        byte[] result = Arrays.copyOf(content, size);
+        Arrays.fill(result, content.length, size, (byte) '\n');
+        return result;
+    }
+
+    private X509Certificate loadCert(String resource) throws Exception {
+        try (InputStream in = getClass().getResourceAsStream(resource)) {
+            return (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(in);
+        }
+    }
+}
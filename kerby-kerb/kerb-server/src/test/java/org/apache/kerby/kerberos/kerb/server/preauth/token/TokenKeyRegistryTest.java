@@ -0,0 +1,83 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.server.preauth.token;
+
+import org.apache.kerby.util.Base64;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TokenKeyRegistryTest {
+    private static final String ISSUER = "token-service";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testLoadAndReload() throws Exception {
+        File keyDir = tempFolder.newFolder("keys");
+        PublicKey key1 = generateKey();
+        writeKey(new File(keyDir, ISSUER + ".pem"), key1);
+
+        TokenKeyRegistry registry = new TokenKeyRegistry(keyDir.getPath(), null);
+        try {
+            PublicKey verifyKey = registry.getVerifyKey(ISSUER);
+            assertThat(verifyKey).isEqualTo(key1);
+            assertThat(registry.getVerifyKey(ISSUER)).isSameAs(verifyKey);
+            assertThat(registry.getVerifyKey("unknown")).isNull();
+            assertThat(registry.getDecryptionKey(ISSUER)).isNull();
+
+            PublicKey key2 = generateKey();
+            writeKey(new File(keyDir, ISSUER + ".pem"), key2);
+            long deadline = System.currentTimeMillis() + 30 * 1000;
+            while (!key2.equals(registry.getVerifyKey(ISSUER))
+                && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertThat(registry.getVerifyKey(ISSUER)).isEqualTo(key2);
+        } finally {
+            registry.close();
+        }
+    }
+
+    private static PublicKey generateKey() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        return generator.generateKeyPair().getPublic();
+    }
+
+    private static void writeKey(File file, PublicKey key) throws IOException {
+        String encoded = "-----BEGIN PUBLIC KEY-----\n"
+            + new Base64(64).encodeToString(key.getEncoded())
+            + "-----END PUBLIC KEY-----\n";
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(encoded.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
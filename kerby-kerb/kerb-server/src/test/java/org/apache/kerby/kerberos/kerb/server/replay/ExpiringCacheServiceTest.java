@@ -0,0 +1,86 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.server.replay;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ExpiringCacheServiceTest {
+    private static final String CLIENT = "drankye@EXAMPLE.COM";
+    private static final String SERVER = "krbtgt/EXAMPLE.COM@EXAMPLE.COM";
+
+    @Test
+    public void testReplay() {
+        ExpiringCacheService cacheService = new ExpiringCacheService(300 * 1000);
+        ReplayCheckService replayCheck = new ReplayCheckServiceImpl(cacheService);
+        long now = System.currentTimeMillis();
+
+        assertThat(replayCheck.checkReplay(CLIENT, SERVER, now, 0)).isFalse();
+        assertThat(replayCheck.checkReplay(CLIENT, SERVER, now, 0)).isTrue();
+        assertThat(replayCheck.checkReplay(CLIENT, SERVER, now, 1)).isFalse();
+        assertThat(replayCheck.checkReplay("other@EXAMPLE.COM", SERVER, now, 0)).isFalse();
+        assertThat(replayCheck.checkReplay(CLIENT, SERVER, now - 200 * 1000, 0)).isFalse();
+        assertThat(cacheService.size()).isEqualTo(4);
+        assertThat(cacheService.getReplayCount()).isEqualTo(1);
+
+        cacheService.clear();
+        assertThat(cacheService.size()).isEqualTo(0);
+        assertThat(replayCheck.checkReplay(CLIENT, SERVER, now, 0)).isFalse();
+    }
+
+    @Test
+    public void testManyRecords() {
+        ExpiringCacheService cacheService = new ExpiringCacheService(300 * 1000);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 10000; i++) {
+            assertThat(cacheService.checkAndCache(new RequestRecord(CLIENT, SERVER, now, i))).isFalse();
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertThat(cacheService.checkAndCache(new RequestRecord(CLIENT, SERVER, now, i))).isTrue();
+        }
+        assertThat(cacheService.size()).isEqualTo(10000);
+    }
+
+    @Test
+    public void testOutOfWindow() {
+        ExpiringCacheService cacheService = new ExpiringCacheService(1000);
+        long now = System.currentTimeMillis();
+        assertThat(cacheService.checkAndCache(new RequestRecord(CLIENT, SERVER, now - 60 * 1000, 0))).isTrue();
+        assertThat(cacheService.checkAndCache(new RequestRecord(CLIENT, SERVER, now + 60 * 1000, 0))).isTrue();
+        assertThat(cacheService.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testEviction() throws InterruptedException {
+        ExpiringCacheService cacheService = new ExpiringCacheService(0);
+        long time = System.currentTimeMillis();
+        assertThat(cacheService.checkAndCache(new RequestRecord(CLIENT, SERVER, time, 0))).isFalse();
+        assertThat(cacheService.checkAndCache(new RequestRecord(CLIENT, SERVER, time, 1))).isFalse();
+
+        // Wait for the bucket of time to be reused by a newer second
+        Thread.sleep(2500);
+        long newTime = time + 3000;
+        assertThat(cacheService.checkAndCache(new RequestRecord(CLIENT, SERVER, newTime, 0))).isFalse();
+        assertThat(cacheService.size()).isEqualTo(1);
+        assertThat(cacheService.getEvictionCount()).isLessThanOrEqualTo(2);
+        assertThat(cacheService.checkAndCache(new RequestRecord(CLIENT, SERVER, time, 0))).isTrue();
+    }
+}
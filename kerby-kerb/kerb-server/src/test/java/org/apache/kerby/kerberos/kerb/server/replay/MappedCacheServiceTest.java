@@ -0,0 +1,129 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.server.replay;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MappedCacheServiceTest {
+    private static final String CLIENT = "drankye@EXAMPLE.COM";
+    private static final String SERVER = "krbtgt/EXAMPLE.COM@EXAMPLE.COM";
+    private static final long CLOCK_SKEW = 300 * 1000;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void testReplay() throws IOException {
+        MappedCacheService cacheService = new MappedCacheService(
+            tempFolder.newFile("replay.cache"), 1024, CLOCK_SKEW);
+        long now = System.currentTimeMillis();
+
+        assertThat(cacheService.checkAndCache(new RequestRecord(CLIENT, SERVER, now, 0))).isFalse();
+        assertThat(cacheService.checkAndCache(new RequestRecord(CLIENT, SERVER, now, 0))).isTrue();
+        assertThat(cacheService.checkAndCache(new RequestRecord(CLIENT, SERVER, now, 1))).isFalse();
+        assertThat(cacheService.checkAndCache(new RequestRecord(CLIENT, SERVER, now - 2 * CLOCK_SKEW, 0))).isTrue();
+        assertThat(cacheService.size()).isEqualTo(2);
+        assertThat(cacheService.getReplayCount()).isEqualTo(2);
+
+        cacheService.clear();
+        assertThat(cacheService.size()).isEqualTo(0);
+        assertThat(cacheService.checkAndCache(new RequestRecord(CLIENT, SERVER, now, 0))).isFalse();
+    }
+
+    @Test
+    public void testReload() throws IOException {
+        File file = new File(tempFolder.getRoot(), "replay.cache");
+        MappedCacheService cacheService = new MappedCacheService(file, 1024, CLOCK_SKEW);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 100; i++) {
+            assertThat(cacheService.checkAndCache(new RequestRecord(CLIENT, SERVER, now, i))).isFalse();
+        }
+        cacheService.flush();
+
+        MappedCacheService reloaded = new MappedCacheService(file, 1024, CLOCK_SKEW);
+        assertThat(reloaded.size()).isEqualTo(100);
+        for (int i = 0; i < 100; i++) {
+            assertThat(reloaded.checkAndCache(new RequestRecord(CLIENT, SERVER, now, i))).isTrue();
+        }
+
+        MappedCacheService resized = new MappedCacheService(file, 2048, CLOCK_SKEW);
+        assertThat(resized.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testOverflow() throws IOException {
+        File file = new File(tempFolder.getRoot(), "replay.cache");
+        MappedCacheService cacheService = new MappedCacheService(file, 64, CLOCK_SKEW);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 200; i++) {
+            assertThat(cacheService.checkAndCache(new RequestRecord(CLIENT, SERVER, now, i))).isFalse();
+        }
+        // No live record is dropped, the replays are all detected
+        assertThat(cacheService.getTableCount()).isGreaterThan(1);
+        assertThat(cacheService.size()).isEqualTo(200);
+        assertThat(cacheService.getEvictionCount()).isZero();
+        for (int i = 0; i < 200; i++) {
+            assertThat(cacheService.checkAndCache(new RequestRecord(CLIENT, SERVER, now, i))).isTrue();
+        }
+        cacheService.flush();
+        assertThat(new File(file.getPath() + ".1")).exists();
+
+        MappedCacheService reloaded = new MappedCacheService(file, 64, CLOCK_SKEW);
+        assertThat(reloaded.getTableCount()).isEqualTo(cacheService.getTableCount());
+        assertThat(reloaded.size()).isEqualTo(200);
+
+        // The overflow tables are dropped with the records of another capacity
+        MappedCacheService resized = new MappedCacheService(file, 128, CLOCK_SKEW);
+        assertThat(resized.getTableCount()).isEqualTo(1);
+        assertThat(new File(file.getPath() + ".1")).doesNotExist();
+    }
+
+    @Test
+    public void testEvictionWhenAllTablesFull() throws IOException {
+        MappedCacheService cacheService = new MappedCacheService(
+            tempFolder.newFile("replay.cache"), 64, CLOCK_SKEW);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 1000; i++) {
+            assertThat(cacheService.checkAndCache(new RequestRecord(CLIENT, SERVER, now, i))).isFalse();
+        }
+        int capacity = MappedCacheService.MAX_TABLES * 64;
+        assertThat(cacheService.getTableCount()).isEqualTo(MappedCacheService.MAX_TABLES);
+        assertThat(cacheService.size()).isEqualTo(capacity);
+        assertThat(cacheService.getEvictionCount()).isEqualTo(1000 - capacity);
+    }
+
+    @Test
+    public void testKeptForMaxClockSkew() throws IOException {
+        MappedCacheService cacheService = new MappedCacheService(
+            tempFolder.newFile("replay.cache"), 64, CLOCK_SKEW);
+        // Accepted up to a second past the clock skew, kept as long
+        long requestTime = System.currentTimeMillis() - CLOCK_SKEW - 500;
+        assertThat(cacheService.checkAndCache(new RequestRecord(CLIENT, SERVER, requestTime, 0))).isFalse();
+        assertThat(cacheService.checkAndCache(new RequestRecord(CLIENT, SERVER, requestTime, 0))).isTrue();
+        assertThat(cacheService.getReplayCount()).isEqualTo(1);
+    }
+}
@@ -282,6 +282,7 @@ public class SimpleKdcServer extends KdcServer {
     @Override
     public void stop() throws KrbException {
         super.stop();
+        krbClnt.close();
         try {
             krb5Conf.deleteKrb5conf();
         } catch (IOException e) {
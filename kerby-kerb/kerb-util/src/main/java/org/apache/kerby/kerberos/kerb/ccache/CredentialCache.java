@@ -23,6 +23,8 @@ import org.apache.kerby.kerberos.kerb.type.base.PrincipalName;
 import org.apache.kerby.kerberos.kerb.type.ticket.TgtTicket;
 import org.apache.kerby.kerberos.kerb.type.ticket.Ticket;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -81,9 +83,10 @@ public class CredentialCache implements KrbCredentialCache {
 
     @Override
     public void store(File ccacheFile) throws IOException {
-        OutputStream outputStream = new FileOutputStream(ccacheFile);
-        store(outputStream);
-        outputStream.close();
+        try (OutputStream outputStream = new BufferedOutputStream(
+                new FileOutputStream(ccacheFile))) {
+            store(outputStream);
+        }
     }
 
     @Override
@@ -102,13 +105,7 @@ public class CredentialCache implements KrbCredentialCache {
     private void doStore(CredCacheOutputStream ccos) throws IOException {
         this.version = FCC_FVNO_3;
 
-        writeVersion(ccos);
-
-        if (version == FCC_FVNO_4) {
-            writeTags(ccos);
-        }
-
-        ccos.writePrincipal(primaryPrincipal, version);
+        storeHeader(ccos);
 
         for (Credential cred : credentials) {
             cred.store(ccos, version);
@@ -190,9 +187,10 @@ public class CredentialCache implements KrbCredentialCache {
                     + ccacheFile.getAbsolutePath());
         }
 
-        InputStream inputStream = new FileInputStream(ccacheFile);
-        load(inputStream);
-        inputStream.close();
+        try (InputStream inputStream = new BufferedInputStream(
+                new FileInputStream(ccacheFile))) {
+            load(inputStream);
+        }
     }
 
     @Override
@@ -208,15 +206,37 @@ public class CredentialCache implements KrbCredentialCache {
         ccis.close();
     }
 
+    /**
+     * Write the version, tags and primary principal, which the credentials
+     * follow.
+     */
+    void storeHeader(CredCacheOutputStream ccos) throws IOException {
+        writeVersion(ccos);
+
+        if (version == FCC_FVNO_4) {
+            writeTags(ccos);
+        }
+
+        ccos.writePrincipal(primaryPrincipal, version);
+    }
+
     private void doLoad(CredCacheInputStream ccis) throws IOException {
+        loadHeader(ccis);
+
+        this.credentials.addAll(readCredentials(ccis));
+    }
+
+    /**
+     * Read the version, tags and primary principal, which the credentials
+     * follow.
+     */
+    void loadHeader(CredCacheInputStream ccis) throws IOException {
         this.version = readVersion(ccis);
         if (version == FCC_FVNO_4) {
             this.tags = readTags(ccis);
         }
 
         this.primaryPrincipal = ccis.readPrincipal(version);
-
-        this.credentials.addAll(readCredentials(ccis));
     }
 
     private List<Credential> readCredentials(CredCacheInputStream ccis)
@@ -0,0 +1,409 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.ccache;
+
+import org.apache.kerby.kerberos.kerb.type.base.PrincipalName;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A credential cache file shared by processes and updated incrementally. A
+ * new credential is appended to the file under an exclusive file lock, and
+ * the credentials appended by others are picked up by reading only the part
+ * of the file grown since last read, under a shared lock. The credentials
+ * are indexed by server principal, the latest one of a server winning.
+ *
+ * The file is rewritten by writing a new file and renaming it over the old
+ * one. The whole file is read again when it's another file than last read,
+ * or when the header or the last credential read changed, as when rewritten
+ * in place by others. A partial credential left at the end by a writer that
+ * crashed is skipped, and cut off by the next append.
+ */
+public class FileCredentialCache {
+    // File locks are held by the JVM, so the threads of it exclude each other
+    private static final ConcurrentMap<String, Object> JVM_LOCKS = new ConcurrentHashMap<>();
+
+    private final File file;
+    private final Object jvmLock;
+
+    private CredentialCache header;
+    private byte[] headerBytes;
+    // The identity of the file read, and of the file locked now
+    private Object fileKey;
+    private Object lockedFileKey;
+    // The bytes of the last credential read, to tell a file rewritten in place
+    private byte[] lastBytes;
+    private long readOffset;
+    private final List<Credential> credentials = new ArrayList<>();
+    private final Map<PrincipalName, Credential> serverIndex = new HashMap<>();
+
+    /**
+     * @param file The credential cache file, created on first credential
+     * @throws IOException e
+     */
+    public FileCredentialCache(File file) throws IOException {
+        this.file = file;
+        String path = file.getCanonicalPath();
+        Object lock = new Object();
+        Object existing = JVM_LOCKS.putIfAbsent(path, lock);
+        this.jvmLock = existing != null ? existing : lock;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Append a credential to the file, which is created with the client of
+     * the credential as primary principal if it doesn't exist.
+     * @param credential The credential
+     * @throws IOException e
+     */
+    public synchronized void addCredential(Credential credential) throws IOException {
+        synchronized (jvmLock) {
+            try (RandomAccessFile raf = openLocked(false)) {
+                refresh(raf, true);
+                if (header == null) {
+                    writeHeader(raf, credential.getClientName());
+                    fileKey = lockedFileKey;
+                }
+
+                byte[] bytes = toBytes(credential);
+                raf.seek(readOffset);
+                raf.write(bytes);
+                readOffset = raf.getFilePointer();
+                lastBytes = bytes;
+                index(credential);
+            }
+        }
+    }
+
+    /**
+     * Rewrite the file with the given credentials only, to drop the ones not
+     * needed any more.
+     * @param primaryPrincipal The primary principal
+     * @param newCredentials The credentials to keep
+     * @throws IOException e
+     */
+    public synchronized void rewrite(PrincipalName primaryPrincipal,
+                                     List<Credential> newCredentials) throws IOException {
+        synchronized (jvmLock) {
+            try (RandomAccessFile raf = openLocked(false)) {
+                replace(primaryPrincipal, newCredentials);
+            }
+        }
+    }
+
+    /**
+     * Rewrite the file with the latest credential of each client, server and
+     * key type that is not expired, the ones appended by others included.
+     * @throws IOException e
+     */
+    public synchronized void compact() throws IOException {
+        synchronized (jvmLock) {
+            try (RandomAccessFile raf = openLocked(false)) {
+                refresh(raf, true);
+                if (header == null) {
+                    return;
+                }
+
+                long now = System.currentTimeMillis();
+                Map<String, Credential> latest = new LinkedHashMap<>();
+                for (Credential credential : credentials) {
+                    long endTime = credential.getEndTime().getTime();
+                    // Config entries have no end time
+                    if (endTime == 0 || endTime > now) {
+                        String key = credential.getClientName().getName() + " "
+                            + credential.getServerName().getName() + " "
+                            + credential.getKey().getKeyType();
+                        latest.remove(key);
+                        latest.put(key, credential);
+                    }
+                }
+                replace(header.getPrimaryPrincipal(), new ArrayList<>(latest.values()));
+            }
+        }
+    }
+
+    /**
+     * Get the latest credential for the server.
+     * @param serverPrincipal The server principal
+     * @return The credential, null if none
+     * @throws IOException e
+     */
+    public synchronized Credential getCredential(PrincipalName serverPrincipal) throws IOException {
+        refresh();
+        return serverIndex.get(serverPrincipal);
+    }
+
+    /**
+     * Get all the credentials, in the order they were added.
+     * @return credentials
+     * @throws IOException e
+     */
+    public synchronized List<Credential> getCredentials() throws IOException {
+        refresh();
+        return Collections.unmodifiableList(new ArrayList<>(credentials));
+    }
+
+    /**
+     * Get the number of credentials in the file, replaced ones included.
+     * @return number of credentials
+     * @throws IOException e
+     */
+    public synchronized int size() throws IOException {
+        refresh();
+        return credentials.size();
+    }
+
+    /**
+     * Get the primary principal.
+     * @return The primary principal, null if the file doesn't exist
+     * @throws IOException e
+     */
+    public synchronized PrincipalName getPrimaryPrincipal() throws IOException {
+        refresh();
+        return header != null ? header.getPrimaryPrincipal() : null;
+    }
+
+    /**
+     * Pick up the changes to the file since last read.
+     * @throws IOException e
+     */
+    public synchronized void refresh() throws IOException {
+        if (!file.exists()) {
+            reset();
+            return;
+        }
+        synchronized (jvmLock) {
+            try (RandomAccessFile raf = openLocked(true)) {
+                refresh(raf, false);
+            }
+        }
+    }
+
+    /**
+     * Open the file and lock it, again if it's replaced by a rewrite while
+     * waiting for the lock, so the file locked is the one at the path. The
+     * lock is released when the file is closed.
+     */
+    private RandomAccessFile openLocked(boolean shared) throws IOException {
+        while (true) {
+            Object key = getFileKey();
+            RandomAccessFile raf = new RandomAccessFile(file, shared ? "r" : "rw");
+            boolean locked = false;
+            try {
+                raf.getChannel().lock(0, Long.MAX_VALUE, shared);
+                Object current = getFileKey();
+                if (key == null || key.equals(current)) {
+                    lockedFileKey = current;
+                    locked = true;
+                    return raf;
+                }
+            } finally {
+                if (!locked) {
+                    raf.close();
+                }
+            }
+        }
+    }
+
+    private Object getFileKey() throws IOException {
+        try {
+            return Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private void refresh(RandomAccessFile raf, boolean exclusive) throws IOException {
+        long length = raf.length();
+        if (header != null && length >= readOffset && isUnchanged(raf)) {
+            if (length > readOffset) {
+                byte[] content = read(raf, readOffset, length - readOffset);
+                readOffset += parse(content, 0);
+            }
+        } else {
+            // New, or rewritten by others
+            reset();
+            fileKey = lockedFileKey;
+            if (length == 0) {
+                return;
+            }
+            byte[] content = read(raf, 0, length);
+            ByteArrayInputStream input = new ByteArrayInputStream(content);
+            CredentialCache newHeader = new CredentialCache();
+            try {
+                newHeader.loadHeader(new CredCacheInputStream(input));
+            } catch (EOFException e) {
+                // A partial header left by a writer that crashed
+                if (exclusive) {
+                    raf.setLength(0);
+                }
+                return;
+            }
+            int headerLength = content.length - input.available();
+            header = newHeader;
+            headerBytes = Arrays.copyOf(content, headerLength);
+            readOffset = headerLength + parse(content, headerLength);
+        }
+
+        if (exclusive && length > readOffset) {
+            // A partial credential left by a writer that crashed
+            raf.setLength(readOffset);
+        }
+    }
+
+    private boolean isUnchanged(RandomAccessFile raf) throws IOException {
+        if (fileKey != null && !fileKey.equals(lockedFileKey)) {
+            return false;
+        }
+        if (!Arrays.equals(read(raf, 0, headerBytes.length), headerBytes)) {
+            return false;
+        }
+        return lastBytes.length == 0
+            || Arrays.equals(read(raf, readOffset - lastBytes.length, lastBytes.length), lastBytes);
+    }
+
+    /**
+     * Parse and index the complete credentials in the content from the
+     * offset, stopping at a partial one.
+     * @return The number of bytes parsed
+     */
+    private int parse(byte[] content, int offset) throws IOException {
+        ByteArrayInputStream input = new ByteArrayInputStream(content, offset, content.length - offset);
+        CredCacheInputStream ccis = new CredCacheInputStream(input);
+        int end = offset;
+        while (input.available() > 0) {
+            Credential credential = new Credential();
+            try {
+                credential.load(ccis, header.getVersion());
+            } catch (EOFException e) {
+                break;
+            }
+            int next = content.length - input.available();
+            lastBytes = Arrays.copyOfRange(content, end, next);
+            end = next;
+            index(credential);
+        }
+        return end - offset;
+    }
+
+    /**
+     * Write the credentials to a new file and rename it over the file, with
+     * the lock of the file held.
+     */
+    private void replace(PrincipalName primaryPrincipal,
+                         List<Credential> newCredentials) throws IOException {
+        Path path = file.getAbsoluteFile().toPath();
+        Path tmpPath = Files.createTempFile(path.getParent(), file.getName(), ".tmp");
+        try {
+            reset();
+            try (RandomAccessFile tmp = new RandomAccessFile(tmpPath.toFile(), "rw")) {
+                writeHeader(tmp, primaryPrincipal);
+                for (Credential credential : newCredentials) {
+                    byte[] bytes = toBytes(credential);
+                    tmp.write(bytes);
+                    lastBytes = bytes;
+                    index(credential);
+                }
+                readOffset = tmp.getFilePointer();
+                tmp.getFD().sync();
+            }
+            Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+            fileKey = getFileKey();
+        } catch (IOException e) {
+            reset();
+            throw e;
+        } finally {
+            Files.deleteIfExists(tmpPath);
+        }
+    }
+
+    private void writeHeader(RandomAccessFile raf, PrincipalName primaryPrincipal) throws IOException {
+        CredentialCache newHeader = new CredentialCache();
+        newHeader.setVersion(CredentialCache.FCC_FVNO_3);
+        newHeader.setPrimaryPrincipal(primaryPrincipal);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CredCacheOutputStream ccos = new CredCacheOutputStream(bytes);
+        newHeader.storeHeader(ccos);
+        ccos.flush();
+
+        headerBytes = bytes.toByteArray();
+        raf.seek(0);
+        raf.write(headerBytes);
+        header = newHeader;
+        lastBytes = new byte[0];
+        readOffset = headerBytes.length;
+    }
+
+    private byte[] toBytes(Credential credential) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CredCacheOutputStream ccos = new CredCacheOutputStream(bytes);
+        credential.store(ccos, header.getVersion());
+        ccos.flush();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] read(RandomAccessFile raf, long from, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Credential cache file too large");
+        }
+        byte[] bytes = new byte[(int) length];
+        raf.seek(from);
+        raf.readFully(bytes);
+        return bytes;
+    }
+
+    private void index(Credential credential) {
+        credentials.add(credential);
+        serverIndex.put(credential.getServerName(), credential);
+    }
+
+    private void reset() {
+        header = null;
+        headerBytes = null;
+        fileKey = null;
+        lastBytes = new byte[0];
+        readOffset = 0;
+        credentials.clear();
+        serverIndex.clear();
+    }
+}
@@ -124,7 +124,10 @@ public final class Keytab implements KrbKeytab {
 
     @Override
     public EncryptionKey getKey(PrincipalName principal, EncryptionType keyType) {
-        List<KeytabEntry> entries = getKeytabEntries(principal);
+        List<KeytabEntry> entries = principalEntries.get(principal);
+        if (entries == null) {
+            return null;
+        }
         for (KeytabEntry ke : entries) {
             if (ke.getKey().getKeyType() == keyType) {
                 return ke.getKey();
@@ -0,0 +1,236 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.keytab;
+
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionKey;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
+import org.apache.kerby.kerberos.kerb.type.base.PrincipalName;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A process wide registry of the loaded keytab files, shared by the clients
+ * and services reading keys from the same keytabs. A keytab file is parsed
+ * once, with its keys indexed by principal, encryption type and kvno, and
+ * parsed again only when its modified time or size changes.
+ */
+public final class KeytabRegistry {
+    private static final KeytabRegistry INSTANCE = new KeytabRegistry();
+    private static final int ANY_KVNO = -1;
+
+    private final ConcurrentMap<File, IndexedKeytab> keytabs =
+        new ConcurrentHashMap<File, IndexedKeytab>();
+
+    private KeytabRegistry() { }
+
+    public static KeytabRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the key of the principal with the encryption type, the first one
+     * in the keytab file as {@link Keytab#getKey} does.
+     * @param keytabFile The keytab file
+     * @param principal The principal
+     * @param keyType The encryption type
+     * @return key, null if not found
+     * @throws IOException e
+     */
+    public EncryptionKey getKey(File keytabFile, PrincipalName principal,
+                                EncryptionType keyType) throws IOException {
+        return getKey(keytabFile, principal, keyType, ANY_KVNO);
+    }
+
+    /**
+     * Get the key of the principal with the encryption type and kvno.
+     * @param keytabFile The keytab file
+     * @param principal The principal
+     * @param keyType The encryption type
+     * @param kvno The key version
+     * @return key, null if not found
+     * @throws IOException e
+     */
+    public EncryptionKey getKey(File keytabFile, PrincipalName principal,
+                                EncryptionType keyType, int kvno) throws IOException {
+        return getIndexedKeytab(keytabFile).keys.get(new KeyId(principal, keyType, kvno));
+    }
+
+    /**
+     * Get the loaded keytab. It's shared, so must not be modified.
+     * @param keytabFile The keytab file
+     * @return keytab
+     * @throws IOException e
+     */
+    public Keytab getKeytab(File keytabFile) throws IOException {
+        return getIndexedKeytab(keytabFile).keytab;
+    }
+
+    /**
+     * Drop the loaded keytab, to load it again on next use.
+     * @param keytabFile The keytab file
+     */
+    public void invalidate(File keytabFile) {
+        keytabs.remove(keytabFile.getAbsoluteFile());
+    }
+
+    /**
+     * Drop all the loaded keytabs.
+     */
+    public void clear() {
+        keytabs.clear();
+    }
+
+    private IndexedKeytab getIndexedKeytab(File keytabFile) throws IOException {
+        File file = keytabFile.getAbsoluteFile();
+        IndexedKeytab indexed = keytabs.get(file);
+        if (indexed == null || indexed.isStale(file)) {
+            synchronized (this) {
+                indexed = keytabs.get(file);
+                if (indexed == null || indexed.isStale(file)) {
+                    indexed = load(file);
+                    keytabs.put(file, indexed);
+                }
+            }
+        }
+        return indexed;
+    }
+
+    private static IndexedKeytab load(File file) throws IOException {
+        if (!file.exists() || !file.canRead()) {
+            throw new IllegalArgumentException("Invalid keytab file: " + file.getAbsolutePath());
+        }
+
+        // Take the file stamp before reading, so a change while reading is seen
+        long lastModified = file.lastModified();
+        long length = file.length();
+        Keytab keytab;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            keytab = Keytab.loadKeytab(new ByteBufferInputStream(buffer));
+        }
+        return new IndexedKeytab(keytab, lastModified, length);
+    }
+
+    private static final class IndexedKeytab {
+        private final Keytab keytab;
+        private final long lastModified;
+        private final long length;
+        private final Map<KeyId, EncryptionKey> keys = new HashMap<KeyId, EncryptionKey>();
+
+        IndexedKeytab(Keytab keytab, long lastModified, long length) {
+            this.keytab = keytab;
+            this.lastModified = lastModified;
+            this.length = length;
+
+            for (PrincipalName principal : keytab.getPrincipals()) {
+                List<KeytabEntry> entries = keytab.getKeytabEntries(principal);
+                for (KeytabEntry entry : entries) {
+                    EncryptionKey key = entry.getKey();
+                    keys.put(new KeyId(principal, key.getKeyType(), entry.getKvno()), key);
+                    KeyId anyKvno = new KeyId(principal, key.getKeyType(), ANY_KVNO);
+                    if (!keys.containsKey(anyKvno)) {
+                        keys.put(anyKvno, key);
+                    }
+                }
+            }
+        }
+
+        boolean isStale(File file) {
+            return file.lastModified() != lastModified || file.length() != length;
+        }
+    }
+
+    private static final class KeyId {
+        private final PrincipalName principal;
+        private final EncryptionType keyType;
+        private final int kvno;
+
+        KeyId(PrincipalName principal, EncryptionType keyType, int kvno) {
+            this.principal = principal;
+            this.keyType = keyType;
+            this.kvno = kvno;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof KeyId)) {
+                return false;
+            }
+            KeyId other = (KeyId) obj;
+            return kvno == other.kvno && keyType == other.keyType
+                && principal.equals(other.principal);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = principal.hashCode();
+            result = 31 * result + keyType.hashCode();
+            return 31 * result + kvno;
+        }
+    }
+
+    /**
+     * Read the mapped keytab file as a stream, as the keytab parser wants.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(bytes, off, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.util;
+
+import org.apache.kerby.kerberos.kerb.ccache.Credential;
+import org.apache.kerby.kerberos.kerb.ccache.CredentialCache;
+import org.apache.kerby.kerberos.kerb.ccache.FileCredentialCache;
+import org.apache.kerby.kerberos.kerb.type.KerberosTime;
+import org.apache.kerby.kerberos.kerb.type.base.PrincipalName;
+import org.apache.kerby.kerberos.kerb.type.kdc.EncTgsRepPart;
+import org.apache.kerby.kerberos.kerb.type.ticket.SgtTicket;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileCredentialCacheTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private Credential credential;
+    private File ccacheFile;
+
+    @Before
+    public void setUp() throws IOException {
+        CredentialCache cc = new CredentialCache();
+        try (InputStream cis = FileCredentialCacheTest.class.getResourceAsStream("/test.cc")) {
+            cc.load(cis);
+        }
+        credential = cc.getCredentials().get(0);
+        ccacheFile = new File(tempFolder.getRoot(), "krb5cc");
+    }
+
+    @Test
+    public void testAppend() throws IOException {
+        FileCredentialCache writer = new FileCredentialCache(ccacheFile);
+        writer.addCredential(credential);
+        long length = ccacheFile.length();
+        writer.addCredential(credential);
+        assertThat(ccacheFile.length()).isGreaterThan(length);
+        assertThat(writer.size()).isEqualTo(2);
+
+        // Compatible with the whole file format
+        CredentialCache cc = new CredentialCache();
+        cc.load(ccacheFile);
+        assertThat(cc.getPrimaryPrincipal()).isEqualTo(credential.getClientName());
+        assertThat(cc.getCredentials()).hasSize(2);
+    }
+
+    @Test
+    public void testSeeOthersAppends() throws IOException {
+        FileCredentialCache writer = new FileCredentialCache(ccacheFile);
+        FileCredentialCache reader = new FileCredentialCache(ccacheFile);
+        assertThat(reader.getPrimaryPrincipal()).isNull();
+
+        writer.addCredential(credential);
+        PrincipalName server = credential.getServerName();
+        assertThat(reader.getCredential(server)).isNotNull();
+        assertThat(reader.getCredential(server).getEndTime()).isEqualTo(credential.getEndTime());
+        assertThat(reader.getPrimaryPrincipal()).isEqualTo(credential.getClientName());
+
+        writer.addCredential(credential);
+        assertThat(reader.getCredentials()).hasSize(2);
+        assertThat(reader.getCredential(new PrincipalName("nobody@SH.INTEL.COM"))).isNull();
+    }
+
+    @Test
+    public void testSeeRewrite() throws IOException {
+        FileCredentialCache writer = new FileCredentialCache(ccacheFile);
+        FileCredentialCache reader = new FileCredentialCache(ccacheFile);
+        writer.addCredential(credential);
+        writer.addCredential(credential);
+        assertThat(reader.size()).isEqualTo(2);
+
+        writer.rewrite(credential.getClientName(), Collections.singletonList(credential));
+        assertThat(reader.size()).isEqualTo(1);
+
+        // Rewritten by a whole file store
+        new CredentialCache(credential).store(ccacheFile);
+        assertThat(reader.size()).isEqualTo(1);
+        writer.addCredential(credential);
+        assertThat(reader.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testSeeRewriteWithSameHeader() throws IOException {
+        FileCredentialCache writer = new FileCredentialCache(ccacheFile);
+        FileCredentialCache reader = new FileCredentialCache(ccacheFile);
+        writer.addCredential(credential);
+        assertThat(reader.size()).isEqualTo(1);
+
+        // Same header and longer, read again instead of from the old offset
+        writer.rewrite(credential.getClientName(), Arrays.asList(
+            makeCredential("a/host@SH.INTEL.COM"), makeCredential("b/host@SH.INTEL.COM")));
+        assertThat(reader.size()).isEqualTo(2);
+        assertThat(reader.getCredential(credential.getServerName())).isNull();
+        writer.addCredential(credential);
+        assertThat(reader.size()).isEqualTo(3);
+        assertThat(reader.getCredential(credential.getServerName())).isNotNull();
+    }
+
+    @Test
+    public void testPartialTail() throws IOException {
+        FileCredentialCache writer = new FileCredentialCache(ccacheFile);
+        writer.addCredential(credential);
+        long length = ccacheFile.length();
+        writer.addCredential(credential);
+        long recordLength = ccacheFile.length() - length;
+
+        // A writer crashed in the middle of a credential
+        try (RandomAccessFile raf = new RandomAccessFile(ccacheFile, "rw")) {
+            raf.setLength(length + recordLength / 2);
+        }
+        FileCredentialCache reader = new FileCredentialCache(ccacheFile);
+        assertThat(reader.size()).isEqualTo(1);
+
+        reader.addCredential(credential);
+        assertThat(ccacheFile.length()).isEqualTo(length + recordLength);
+        assertThat(writer.size()).isEqualTo(2);
+        CredentialCache cc = new CredentialCache();
+        cc.load(ccacheFile);
+        assertThat(cc.getCredentials()).hasSize(2);
+    }
+
+    @Test
+    public void testCompactKeepsOthersCredentials() throws IOException {
+        FileCredentialCache mine = new FileCredentialCache(ccacheFile);
+        FileCredentialCache others = new FileCredentialCache(ccacheFile);
+        // Expired
+        mine.addCredential(credential);
+        mine.addCredential(makeCredential("mine/host@SH.INTEL.COM"));
+        Credential latest = makeCredential("mine/host@SH.INTEL.COM");
+        mine.addCredential(latest);
+        Credential other = makeCredential("other/host@SH.INTEL.COM");
+        others.addCredential(other);
+
+        mine.compact();
+        assertThat(others.size()).isEqualTo(2);
+        assertThat(others.getCredential(other.getServerName())).isNotNull();
+        assertThat(others.getCredential(latest.getServerName())).isNotNull();
+        assertThat(mine.size()).isEqualTo(2);
+    }
+
+    private Credential makeCredential(String server) {
+        EncTgsRepPart repPart = new EncTgsRepPart();
+        repPart.setKey(credential.getKey());
+        PrincipalName serverName = new PrincipalName(server);
+        repPart.setSname(serverName);
+        repPart.setSrealm(serverName.getRealm());
+        repPart.setAuthTime(KerberosTime.now());
+        repPart.setStartTime(KerberosTime.now());
+        repPart.setEndTime(KerberosTime.now().extend(3600 * 1000L));
+        repPart.setRenewTill(KerberosTime.now().extend(3600 * 1000L));
+        repPart.setFlags(credential.getTicketFlags());
+        repPart.setCaddr(credential.getClientAddresses());
+        return new Credential(new SgtTicket(credential.getTicket(), repPart),
+            credential.getClientName());
+    }
+}
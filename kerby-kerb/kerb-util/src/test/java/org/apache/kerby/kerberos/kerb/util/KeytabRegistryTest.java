@@ -0,0 +1,99 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.kerberos.kerb.util;
+
+import org.apache.kerby.kerberos.kerb.keytab.Keytab;
+import org.apache.kerby.kerberos.kerb.keytab.KeytabRegistry;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionKey;
+import org.apache.kerby.kerberos.kerb.type.base.EncryptionType;
+import org.apache.kerby.kerberos.kerb.type.base.PrincipalName;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KeytabRegistryTest {
+    private static final PrincipalName PRINCIPAL = new PrincipalName("test@SH.INTEL.COM");
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        KeytabRegistry.getInstance().clear();
+    }
+
+    @Test
+    public void testGetKey() throws IOException {
+        File keytabFile = copyKeytab();
+        KeytabRegistry registry = KeytabRegistry.getInstance();
+        Keytab keytab = Keytab.loadKeytab(keytabFile);
+
+        EncryptionKey key = registry.getKey(keytabFile, PRINCIPAL,
+            EncryptionType.AES128_CTS_HMAC_SHA1_96);
+        assertThat(key).isEqualTo(keytab.getKey(PRINCIPAL,
+            EncryptionType.AES128_CTS_HMAC_SHA1_96));
+        assertThat(registry.getKey(keytabFile, PRINCIPAL,
+            EncryptionType.AES128_CTS_HMAC_SHA1_96)).isSameAs(key);
+        assertThat(registry.getKey(keytabFile, PRINCIPAL,
+            EncryptionType.AES128_CTS_HMAC_SHA1_96, 1)).isSameAs(key);
+        assertThat(registry.getKey(keytabFile, PRINCIPAL,
+            EncryptionType.AES128_CTS_HMAC_SHA1_96, 2)).isNull();
+        assertThat(registry.getKey(keytabFile, new PrincipalName("none@SH.INTEL.COM"),
+            EncryptionType.AES128_CTS_HMAC_SHA1_96)).isNull();
+    }
+
+    @Test
+    public void testReloadOnChange() throws IOException {
+        File keytabFile = copyKeytab();
+        KeytabRegistry registry = KeytabRegistry.getInstance();
+        Keytab keytab = registry.getKeytab(keytabFile);
+        assertThat(registry.getKeytab(keytabFile)).isSameAs(keytab);
+
+        Keytab changed = Keytab.loadKeytab(keytabFile);
+        changed.removeKeytabEntries(PRINCIPAL);
+        changed.store(keytabFile);
+
+        assertThat(registry.getKey(keytabFile, PRINCIPAL,
+            EncryptionType.AES128_CTS_HMAC_SHA1_96)).isNull();
+        assertThat(registry.getKeytab(keytabFile)).isNotSameAs(keytab);
+    }
+
+    private File copyKeytab() throws IOException {
+        File keytabFile = tempFolder.newFile("test.keytab");
+        try (InputStream in = KeytabRegistryTest.class.getResourceAsStream("/test.keytab");
+             OutputStream out = new FileOutputStream(keytabFile)) {
+            byte[] buffer = new byte[4096];
+            int len;
+            while ((len = in.read(buffer)) > 0) {
+                out.write(buffer, 0, len);
+            }
+        }
+        return keytabFile;
+    }
+}
@@ -45,13 +45,23 @@ import java.security.interfaces.ECPublicKey;
 import java.security.interfaces.RSAPrivateKey;
 import java.security.interfaces.RSAPublicKey;
 import java.text.ParseException;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * JWT token decoder, implemented using Nimbus JWT library.
  */
 public class JwtTokenDecoder implements TokenDecoder {
+    private static final int MAX_CACHED_KEYS = 64;
+    // Verifiers and decrypters are thread safe, reuse them for the same keys
+    private static final Map<Object, JWSVerifier> VERIFIERS =
+        Collections.synchronizedMap(new KeyCache<JWSVerifier>());
+    private static final Map<Object, JWEDecrypter> DECRYPTERS =
+        Collections.synchronizedMap(new KeyCache<JWEDecrypter>());
+
     private Object decryptionKey;
     private Object verifyKey;
     private List<String> audiences = null;
@@ -155,7 +165,12 @@ public class JwtTokenDecoder implements TokenDecoder {
     
     private JWEDecrypter getDecrypter() throws JOSEException, KrbException {
         if (decryptionKey instanceof RSAPrivateKey) {
-            return new RSADecrypter((RSAPrivateKey) decryptionKey);
+            JWEDecrypter decrypter = DECRYPTERS.get(decryptionKey);
+            if (decrypter == null) {
+                decrypter = new RSADecrypter((RSAPrivateKey) decryptionKey);
+                DECRYPTERS.put(decryptionKey, decrypter);
+            }
+            return decrypter;
         } else if (decryptionKey instanceof byte[]) {
             return new DirectDecrypter((byte[]) decryptionKey);
         }
@@ -196,12 +211,19 @@ public class JwtTokenDecoder implements TokenDecoder {
     }
     
     private JWSVerifier getVerifier() throws JOSEException, KrbException {
-        if (verifyKey instanceof RSAPublicKey) {
-            return new RSASSAVerifier((RSAPublicKey) verifyKey);
-        } else if (verifyKey instanceof ECPublicKey) {
-            ECPublicKey ecPublicKey = (ECPublicKey) verifyKey;
-            return new ECDSAVerifier(ecPublicKey.getW().getAffineX(),
-                                     ecPublicKey.getW().getAffineY());
+        if (verifyKey instanceof RSAPublicKey || verifyKey instanceof ECPublicKey) {
+            JWSVerifier verifier = VERIFIERS.get(verifyKey);
+            if (verifier == null) {
+                if (verifyKey instanceof RSAPublicKey) {
+                    verifier = new RSASSAVerifier((RSAPublicKey) verifyKey);
+                } else {
+                    ECPublicKey ecPublicKey = (ECPublicKey) verifyKey;
+                    verifier = new ECDSAVerifier(ecPublicKey.getW().getAffineX(),
+                                                 ecPublicKey.getW().getAffineY());
+                }
+                VERIFIERS.put(verifyKey, verifier);
+            }
+            return verifier;
         } else if (verifyKey instanceof byte[]) {
             return new MACVerifier((byte[]) verifyKey);
         }
@@ -281,4 +303,20 @@ public class JwtTokenDecoder implements TokenDecoder {
     public boolean isSigned() {
         return signed;
     }
+
+    /**
+     * A small LRU map of the verifiers or decrypters by key.
+     */
+    private static class KeyCache<V> extends LinkedHashMap<Object, V> {
+        private static final long serialVersionUID = 1L;
+
+        KeyCache() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, V> eldest) {
+            return size() > MAX_CACHED_KEYS;
+        }
+    }
 }
@@ -24,6 +24,7 @@ import org.apache.kerby.kerberos.kerb.KrbException;
 import org.apache.kerby.kerberos.kerb.admin.Kadmin;
 import org.apache.kerby.kerberos.kerb.admin.KadminOption;
 import org.apache.kerby.kerberos.tool.kadmin.command.AddPrincipalCommand;
+import org.apache.kerby.kerberos.tool.kadmin.command.AddPrincipalsCommand;
 import org.apache.kerby.kerberos.tool.kadmin.command.ChangePasswordCommand;
 import org.apache.kerby.kerberos.tool.kadmin.command.DeletePrincipalCommand;
 import org.apache.kerby.kerberos.tool.kadmin.command.GetPrincipalCommand;
@@ -52,6 +53,8 @@ public class KadminTool {
             + "\n"
             + "add_principal, addprinc, ank\n"
             + "                         Add principal\n"
+            + "add_principals, addprincs\n"
+            + "                         Add principals listed in a file\n"
             + "delete_principal, delprinc\n"
             + "                         Delete principal\n"
             + "modify_principal, modprinc\n"
@@ -113,7 +116,10 @@ public class KadminTool {
         }
 
         KadminCommand executor = null;
-        if (command.startsWith("add_principal")
+        if (command.startsWith("add_principals")
+                || command.startsWith("addprincs")) {
+            executor = new AddPrincipalsCommand(kadmin);
+        } else if (command.startsWith("add_principal")
                 || command.startsWith("addprinc")
                 || command.startsWith("ank")) {
             executor = new AddPrincipalCommand(kadmin);
@@ -0,0 +1,97 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.kerby.kerberos.tool.kadmin.command;
+
+import org.apache.kerby.KOptions;
+import org.apache.kerby.kerberos.kerb.KrbException;
+import org.apache.kerby.kerberos.kerb.admin.Kadmin;
+import org.apache.kerby.kerberos.tool.kadmin.ToolUtil;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class AddPrincipalsCommand extends KadminCommand {
+    private static final String USAGE = "Usage: add_principals [options] file\n"
+            + "\toptions are:\n"
+            + "\t\t[-expire expdate] [-kvno kvno]\n"
+            + "\tThe file has a principal per line, followed by its password,\n"
+            + "\tor only the principal for random keys. Empty lines and lines\n"
+            + "\tstarting with # are skipped.\n"
+            + "\tExample:\n"
+            + "\t\tadd_principals -expire 23/04/15:01:01:01 principals.txt";
+
+    public AddPrincipalsCommand(Kadmin kadmin) {
+        super(kadmin);
+    }
+
+    @Override
+    public void execute(String input) {
+        String[] commands = input.split("\\s+");
+        if (commands.length < 2) {
+            System.err.println(USAGE);
+            return;
+        }
+
+        KOptions kOptions = ToolUtil.parseOptions(commands, 1, commands.length - 2);
+        if (kOptions == null) {
+            System.err.println(USAGE);
+            return;
+        }
+        File file = new File(commands[commands.length - 1]);
+
+        Map<String, String> principals;
+        try {
+            principals = readPrincipals(file);
+        } catch (IOException e) {
+            System.err.println("Fail to read principals from \"" + file + "\"." + e.getMessage());
+            return;
+        }
+
+        try {
+            int added = getKadmin().addPrincipals(principals, kOptions);
+            System.out.println(added + " principals created.");
+        } catch (KrbException e) {
+            System.err.println("Fail to add principals. " + e.getMessage());
+        }
+    }
+
+    private Map<String, String> readPrincipals(File file) throws IOException {
+        Map<String, String> principals = new LinkedHashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\\s+", 2);
+                principals.put(fields[0], fields.length > 1 ? fields[1] : null);
+            }
+        }
+        return principals;
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.kerby.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TestThreadUtil {
+
+    @Test
+    public void testVirtualThreadExecutor() throws Exception {
+        ExecutorService executor = ThreadUtil.newVirtualThreadPerTaskExecutor();
+        if (!ThreadUtil.isVirtualThreadSupported()) {
+            assertNull(executor);
+            return;
+        }
+
+        try {
+            Future<String> result = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    // NOOP
+                }
+            }, "done");
+            assertEquals("done", result.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}